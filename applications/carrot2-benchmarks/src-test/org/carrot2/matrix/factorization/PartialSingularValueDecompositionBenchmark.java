@@ -0,0 +1,89 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix.factorization;
+
+import java.util.Random;
+
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.matrix.CompressedRowDoubleMatrix2D;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.h2.AxisRange;
+import com.carrotsearch.junitbenchmarks.h2.BenchmarkHistoryChart;
+import com.carrotsearch.junitbenchmarks.h2.BenchmarkMethodChart;
+
+/**
+ * Compares the full and the truncated (randomized) {@link PartialSingularValueDecomposition}
+ * of a sparse, term-document-like matrix.
+ */
+@AxisRange(min = 0)
+@BenchmarkMethodChart(filePrefix = "partial-svd")
+@BenchmarkHistoryChart(filePrefix = "partial-svd-history")
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+@SuppressWarnings("deprecation")
+public class PartialSingularValueDecompositionBenchmark extends AbstractBenchmark
+{
+    static final int TERMS = 300;
+    static final int DOCUMENTS = 1000;
+    static final int TERMS_PER_DOCUMENT = 12;
+    static final int K = 30;
+
+    static DoubleMatrix2D dense;
+    static DoubleMatrix2D sparse;
+
+    @BeforeClass
+    public static void prepareMatrix()
+    {
+        final Random random = new Random(0);
+        dense = new DenseDoubleMatrix2D(TERMS, DOCUMENTS);
+        for (int d = 0; d < DOCUMENTS; d++)
+        {
+            for (int i = 0; i < TERMS_PER_DOCUMENT; i++)
+            {
+                // Roughly Zipfian: low indices are much more frequent.
+                final int term = (int) Math.pow(TERMS, random.nextDouble()) - 1;
+                dense.setQuick(term, d, dense.getQuick(term, d) + 1);
+            }
+        }
+        sparse = new CompressedRowDoubleMatrix2D(dense);
+    }
+
+    @Test
+    public void testFullDecomposition()
+    {
+        factorize(dense, -1);
+    }
+
+    @Test
+    public void testTruncatedDense()
+    {
+        factorize(dense, K);
+    }
+
+    @Test
+    public void testTruncatedSparse()
+    {
+        factorize(sparse, K);
+    }
+
+    private void factorize(DoubleMatrix2D A, int k)
+    {
+        final PartialSingularValueDecompositionFactory factory = new PartialSingularValueDecompositionFactory();
+        factory.setK(k);
+        factory.factorize(A);
+    }
+}
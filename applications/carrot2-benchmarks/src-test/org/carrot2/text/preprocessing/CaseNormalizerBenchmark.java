@@ -0,0 +1,124 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.List;
+import java.util.Random;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.linguistic.DefaultLexicalDataFactory;
+import org.carrot2.text.linguistic.DefaultStemmerFactory;
+import org.carrot2.text.linguistic.DefaultTokenizerFactory;
+import org.carrot2.text.linguistic.LanguageModel;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.h2.AxisRange;
+import com.carrotsearch.junitbenchmarks.h2.BenchmarkHistoryChart;
+import com.carrotsearch.junitbenchmarks.h2.BenchmarkMethodChart;
+import com.google.common.collect.Lists;
+
+/**
+ * Compares the sort-based and hash-based word aggregation in {@link CaseNormalizer}.
+ * Documents are generated from a Zipf-like vocabulary with random case variants, so
+ * that the input is repeatable and does not depend on external data.
+ */
+@AxisRange(min = 0)
+@BenchmarkMethodChart(filePrefix = "case-normalizer")
+@BenchmarkHistoryChart(filePrefix = "case-normalizer-history")
+@BenchmarkOptions(benchmarkRounds = 20, warmupRounds = 5)
+public class CaseNormalizerBenchmark extends AbstractBenchmark
+{
+    static final int DOCUMENTS = 5000;
+    static final int VOCABULARY = 20000;
+    static final int WORDS_PER_DOCUMENT = 60;
+
+    /** Tokenized input, reused by all rounds (normalization does not modify tokens). */
+    static PreprocessingContext context;
+
+    @BeforeClass
+    public static void prepareContext()
+    {
+        final Random random = new Random(0);
+        final String [] vocabulary = new String [VOCABULARY];
+        for (int i = 0; i < vocabulary.length; i++)
+        {
+            final StringBuilder b = new StringBuilder();
+            for (int j = 3 + random.nextInt(8); j > 0; j--)
+            {
+                b.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary[i] = b.toString();
+        }
+
+        final List<Document> documents = Lists.newArrayList();
+        for (int i = 0; i < DOCUMENTS; i++)
+        {
+            documents.add(new Document(text(random, vocabulary, WORDS_PER_DOCUMENT / 6),
+                text(random, vocabulary, WORDS_PER_DOCUMENT)));
+        }
+
+        context = new PreprocessingContext(LanguageModel.create(LanguageCode.ENGLISH,
+            new DefaultStemmerFactory(), new DefaultTokenizerFactory(),
+            new DefaultLexicalDataFactory()), documents, null);
+        new Tokenizer().tokenize(context);
+    }
+
+    private static String text(Random random, String [] vocabulary, int words)
+    {
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < words; i++)
+        {
+            // Roughly Zipfian: low indices are much more frequent.
+            final String word = vocabulary[(int) Math.pow(vocabulary.length,
+                random.nextDouble()) - 1];
+            switch (random.nextInt(10))
+            {
+                case 0:
+                    b.append(word.toUpperCase());
+                    break;
+                case 1:
+                case 2:
+                    b.append(Character.toUpperCase(word.charAt(0))).append(
+                        word.substring(1));
+                    break;
+                default:
+                    b.append(word);
+            }
+            b.append(random.nextInt(12) == 0 ? ". " : " ");
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void testSortAggregation()
+    {
+        normalize(false);
+    }
+
+    @Test
+    public void testHashAggregation()
+    {
+        normalize(true);
+    }
+
+    private void normalize(boolean hashAggregation)
+    {
+        final CaseNormalizer caseNormalizer = new CaseNormalizer();
+        caseNormalizer.hashAggregation = hashAggregation;
+        caseNormalizer.normalize(context);
+    }
+}
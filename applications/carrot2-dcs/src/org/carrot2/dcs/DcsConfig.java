@@ -39,6 +39,21 @@ class DcsConfig
     @Attribute(name = "cache-clusters", required = false)
     boolean cacheClusters = false;
 
+    /**
+     * Maximum number of concurrent executions of each clustering algorithm, zero for no
+     * limit. Requests exceeding the limit wait in a queue, see
+     * {@link #maxQueuedClusterings}.
+     */
+    @Attribute(name = "max-concurrent-clusterings", required = false)
+    int maxConcurrentClusterings = 0;
+
+    /**
+     * Maximum number of requests waiting for each clustering algorithm. Requests
+     * exceeding the limit are rejected with HTTP 503.
+     */
+    @Attribute(name = "max-queued-clusterings", required = false)
+    int maxQueuedClusterings = 0;
+
     @Attribute(name = "xslt", required = false)
     String xslt = null;
     
@@ -35,6 +35,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.FileAppender;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PatternLayout;
+import org.carrot2.core.AdmissionControl;
 import org.carrot2.core.Controller;
 import org.carrot2.core.ControllerFactory;
 import org.carrot2.core.Document;
@@ -43,6 +44,7 @@ import org.carrot2.core.IDocumentSource;
 import org.carrot2.core.IProcessingComponent;
 import org.carrot2.core.ProcessingComponentSuite;
 import org.carrot2.core.ProcessingException;
+import org.carrot2.core.ProcessingRejectedException;
 import org.carrot2.core.ProcessingResult;
 import org.carrot2.dcs.DcsRequestModel.OutputFormat;
 import org.carrot2.text.linguistic.DefaultLexicalDataFactory;
@@ -259,6 +261,11 @@ public final class RestProcessorServlet extends HttpServlet
 
         controller = ControllerFactory.createCachingPooling(cachedComponentClasses
             .toArray(new Class [cachedComponentClasses.size()]));
+        if (config.maxConcurrentClusterings > 0)
+        {
+            controller.setAdmissionControl(new AdmissionControl(
+                config.maxConcurrentClusterings, config.maxQueuedClusterings));
+        }
 
         List<IResourceLocator> locators = Lists.newArrayList();
         locators.add(new PrefixDecoratorLocator(new ServletContextLocator(
@@ -539,6 +546,13 @@ public final class RestProcessorServlet extends HttpServlet
                         (System.currentTimeMillis() - start) / 1000.0));
             }
         }
+        catch (ProcessingRejectedException e)
+        {
+            config.logger.warn(e.getMessage());
+            response.setHeader("Retry-After", Integer.toString(e.retryAfterSeconds));
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
+            return;
+        }
         catch (ProcessingException e)
         {
             sendInternalServerError("Could not perform processing", response, e);
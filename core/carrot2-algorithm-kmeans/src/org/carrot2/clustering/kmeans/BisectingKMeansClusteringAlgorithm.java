@@ -18,6 +18,7 @@ import java.util.List;
 
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.function.IntIntDoubleFunction;
 import org.apache.mahout.math.matrix.DoubleMatrix1D;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
 import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix1D;
@@ -33,6 +34,7 @@ import org.carrot2.core.attribute.CommonAttributes;
 import org.carrot2.core.attribute.Init;
 import org.carrot2.core.attribute.Internal;
 import org.carrot2.core.attribute.Processing;
+import org.carrot2.matrix.MatrixKernels;
 import org.carrot2.text.analysis.ITokenizer;
 import org.carrot2.text.clustering.IMonolingualClusteringAlgorithm;
 import org.carrot2.text.clustering.MultilingualClustering;
@@ -45,6 +47,7 @@ import org.carrot2.text.vsm.ReducedVectorSpaceModelContext;
 import org.carrot2.text.vsm.TermDocumentMatrixBuilder;
 import org.carrot2.text.vsm.TermDocumentMatrixReducer;
 import org.carrot2.text.vsm.VectorSpaceModelContext;
+import org.carrot2.util.CancellationToken;
 import org.carrot2.util.attribute.Attribute;
 import org.carrot2.util.attribute.AttributeLevel;
 import org.carrot2.util.attribute.Bindable;
@@ -289,6 +292,8 @@ public class BisectingKMeansClusteringAlgorithm extends ProcessingComponentBase
             int emptySplits = 0;
             while (rawClusters.size() < clusterCount && !finished)
             {
+                CancellationToken.checkCurrent();
+
                 // Find largest cluster to split
                 int largestIndex = 0;
                 IntArrayList largest = rawClusters.get(0);
@@ -423,17 +428,21 @@ public class BisectingKMeansClusteringAlgorithm extends ProcessingComponentBase
             result.add(new IntArrayList(selected.columns()));
         }
 
-        // Matrices for centroids and document-centroid similarities
+        // Matrices for centroids and document-centroid similarities. Similarities are
+        // computed as (selected' * centroids)', so that sparse matrices are multiplied
+        // natively.
         final DoubleMatrix2D centroids = new DenseDoubleMatrix2D(selected.rows(),
             partitions).assign(selected.viewPart(0, 0, selected.rows(), partitions));
-        final DoubleMatrix2D similarities = new DenseDoubleMatrix2D(partitions,
-            selected.columns());
+        final DoubleMatrix2D similaritiesT = new DenseDoubleMatrix2D(selected.columns(),
+            partitions);
+        final DoubleMatrix2D similarities = similaritiesT.viewDice();
+        final int [] assignments = new int [selected.columns()];
 
         // Run a fixed number of K-means iterations
         for (int it = 0; it < iterations; it++)
         {
             // Calculate similarity to centroids
-            centroids.zMult(selected, similarities, 1, 0, true, false);
+            MatrixKernels.multiply(selected, centroids, similaritiesT, true, false);
 
             // Assign documents to the nearest centroid
             for (int c = 0; c < similarities.columns(); c++)
@@ -450,6 +459,7 @@ public class BisectingKMeansClusteringAlgorithm extends ProcessingComponentBase
                 }
 
                 result.get(maxRow).add(c);
+                assignments[c] = maxRow;
             }
 
             if (ObjectUtils.equals(previousResult, result))
@@ -459,18 +469,19 @@ public class BisectingKMeansClusteringAlgorithm extends ProcessingComponentBase
             }
 
             // Update centroids
-            for (int i = 0; i < result.size(); i++)
+            centroids.assign(0);
+            selected.forEachNonZero(new IntIntDoubleFunction()
             {
-                final IntArrayList cluster = result.get(i);
-                for (int k = 0; k < selected.rows(); k++)
+                public double apply(int row, int column, double value)
                 {
-                    double sum = 0;
-                    for (int j = 0; j < cluster.size(); j++)
-                    {
-                        sum += selected.get(k, cluster.get(j));
-                    }
-                    centroids.setQuick(k, i, sum / cluster.size());
+                    final int i = assignments[column];
+                    centroids.setQuick(row, i, centroids.getQuick(row, i) + value);
+                    return value;
                 }
+            });
+            for (int i = 0; i < result.size(); i++)
+            {
+                centroids.viewColumn(i).assign(Functions.div(result.get(i).size()));
             }
 
             if (it < iterations - 1)
@@ -12,6 +12,7 @@
 
 package org.carrot2.clustering.lingo;
 
+import org.carrot2.matrix.FlatFloatMatrix2D;
 import org.carrot2.text.vsm.TermDocumentMatrixReducer;
 import org.carrot2.text.vsm.TfTermWeighting;
 import org.junit.Before;
@@ -81,6 +82,23 @@ public class ClusterLabelBuilderTest extends LingoProcessingComponentTestBase
         buildModelAndCheck(expectedFeatureIndex);
     }
 
+    @Test
+    public void testSinglePrecision()
+    {
+        createDocuments("aa bb", "aa bb", "cc", "cc", "aa bb", "aa bb . cc");
+        clusterBuilder.phraseLabelBoost = 0.5;
+        reducer.singlePrecision = true;
+
+        final int [] expectedFeatureIndex = new int []
+        {
+            2, 3
+        };
+
+        desiredClusterCountBase  = 15;
+        buildModelAndCheck(expectedFeatureIndex);
+        assertThat(reducedVsmContext.baseMatrix).isInstanceOf(FlatFloatMatrix2D.class);
+    }
+
     @Test
     public void testQueryWordsRemoval()
     {
@@ -0,0 +1,111 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.clustering.lingo;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.carrot2.core.*;
+import org.carrot2.core.attribute.AttributeNames;
+import org.carrot2.core.test.TestMultipageSearchEngine;
+import org.carrot2.text.preprocessing.PageTokenizer;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Runs {@link LingoClusteringAlgorithm} on documents tokenized by a {@link PageTokenizer}
+ * while they were being fetched.
+ */
+public class PipelinedTokenizationTest extends CarrotTestCase
+{
+    @Test
+    public void testSameClustersAsWithoutPipelining() throws Exception
+    {
+        final Controller controller = ControllerFactory.createSimple();
+        try
+        {
+            final ProcessingResult expected = controller.process(attributes(),
+                TestMultipageSearchEngine.class, LingoClusteringAlgorithm.class);
+
+            final Map<String, Object> attributes = attributes();
+            attributes.put("page-listener", PageTokenizer.class);
+            final ProcessingResult actual = controller.process(attributes,
+                TestMultipageSearchEngine.class, LingoClusteringAlgorithm.class);
+
+            assertThat(labels(actual)).isEqualTo(labels(expected));
+            assertThat(actual.getAttributes().containsKey("page-consumer")).isFalse();
+            assertThat(serializeJson(actual)).contains(
+                actual.getClusters().get(0).getLabel());
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testInitTimePageTokenizer() throws Exception
+    {
+        final Map<String, Object> initAttributes = Maps.newHashMap();
+        initAttributes.put("page-listener", new PageTokenizer());
+
+        final Controller controller = ControllerFactory.createCachingPooling(
+            new CacheConfiguration(LingoClusteringAlgorithm.class));
+        try
+        {
+            controller.init(initAttributes);
+            for (int i = 0; i < 2; i++)
+            {
+                final ProcessingResult result = controller.process(attributes(),
+                    TestMultipageSearchEngine.class, LingoClusteringAlgorithm.class);
+                assertThat(result.getClusters()).isNotEmpty();
+                assertThat(result.getAttributes().containsKey("page-consumer")).isFalse();
+                serializeJson(result);
+            }
+            assertThat(controller.getStatistics().cacheHitsTotal).isEqualTo(1L);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    private static Map<String, Object> attributes()
+    {
+        final Map<String, Object> attributes = Maps.newHashMap();
+        attributes.put(AttributeNames.QUERY, "data mining");
+        attributes.put(AttributeNames.RESULTS, 100);
+        return attributes;
+    }
+
+    private static List<String> labels(ProcessingResult result)
+    {
+        final List<String> labels = Lists.newArrayList();
+        for (Cluster cluster : result.getClusters())
+        {
+            labels.add(cluster.getLabel() + " " + cluster.getAllDocuments().size());
+        }
+        return labels;
+    }
+
+    private static String serializeJson(ProcessingResult result) throws Exception
+    {
+        final StringWriter writer = new StringWriter();
+        result.serializeJson(writer);
+        return writer.toString();
+    }
+}
@@ -18,6 +18,7 @@ import java.util.List;
 import org.apache.mahout.math.function.Functions;
 import org.apache.mahout.math.matrix.*;
 import org.carrot2.core.attribute.Processing;
+import org.carrot2.matrix.MatrixKernels;
 import org.carrot2.text.preprocessing.PreprocessingContext;
 import org.carrot2.text.vsm.ITermWeighting;
 import org.carrot2.text.vsm.VectorSpaceModelContext;
@@ -213,7 +214,7 @@ public class ClusterBuilder
         if (phraseMatrix != null)
         {
             // Build raw cosine similarities
-            phraseCos = phraseMatrix.zMult(reducedTdMatrix, null, 1, 0, false, false);
+            phraseCos = MatrixKernels.multiply(phraseMatrix, reducedTdMatrix, null);
 
             // Apply phrase weighting
             if (phraseLengthPenaltyStop < phraseLengthPenaltyStart)
@@ -37,6 +37,7 @@ import org.carrot2.text.vsm.ReducedVectorSpaceModelContext;
 import org.carrot2.text.vsm.TermDocumentMatrixBuilder;
 import org.carrot2.text.vsm.TermDocumentMatrixReducer;
 import org.carrot2.text.vsm.VectorSpaceModelContext;
+import org.carrot2.util.LatencyRecorder;
 import org.carrot2.util.attribute.Attribute;
 import org.carrot2.util.attribute.AttributeLevel;
 import org.carrot2.util.attribute.Bindable;
@@ -65,6 +66,21 @@ import com.google.common.collect.Ordering;
 public class LingoClusteringAlgorithm extends ProcessingComponentBase implements
     IClusteringAlgorithm
 {
+    /** Latency histogram name of term-document and term-phrase matrix building. */
+    public static final String MATRIX_BUILDING_LATENCY = "lingo.matrix-building";
+
+    /** Latency histogram name of term-document matrix reduction (factorization). */
+    public static final String MATRIX_REDUCTION_LATENCY = "lingo.matrix-reduction";
+
+    /** Latency histogram name of cluster label building. */
+    public static final String LABEL_BUILDING_LATENCY = "lingo.label-building";
+
+    /** Latency histogram name of document assignment. */
+    public static final String DOCUMENT_ASSIGNMENT_LATENCY = "lingo.document-assignment";
+
+    /** Latency histogram name of cluster merging. */
+    public static final String CLUSTER_MERGING_LATENCY = "lingo.cluster-merging";
+
     /**
      * Query that produced the documents. The query will help the algorithm to create
      * better clusters. Therefore, providing the query is optional but desirable.
@@ -213,20 +229,30 @@ public class LingoClusteringAlgorithm extends ProcessingComponentBase implements
             LingoProcessingContext lingoContext = new LingoProcessingContext(
                 reducedVsmContext);
 
+            long start = System.nanoTime();
             matrixBuilder.buildTermDocumentMatrix(vsmContext);
             matrixBuilder.buildTermPhraseMatrix(vsmContext);
+            LatencyRecorder.recordCurrent(MATRIX_BUILDING_LATENCY, start);
 
+            start = System.nanoTime();
             matrixReducer.reduce(reducedVsmContext,
                 computeClusterCount(desiredClusterCountBase, documents.size()));
+            LatencyRecorder.recordCurrent(MATRIX_REDUCTION_LATENCY, start);
 
             // Cluster label building
+            start = System.nanoTime();
             clusterBuilder.buildLabels(lingoContext, matrixBuilder.termWeighting);
+            LatencyRecorder.recordCurrent(LABEL_BUILDING_LATENCY, start);
 
             // Document assignment
+            start = System.nanoTime();
             clusterBuilder.assignDocuments(lingoContext);
+            LatencyRecorder.recordCurrent(DOCUMENT_ASSIGNMENT_LATENCY, start);
 
             // Cluster merging
+            start = System.nanoTime();
             clusterBuilder.merge(lingoContext);
+            LatencyRecorder.recordCurrent(CLUSTER_MERGING_LATENCY, start);
 
             // Format final clusters
             final int [] clusterLabelIndex = lingoContext.clusterLabelFeatureIndex;
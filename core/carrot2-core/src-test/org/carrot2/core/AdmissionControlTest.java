@@ -0,0 +1,187 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.carrot2.util.CancellationToken;
+import org.carrot2.util.LatencyHistogram;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link AdmissionControl}.
+ */
+public class AdmissionControlTest extends CarrotTestCase
+{
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    @Test
+    public void testRejectWithoutQueue() throws Exception
+    {
+        final AdmissionControl admission = new AdmissionControl(2, 0);
+        final AdmissionControl.Permit p1 = admission.acquire("a", new CancellationToken(),
+            latencies);
+        admission.acquire("a", new CancellationToken(), latencies);
+
+        try
+        {
+            admission.acquire("a", new CancellationToken(), latencies);
+            fail();
+        }
+        catch (ProcessingRejectedException e)
+        {
+            assertThat(e.retryAfterSeconds).isGreaterThan(0);
+        }
+
+        // Other algorithms are not affected.
+        admission.acquire("b", new CancellationToken(), latencies);
+
+        p1.release();
+        p1.release();
+        admission.acquire("a", new CancellationToken(), latencies);
+
+        assertThat(admission.getRejectionCount()).isEqualTo(1);
+        assertThat(admission.getRejectionCounts().get("a")).isEqualTo(1L);
+        assertThat(admission.getRejectionCounts().get("b")).isEqualTo(0L);
+    }
+
+    @Test
+    public void testAlgorithmLimits() throws Exception
+    {
+        final AdmissionControl admission = new AdmissionControl(1, 0).setLimits("a", 3,
+            0);
+        for (int i = 0; i < 3; i++)
+        {
+            admission.acquire("a", new CancellationToken(), latencies);
+        }
+        admission.acquire("b", new CancellationToken(), latencies);
+        assertThat(admission.getRejectionCount()).isEqualTo(0);
+
+        try
+        {
+            admission.setLimits("a", 1, 1);
+            fail();
+        }
+        catch (IllegalStateException e)
+        {
+            // expected.
+        }
+    }
+
+    @Test
+    public void testQueuedRequestAdmitted() throws Exception
+    {
+        final AdmissionControl admission = new AdmissionControl(1, 1);
+        final AdmissionControl.Permit permit = admission.acquire("a",
+            new CancellationToken(), latencies);
+
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        final Thread waiter = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    result.set(admission.acquire("a", new CancellationToken(), latencies));
+                }
+                catch (Throwable t)
+                {
+                    result.set(t);
+                }
+            }
+        };
+        waiter.start();
+        while (admission.getQueueDepth() == 0)
+        {
+            Thread.sleep(1);
+        }
+        assertThat(admission.getQueueDepths().get("a")).isEqualTo(1);
+
+        // The queue is full now.
+        try
+        {
+            admission.acquire("a", new CancellationToken(), latencies);
+            fail();
+        }
+        catch (ProcessingRejectedException e)
+        {
+            // expected.
+        }
+
+        permit.release();
+        waiter.join();
+        assertThat(result.get()).isInstanceOf(AdmissionControl.Permit.class);
+        assertThat(admission.getQueueDepth()).isEqualTo(0);
+        assertThat(admission.getRejectionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDeadlineAwareRejection() throws Exception
+    {
+        final AdmissionControl admission = new AdmissionControl(1, 10);
+        admission.acquire("a", new CancellationToken(), latencies);
+
+        // The algorithm takes about a second, a request with a shorter deadline cannot
+        // complete in time.
+        latencies.record(TimeUnit.SECONDS.toNanos(1));
+        try
+        {
+            admission.acquire("a", new CancellationToken(500), latencies);
+            fail();
+        }
+        catch (ProcessingRejectedException e)
+        {
+            assertThat(e.retryAfterSeconds).isGreaterThanOrEqualTo(1);
+        }
+
+        // A request with a longer deadline waits, but is rejected when there is no
+        // longer enough time left.
+        final long start = System.nanoTime();
+        try
+        {
+            admission.acquire("a", new CancellationToken(1200), latencies);
+            fail();
+        }
+        catch (ProcessingRejectedException e)
+        {
+            assertThat(System.nanoTime() - start).isLessThan(
+                TimeUnit.MILLISECONDS.toNanos(1200));
+        }
+
+        assertThat(admission.getRejectionCount()).isEqualTo(2);
+        assertThat(admission.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCancelledWhileWaiting() throws Exception
+    {
+        final AdmissionControl admission = new AdmissionControl(1, 1);
+        admission.acquire("a", new CancellationToken(), latencies);
+
+        final CancellationToken token = new CancellationToken();
+        token.cancel();
+        try
+        {
+            admission.acquire("a", token, latencies);
+            fail();
+        }
+        catch (ProcessingCancelledException e)
+        {
+            // expected.
+        }
+        assertThat(admission.getQueueDepth()).isEqualTo(0);
+        assertThat(admission.getRejectionCount()).isEqualTo(0);
+    }
+}
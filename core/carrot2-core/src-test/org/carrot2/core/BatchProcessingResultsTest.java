@@ -0,0 +1,237 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.carrot2.core.ControllerTestsBase.ComponentWithInitParameter;
+import org.carrot2.core.attribute.Processing;
+import org.carrot2.util.attribute.Attribute;
+import org.carrot2.util.attribute.Bindable;
+import org.carrot2.util.attribute.Input;
+import org.carrot2.util.attribute.Output;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+/**
+ * Test cases for {@link Controller#processBatch(List, int, Object...)}.
+ */
+@ThreadLeakLingering(linger = 2000)
+public class BatchProcessingResultsTest extends CarrotTestCase
+{
+    @Bindable
+    public static class EchoComponent extends ProcessingComponentBase
+    {
+        static final AtomicInteger instances = new AtomicInteger();
+
+        @Input
+        @Processing
+        @Attribute(key = "input")
+        private String input = "default";
+
+        @Output
+        @Processing
+        @Attribute(key = "echo")
+        @SuppressWarnings("unused")
+        private String echo;
+
+        public EchoComponent()
+        {
+            instances.incrementAndGet();
+        }
+
+        @Override
+        public void process() throws ProcessingException
+        {
+            if ("fail".equals(input))
+            {
+                throw new ProcessingException("Failed on purpose");
+            }
+            echo = input;
+        }
+    }
+
+    @Before
+    public void resetInstances()
+    {
+        EchoComponent.instances.set(0);
+    }
+
+    @Test
+    public void testResultsInInputOrder() throws Exception
+    {
+        final int threads = randomIntBetween(1, 4);
+        final int count = randomIntBetween(1, 200);
+        final List<Map<String, Object>> requests = Lists.newArrayList();
+        for (int i = 0; i < count; i++)
+        {
+            // Every other request relies on the default value, which must not leak
+            // from the previous request.
+            requests.add(i % 2 == 0 ? ImmutableMap.<String, Object> of("input",
+                Integer.toString(i)) : ImmutableMap.<String, Object> of());
+        }
+
+        final Controller controller = ControllerFactory.createPooling();
+        try
+        {
+            final BatchProcessingResults results = controller.processBatch(requests,
+                threads, EchoComponent.class);
+            for (int i = 0; i < count; i++)
+            {
+                assertTrue(results.hasNext());
+                assertThat(results.next().getAttribute("echo")).isEqualTo(
+                    i % 2 == 0 ? Integer.toString(i) : "default");
+            }
+            assertFalse(results.hasNext());
+
+            assertThat(results.getSucceededCount()).isEqualTo(count);
+            assertThat(results.getFailedCount()).isEqualTo(0);
+            assertThat(results.getThroughput()).isGreaterThan(0);
+
+            // Components are pinned to workers.
+            assertThat(EchoComponent.instances.get()).isLessThanOrEqualTo(threads);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testFailedRequest() throws Exception
+    {
+        final List<Map<String, Object>> requests = Lists.newArrayList();
+        requests.add(ImmutableMap.<String, Object> of("input", "a"));
+        requests.add(ImmutableMap.<String, Object> of("input", "fail"));
+        requests.add(ImmutableMap.<String, Object> of("input", "c"));
+
+        final Controller controller = ControllerFactory.createPooling();
+        try
+        {
+            final BatchProcessingResults results = controller.processBatch(requests, 2,
+                EchoComponent.class);
+            assertThat(results.next().getAttribute("echo")).isEqualTo("a");
+            try
+            {
+                results.next();
+                fail();
+            }
+            catch (ProcessingException e)
+            {
+                // expected.
+            }
+            assertThat(results.next().getAttribute("echo")).isEqualTo("c");
+            assertThat(results.getFailedCount()).isEqualTo(1);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testInitAttributes() throws Exception
+    {
+        final List<Map<String, Object>> requests = Lists.newArrayList();
+        final List<String> expected = Lists.newArrayList();
+        for (int i = 0; i < 20; i++)
+        {
+            final String init = randomFrom(new String []
+            {
+                "a", "b", null
+            });
+            requests.add(init != null ? ImmutableMap.<String, Object> of("init", init)
+                : ImmutableMap.<String, Object> of());
+            expected.add(init != null ? init + init : "defaultdefault");
+        }
+
+        // Request-level @Init attributes are used as in process().
+        final Controller controller = ControllerFactory.createSimple();
+        try
+        {
+            final BatchProcessingResults results = controller.processBatch(requests,
+                randomIntBetween(1, 3), ComponentWithInitParameter.class);
+            for (int i = 0; i < requests.size(); i++)
+            {
+                assertThat(results.next().getAttribute("result")).isEqualTo(
+                    expected.get(i));
+                assertThat(
+                    controller.process(requests.get(i), ComponentWithInitParameter.class)
+                        .getAttribute("result")).isEqualTo(expected.get(i));
+            }
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCachingController() throws Exception
+    {
+        final List<Map<String, Object>> requests = Lists.newArrayList();
+        for (int i = 0; i < 10; i++)
+        {
+            requests.add(ImmutableMap.<String, Object> of("input", "a"));
+        }
+
+        final Controller controller = ControllerFactory
+            .createCachingPooling(IProcessingComponent.class);
+        try
+        {
+            final BatchProcessingResults results = controller.processBatch(requests, 2,
+                EchoComponent.class);
+            while (results.hasNext())
+            {
+                assertThat(results.next().getAttribute("echo")).isEqualTo("a");
+            }
+            assertThat(controller.getStatistics().cacheHitsTotal).isGreaterThan(0);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception
+    {
+        final List<Map<String, Object>> requests = Lists.newArrayList();
+        for (int i = 0; i < 1000; i++)
+        {
+            requests.add(ImmutableMap.<String, Object> of("input", "a"));
+        }
+
+        final Controller controller = ControllerFactory.createPooling();
+        try
+        {
+            final BatchProcessingResults results = controller.processBatch(requests, 2,
+                EchoComponent.class);
+            results.next();
+            results.close();
+            assertFalse(results.hasNext());
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+}
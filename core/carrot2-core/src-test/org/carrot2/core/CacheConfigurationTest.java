@@ -0,0 +1,314 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.carrot2.core.CacheConfiguration.ResultWeigher;
+import org.carrot2.core.attribute.AttributeNames;
+import org.carrot2.core.attribute.Processing;
+import org.carrot2.util.attribute.Attribute;
+import org.carrot2.util.attribute.Bindable;
+import org.carrot2.util.attribute.Input;
+import org.carrot2.util.attribute.Output;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.LifecycleScope;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Test cases for {@link CacheConfiguration} and the caches it configures.
+ */
+public class CacheConfigurationTest extends CarrotTestCase
+{
+    @Bindable
+    public static class CountingSource extends ProcessingComponentBase implements
+        IDocumentSource
+    {
+        static final AtomicInteger invocations = new AtomicInteger();
+
+        @Processing
+        @Input
+        @Attribute(key = AttributeNames.RESULTS)
+        public int results = 2;
+
+        @Processing
+        @Output
+        @Attribute(key = AttributeNames.DOCUMENTS)
+        public List<Document> documents;
+
+        @Override
+        public void process() throws ProcessingException
+        {
+            invocations.incrementAndGet();
+            documents = Lists.newArrayList();
+            for (int i = 0; i < results; i++)
+            {
+                documents.add(new Document("title " + i, "summary " + i));
+            }
+        }
+    }
+
+    @Bindable
+    public static class CountingAlgorithm extends ProcessingComponentBase implements
+        IClusteringAlgorithm
+    {
+        static final AtomicInteger invocations = new AtomicInteger();
+
+        @Processing
+        @Input
+        @Attribute(key = AttributeNames.DOCUMENTS)
+        public List<Document> documents;
+
+        @Processing
+        @Output
+        @Attribute(key = AttributeNames.CLUSTERS)
+        public List<Cluster> clusters;
+
+        @Override
+        public void process() throws ProcessingException
+        {
+            invocations.incrementAndGet();
+            clusters = Lists.newArrayList(new Cluster("all").addDocuments(documents));
+        }
+    }
+
+    @Before
+    public void resetCounters()
+    {
+        CountingSource.invocations.set(0);
+        CountingAlgorithm.invocations.set(0);
+    }
+
+    @Test
+    public void testDocumentCountWeigher()
+    {
+        final List<Document> documents = Lists.newArrayList(new Document("a"),
+            new Document("b"), new Document("c"));
+        final Map<String, Object> result = Maps.newHashMap();
+        result.put(AttributeNames.DOCUMENTS, documents);
+        assertThat(ResultWeigher.DOCUMENT_COUNT.weigh(result)).isEqualTo(3);
+
+        result.put(AttributeNames.CLUSTERS,
+            Lists.newArrayList(new Cluster("c").addDocuments(documents.subList(0, 2))));
+        assertThat(ResultWeigher.DOCUMENT_COUNT.weigh(result)).isEqualTo(5);
+    }
+
+    @Test
+    public void testEstimatedBytesWeigher()
+    {
+        final Map<String, Object> small = ImmutableMap.<String, Object> of(
+            AttributeNames.DOCUMENTS, Lists.newArrayList(new Document("short")));
+        final Map<String, Object> large = ImmutableMap.<String, Object> of(
+            AttributeNames.DOCUMENTS,
+            Lists.newArrayList(new Document("short", "a much longer summary")));
+
+        assertThat(ResultWeigher.ESTIMATED_BYTES.weigh(small)).isGreaterThan(10);
+        assertThat(ResultWeigher.ESTIMATED_BYTES.weigh(large)).isGreaterThan(
+            ResultWeigher.ESTIMATED_BYTES.weigh(small) + 2 * 21);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @SuppressWarnings("unchecked")
+    public void testNoComponentClasses()
+    {
+        new CacheConfiguration();
+    }
+
+    @Test
+    public void testWeightBudget()
+    {
+        final Controller controller = ControllerFactory.createCaching(
+            new CacheConfiguration(IDocumentSource.class).setMaximumWeight(1,
+                ResultWeigher.DOCUMENT_COUNT));
+        try
+        {
+            // Results heavier than the budget are never retained.
+            process(controller, 8, CountingSource.class);
+            process(controller, 8, CountingSource.class);
+            assertThat(CountingSource.invocations.get()).isEqualTo(2);
+            assertThat(controller.getStatistics().cacheEvictions).isGreaterThan(0);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testSeparateBudgets()
+    {
+        final Controller controller = ControllerFactory.createCachingPooling(
+            new CacheConfiguration(IDocumentSource.class).setMaximumWeight(1,
+                ResultWeigher.DOCUMENT_COUNT),
+            new CacheConfiguration(IClusteringAlgorithm.class).setMaximumWeight(
+                1024 * 1024, ResultWeigher.ESTIMATED_BYTES));
+        try
+        {
+            process(controller, 4, CountingSource.class);
+            process(controller, 4, CountingSource.class);
+            assertThat(CountingSource.invocations.get()).isEqualTo(2);
+
+            final Map<String, Object> attributes = ImmutableMap.<String, Object> of(
+                AttributeNames.DOCUMENTS,
+                Lists.newArrayList(new Document("a"), new Document("b")));
+            controller.process(attributes, CountingAlgorithm.class);
+            controller.process(attributes, CountingAlgorithm.class);
+            assertThat(CountingAlgorithm.invocations.get()).isEqualTo(1);
+            assertThat(controller.getStatistics().cacheHitsTotal).isEqualTo(1L);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testEqualDocumentsHitCache()
+    {
+        final Controller controller = ControllerFactory.createCaching(
+            new CacheConfiguration(IClusteringAlgorithm.class));
+        try
+        {
+            // Equal contents in separate document instances, as if posted twice.
+            for (int i = 0; i < 2; i++)
+            {
+                controller.process(ImmutableMap.<String, Object> of(
+                    AttributeNames.DOCUMENTS,
+                    Lists.newArrayList(new Document("a"), new Document("b"))),
+                    CountingAlgorithm.class);
+            }
+            assertThat(CountingAlgorithm.invocations.get()).isEqualTo(1);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testStatisticsAfterDispose()
+    {
+        final Controller controller = ControllerFactory.createCaching(
+            new CacheConfiguration(IDocumentSource.class));
+        for (int i = 0; i < 2; i++)
+        {
+            controller.process(ImmutableMap.<String, Object> of(), CountingSource.class);
+        }
+        controller.dispose();
+
+        final ControllerStatistics statistics = controller.getStatistics();
+        assertThat(statistics.cacheHitsTotal).isEqualTo(1L);
+        assertThat(statistics.cacheMisses).isEqualTo(1L);
+    }
+
+    @Test
+    public void testExpireAfterWrite()
+    {
+        final Controller controller = ControllerFactory.createCaching(
+            new CacheConfiguration(IProcessingComponent.class).setExpireAfterWrite(0,
+                TimeUnit.MILLISECONDS));
+        try
+        {
+            process(controller, 2, CountingSource.class);
+            process(controller, 2, CountingSource.class);
+            assertThat(CountingSource.invocations.get()).isEqualTo(2);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testDefaultSizeBound()
+    {
+        final Controller controller = ControllerFactory.createCaching(
+            new CacheConfiguration(IProcessingComponent.class).setSoftValues(true));
+        try
+        {
+            process(controller, 2, CountingSource.class);
+            process(controller, 2, CountingSource.class);
+            assertThat(CountingSource.invocations.get()).isEqualTo(1);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testPersistentStoreSurvivesRestart()
+    {
+        final File directory = newTempDir(LifecycleScope.TEST);
+
+        Controller controller = ControllerFactory.createCaching(new CacheConfiguration(
+            IDocumentSource.class).setPersistentStore(directory, 1024 * 1024));
+        final List<Document> original;
+        try
+        {
+            original = process(controller, 3, CountingSource.class).getDocuments();
+        }
+        finally
+        {
+            controller.dispose();
+        }
+
+        controller = ControllerFactory.createCaching(new CacheConfiguration(
+            IDocumentSource.class).setPersistentStore(directory, 1024 * 1024));
+        try
+        {
+            final List<Document> restored = process(controller, 3, CountingSource.class)
+                .getDocuments();
+            assertThat(CountingSource.invocations.get()).isEqualTo(1);
+            assertThat(controller.getStatistics().cachePersistentHits).isEqualTo(1L);
+            assertThat(restored).hasSize(original.size());
+            for (int i = 0; i < original.size(); i++)
+            {
+                assertThat(restored.get(i).getTitle()).isEqualTo(
+                    original.get(i).getTitle());
+                assertThat(restored.get(i).getSummary()).isEqualTo(
+                    original.get(i).getSummary());
+            }
+
+            // Promoted to the in-memory cache.
+            process(controller, 3, CountingSource.class);
+            assertThat(controller.getStatistics().cachePersistentHits).isEqualTo(1L);
+            assertThat(controller.getStatistics().cacheHitsTotal).isEqualTo(1L);
+
+            // A different key is not served from the store.
+            process(controller, 4, CountingSource.class);
+            assertThat(CountingSource.invocations.get()).isEqualTo(2);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    private static ProcessingResult process(Controller controller, int results,
+        Class<?>... components)
+    {
+        return controller.process(
+            ImmutableMap.<String, Object> of(AttributeNames.RESULTS, results),
+            (Object []) components);
+    }
+}
@@ -0,0 +1,238 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.util.Map;
+
+import org.carrot2.core.attribute.Processing;
+import org.carrot2.util.attribute.Attribute;
+import org.carrot2.util.attribute.AttributeBinder;
+import org.carrot2.util.attribute.AttributeBindingException;
+import org.carrot2.util.attribute.Bindable;
+import org.carrot2.util.attribute.IObjectFactory;
+import org.carrot2.util.attribute.Input;
+import org.carrot2.util.attribute.Output;
+import org.carrot2.util.attribute.Required;
+import org.carrot2.util.attribute.constraint.ImplementingClasses;
+import org.carrot2.util.attribute.constraint.IntRange;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Test cases for {@link CachedAttributeBinder}, verified against {@link AttributeBinder}.
+ */
+@SuppressWarnings("unchecked")
+public class CachedAttributeBinderTest extends CarrotTestCase
+{
+    @Bindable
+    public static class Nested
+    {
+        @Input
+        @Processing
+        @Attribute(key = "nested.input")
+        public String input = "default";
+
+        @Output
+        @Processing
+        @Attribute(key = "nested.output")
+        public String output;
+    }
+
+    @Bindable
+    public static class OtherNested extends Nested
+    {
+    }
+
+    @Bindable
+    public static class Outer
+    {
+        @Input
+        @Processing
+        @Attribute(key = "outer.int")
+        @IntRange(min = 0, max = 10)
+        public int intValue = 5;
+
+        @Input
+        @Processing
+        @Required
+        @Attribute(key = "outer.required")
+        public String required;
+
+        @Input
+        @Processing
+        @Attribute(key = "outer.nested")
+        @ImplementingClasses(classes =
+        {
+            Nested.class, OtherNested.class
+        })
+        public Nested nestedAttribute = new Nested();
+
+        @Output
+        @Processing
+        @Attribute(key = "outer.output")
+        public String output;
+
+        /** Not an attribute, but bound recursively. */
+        public final Nested nestedField = new OtherNested();
+    }
+
+    @Test
+    public void testSetMatchesReference() throws Exception
+    {
+        final Map<String, Object> values = ImmutableMap.<String, Object> of(
+            "outer.int", "7", "outer.required", "r", "nested.input", "n");
+
+        final Outer cached = new Outer();
+        final Outer reference = new Outer();
+        CachedAttributeBinder.set(cached, values, true, Input.class, Processing.class);
+        AttributeBinder.set(reference, values, true, Input.class, Processing.class);
+
+        assertThat(cached.intValue).isEqualTo(reference.intValue).isEqualTo(7);
+        assertThat(cached.required).isEqualTo(reference.required).isEqualTo("r");
+        assertThat(cached.nestedAttribute.input).isEqualTo(reference.nestedAttribute.input)
+            .isEqualTo("n");
+        assertThat(cached.nestedField.input).isEqualTo(reference.nestedField.input)
+            .isEqualTo("n");
+    }
+
+    @Test
+    public void testSetClassValue() throws Exception
+    {
+        final Outer outer = new Outer();
+        CachedAttributeBinder.set(outer, ImmutableMap.<String, Object> of(
+            "outer.required", "r", "outer.nested", OtherNested.class, "nested.input", "x"),
+            true, Input.class, Processing.class);
+
+        assertThat(outer.nestedAttribute).isInstanceOf(OtherNested.class);
+        assertThat(outer.nestedAttribute.input).isEqualTo("x");
+    }
+
+    @Test
+    public void testGetMatchesReference() throws Exception
+    {
+        final Outer outer = new Outer();
+        outer.output = "o";
+        outer.nestedAttribute.output = "no";
+
+        final Map<String, Object> cached = Maps.newHashMap();
+        final Map<String, Object> reference = Maps.newHashMap();
+        CachedAttributeBinder.get(outer, cached, Output.class, Processing.class);
+        AttributeBinder.get(outer, reference, Output.class, Processing.class);
+
+        assertThat(cached).isEqualTo(reference);
+        assertThat(cached.get("outer.output")).isEqualTo("o");
+
+        cached.clear();
+        reference.clear();
+        CachedAttributeBinder.get(outer, cached, Input.class, Processing.class);
+        AttributeBinder.get(outer, reference, Input.class, Processing.class);
+        assertThat(cached).isEqualTo(reference);
+    }
+
+    @Test
+    public void testMissingRequiredAttribute() throws Exception
+    {
+        try
+        {
+            CachedAttributeBinder.set(new Outer(), ImmutableMap.<String, Object> of(),
+                true, Input.class, Processing.class);
+            fail();
+        }
+        catch (AttributeBindingException e)
+        {
+            assertThat(e.attributeKey).isEqualTo("outer.required");
+        }
+
+        // No exception without checking
+        CachedAttributeBinder.set(new Outer(), ImmutableMap.<String, Object> of(), false,
+            Input.class, Processing.class);
+    }
+
+    @Test
+    public void testConstraintViolationMatchesReference() throws Exception
+    {
+        final Map<String, Object> values = ImmutableMap.<String, Object> of("outer.int",
+            20, "outer.required", "r");
+
+        String referenceMessage = null;
+        try
+        {
+            AttributeBinder.set(new Outer(), values, Input.class, Processing.class);
+            fail();
+        }
+        catch (AttributeBindingException e)
+        {
+            referenceMessage = e.getMessage();
+        }
+
+        try
+        {
+            CachedAttributeBinder.set(new Outer(), values, true, Input.class,
+                Processing.class);
+            fail();
+        }
+        catch (AttributeBindingException e)
+        {
+            assertThat(e.getMessage()).isEqualTo(referenceMessage);
+        }
+    }
+
+    @Test
+    public void testFailedBindingNotRepeated() throws Exception
+    {
+        final CountingFactory factory = new CountingFactory();
+        final Map<String, Object> values = ImmutableMap.<String, Object> of(
+            "outer.required", "r", "outer.nested", factory, "nested.input", 5);
+
+        String referenceMessage = null;
+        try
+        {
+            AttributeBinder.set(new Outer(), values, Input.class, Processing.class);
+            fail();
+        }
+        catch (AttributeBindingException e)
+        {
+            referenceMessage = e.getMessage();
+        }
+
+        factory.created = 0;
+        try
+        {
+            CachedAttributeBinder.set(new Outer(), values, true, Input.class,
+                Processing.class);
+            fail();
+        }
+        catch (AttributeBindingException e)
+        {
+            assertThat(e.getMessage()).isEqualTo(referenceMessage);
+        }
+        assertThat(factory.created).isEqualTo(1);
+    }
+
+    /**
+     * Counts created instances.
+     */
+    private static final class CountingFactory implements IObjectFactory<Nested>
+    {
+        int created;
+
+        public Nested create()
+        {
+            created++;
+            return new Nested();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.util.List;
+import java.util.Map;
+
+import org.carrot2.core.attribute.AttributeNames;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Test cases for {@link ContentFingerprint}.
+ */
+public class ContentFingerprintTest extends CarrotTestCase
+{
+    @Test
+    public void testEqualDocumentContents()
+    {
+        final ContentFingerprint f1 = ContentFingerprint.of(attributes("q",
+            documents("a", "b")));
+        final ContentFingerprint f2 = ContentFingerprint.of(attributes("q",
+            documents("a", "b")));
+
+        assertThat(f1).isEqualTo(f2);
+        assertThat(f1.hashCode()).isEqualTo(f2.hashCode());
+        assertThat(f1.isStable()).isTrue();
+        assertThat(f1.toString()).isEqualTo(f2.toString());
+    }
+
+    @Test
+    public void testDifferentDocumentContents()
+    {
+        final List<Document> documents = documents("a", "b");
+        final ContentFingerprint f1 = ContentFingerprint.of(attributes("q", documents));
+
+        documents.get(1).setField(Document.SUMMARY, "changed");
+        assertThat(ContentFingerprint.of(attributes("q", documents))).isNotEqualTo(f1);
+        assertThat(ContentFingerprint.of(attributes("q", documents("b", "a"))))
+            .isNotEqualTo(f1);
+        assertThat(ContentFingerprint.of(attributes("r", documents("a", "b"))))
+            .isNotEqualTo(f1);
+    }
+
+    @Test
+    public void testAssignedIdentifiersIgnored()
+    {
+        final List<Document> documents = documents("a", "b");
+        final ContentFingerprint f1 = ContentFingerprint.of(attributes("q", documents));
+
+        Document.assignDocumentIds(documents);
+        assertThat(ContentFingerprint.of(attributes("q", documents))).isEqualTo(f1);
+
+        final List<Document> withIds = Lists.newArrayList(
+            new Document("a", "summary of a", null, null, "x"),
+            new Document("b", "summary of b", null, null, "y"));
+        assertThat(ContentFingerprint.of(attributes("q", withIds))).isNotEqualTo(f1);
+    }
+
+    @Test
+    public void testValueTypesDistinguished()
+    {
+        assertThat(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", 1)))
+            .isNotEqualTo(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", 1L)));
+        assertThat(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", "1")))
+            .isNotEqualTo(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", 1)));
+        assertThat(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", "ab", "l", "")))
+            .isNotEqualTo(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", "a", "l", "b")));
+    }
+
+    @Test
+    public void testUnorderedCollections()
+    {
+        final Map<String, Object> m1 = Maps.newLinkedHashMap();
+        m1.put("a", 1);
+        m1.put("b", ImmutableSet.of("x", "y"));
+        final Map<String, Object> m2 = Maps.newLinkedHashMap();
+        m2.put("b", ImmutableSet.of("y", "x"));
+        m2.put("a", 1);
+
+        assertThat(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", m1)))
+            .isEqualTo(ContentFingerprint.of(ImmutableMap.<String, Object> of("k", m2)));
+    }
+
+    @Test
+    public void testOpaqueValues()
+    {
+        final Object opaque1 = new Object();
+        final Object opaque2 = new Object();
+
+        final ContentFingerprint f1 = ContentFingerprint.of(ImmutableMap.<String, Object> of(
+            "k", opaque1));
+        assertThat(f1.isStable()).isFalse();
+        assertThat(f1).isEqualTo(ContentFingerprint.of(ImmutableMap.<String, Object> of(
+            "k", opaque1)));
+        assertThat(f1).isNotEqualTo(ContentFingerprint.of(ImmutableMap.<String, Object> of(
+            "k", opaque2)));
+    }
+
+    private static Map<String, Object> attributes(String query, List<Document> documents)
+    {
+        return ImmutableMap.<String, Object> of(AttributeNames.QUERY, query,
+            AttributeNames.DOCUMENTS, documents);
+    }
+
+    private static List<Document> documents(String... titles)
+    {
+        final List<Document> documents = Lists.newArrayList();
+        for (String title : titles)
+        {
+            documents.add(new Document(title, "summary of " + title));
+        }
+        return documents;
+    }
+}
@@ -12,7 +12,14 @@
 
 package org.carrot2.core;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.carrot2.core.ControllerTestsBase.ComponentWithInitParameter;
+import org.carrot2.core.attribute.AttributeNames;
+import org.carrot2.util.CancellationToken;
 import org.carrot2.util.attribute.Bindable;
 import org.carrot2.util.tests.CarrotTestCase;
 import org.junit.Test;
@@ -32,6 +39,8 @@ import com.google.common.collect.ImmutableMap;
     ControllerTest.SimpleControllerCommonTests.class,
     ControllerTest.PoolingControllerCommonTests.class,
     ControllerTest.PoolingControllerPoolingTests.class,
+    ControllerTest.PoolingControllerWithBoundedPoolCommonTests.class,
+    ControllerTest.PoolingControllerWithBoundedPoolPoolingTests.class,
     ControllerTest.CachingPoolingControllerCachingOffCommonTests.class,
     ControllerTest.CachingPoolingControllerCachingOffPoolingTests.class,
     ControllerTest.CachingPoolingControllerCachingOnCommonTests.class,
@@ -124,6 +133,157 @@ public class ControllerTest
             controller.dispose();
         }
 
+        @Test
+        public void testProcessingDeadline()
+        {
+            final Controller controller = ControllerFactory.createPooling();
+            try
+            {
+                controller.process(
+                    ImmutableMap.<String, Object> of(
+                        AttributeNames.PROCESSING_DEADLINE, 100L),
+                    CancellableComponent.class);
+                fail("Expected a " + ProcessingCancelledException.class.getSimpleName());
+            }
+            catch (ProcessingCancelledException e)
+            {
+                // expected.
+            }
+            finally
+            {
+                controller.dispose();
+            }
+            assertThat(controller.getStatistics().goodQueries).isEqualTo(0);
+        }
+
+        @Test
+        public void testProcessAsync() throws Exception
+        {
+            final Controller controller = ControllerFactory.createPooling();
+            try
+            {
+                final Future<ProcessingResult> future = controller.processAsync(
+                    ImmutableMap.<String, Object> of(), ComponentWithInitParameter.class);
+                assertThat((String) future.get().getAttribute("result")).isEqualTo(
+                    "defaultdefault");
+            }
+            finally
+            {
+                controller.dispose();
+            }
+        }
+
+        @Test
+        public void testProcessAsyncCancellation() throws Exception
+        {
+            final Controller controller = ControllerFactory.createPooling();
+            try
+            {
+                CancellableComponent.reset();
+                final Future<ProcessingResult> future = controller.processAsync(
+                    ImmutableMap.<String, Object> of(), CancellableComponent.class);
+                assertTrue(CancellableComponent.started.await(10, TimeUnit.SECONDS));
+
+                future.cancel(false);
+                assertTrue(CancellableComponent.finished.await(10, TimeUnit.SECONDS));
+                assertTrue(future.isCancelled());
+            }
+            finally
+            {
+                controller.dispose();
+            }
+        }
+
+        @Test
+        public void testBoundedPoolStatistics() throws Exception
+        {
+            final Controller controller = ControllerFactory.createPooling(2, 2, 2);
+            try
+            {
+                controller.init(ImmutableMap.<String, Object> of(),
+                    new ProcessingComponentConfiguration(
+                        ComponentWithInitParameter.class, "component"));
+                assertThat(controller.getStatistics().poolInstantiations).isEqualTo(2);
+
+                controller.process(ImmutableMap.<String, Object> of(), "component");
+                controller.process(ImmutableMap.<String, Object> of(), "component");
+
+                final ControllerStatistics statistics = controller.getStatistics();
+                assertThat(statistics.poolInstantiations).isEqualTo(2);
+                assertThat(statistics.poolBorrowWaits).isEqualTo(0);
+            }
+            finally
+            {
+                controller.dispose();
+            }
+        }
+
+        @Test
+        public void testAdmissionControl() throws Exception
+        {
+            final Controller controller = ControllerFactory.createPooling();
+            try
+            {
+                controller.process(ImmutableMap.<String, Object> of(),
+                    TestAlgorithm.class);
+                assertThat(controller.getStatistics().admissionRejections).isNull();
+
+                controller.setAdmissionControl(new AdmissionControl(1, 0));
+                controller.process(ImmutableMap.<String, Object> of(),
+                    TestAlgorithm.class);
+                controller.process(ImmutableMap.<String, Object> of(),
+                    TestAlgorithm.class);
+
+                // Permits are released after processing.
+                final ControllerStatistics statistics = controller.getStatistics();
+                assertThat(statistics.admissionRejections).isEqualTo(0);
+                assertThat(statistics.admissionQueueDepth).isEqualTo(0);
+                assertThat(statistics.goodQueries).isEqualTo(3);
+            }
+            finally
+            {
+                controller.dispose();
+            }
+        }
+
+        @Test
+        public void testAdmissionControlBeforeDocumentSource() throws Exception
+        {
+            final AdmissionControl admission = new AdmissionControl(1, 0);
+            final Controller controller = ControllerFactory.createPooling()
+                .setAdmissionControl(admission);
+            try
+            {
+                // Another request holds the algorithm's only permit.
+                final AdmissionControl.Permit permit = admission.acquire(
+                    TestAlgorithm.class.getName(), new CancellationToken(), 0);
+                CountingDocumentSource.processed.set(0);
+                try
+                {
+                    controller.process(ImmutableMap.<String, Object> of(),
+                        CountingDocumentSource.class, TestAlgorithm.class);
+                    fail();
+                }
+                catch (ProcessingRejectedException e)
+                {
+                    // expected.
+                }
+                finally
+                {
+                    permit.release();
+                }
+                assertThat(CountingDocumentSource.processed.get()).isEqualTo(0);
+
+                controller.process(ImmutableMap.<String, Object> of(),
+                    CountingDocumentSource.class, TestAlgorithm.class);
+                assertThat(CountingDocumentSource.processed.get()).isEqualTo(1);
+            }
+            finally
+            {
+                controller.dispose();
+            }
+        }
+
         private void checkManagerWithMultipleControllers(
             final IProcessingComponentManager manager)
         {
@@ -186,6 +346,56 @@ public class ControllerTest
         }
     }
 
+    @Bindable
+    public static class CountingDocumentSource extends ProcessingComponentBase implements
+        IDocumentSource
+    {
+        static final AtomicInteger processed = new AtomicInteger();
+
+        @Override
+        public void process() throws ProcessingException
+        {
+            processed.incrementAndGet();
+        }
+    }
+
+    @Bindable
+    public static class CancellableComponent extends ProcessingComponentBase
+    {
+        static CountDownLatch started;
+        static CountDownLatch finished;
+
+        static void reset()
+        {
+            started = new CountDownLatch(1);
+            finished = new CountDownLatch(1);
+        }
+
+        @Override
+        public void process() throws ProcessingException
+        {
+            if (started != null)
+            {
+                started.countDown();
+            }
+
+            while (true)
+            {
+                CancellationToken.checkCurrent();
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void afterProcessing()
+        {
+            if (finished != null)
+            {
+                finished.countDown();
+            }
+        }
+    }
+
     public static class PoolingControllerWithFixedPoolCommonTests extends ControllerTestsCommon
     {
         private static final int EAGERLY_INITIALIZED_INSTANCES = 6;
@@ -238,6 +448,40 @@ public class ControllerTest
         }
     }
 
+    public static class PoolingControllerWithBoundedPoolCommonTests extends ControllerTestsCommon
+    {
+        private static final int EAGERLY_INITIALIZED_INSTANCES = 2;
+
+        @Override
+        public Controller getSimpleController()
+        {
+            return ControllerFactory.createPooling(4, 4, EAGERLY_INITIALIZED_INSTANCES);
+        }
+
+        @Override
+        public int eagerlyInitializedInstances()
+        {
+            return EAGERLY_INITIALIZED_INSTANCES;
+        }
+    }
+
+    public static class PoolingControllerWithBoundedPoolPoolingTests extends ControllerTestsPooling
+    {
+        private static final int EAGERLY_INITIALIZED_INSTANCES = 2;
+
+        @Override
+        public Controller getPoolingController()
+        {
+            return ControllerFactory.createPooling(4, 4, EAGERLY_INITIALIZED_INSTANCES);
+        }
+
+        @Override
+        public int eagerlyInitializedInstances()
+        {
+            return EAGERLY_INITIALIZED_INSTANCES;
+        }
+    }
+
     public static class CachingPoolingControllerCachingOffCommonTests extends
         ControllerTestsCommon
     {
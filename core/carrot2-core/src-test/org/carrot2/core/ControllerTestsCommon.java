@@ -16,6 +16,7 @@ import static org.easymock.EasyMock.expectLastCall;
 import static org.easymock.EasyMock.isA;
 import static org.fest.assertions.MapAssert.entry;
 
+import java.lang.management.ManagementFactory;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +28,9 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.carrot2.util.attribute.Output;
 import org.junit.Assert;
 import org.junit.Before;
@@ -561,6 +565,7 @@ public abstract class ControllerTestsCommon extends ControllerTestsBase
             assertThat((Object) statistics.cacheMisses).isNull();
             assertThat((Object) statistics.cacheHitsTotal).isNull();
         }
+        assertThat(statistics.latencies).isEmpty();
         
         controller.dispose();
     }
@@ -600,8 +605,60 @@ public abstract class ControllerTestsCommon extends ControllerTestsBase
             assertThat(statistics.cacheHitsTotal).isEqualTo(0);
         }
 
+        final Map<String, LatencyPercentiles> latencies = Maps.newHashMap();
+        for (LatencyPercentiles latency : statistics.latencies)
+        {
+            latencies.put(latency.name, latency);
+        }
+        final LatencyPercentiles requestLatency = latencies.get("request");
+        assertThat(requestLatency).isNotNull();
+        assertThat(requestLatency.count).isEqualTo(1);
+        assertThat(requestLatency.max).isGreaterThanOrEqualTo(2 * halfDelay);
+        assertThat(requestLatency.p50).isLessThanOrEqualTo(requestLatency.max);
+        final LatencyPercentiles component1Latency = latencies.get("component."
+            + Component1.class.getName());
+        assertThat(component1Latency).isNotNull();
+        assertThat(component1Latency.count).isEqualTo(1);
+        assertThat(component1Latency.max).isGreaterThanOrEqualTo(halfDelay);
+        assertThat(latencies.get("component." + Component2.class.getName())).isNotNull();
+
+        controller.dispose();
+        controller = null;
+    }
+
+    @Test
+    public void testStatisticsMBean() throws Exception
+    {
+        processingAttributes.put("data", "d");
+        performProcessing(Component1.class);
+
+        final ObjectName name = new ObjectName("org.carrot2.core:type=Controller,name="
+            + getClass().getSimpleName() + randomIntBetween(0, Integer.MAX_VALUE));
+        controller.registerStatisticsMBean(name);
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        assertThat(server.isRegistered(name)).isTrue();
+        assertThat(server.getAttribute(name, "TotalQueries")).isEqualTo(1L);
+        assertThat(
+            (Double) server.invoke(name, "getLatencyPercentile", new Object []
+            {
+                "request", 50.0
+            }, new String []
+            {
+                String.class.getName(), double.class.getName()
+            })).isGreaterThanOrEqualTo(0);
+        assertThat(
+            (Double) server.invoke(name, "getLatencyPercentile", new Object []
+            {
+                "nonexistent", 50.0
+            }, new String []
+            {
+                String.class.getName(), double.class.getName()
+            })).isEqualTo(-1);
+
         controller.dispose();
         controller = null;
+        assertThat(server.isRegistered(name)).isFalse();
     }
 
     @Test
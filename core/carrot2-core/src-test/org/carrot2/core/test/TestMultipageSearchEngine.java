@@ -0,0 +1,78 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core.test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.ProcessingException;
+import org.carrot2.source.MultipageSearchEngine;
+import org.carrot2.source.MultipageSearchEngineMetadata;
+import org.carrot2.source.SearchEngineResponse;
+import org.carrot2.util.attribute.Bindable;
+
+/**
+ * A {@link MultipageSearchEngine} that returns pages of copies of
+ * {@link SampleDocumentData#DOCUMENTS_DATA_MINING}, regardless of the query. Every
+ * {@link #DUPLICATE_URL_INTERVAL}-th document has the same URL as the previous one.
+ */
+@Bindable
+public class TestMultipageSearchEngine extends MultipageSearchEngine
+{
+    /** Documents with indices divisible by this value duplicate the previous URL */
+    public static final int DUPLICATE_URL_INTERVAL = 10;
+
+    private static final List<Document> DOCUMENTS =
+        SampleDocumentData.DOCUMENTS_DATA_MINING;
+
+    private static final MultipageSearchEngineMetadata METADATA =
+        new MultipageSearchEngineMetadata(20, DOCUMENTS.size());
+
+    @Override
+    public void process() throws ProcessingException
+    {
+        super.process(METADATA, getSharedExecutor(4, getClass()));
+    }
+
+    @Override
+    protected Callable<SearchEngineResponse> createFetcher(final SearchRange bucket)
+    {
+        return new SearchEngineResponseCallable()
+        {
+            public SearchEngineResponse search() throws Exception
+            {
+                final SearchEngineResponse response = new SearchEngineResponse();
+                final int end = Math.min(DOCUMENTS.size(), bucket.start + bucket.results);
+                for (int i = bucket.start; i < end; i++)
+                {
+                    final Document document = DOCUMENTS.get(i);
+                    final int urlIndex = i > 0 && i % DUPLICATE_URL_INTERVAL == 0
+                        ? i - 1 : i;
+
+                    // Copies, as fetched documents would be.
+                    response.results.add(new Document(copy(document.getTitle()),
+                        copy(document.getSummary()), "http://test/" + urlIndex));
+                }
+                response.metadata.put(SearchEngineResponse.RESULTS_TOTAL_KEY,
+                    (long) DOCUMENTS.size());
+                return response;
+            }
+        };
+    }
+
+    private static String copy(String value)
+    {
+        return value != null ? new String(value) : null;
+    }
+}
@@ -0,0 +1,202 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.source;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.carrot2.core.*;
+import org.carrot2.core.attribute.AttributeNames;
+import org.carrot2.core.attribute.Processing;
+import org.carrot2.core.test.TestMultipageSearchEngine;
+import org.carrot2.util.annotations.ThreadSafe;
+import org.carrot2.util.attribute.Attribute;
+import org.carrot2.util.attribute.Bindable;
+import org.carrot2.util.attribute.Input;
+import org.carrot2.util.attribute.Output;
+import org.carrot2.util.attribute.constraint.ImplementingClasses;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Test cases for the page listener of {@link MultipageSearchEngine}.
+ */
+public class MultipageSearchEngineTest extends CarrotTestCase
+{
+    /**
+     * Records the pages each request's consumer receives.
+     */
+    @ThreadSafe
+    static class RecordingPageListener implements IPageListener
+    {
+        final List<RecordingPageConsumer> consumers = Collections
+            .synchronizedList(Lists.<RecordingPageConsumer> newArrayList());
+
+        public IPageConsumer requestStarted()
+        {
+            final RecordingPageConsumer consumer = new RecordingPageConsumer();
+            consumers.add(consumer);
+            return consumer;
+        }
+    }
+
+    static class RecordingPageConsumer implements IPageConsumer
+    {
+        final List<Document> fetched = Collections.synchronizedList(Lists
+            .<Document> newArrayList());
+        List<Document> retained;
+
+        public void pageFetched(List<Document> documents)
+        {
+            fetched.addAll(documents);
+        }
+
+        public void retainDocuments(Collection<Document> documents)
+        {
+            retained = Lists.newArrayList(documents);
+        }
+    }
+
+    @Bindable
+    public static class ConsumingAlgorithm extends ProcessingComponentBase implements
+        IClusteringAlgorithm
+    {
+        static final List<IPageConsumer> received = Collections
+            .synchronizedList(Lists.<IPageConsumer> newArrayList());
+
+        @Processing
+        @Input
+        @Attribute(key = "page-consumer")
+        @ImplementingClasses(classes = {}, strict = false)
+        public IPageConsumer pageConsumer;
+
+        @Processing
+        @Output
+        @Attribute(key = AttributeNames.CLUSTERS)
+        public List<Cluster> clusters;
+
+        @Override
+        public void process() throws ProcessingException
+        {
+            received.add(pageConsumer);
+            clusters = Lists.newArrayList();
+        }
+    }
+
+    @Before
+    public void clearReceived()
+    {
+        ConsumingAlgorithm.received.clear();
+    }
+
+    @Test
+    public void testConsumerPerRequest()
+    {
+        final RecordingPageListener listener = new RecordingPageListener();
+        final Map<String, Object> initAttributes = Maps.newHashMap();
+        initAttributes.put("page-listener", listener);
+
+        final Controller controller = ControllerFactory.createPooling();
+        try
+        {
+            controller.init(initAttributes);
+            for (int i = 0; i < 2; i++)
+            {
+                final ProcessingResult result = controller.process(attributes(),
+                    TestMultipageSearchEngine.class);
+                assertThat(result.getAttributes().containsKey("page-consumer")).isFalse();
+
+                // Each request's consumer receives only the pages of that request and
+                // keeps only the documents left after removing duplicated URLs.
+                final RecordingPageConsumer consumer = listener.consumers.get(i);
+                assertThat(consumer.fetched).hasSize(100);
+                assertThat(consumer.retained).isEqualTo(result.getDocuments());
+                assertThat(consumer.retained).hasSize(
+                    100 - 100 / TestMultipageSearchEngine.DUPLICATE_URL_INTERVAL + 1);
+            }
+            assertThat(listener.consumers).hasSize(2);
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testConsumerPassedToFollowingComponents()
+    {
+        final RecordingPageListener listener = new RecordingPageListener();
+        final Controller controller = ControllerFactory.createSimple();
+        try
+        {
+            final Map<String, Object> attributes = attributes(listener);
+            final ProcessingResult result = controller.process(attributes,
+                TestMultipageSearchEngine.class, ConsumingAlgorithm.class);
+
+            assertThat(ConsumingAlgorithm.received).isEqualTo(listener.consumers);
+            assertThat(result.getAttributes().containsKey("page-consumer")).isFalse();
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    @Test
+    public void testConsumerNotCached()
+    {
+        final RecordingPageListener listener = new RecordingPageListener();
+        final Controller controller = ControllerFactory.createCachingPooling(
+            new CacheConfiguration(ConsumingAlgorithm.class));
+        try
+        {
+            for (int i = 0; i < 2; i++)
+            {
+                final ProcessingResult result = controller.process(attributes(listener),
+                    TestMultipageSearchEngine.class, ConsumingAlgorithm.class);
+                assertThat(result.getAttributes().containsKey("page-consumer")).isFalse();
+            }
+
+            // A new consumer in each request does not change the cache key and the
+            // cached algorithm does not get the consumer.
+            assertThat(listener.consumers).hasSize(2);
+            assertThat(ConsumingAlgorithm.received).hasSize(1);
+            assertThat(ConsumingAlgorithm.received.get(0)).isNull();
+        }
+        finally
+        {
+            controller.dispose();
+        }
+    }
+
+    private static Map<String, Object> attributes()
+    {
+        final Map<String, Object> attributes = Maps.newHashMap();
+        attributes.put(AttributeNames.QUERY, "data mining");
+        attributes.put(AttributeNames.RESULTS, 100);
+        return attributes;
+    }
+
+    private static Map<String, Object> attributes(IPageListener listener)
+    {
+        final Map<String, Object> attributes = attributes();
+        attributes.put("page-listener", listener);
+        return attributes;
+    }
+}
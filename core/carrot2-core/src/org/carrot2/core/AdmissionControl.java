@@ -0,0 +1,340 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.carrot2.core.attribute.AttributeNames;
+import org.carrot2.util.CancellationToken;
+import org.carrot2.util.LatencyHistogram;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Limits the number of concurrent executions of clustering algorithms in a
+ * {@link Controller}, see {@link Controller#setAdmissionControl(AdmissionControl)}.
+ * <p>
+ * Each clustering algorithm (identified by its component id or, if the algorithm was
+ * requested by class, by its class name) can run in at most the configured number of
+ * requests at the same time. Further requests wait in a bounded, first-come first-served
+ * queue. A request is rejected with a {@link ProcessingRejectedException} if:
+ * </p>
+ * <ul>
+ * <li>the wait queue of the algorithm is full,</li>
+ * <li>the request has a {@link AttributeNames#PROCESSING_DEADLINE} and would not
+ * complete before the deadline, given the time it would need to wait and the median
+ * processing times of the algorithm and the components preceding it, observed so
+ * far.</li>
+ * </ul>
+ * <p>
+ * Permits are acquired before the first component of a request runs, so rejection is
+ * immediate and no documents are fetched for rejected requests. Overloaded clients can
+ * back off instead of piling up requests that would time out anyway.
+ * </p>
+ */
+public final class AdmissionControl
+{
+    /**
+     * How often waiting requests check if they have been cancelled, in nanoseconds.
+     */
+    private static final long CANCELLATION_CHECK_NANOS = TimeUnit.MILLISECONDS
+        .toNanos(100);
+
+    /** Default maximum number of concurrent executions of each algorithm. */
+    private final int maxConcurrent;
+
+    /** Default maximum number of requests waiting for each algorithm. */
+    private final int maxQueued;
+
+    /** Limits configured for specific algorithms. */
+    private final ConcurrentMap<String, int []> limits = new ConcurrentHashMap<String, int []>();
+
+    /** Admission state of algorithms, created on first use. */
+    private final ConcurrentMap<String, Gate> gates = new ConcurrentHashMap<String, Gate>();
+
+    /**
+     * Creates admission control with the same limits for all clustering algorithms.
+     *
+     * @param maxConcurrent maximum number of concurrent executions of each algorithm,
+     *            must be greater than zero. A sensible value for computationally
+     *            intensive algorithms is the number of available processors.
+     * @param maxQueued maximum number of requests waiting for each algorithm. If zero,
+     *            requests exceeding the concurrency limit are rejected immediately.
+     */
+    public AdmissionControl(int maxConcurrent, int maxQueued)
+    {
+        checkLimits(maxConcurrent, maxQueued);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Sets limits for the clustering algorithm with the provided id (or class name),
+     * overriding the defaults. Limits must be set before the algorithm is first used.
+     *
+     * @return this admission control for convenience
+     * @see #AdmissionControl(int, int)
+     */
+    public AdmissionControl setLimits(String algorithmId, int maxConcurrent, int maxQueued)
+    {
+        checkLimits(maxConcurrent, maxQueued);
+        if (gates.containsKey(algorithmId))
+        {
+            throw new IllegalStateException("Algorithm already in use: " + algorithmId);
+        }
+        limits.put(algorithmId, new int []
+        {
+            maxConcurrent, maxQueued
+        });
+        return this;
+    }
+
+    /**
+     * Returns the total number of requests currently waiting for admission.
+     */
+    public int getQueueDepth()
+    {
+        int depth = 0;
+        for (Gate gate : gates.values())
+        {
+            depth += gate.waiting.get();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the total number of rejected requests.
+     */
+    public long getRejectionCount()
+    {
+        long rejections = 0;
+        for (Gate gate : gates.values())
+        {
+            rejections += gate.rejections.get();
+        }
+        return rejections;
+    }
+
+    /**
+     * Returns the number of requests currently waiting for admission, per algorithm.
+     */
+    public SortedMap<String, Integer> getQueueDepths()
+    {
+        final SortedMap<String, Integer> depths = Maps.newTreeMap();
+        for (Map.Entry<String, Gate> entry : gates.entrySet())
+        {
+            depths.put(entry.getKey(), entry.getValue().waiting.get());
+        }
+        return Collections.unmodifiableSortedMap(depths);
+    }
+
+    /**
+     * Returns the number of rejected requests, per algorithm.
+     */
+    public SortedMap<String, Long> getRejectionCounts()
+    {
+        final SortedMap<String, Long> rejections = Maps.newTreeMap();
+        for (Map.Entry<String, Gate> entry : gates.entrySet())
+        {
+            rejections.put(entry.getKey(), entry.getValue().rejections.get());
+        }
+        return Collections.unmodifiableSortedMap(rejections);
+    }
+
+    /**
+     * Waits until the algorithm can be executed.
+     *
+     * @param algorithmId id or class name of the algorithm
+     * @param cancellationToken cancellation token of the request
+     * @param latencies processing times of the algorithm, used to estimate if the
+     *            request can complete before its deadline
+     * @return the permit to release after the algorithm completes
+     * @throws ProcessingRejectedException if the request is rejected
+     * @throws ProcessingCancelledException if the request was cancelled or interrupted
+     *             while waiting
+     */
+    Permit acquire(String algorithmId, CancellationToken cancellationToken,
+        LatencyHistogram latencies) throws ProcessingException
+    {
+        return acquire(algorithmId, cancellationToken, medianNanos(latencies));
+    }
+
+    /**
+     * Waits until the algorithm can be executed.
+     *
+     * @param algorithmId id or class name of the algorithm
+     * @param cancellationToken cancellation token of the request
+     * @param expectedNanos expected time from now until the algorithm completes, used to
+     *            estimate if the request can complete before its deadline
+     * @return the permit to release after the algorithm completes
+     * @throws ProcessingRejectedException if the request is rejected
+     * @throws ProcessingCancelledException if the request was cancelled or interrupted
+     *             while waiting
+     */
+    Permit acquire(String algorithmId, CancellationToken cancellationToken,
+        long expectedNanos) throws ProcessingException
+    {
+        final Gate gate = getGate(algorithmId);
+
+        try
+        {
+            // Fair semaphores do not let untimed tryAcquire() honor the queue.
+            if (gate.permits.tryAcquire(0, TimeUnit.NANOSECONDS))
+            {
+                return new Permit(gate);
+            }
+
+            if (cancellationToken.remainingNanos() < expectedNanos)
+            {
+                throw reject(gate, algorithmId, expectedNanos,
+                    "the request would not complete before its deadline");
+            }
+
+            if (gate.waiting.incrementAndGet() > gate.maxQueued)
+            {
+                gate.waiting.decrementAndGet();
+                throw reject(gate, algorithmId, expectedNanos, "the wait queue is full");
+            }
+
+            try
+            {
+                while (true)
+                {
+                    final long waitNanos = cancellationToken.remainingNanos()
+                        - expectedNanos;
+                    if (waitNanos <= 0)
+                    {
+                        throw reject(gate, algorithmId, expectedNanos,
+                            "the request would not complete before its deadline");
+                    }
+
+                    if (gate.permits.tryAcquire(
+                        Math.min(waitNanos, CANCELLATION_CHECK_NANOS),
+                        TimeUnit.NANOSECONDS))
+                    {
+                        return new Permit(gate);
+                    }
+                    ControllerUtils.checkCancelled(cancellationToken);
+                }
+            }
+            finally
+            {
+                gate.waiting.decrementAndGet();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ProcessingCancelledException(
+                "Interrupted while waiting for admission of: " + algorithmId, e);
+        }
+    }
+
+    /**
+     * Returns the median of the recorded processing times, 0 if none were recorded.
+     */
+    static long medianNanos(LatencyHistogram latencies)
+    {
+        return latencies.getCount() > 0 ? latencies.getValueAtPercentile(50) : 0;
+    }
+
+    private ProcessingRejectedException reject(Gate gate, String algorithmId,
+        long expectedNanos, String reason)
+    {
+        gate.rejections.incrementAndGet();
+
+        // Roughly the time needed to process the requests already in the queue.
+        final double retryAfterNanos = (double) expectedNanos
+            * (gate.waiting.get() + gate.maxConcurrent) / gate.maxConcurrent;
+        return new ProcessingRejectedException("Request for " + algorithmId
+            + " rejected: " + reason + ".", (int) Math.ceil(retryAfterNanos / 1e9));
+    }
+
+    private Gate getGate(String algorithmId)
+    {
+        Gate gate = gates.get(algorithmId);
+        if (gate == null)
+        {
+            final int [] algorithmLimits = limits.get(algorithmId);
+            final Gate newGate = algorithmLimits != null ? new Gate(algorithmLimits[0],
+                algorithmLimits[1]) : new Gate(maxConcurrent, maxQueued);
+            gate = gates.putIfAbsent(algorithmId, newGate);
+            if (gate == null)
+            {
+                gate = newGate;
+            }
+        }
+        return gate;
+    }
+
+    private static void checkLimits(int maxConcurrent, int maxQueued)
+    {
+        if (maxConcurrent <= 0)
+            throw new IllegalArgumentException(
+                "Maximum number of concurrent executions must be greater than zero: "
+                    + maxConcurrent);
+        if (maxQueued < 0)
+            throw new IllegalArgumentException(
+                "Maximum number of waiting requests must not be negative: " + maxQueued);
+    }
+
+    /**
+     * Admission state of one algorithm.
+     */
+    private static final class Gate
+    {
+        final int maxConcurrent;
+        final int maxQueued;
+        final Semaphore permits;
+        final AtomicInteger waiting = new AtomicInteger();
+        final AtomicLong rejections = new AtomicLong();
+
+        Gate(int maxConcurrent, int maxQueued)
+        {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            this.permits = new Semaphore(maxConcurrent, true);
+        }
+    }
+
+    /**
+     * Permission to execute an algorithm, released exactly once.
+     */
+    static final class Permit
+    {
+        private final Gate gate;
+        private boolean released;
+
+        private Permit(Gate gate)
+        {
+            this.gate = gate;
+        }
+
+        void release()
+        {
+            if (!released)
+            {
+                released = true;
+                gate.permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.carrot2.core.Controller.ComponentProvider;
+
+/**
+ * Results of processing a batch of requests, see
+ * {@link Controller#processBatch(List, int, Object...)}. Results are returned in the
+ * order of the requests, {@link #next()} blocks until the next result is available. If
+ * processing of a request failed, {@link #next()} throws the exception that caused the
+ * failure; iteration can continue with the following requests.
+ * <p>
+ * The workers process at most a few requests per worker ahead of the consumer of the
+ * results. If the results are not consumed completely, this object must be closed to
+ * stop the workers.
+ * </p>
+ * <p>
+ * Notice that each worker keeps its processing components for the whole batch. If the
+ * controller's component pool limits the number of instances in use (see
+ * {@link ControllerFactory#createPooling(int, int, int)}), the number of workers must
+ * not exceed that limit.
+ * </p>
+ */
+public final class BatchProcessingResults implements Iterator<ProcessingResult>,
+    Closeable
+{
+    /**
+     * The maximum number of requests each worker may process ahead of the consumer of
+     * the results.
+     */
+    final static int REQUESTS_AHEAD_PER_WORKER = 16;
+
+    private final Controller controller;
+    private final List<Map<String, Object>> requests;
+    private final Object [] processingComponentClassesOrIds;
+    private final int workers;
+
+    /**
+     * {@link ProcessingResult}s or exceptions of the processed requests, not yet
+     * consumed. Guarded by <code>this</code>.
+     */
+    private final Object [] outcomes;
+
+    /** Index of the next result to return. Guarded by <code>this</code>. */
+    private int nextOutcome;
+
+    /** Index of the next request to process. */
+    private final AtomicInteger nextRequest = new AtomicInteger();
+
+    /** Limits the number of requests processed ahead of the consumer. */
+    private final Semaphore requestsAhead;
+
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicInteger runningWorkers;
+    private final long startNanos = System.nanoTime();
+    private volatile long stopNanos;
+    private volatile boolean closed;
+
+    BatchProcessingResults(Controller controller, List<Map<String, Object>> requests,
+        int workers, Object [] processingComponentClassesOrIds)
+    {
+        this.controller = controller;
+        this.requests = requests;
+        this.processingComponentClassesOrIds = processingComponentClassesOrIds;
+        this.workers = workers;
+        this.outcomes = new Object [requests.size()];
+        this.requestsAhead = new Semaphore(workers * REQUESTS_AHEAD_PER_WORKER);
+        this.runningWorkers = new AtomicInteger(workers);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(workers,
+            new ThreadFactory()
+            {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                public Thread newThread(Runnable r)
+                {
+                    final Thread t = new Thread(r, "BatchProcessing-"
+                        + counter.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        for (int i = 0; i < workers; i++)
+        {
+            executor.execute(new Worker());
+        }
+
+        // Already submitted workers will complete, the threads exit after that.
+        executor.shutdown();
+    }
+
+    public synchronized boolean hasNext()
+    {
+        return !closed && nextOutcome < outcomes.length;
+    }
+
+    /**
+     * Returns the result of the next request, waiting for it to be processed if needed.
+     *
+     * @throws ProcessingException or another exception thrown while processing the
+     *             request
+     * @throws ProcessingCancelledException if the current thread was interrupted while
+     *             waiting
+     */
+    public ProcessingResult next()
+    {
+        final Object outcome;
+        synchronized (this)
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            try
+            {
+                while (outcomes[nextOutcome] == null)
+                {
+                    wait();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new ProcessingCancelledException(
+                    "Interrupted while waiting for batch results", e);
+            }
+
+            outcome = outcomes[nextOutcome];
+            outcomes[nextOutcome++] = null;
+        }
+        requestsAhead.release();
+
+        if (outcome instanceof ProcessingResult)
+        {
+            return (ProcessingResult) outcome;
+        }
+        else if (outcome instanceof RuntimeException)
+        {
+            throw (RuntimeException) outcome;
+        }
+        else
+        {
+            throw (Error) outcome;
+        }
+    }
+
+    /**
+     * Not supported.
+     */
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops processing of the remaining requests. Requests being processed are
+     * completed, but their results are discarded.
+     */
+    public void close()
+    {
+        closed = true;
+
+        // Release the workers waiting for the consumer.
+        requestsAhead.release(outcomes.length + workers);
+    }
+
+    /**
+     * Returns the number of requests processed successfully so far.
+     */
+    public long getSucceededCount()
+    {
+        return succeeded.get();
+    }
+
+    /**
+     * Returns the number of requests whose processing failed so far.
+     */
+    public long getFailedCount()
+    {
+        return failed.get();
+    }
+
+    /**
+     * Returns the time elapsed since the batch was started until all workers completed
+     * or until now, if some are still running.
+     */
+    public long getElapsedMillis()
+    {
+        final long stop = stopNanos;
+        return ((stop != 0 ? stop : System.nanoTime()) - startNanos) / 1000000;
+    }
+
+    /**
+     * Returns the number of requests processed per second, including failed requests.
+     */
+    public double getThroughput()
+    {
+        final long elapsedMillis = Math.max(1, getElapsedMillis());
+        return (succeeded.get() + failed.get()) * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Processes requests in the order of their indices, with the same set of components.
+     */
+    private final class Worker implements Runnable
+    {
+        public void run()
+        {
+            final ComponentProvider componentProvider = controller
+                .createBatchComponentProvider();
+            try
+            {
+                while (true)
+                {
+                    requestsAhead.acquireUninterruptibly();
+                    final int index = nextRequest.getAndIncrement();
+                    if (closed || index >= outcomes.length)
+                    {
+                        break;
+                    }
+
+                    Object outcome;
+                    try
+                    {
+                        outcome = controller.processBatchRequest(requests.get(index),
+                            componentProvider, processingComponentClassesOrIds);
+                        succeeded.incrementAndGet();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        outcome = e;
+                        failed.incrementAndGet();
+                    }
+                    catch (Error e)
+                    {
+                        outcome = e;
+                        failed.incrementAndGet();
+                    }
+
+                    synchronized (BatchProcessingResults.this)
+                    {
+                        outcomes[index] = outcome;
+                        BatchProcessingResults.this.notifyAll();
+                    }
+                }
+            }
+            finally
+            {
+                componentProvider.dispose();
+                if (runningWorkers.decrementAndGet() == 0)
+                {
+                    stopNanos = System.nanoTime();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Configuration of a single processing results cache maintained by
+ * {@link CachingProcessingComponentManager}. Each configuration defines a separate cache
+ * (with its own capacity budget and expiration policy) for the output of components of
+ * the provided classes. This way, for instance, document sources and clustering
+ * algorithms can be given separate memory budgets.
+ * <p>
+ * The capacity of the cache can be bounded either by the number of entries (see
+ * {@link #setMaximumSize(long)}, the default is 100 entries) or by the total weight of
+ * entries (see {@link #setMaximumWeight(long, ResultWeigher)}), in which case each
+ * cached result is weighed with the provided {@link ResultWeigher}.
+ * </p>
+ * <p>
+ * Optionally, a persistent second-level cache can be configured with
+ * {@link #setPersistentStore(File, long)}. Results evicted from the in-memory cache (or
+ * cached before the JVM was restarted) are then looked up on disk before the component
+ * is asked to perform processing.
+ * </p>
+ */
+public final class CacheConfiguration
+{
+    /** The default maximum number of entries in a cache. */
+    public static final long DEFAULT_MAXIMUM_SIZE = 100;
+
+    /**
+     * Measures the weight of cached processing results, see
+     * {@link CacheConfiguration#setMaximumWeight(long, ResultWeigher)}.
+     */
+    public static enum ResultWeigher
+    {
+        /**
+         * The weight of a result is the number of {@link Document}s it holds, including
+         * documents referenced by top-level {@link Cluster}s.
+         */
+        DOCUMENT_COUNT
+        {
+            @Override
+            long weigh(Map<String, Object> result)
+            {
+                long weight = 0;
+                for (Object value : result.values())
+                {
+                    if (value instanceof Collection<?>)
+                    {
+                        for (Object element : (Collection<?>) value)
+                        {
+                            if (element instanceof Document)
+                            {
+                                weight++;
+                            }
+                            else if (element instanceof Cluster)
+                            {
+                                weight += ((Cluster) element).size();
+                            }
+                        }
+                    }
+                }
+                return weight;
+            }
+        },
+
+        /**
+         * The weight of a result is a rough estimate of the number of bytes taken by the
+         * strings held in documents' fields, cluster labels and other textual values of
+         * the result. Use this weigher when documents' sizes vary a lot between
+         * requests.
+         */
+        ESTIMATED_BYTES
+        {
+            @Override
+            long weigh(Map<String, Object> result)
+            {
+                long weight = 0;
+                for (Map.Entry<String, Object> entry : result.entrySet())
+                {
+                    weight += estimate(entry.getKey()) + estimate(entry.getValue());
+                }
+                return weight;
+            }
+        };
+
+        /**
+         * Returns the weight of the provided map of output attributes.
+         */
+        abstract long weigh(Map<String, Object> result);
+
+        /** Object header and reference overhead. */
+        private static final long OBJECT_OVERHEAD = 16;
+
+        /**
+         * Estimates the size of an output attribute value.
+         */
+        static long estimate(Object value)
+        {
+            if (value == null)
+            {
+                return 0;
+            }
+
+            if (value instanceof CharSequence)
+            {
+                return OBJECT_OVERHEAD * 2 + 2L * ((CharSequence) value).length();
+            }
+
+            if (value instanceof Document)
+            {
+                long size = OBJECT_OVERHEAD * 4;
+                for (Map.Entry<String, Object> field : ((Document) value).getFields()
+                    .entrySet())
+                {
+                    size += estimate(field.getKey()) + estimate(field.getValue());
+                }
+                return size;
+            }
+
+            if (value instanceof Cluster)
+            {
+                final Cluster cluster = (Cluster) value;
+                long size = OBJECT_OVERHEAD * 4 + 8L * cluster.getDocuments().size();
+                for (String phrase : cluster.getPhrases())
+                {
+                    size += estimate(phrase);
+                }
+                for (Cluster subcluster : cluster.getSubclusters())
+                {
+                    size += estimate(subcluster);
+                }
+                return size;
+            }
+
+            if (value instanceof Collection<?>)
+            {
+                long size = OBJECT_OVERHEAD * 2;
+                for (Object element : (Collection<?>) value)
+                {
+                    size += 8 + estimate(element);
+                }
+                return size;
+            }
+
+            if (value instanceof Map<?, ?>)
+            {
+                long size = OBJECT_OVERHEAD * 2;
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                {
+                    size += OBJECT_OVERHEAD * 2 + estimate(entry.getKey())
+                        + estimate(entry.getValue());
+                }
+                return size;
+            }
+
+            return OBJECT_OVERHEAD;
+        }
+    }
+
+    /** Classes of components whose results are stored in this cache. */
+    private final Set<Class<? extends IProcessingComponent>> componentClasses;
+
+    /** Maximum number of entries, <code>-1</code> if not bounded by size. */
+    private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+    /** Maximum total weight, <code>-1</code> if not bounded by weight. */
+    private long maximumWeight = -1;
+
+    /** Weigher to use with {@link #maximumWeight}. */
+    private ResultWeigher weigher;
+
+    /** Expiration after write, in milliseconds, <code>-1</code> if disabled. */
+    private long expireAfterWriteMillis = -1;
+
+    /** Expiration after access, in milliseconds, <code>-1</code> if disabled. */
+    private long expireAfterAccessMillis = -1;
+
+    /** If <code>true</code>, cached values will be softly referenced. */
+    private boolean softValues;
+
+    /** Directory of the persistent second-level cache, <code>null</code> if disabled. */
+    private File persistentStoreDirectory;
+
+    /** Maximum size of the persistent second-level cache files. */
+    private long persistentStoreMaximumBytes;
+
+    /**
+     * Creates a cache configuration for the provided component class. Equivalent to
+     * {@link #CacheConfiguration(Class...)} with a single class, without the unchecked
+     * generic array creation at the call site.
+     *
+     * @param componentClass class of components whose output should be cached
+     */
+    @SuppressWarnings("unchecked")
+    public CacheConfiguration(Class<? extends IProcessingComponent> componentClass)
+    {
+        this(new Class [] {componentClass});
+    }
+
+    /**
+     * Creates a cache configuration for the provided component classes.
+     *
+     * @param componentClasses classes of components whose output should be cached. If a
+     *            superclass is provided here, e.g. {@link IDocumentSource}, all its
+     *            subclasses will be subject to caching. If {@link IProcessingComponent}
+     *            is provided here, output of all components will be cached.
+     */
+    @SuppressWarnings("unchecked")
+    public CacheConfiguration(Class<? extends IProcessingComponent>... componentClasses)
+    {
+        if (componentClasses.length == 0)
+        {
+            throw new IllegalArgumentException(
+                "At least one component class is required.");
+        }
+        this.componentClasses = ImmutableSet.copyOf(componentClasses);
+    }
+
+    /**
+     * Bounds the cache by the number of entries. Clears the weight bound set by
+     * {@link #setMaximumWeight(long, ResultWeigher)}, if any.
+     *
+     * @return this configuration for convenience
+     */
+    public CacheConfiguration setMaximumSize(long maximumSize)
+    {
+        if (maximumSize < 0)
+        {
+            throw new IllegalArgumentException("Maximum size must not be negative: "
+                + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.maximumWeight = -1;
+        this.weigher = null;
+        return this;
+    }
+
+    /**
+     * Bounds the cache by the total weight of entries, as computed by
+     * <code>weigher</code>. Clears the size bound set by {@link #setMaximumSize(long)}
+     * and the default size bound.
+     *
+     * @return this configuration for convenience
+     */
+    public CacheConfiguration setMaximumWeight(long maximumWeight, ResultWeigher weigher)
+    {
+        if (maximumWeight < 0)
+        {
+            throw new IllegalArgumentException("Maximum weight must not be negative: "
+                + maximumWeight);
+        }
+        if (weigher == null)
+        {
+            throw new IllegalArgumentException("Weigher must not be null.");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.maximumSize = -1;
+        return this;
+    }
+
+    /**
+     * Evicts entries once the provided time has elapsed since they were created.
+     *
+     * @return this configuration for convenience
+     */
+    public CacheConfiguration setExpireAfterWrite(long duration, TimeUnit unit)
+    {
+        this.expireAfterWriteMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * Evicts entries once the provided time has elapsed since they were last read or
+     * created.
+     *
+     * @return this configuration for convenience
+     */
+    public CacheConfiguration setExpireAfterAccess(long duration, TimeUnit unit)
+    {
+        this.expireAfterAccessMillis = unit.toMillis(duration);
+        return this;
+    }
+
+    /**
+     * If <code>true</code>, cached results will be softly referenced, so that they can
+     * be garbage-collected under memory pressure. Strong references are used by
+     * default.
+     *
+     * @return this configuration for convenience
+     */
+    public CacheConfiguration setSoftValues(boolean softValues)
+    {
+        this.softValues = softValues;
+        return this;
+    }
+
+    /**
+     * Enables a persistent second-level cache stored in memory-mapped files in the
+     * provided directory. Results of processing are written to the persistent cache when
+     * they are computed and promoted back to the in-memory cache when requested again,
+     * also after a JVM restart. Each cache configuration requires a separate directory.
+     * <p>
+     * Only results for which the key (the input processing-time attributes of the
+     * component) consists of primitive values, strings, enums, classes, documents and
+     * collections thereof can be stored persistently.
+     * Results are stored as XML, as produced by {@link ProcessingResult#serialize()}.
+     * </p>
+     * 
+     * @param directory the directory to store persistent cache files in
+     * @param maximumBytes the maximum total size of persistent cache files
+     * @return this configuration for convenience
+     */
+    public CacheConfiguration setPersistentStore(File directory, long maximumBytes)
+    {
+        if (directory == null)
+        {
+            throw new IllegalArgumentException("Directory must not be null.");
+        }
+        this.persistentStoreDirectory = directory;
+        this.persistentStoreMaximumBytes = maximumBytes;
+        return this;
+    }
+
+    public Set<Class<? extends IProcessingComponent>> getComponentClasses()
+    {
+        return componentClasses;
+    }
+
+    public long getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    public long getMaximumWeight()
+    {
+        return maximumWeight;
+    }
+
+    public ResultWeigher getWeigher()
+    {
+        return weigher;
+    }
+
+    public long getExpireAfterWriteMillis()
+    {
+        return expireAfterWriteMillis;
+    }
+
+    public long getExpireAfterAccessMillis()
+    {
+        return expireAfterAccessMillis;
+    }
+
+    public boolean isSoftValues()
+    {
+        return softValues;
+    }
+
+    public File getPersistentStoreDirectory()
+    {
+        return persistentStoreDirectory;
+    }
+
+    public long getPersistentStoreMaximumBytes()
+    {
+        return persistentStoreMaximumBytes;
+    }
+
+    /**
+     * Returns <code>true</code> if the output of components of the provided class should
+     * be stored in the cache defined by this configuration.
+     */
+    boolean covers(Class<? extends IProcessingComponent> clazz)
+    {
+        for (Class<?> cachedClass : componentClasses)
+        {
+            if (cachedClass.isAssignableFrom(clazz))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,353 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.carrot2.util.Pair;
+import org.carrot2.util.attribute.AttributeBinder;
+import org.carrot2.util.attribute.AttributeBinder.AllAnnotationsPresentPredicate;
+import org.carrot2.util.attribute.AttributeBinder.AttributeBinderActionBind;
+import org.carrot2.util.attribute.AttributeBinder.AttributeBinderActionCollect;
+import org.carrot2.util.attribute.AttributeBinder.AttributeTransformerFromString;
+import org.carrot2.util.attribute.AttributeBinder.BindingTracker;
+import org.carrot2.util.attribute.AttributeBinder.IAttributeBinderAction;
+import org.carrot2.util.attribute.AttributeBinder.IAttributeTransformer;
+import org.carrot2.util.attribute.AttributeBindingException;
+import org.carrot2.util.attribute.Bindable;
+import org.carrot2.util.attribute.BindableUtils;
+import org.carrot2.util.attribute.IObjectFactory;
+import org.carrot2.util.attribute.Required;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * A faster equivalent of {@link AttributeBinder#set(Object, Map, boolean, Class...)} and
+ * {@link AttributeBinder#get(Object, Map, Class...)}, used for binding attributes of
+ * processing components on every request.
+ * <p>
+ * On each call, {@link AttributeBinder} walks the class hierarchy under a global lock,
+ * evaluates annotation filters and consistency checks, and computes the attribute key
+ * of every field. This class does all of that once for each bindable class and filter.
+ * It keeps the resulting binding plans in a concurrent map, so binding does not contend
+ * for any locks. The plan skips fields whose keys are not among the values being set.
+ * All other fields are handled by the same binding actions {@link AttributeBinder} uses.
+ * Values, transformations and constraint checks are therefore exactly the same.
+ * </p>
+ * <p>
+ * Failures are reported with the same exceptions {@link AttributeBinder} throws. The
+ * binding is never repeated, so attributes are not bound twice.
+ * </p>
+ */
+final class CachedAttributeBinder
+{
+    /** Binding plans for pairs of bindable classes and filtering annotations. */
+    private static final ConcurrentMap<Pair<Class<?>, List<Class<? extends Annotation>>>, BindingPlan> PLANS =
+        new ConcurrentHashMap<Pair<Class<?>, List<Class<? extends Annotation>>>, BindingPlan>();
+
+    private CachedAttributeBinder()
+    {
+        // no instances.
+    }
+
+    /**
+     * Binds values to attributes of <code>object</code> (and its nested bindables)
+     * annotated with all <code>filteringAnnotations</code>, see
+     * {@link AttributeBinder#set(Object, Map, boolean, Class...)}.
+     */
+    static void set(Object object, Map<String, Object> values, boolean checkRequired,
+        Class<? extends Annotation>... filteringAnnotations)
+        throws InstantiationException
+    {
+        final Predicate<Field> predicate = new AllAnnotationsPresentPredicate(
+            filteringAnnotations);
+        final IAttributeBinderAction action = new AttributeBinderActionBind(values,
+            checkRequired, AttributeTransformerFromString.INSTANCE,
+            ObjectFactoryTransformer.INSTANCE);
+
+        bind(Sets.newHashSet(), new BindingTracker(), 0, object, action, values,
+            checkRequired, predicate, filteringAnnotations);
+    }
+
+    /**
+     * Collects values of attributes of <code>object</code> (and its nested bindables)
+     * annotated with all <code>filteringAnnotations</code>, see
+     * {@link AttributeBinder#get(Object, Map, Class...)}.
+     */
+    static void get(Object object, Map<String, Object> values,
+        Class<? extends Annotation>... filteringAnnotations)
+        throws InstantiationException
+    {
+        final Predicate<Field> predicate = new AllAnnotationsPresentPredicate(
+            filteringAnnotations);
+        final IAttributeBinderAction action = new AttributeBinderActionCollect(values,
+            new IAttributeTransformer [0]);
+
+        bind(Sets.newHashSet(), new BindingTracker(), 0, object, action, null, false,
+            predicate, filteringAnnotations);
+    }
+
+    /**
+     * Performs <code>action</code> on the attributes in the plan for
+     * <code>object</code>, recursing into nested bindables. If <code>values</code> is
+     * not <code>null</code>, the action is skipped for attributes that have no value
+     * there and do not need to be checked as required.
+     */
+    private static void bind(Set<Object> boundObjects, BindingTracker bindingTracker,
+        int level, Object object, IAttributeBinderAction action,
+        Map<String, Object> values, boolean checkRequired, Predicate<Field> predicate,
+        Class<? extends Annotation> [] filteringAnnotations)
+        throws InstantiationException
+    {
+        boundObjects.add(object);
+
+        final BindingPlan plan = getPlan(object, predicate, filteringAnnotations);
+        for (int i = 0; i < plan.fields.length; i++)
+        {
+            final Field field = plan.fields[i];
+            Object value;
+            try
+            {
+                value = field.get(object);
+                if (plan.keys[i] != null
+                    && (values == null || values.containsKey(plan.keys[i]) || (checkRequired
+                        && plan.required[i] && value == null)))
+                {
+                    action.performAction(bindingTracker, level, object, field, value,
+                        predicate);
+                    value = field.get(object);
+                }
+            }
+            catch (Exception e)
+            {
+                throw bindingException(object, field, e, predicate);
+            }
+
+            if (value != null && value.getClass().getAnnotation(Bindable.class) != null)
+            {
+                if (boundObjects.contains(value))
+                {
+                    throw new UnsupportedOperationException(
+                        "Circular references are not supported");
+                }
+
+                bind(boundObjects, bindingTracker, level + 1, value, action, values,
+                    checkRequired, predicate, filteringAnnotations);
+            }
+        }
+    }
+
+    /**
+     * Returns the exception {@link AttributeBinder} throws when accessing or binding
+     * <code>field</code> of <code>object</code> fails with <code>failure</code>. The
+     * exception is created by {@link AttributeBinder} itself, with an action that
+     * rethrows <code>failure</code> for the field and does not modify any attributes.
+     */
+    private static RuntimeException bindingException(Object object, final Field field,
+        final Exception failure, Predicate<Field> predicate)
+    {
+        if (failure instanceof AttributeBindingException)
+        {
+            return (AttributeBindingException) failure;
+        }
+
+        try
+        {
+            AttributeBinder.bind(object, new IAttributeBinderAction []
+            {
+                new IAttributeBinderAction()
+                {
+                    public void performAction(BindingTracker bindingTracker, int level,
+                        Object o, Field f, Object value, Predicate<Field> p)
+                        throws InstantiationException
+                    {
+                        if (level == 0 && f.equals(field))
+                        {
+                            if (failure instanceof InstantiationException)
+                            {
+                                throw (InstantiationException) failure;
+                            }
+                            throw Throwables.propagate(failure);
+                        }
+                    }
+                }
+            }, Predicates.and(predicate, Predicates.equalTo(field)));
+        }
+        catch (RuntimeException e)
+        {
+            return e;
+        }
+        catch (InstantiationException e)
+        {
+            // Not expected, the reference binder wraps exceptions thrown by actions
+        }
+        return Throwables.propagate(failure);
+    }
+
+    /**
+     * Returns the binding plan for the class of <code>object</code>, building it on the
+     * first call.
+     */
+    private static BindingPlan getPlan(Object object, Predicate<Field> predicate,
+        Class<? extends Annotation> [] filteringAnnotations)
+        throws InstantiationException
+    {
+        final Pair<Class<?>, List<Class<? extends Annotation>>> key = new Pair<Class<?>, List<Class<? extends Annotation>>>(
+            object.getClass(), Arrays.asList(filteringAnnotations));
+
+        BindingPlan plan = PLANS.get(key);
+        if (plan == null)
+        {
+            plan = new BindingPlan(object, predicate);
+            final BindingPlan existing = PLANS.putIfAbsent(key, plan);
+            if (existing != null)
+            {
+                plan = existing;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Fields of one bindable class, in the order {@link AttributeBinder} visits them:
+     * the attributes passing the consistency checks and the filtering predicate (with
+     * their keys) and the fields that may hold nested bindables (with <code>null</code>
+     * keys).
+     */
+    private static final class BindingPlan
+    {
+        final Field [] fields;
+        final String [] keys;
+        final boolean [] required;
+
+        BindingPlan(Object object, Predicate<Field> predicate)
+            throws InstantiationException
+        {
+            // Let the reference binder select the attributes for us, so that the
+            // consistency checks are the same.
+            final Set<Field> attributes = Sets.newHashSet();
+            AttributeBinder.bind(object, new IAttributeBinderAction []
+            {
+                new IAttributeBinderAction()
+                {
+                    public void performAction(BindingTracker bindingTracker, int level,
+                        Object o, Field field, Object value, Predicate<Field> p)
+                    {
+                        if (level == 0)
+                        {
+                            attributes.add(field);
+                        }
+                    }
+                }
+            }, predicate);
+
+            final List<Field> fields = Lists.newArrayList();
+            final List<String> keys = Lists.newArrayList();
+            final List<Boolean> required = Lists.newArrayList();
+            for (Class<?> clazz = object.getClass(); clazz != null; clazz = clazz
+                .getSuperclass())
+            {
+                if (clazz.getAnnotation(Bindable.class) == null)
+                {
+                    continue;
+                }
+
+                for (Field field : clazz.getDeclaredFields())
+                {
+                    final boolean attribute = attributes.contains(field);
+                    if (attribute || mayHoldBindable(field.getType()))
+                    {
+                        field.setAccessible(true);
+                        fields.add(field);
+                        keys.add(attribute ? BindableUtils.getKey(field) : null);
+                        required.add(field.getAnnotation(Required.class) != null);
+                    }
+                }
+            }
+
+            this.fields = fields.toArray(new Field [fields.size()]);
+            this.keys = keys.toArray(new String [keys.size()]);
+            this.required = new boolean [required.size()];
+            for (int i = 0; i < this.required.length; i++)
+            {
+                this.required[i] = required.get(i);
+            }
+        }
+
+        /**
+         * Returns <code>false</code> if a field of the provided type can never hold an
+         * instance of a {@link Bindable} class.
+         */
+        private static boolean mayHoldBindable(Class<?> type)
+        {
+            if (type.getAnnotation(Bindable.class) != null)
+            {
+                return true;
+            }
+            return !type.isPrimitive() && !type.isArray()
+                && !Modifier.isFinal(type.getModifiers());
+        }
+    }
+
+    /**
+     * Creates attribute values from {@link IObjectFactory} instances and classes, the
+     * same way as the transformer {@link AttributeBinder} uses internally.
+     */
+    private static final class ObjectFactoryTransformer implements IAttributeTransformer
+    {
+        static final ObjectFactoryTransformer INSTANCE = new ObjectFactoryTransformer();
+
+        public Object transform(Object value, String key, Field field)
+        {
+            if (value == null)
+            {
+                return value;
+            }
+
+            if (value instanceof IObjectFactory<?>)
+            {
+                return ((IObjectFactory<?>) value).create();
+            }
+
+            if (value instanceof Class<?>
+                && IObjectFactory.class.isAssignableFrom((Class<?>) value))
+            {
+                final IObjectFactory<?> factory;
+                try
+                {
+                    factory = (IObjectFactory<?>) ((Class<?>) value).newInstance();
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException("Could not create instance of factory class: "
+                        + ((Class<?>) value).getName() + " for attribute " + key, e);
+                }
+                return factory.create();
+            }
+
+            return value;
+        }
+    }
+}
@@ -12,15 +12,25 @@
 
 package org.carrot2.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.carrot2.core.Controller.IControllerStatisticsProvider;
+import org.carrot2.core.attribute.AttributeNames;
 import org.carrot2.core.attribute.Processing;
 import org.carrot2.util.ExceptionUtils;
+import org.carrot2.util.MappedSegmentStore;
 import org.carrot2.util.Pair;
 import org.carrot2.util.attribute.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.cache.*;
 import com.google.common.collect.*;
@@ -35,10 +45,18 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
  * ) and wraps the components the delegate with a functionality that either returns the
  * results from cache or performs the processing if the result are not yet cached.
  * </p>
+ * <p>
+ * If a {@link CacheConfiguration} defines a persistent store, results missing from the
+ * in-memory cache are looked up in the store first. Results found in the store are
+ * promoted to the in-memory cache, newly computed results are written to both.
+ * </p>
  */
 public class CachingProcessingComponentManager implements IProcessingComponentManager,
     Controller.IControllerStatisticsProvider
 {
+    private final static Logger logger = LoggerFactory
+        .getLogger(CachingProcessingComponentManager.class);
+
     /** The delegate manager that prepares the actual processing components */
     final IProcessingComponentManager delegate;
 
@@ -46,8 +64,8 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
      * Descriptors of {@link Input} and {@link Output} {@link Processing} attributes of
      * components whose output is to be cached.
      */
-    private final Map<Pair<Class<? extends IProcessingComponent>, String>, InputOutputAttributeDescriptors> cachedComponentAttributeDescriptors = Maps
-        .newHashMap();
+    private final ConcurrentMap<Pair<Class<? extends IProcessingComponent>, String>, InputOutputAttributeDescriptors> cachedComponentAttributeDescriptors = Maps
+        .newConcurrentMap();
 
     /**
      * A set of {@link IProcessingComponent}s whose data should be cached internally.
@@ -55,17 +73,22 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
     final Set<Class<? extends IProcessingComponent>> cachedComponentClasses;
 
     /**
-     * Populates on-demand and caches the data from components of classes provided in
-     * {@link #cachedComponentClasses}. The key of the cache is a map of all {@link Input}
-     * {@link Processing} attributes of the component for which caching is performed. The
-     * value of the cache is a map of all {@link Output} {@link Processing} attributes
-     * produced by the component.
+     * Caches populated on-demand with the data from components of classes provided in
+     * {@link #cachedComponentClasses}, one cache per {@link CacheConfiguration}. The key
+     * of each cache is a map of all {@link Input} {@link Processing} attributes of the
+     * component for which caching is performed. The value of the cache is a map of all
+     * {@link Output} {@link Processing} attributes produced by the component.
      */
-    private Cache<AttributeMapCacheKey, Map<String,Object>> cache;
+    private final List<CacheRegion> regions;
+
+    /** Set once the regions are disposed, their statistics remain available. */
+    private boolean disposed;
 
     /** Cache statistics keys. */
     static final String CACHE_MISSES = "cache.misses";
     static final String CACHE_HITS_TOTAL = "cache.hits.total";
+    static final String CACHE_EVICTIONS = "cache.evictions";
+    static final String CACHE_PERSISTENT_HITS = "cache.persistent.hits";
 
     /**
      * Creates a {@link CachingProcessingComponentManager}.
@@ -80,15 +103,35 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
      */
     public CachingProcessingComponentManager(IProcessingComponentManager delegate,
         Class<? extends IProcessingComponent>... cachedComponentClasses)
+    {
+        this(delegate, cachedComponentClasses.length == 0
+            ? Collections.<CacheConfiguration> emptyList() 
+            : Collections.singletonList(new CacheConfiguration(cachedComponentClasses)));
+    }
+
+    /**
+     * Creates a {@link CachingProcessingComponentManager} with a separate cache for each
+     * provided configuration. The output of a component is stored in the cache of the
+     * first configuration that covers the component's class.
+     * 
+     * @param delegate the manager to handle the preparation of the actual processing
+     *            component instances
+     * @param configurations configurations of caches
+     */
+    public CachingProcessingComponentManager(IProcessingComponentManager delegate,
+        List<CacheConfiguration> configurations)
     {
         this.delegate = delegate;
-        this.cachedComponentClasses = ImmutableSet.copyOf(cachedComponentClasses);
 
-        // Initialize cache.
-        cache = CacheBuilder.newBuilder()
-            .maximumSize(100)
-            .recordStats()
-            .build();
+        final Set<Class<? extends IProcessingComponent>> classes = Sets.newLinkedHashSet();
+        final List<CacheRegion> regions = Lists.newArrayList();
+        for (CacheConfiguration configuration : configurations)
+        {
+            classes.addAll(configuration.getComponentClasses());
+            regions.add(new CacheRegion(configuration));
+        }
+        this.cachedComponentClasses = ImmutableSet.copyOf(classes);
+        this.regions = ImmutableList.copyOf(regions);
     }
 
     public void init(IControllerContext context, Map<String, Object> attributes,
@@ -111,12 +154,12 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
         // use only the init-time attributes. The same goes for output attributes,
         // these will be collected to the map we provide during the creation of the
         // wrapper.
-        for (Class<?> cachedClass : cachedComponentClasses)
+        for (CacheRegion region : regions)
         {
-            if (cachedClass.isAssignableFrom(clazz))
+            if (region.configuration.covers(clazz))
             {
-                return new CachedProcessingComponent(clazz, id, inputAttributes,
-                    outputAttributes);
+                return new CachedProcessingComponent(region, clazz, id,
+                    inputAttributes, outputAttributes);
             }
         }
 
@@ -137,33 +180,49 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
         // they're asked to perform processing.
     }
 
-    public void dispose()
+    public synchronized void dispose()
     {
+        if (disposed)
+        {
+            return;
+        }
+
         try
         {
             delegate.dispose();
-            if (cache != null)
+            for (CacheRegion region : regions)
             {
-                cache.invalidateAll();
+                region.dispose();
             }
         }
         finally
         {
-            cache = null;
+            disposed = true;
         }
     }
 
     public Map<String, Object> getStatistics()
     {
         // Return some custom statistics
-        final CacheStats cacheStats = cache.stats();
         final Map<String, Object> stats = Maps.newHashMap();
         if (delegate instanceof IControllerStatisticsProvider) 
         {
             stats.putAll(((IControllerStatisticsProvider) delegate).getStatistics());
         }
-        stats.put(CACHE_MISSES, cacheStats.missCount());
-        stats.put(CACHE_HITS_TOTAL, cacheStats.hitCount());
+
+        long misses = 0, hits = 0, evictions = 0, persistentHits = 0;
+        for (CacheRegion region : regions)
+        {
+            final CacheStats cacheStats = region.cache.stats();
+            misses += cacheStats.missCount();
+            hits += cacheStats.hitCount();
+            evictions += cacheStats.evictionCount();
+            persistentHits += region.persistentHits.get();
+        }
+        stats.put(CACHE_MISSES, misses);
+        stats.put(CACHE_HITS_TOTAL, hits);
+        stats.put(CACHE_EVICTIONS, evictions);
+        stats.put(CACHE_PERSISTENT_HITS, persistentHits);
         
         return stats;
     }
@@ -185,6 +244,7 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
      */
     private final class CachedProcessingComponent extends ProcessingComponentBase
     {
+        private final CacheRegion region;
         private final Class<? extends IProcessingComponent> componentClass;
         private final String componentId;
 
@@ -194,10 +254,12 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
         /** A map to store the output attributes in. */
         private final Map<String, Object> outputAttributes;
 
-        CachedProcessingComponent(Class<? extends IProcessingComponent> componentClass,
+        CachedProcessingComponent(CacheRegion region,
+            Class<? extends IProcessingComponent> componentClass,
             String componentId, Map<String, Object> inputAttributes,
             Map<String, Object> outputAttributes)
         {
+            this.region = region;
             this.componentClass = componentClass;
             this.inputAttributes = inputAttributes;
             this.outputAttributes = outputAttributes;
@@ -212,8 +274,12 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
             // Copy the output attributes produced by the preceding components. Normally,
             // this could be done by ControllerUtils, but the wrapper was created before
             // any processing took place anyway, so the inputAttributes did not have any
-            // results yet.
-            inputAttributes.putAll(outputAttributes);
+            // results yet. Request-scoped results are not passed to cached components,
+            // the cache key would keep them.
+            final Map<String, Object> precedingOutputAttributes = Maps
+                .newHashMap(outputAttributes);
+            ControllerUtils.removeRequestScoped(precedingOutputAttributes);
+            inputAttributes.putAll(precedingOutputAttributes);
 
             // We'll need @Input @Processing attributes for the cache key
             final Map<String, Object> inputProcessingAttributes = getAttributesForDescriptors(
@@ -231,12 +297,13 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
             // Cache bypass.
             if (inputAttributes.containsKey(CACHE_BYPASS_ATTR) &&
                 Boolean.valueOf(inputAttributes.get(CACHE_BYPASS_ATTR).toString())) {
-                cache.invalidate(key);
+                region.invalidate(key);
             }
 
             try
             {
-                final Map<String, Object> processingResult = cache.get(key, new ValueProducer(key));
+                final Map<String, Object> processingResult = region.cache.get(key,
+                    new ValueProducer(region, key));
 
                 // Copy the results @Output @Processing attributes back to the result
                 outputAttributes.putAll(getAttributesForDescriptors(
@@ -260,39 +327,39 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
         @SuppressWarnings("unchecked")
         private InputOutputAttributeDescriptors prepareAttributeDescriptors()
         {
-            InputOutputAttributeDescriptors descriptors = null;
-
-            synchronized (cachedComponentAttributeDescriptors)
+            final Pair<Class<? extends IProcessingComponent>, String> key = new Pair<Class<? extends IProcessingComponent>, String>(
+                componentClass, componentId);
+            InputOutputAttributeDescriptors descriptors = cachedComponentAttributeDescriptors
+                .get(key);
+            if (descriptors == null)
             {
-                descriptors = cachedComponentAttributeDescriptors
-                    .get(new Pair<Class<? extends IProcessingComponent>, String>(
-                        componentClass, componentId));
-                if (descriptors == null)
+                // Need to borrow a component for a while to build descriptors. Concurrent
+                // requests may build the same descriptors, the first ones stored win.
+                IProcessingComponent component = null;
+                try
                 {
-                    // Need to borrow a component for a while to build descriptors
-                    IProcessingComponent component = null;
-                    try
+                    component = delegate.prepare(componentClass, componentId,
+                        inputAttributes, Maps.<String, Object> newHashMap());
+
+                    // Build and store descriptors
+                    descriptors = new InputOutputAttributeDescriptors(
+                        BindableDescriptorBuilder.buildDescriptor(component)
+                            .only(Input.class, Processing.class).flatten().attributeDescriptors,
+                        BindableDescriptorBuilder.buildDescriptor(component)
+                            .only(Output.class).flatten().attributeDescriptors);
+
+                    final InputOutputAttributeDescriptors existing = cachedComponentAttributeDescriptors
+                        .putIfAbsent(key, descriptors);
+                    if (existing != null)
                     {
-                        component = delegate.prepare(componentClass, componentId,
-                            inputAttributes, Maps.<String, Object> newHashMap());
-
-                        // Build and store descriptors
-                        descriptors = new InputOutputAttributeDescriptors(
-                            BindableDescriptorBuilder.buildDescriptor(component)
-                                .only(Input.class, Processing.class).flatten().attributeDescriptors,
-                            BindableDescriptorBuilder.buildDescriptor(component)
-                                .only(Output.class).flatten().attributeDescriptors);
-
-                        cachedComponentAttributeDescriptors.put(
-                            new Pair<Class<? extends IProcessingComponent>, String>(
-                                componentClass, componentId), descriptors);
+                        descriptors = existing;
                     }
-                    finally
+                }
+                finally
+                {
+                    if (component != null)
                     {
-                        if (component != null)
-                        {
-                            delegate.recycle(component, componentId);
-                        }
+                        delegate.recycle(component, componentId);
                     }
                 }
             }
@@ -323,21 +390,23 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
     /**
      * A compound cache key based on the input attributes map that ensures that possible
      * modifications to the attributes map or its values do not change the hashCode and
-     * equality behavior of the key.
+     * equality behavior of the key. The key is a {@link ContentFingerprint} of the input
+     * attributes, so that equal documents posted in different requests produce equal
+     * keys.
      */
     private static final class AttributeMapCacheKey
     {
         /** Input processing attributes, the key for the cache */
-        private Map<String, Object> inputProcessingAttributes;
+        private final Map<String, Object> inputProcessingAttributes;
 
-        /** Hash code for input processing attributes */
-        private int hashCode;
+        /** Fingerprint of input processing attributes */
+        private final ContentFingerprint fingerprint;
 
         /**
          * All input attributes. This map is not part of the cache key, but we will need
          * it to properly retrieve entries from the cache.
          */
-        private Map<String, Object> inputAttributes;
+        private final Map<String, Object> inputAttributes;
 
         private AttributeMapCacheKey(
             Map<String, Object> inputProcessingAttributes,
@@ -354,44 +423,35 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
              * In theory, we could make a shallow copy of the provided map, but if someone
              * wants to make modifications they'll make them anyway on the objects
              * contained in the map. To be completely safe, we'd have to make a deep copy.
-             * To prevent simple errors, we make the map unmodifiable.
+             * To prevent simple errors, we make the map unmodifiable. The fingerprint
+             * is computed once, so later modifications do not affect the key.
              */
             this.inputProcessingAttributes = Collections.unmodifiableMap(inputProcessingAttributes);
-            this.hashCode = inputProcessingAttributes.hashCode();
+            this.fingerprint = ContentFingerprint.of(inputProcessingAttributes);
 
             this.inputAttributes = inputAttributes;
         }
 
-        /*
-         * We assume that equal hash codes means equal objects, which is not true in case
-         * of conflicts, but there is no other way really if we don't want to make deep
-         * copies of the attribute map. If a conflict occurs, we would retrieve a stale
-         * result from the cache (a result associated with a different query, possibly a
-         * different component even). The cache is in-memory only and is rather small (so
-         * that re-querying for documents and clusters does not cause duplicated
-         * processing), conflicts do not seem like a big problem.
+        /**
+         * Returns a key for the persistent store or <code>null</code> if the key
+         * contains values whose fingerprint is not stable across JVM restarts.
          */
+        String persistentKey()
+        {
+            return fingerprint.isStable() ? fingerprint.toString() : null;
+        }
+
         @Override
         public boolean equals(Object obj)
         {
-            if (!(obj instanceof AttributeMapCacheKey))
-            {
-                return false;
-            }
-
-            final boolean result = (obj.hashCode() == this.hashCode);
-            if (result)
-            {
-                assert ((AttributeMapCacheKey) obj).inputProcessingAttributes
-                    .equals(this.inputProcessingAttributes);
-            }
-            return result;
+            return obj instanceof AttributeMapCacheKey
+                && ((AttributeMapCacheKey) obj).fingerprint.equals(this.fingerprint);
         }
 
         @Override
         public int hashCode()
         {
-            return hashCode;
+            return fingerprint.hashCode();
         }
     }
 
@@ -402,10 +462,12 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
     private final class ValueProducer 
         implements Callable<Map<String,Object>>
     {
+        private final CacheRegion region;
         private final AttributeMapCacheKey key;
 
-        public ValueProducer(AttributeMapCacheKey key)
+        public ValueProducer(CacheRegion region, AttributeMapCacheKey key)
         {
+            this.region = region;
             this.key = key;
         }
 
@@ -421,6 +483,18 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
 
             final String componentId = (String) inputProcessingAttributes.get(COMPONENT_ID_KEY);
 
+            // Try the persistent store first.
+            final String persistentKey = region.store != null 
+                ? key.persistentKey() : null;
+            if (persistentKey != null)
+            {
+                final Map<String, Object> stored = region.load(persistentKey);
+                if (stored != null)
+                {
+                    return stored;
+                }
+            }
+
             IProcessingComponent component = null;
             try
             {
@@ -429,7 +503,12 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
                     key.inputAttributes, attributes);
 
                 ControllerUtils.performProcessing(component, inputProcessingAttributes, attributes);
+                ControllerUtils.removeRequestScoped(attributes);
 
+                if (persistentKey != null)
+                {
+                    region.store(persistentKey, attributes);
+                }
                 return attributes;
             }
             finally
@@ -442,6 +521,168 @@ public class CachingProcessingComponentManager implements IProcessingComponentMa
         }
     }
 
+    /**
+     * A cache built according to a {@link CacheConfiguration}, with an optional
+     * persistent store.
+     */
+    private static final class CacheRegion
+    {
+        final CacheConfiguration configuration;
+        final Cache<AttributeMapCacheKey, Map<String, Object>> cache;
+        final MappedSegmentStore store;
+        final AtomicLong persistentHits = new AtomicLong();
+
+        CacheRegion(CacheConfiguration configuration)
+        {
+            this.configuration = configuration;
+
+            final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .recordStats();
+            if (configuration.getMaximumWeight() >= 0)
+            {
+                final CacheConfiguration.ResultWeigher weigher = configuration.getWeigher();
+                builder.maximumWeight(configuration.getMaximumWeight()).weigher(
+                    new Weigher<AttributeMapCacheKey, Map<String, Object>>()
+                    {
+                        public int weigh(AttributeMapCacheKey key, Map<String, Object> value)
+                        {
+                            return (int) Math.min(Integer.MAX_VALUE, weigher.weigh(value));
+                        }
+                    });
+            }
+            else if (configuration.getMaximumSize() >= 0)
+            {
+                builder.maximumSize(configuration.getMaximumSize());
+            }
+            if (configuration.getExpireAfterWriteMillis() >= 0)
+            {
+                builder.expireAfterWrite(configuration.getExpireAfterWriteMillis(),
+                    TimeUnit.MILLISECONDS);
+            }
+            if (configuration.getExpireAfterAccessMillis() >= 0)
+            {
+                builder.expireAfterAccess(configuration.getExpireAfterAccessMillis(),
+                    TimeUnit.MILLISECONDS);
+            }
+            if (configuration.isSoftValues())
+            {
+                builder.softValues();
+            }
+            this.cache = builder.build();
+
+            if (configuration.getPersistentStoreDirectory() != null)
+            {
+                try
+                {
+                    this.store = new MappedSegmentStore(
+                        configuration.getPersistentStoreDirectory(),
+                        configuration.getPersistentStoreMaximumBytes());
+                }
+                catch (IOException e)
+                {
+                    throw ExceptionUtils.wrapAsRuntimeException(e);
+                }
+            }
+            else
+            {
+                this.store = null;
+            }
+        }
+
+        /**
+         * Loads a result from the persistent store, returns <code>null</code> if not
+         * found or the stored result cannot be read.
+         */
+        Map<String, Object> load(String persistentKey)
+        {
+            final byte [] bytes = store.get(persistentKey);
+            if (bytes == null)
+            {
+                return null;
+            }
+
+            try
+            {
+                final Map<String, Object> attributes = Maps.newHashMap(ProcessingResult
+                    .deserialize(new ByteArrayInputStream(bytes)).getAttributes());
+
+                // Deserialization adds query, documents and clusters even if absent.
+                attributes.values().removeAll(Collections.singleton(null));
+                persistentHits.incrementAndGet();
+                return attributes;
+            }
+            catch (Exception e)
+            {
+                logger.warn("Could not read a persistently cached result.", e);
+                return null;
+            }
+        }
+
+        /**
+         * Writes a result to the persistent store. Results with clusters but no
+         * documents are not stored, as cluster contents could not be restored.
+         */
+        void store(String persistentKey, Map<String, Object> attributes)
+        {
+            if (attributes.containsKey(AttributeNames.CLUSTERS)
+                && !attributes.containsKey(AttributeNames.DOCUMENTS))
+            {
+                return;
+            }
+
+            try
+            {
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                new ProcessingResult(Maps.newHashMap(attributes)).serialize(bytes);
+                store.put(persistentKey, bytes.toByteArray());
+            }
+            catch (Exception e)
+            {
+                logger.warn("Could not store a result persistently.", e);
+            }
+        }
+
+        /**
+         * Removes the result for the provided key from the cache and the persistent
+         * store.
+         */
+        void invalidate(AttributeMapCacheKey key)
+        {
+            cache.invalidate(key);
+            if (store != null)
+            {
+                final String persistentKey = key.persistentKey();
+                if (persistentKey != null)
+                {
+                    try
+                    {
+                        store.remove(persistentKey);
+                    }
+                    catch (IOException e)
+                    {
+                        logger.warn("Could not remove a persistently cached result.", e);
+                    }
+                }
+            }
+        }
+
+        void dispose()
+        {
+            cache.invalidateAll();
+            if (store != null)
+            {
+                try
+                {
+                    store.close();
+                }
+                catch (IOException e)
+                {
+                    logger.warn("Could not close persistent cache.", e);
+                }
+            }
+        }
+    }
+
     /**
      * Stores a pair of maps of {@link Input} and {@link Output} descriptors.
      */
@@ -0,0 +1,272 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.util.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.hash.*;
+
+/**
+ * A 128-bit fingerprint of the contents of an attribute map, used as a processing results
+ * cache key. Unlike {@link Map#hashCode()}, the fingerprint is computed from the
+ * <strong>contents</strong> of {@link Document}s, lists and maps, so that equal documents
+ * posted in separate requests produce equal fingerprints. The fingerprint is computed
+ * incrementally, by feeding the attribute values to a single 128-bit hash function,
+ * without creating intermediate string representations.
+ * <p>
+ * Values of types whose contents are not known to this class are not fingerprinted.
+ * Instead, they are kept by reference and compared with {@link Object#equals(Object)}
+ * when fingerprints are compared. Fingerprints without such values are
+ * {@link #isStable() stable} across JVM restarts.
+ * </p>
+ */
+final class ContentFingerprint
+{
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /** Type tags, to tell e.g. an empty list from an empty map. */
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_PRIMITIVE = 2;
+    private static final byte TAG_ENUM = 3;
+    private static final byte TAG_CLASS = 4;
+    private static final byte TAG_DOCUMENT = 5;
+    private static final byte TAG_LIST = 6;
+    private static final byte TAG_UNORDERED = 7;
+    private static final byte TAG_MAP_ENTRY = 8;
+    private static final byte TAG_OPAQUE = 9;
+
+    /** The 128-bit hash of all fingerprinted values. */
+    private final HashCode hash;
+
+    /** Values that could not be fingerprinted, in the order they were encountered. */
+    private final List<Object> opaqueValues;
+
+    private ContentFingerprint(HashCode hash, List<Object> opaqueValues)
+    {
+        this.hash = hash;
+        this.opaqueValues = opaqueValues;
+    }
+
+    /**
+     * Computes the fingerprint of the provided attribute map.
+     */
+    static ContentFingerprint of(Map<String, Object> attributes)
+    {
+        final List<Object> opaqueValues = Lists.newArrayList();
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+
+        // Sort by key, so that the iteration order of the map does not matter.
+        for (Map.Entry<String, Object> entry : new TreeMap<String, Object>(attributes)
+            .entrySet())
+        {
+            putString(hasher, entry.getKey());
+            put(hasher, entry.getValue(), opaqueValues);
+        }
+
+        return new ContentFingerprint(hasher.hash(), opaqueValues);
+    }
+
+    /**
+     * Returns <code>true</code> if the fingerprint has been computed from the values
+     * only and hence can identify the attributes across JVM restarts.
+     */
+    boolean isStable()
+    {
+        return opaqueValues.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+        if (!(obj instanceof ContentFingerprint))
+        {
+            return false;
+        }
+
+        final ContentFingerprint other = (ContentFingerprint) obj;
+        return hash.equals(other.hash) && opaqueValues.equals(other.opaqueValues);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return hash.asInt();
+    }
+
+    /**
+     * Returns the hexadecimal representation of the 128-bit hash.
+     */
+    @Override
+    public String toString()
+    {
+        return hash.toString();
+    }
+
+    private static void put(Hasher hasher, Object value, List<Object> opaqueValues)
+    {
+        if (value == null)
+        {
+            hasher.putByte(TAG_NULL);
+        }
+        else if (value instanceof String)
+        {
+            hasher.putByte(TAG_STRING);
+            putString(hasher, (String) value);
+        }
+        else if (value instanceof Number || value instanceof Boolean
+            || value instanceof Character)
+        {
+            hasher.putByte(TAG_PRIMITIVE);
+            putString(hasher, value.getClass().getName());
+            putString(hasher, value.toString());
+        }
+        else if (value instanceof Enum<?>)
+        {
+            hasher.putByte(TAG_ENUM);
+            putString(hasher, ((Enum<?>) value).getDeclaringClass().getName());
+            putString(hasher, ((Enum<?>) value).name());
+        }
+        else if (value instanceof Class<?>)
+        {
+            hasher.putByte(TAG_CLASS);
+            putString(hasher, ((Class<?>) value).getName());
+        }
+        else if (value instanceof Document)
+        {
+            putDocument(hasher, (Document) value, null, opaqueValues);
+        }
+        else if (value instanceof List<?>)
+        {
+            final List<?> list = (List<?>) value;
+            hasher.putByte(TAG_LIST);
+            hasher.putInt(list.size());
+            int index = 0;
+            for (Object element : list)
+            {
+                if (element instanceof Document)
+                {
+                    putDocument(hasher, (Document) element, Integer.toString(index),
+                        opaqueValues);
+                }
+                else
+                {
+                    put(hasher, element, opaqueValues);
+                }
+                index++;
+            }
+        }
+        else if (value instanceof Set<?>)
+        {
+            putUnordered(hasher, value, (Set<?>) value, opaqueValues);
+        }
+        else if (value instanceof Map<?, ?>)
+        {
+            putUnordered(hasher, value, ((Map<?, ?>) value).entrySet(), opaqueValues);
+        }
+        else if (value instanceof Map.Entry<?, ?>)
+        {
+            hasher.putByte(TAG_MAP_ENTRY);
+            put(hasher, ((Map.Entry<?, ?>) value).getKey(), opaqueValues);
+            put(hasher, ((Map.Entry<?, ?>) value).getValue(), opaqueValues);
+        }
+        else
+        {
+            putOpaque(hasher, value, opaqueValues);
+        }
+    }
+
+    /**
+     * Fingerprints a document's identifier and fields. If the document's identifier is
+     * equal to <code>implicitId</code>, the identifier {@link Document#assignDocumentIds}
+     * would assign to an identifier-less document at the same position, the identifier
+     * is skipped. This way, a list of documents produces the same fingerprint before and
+     * after identifiers have been assigned to it.
+     */
+    private static void putDocument(Hasher hasher, Document document, String implicitId,
+        List<Object> opaqueValues)
+    {
+        final Map<String, Object> fields;
+
+        // Documents may be modified concurrently, see Document#getOtherFields().
+        synchronized (document)
+        {
+            fields = new TreeMap<String, Object>(document.getFields());
+        }
+
+        final String id = document.getStringId();
+        hasher.putByte(TAG_DOCUMENT);
+        put(hasher, id != null && id.equals(implicitId) ? null : id, opaqueValues);
+        hasher.putInt(fields.size());
+        for (Map.Entry<String, Object> field : fields.entrySet())
+        {
+            putString(hasher, field.getKey());
+            put(hasher, field.getValue(), opaqueValues);
+        }
+    }
+
+    /**
+     * Fingerprints a collection whose iteration order is not significant by combining
+     * the fingerprints of its elements in an order-independent way.
+     */
+    private static void putUnordered(Hasher hasher, Object value, Collection<?> elements,
+        List<Object> opaqueValues)
+    {
+        if (elements.isEmpty())
+        {
+            hasher.putByte(TAG_UNORDERED);
+            hasher.putInt(0);
+            return;
+        }
+
+        final List<HashCode> hashes = Lists.newArrayListWithCapacity(elements.size());
+        final List<Object> elementOpaqueValues = Lists.newArrayList();
+        for (Object element : elements)
+        {
+            final Hasher elementHasher = HASH_FUNCTION.newHasher();
+            put(elementHasher, element, elementOpaqueValues);
+            hashes.add(elementHasher.hash());
+        }
+
+        if (elementOpaqueValues.isEmpty())
+        {
+            hasher.putByte(TAG_UNORDERED);
+            hasher.putInt(elements.size());
+            hasher.putBytes(Hashing.combineUnordered(hashes).asBytes());
+        }
+        else
+        {
+            // The order of opaque values would depend on the iteration order.
+            putOpaque(hasher, value, opaqueValues);
+        }
+    }
+
+    private static void putOpaque(Hasher hasher, Object value, List<Object> opaqueValues)
+    {
+        hasher.putByte(TAG_OPAQUE);
+        hasher.putInt(opaqueValues.size());
+        hasher.putInt(value.hashCode());
+        opaqueValues.add(value);
+    }
+
+    private static void putString(Hasher hasher, String string)
+    {
+        hasher.putInt(string.length());
+        hasher.putString(string);
+    }
+}
@@ -13,20 +13,40 @@
 package org.carrot2.core;
 
 import java.io.Closeable;
+import java.lang.management.ManagementFactory;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.apache.commons.lang.StringUtils;
 import org.carrot2.core.attribute.AttributeNames;
 import org.carrot2.core.attribute.Init;
+import org.carrot2.core.attribute.Processing;
+import org.carrot2.util.CancellationToken;
+import org.carrot2.util.ExceptionUtils;
+import org.carrot2.util.ExecutorServiceUtils;
+import org.carrot2.util.LatencyHistogram;
+import org.carrot2.util.LatencyRecorder;
 import org.carrot2.util.ReflectionUtils;
 import org.carrot2.util.RollingWindowAverage;
 import org.carrot2.util.attribute.Input;
 import org.carrot2.util.attribute.Output;
 import org.simpleframework.xml.Attribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
 /**
@@ -43,6 +63,16 @@ import com.google.common.collect.Maps;
  * {@link #process(Map, Class...)} and {@link #process(Map, Object...)}.
  * </p>
  * <p>
+ * Processing can also be performed asynchronously, see
+ * {@link #processAsync(Map, Object...)}. Both synchronous and asynchronous requests can
+ * be limited in time using the {@link AttributeNames#PROCESSING_DEADLINE} attribute.
+ * </p>
+ * <p>
+ * Latencies of processing components and of their internal stages are collected in
+ * histograms and reported as percentiles in {@link #getStatistics()}. The statistics can
+ * also be exposed through JMX, see {@link #registerStatisticsMBean(ObjectName)}.
+ * </p>
+ * <p>
  * Notice for {@link IProcessingComponent} developers: if data caching is used, values of
  * {@link Output} attributes produced by the components whose output is to be cached
  * (e.g., the {@link Document} instances in case {@link IDocumentSource} output is cached)
@@ -53,6 +83,8 @@ import com.google.common.collect.Maps;
  */
 public final class Controller implements Closeable
 {
+    private final static Logger logger = LoggerFactory.getLogger(Controller.class);
+
     /** If <code>true</code>, the controller has been closed and is no longer usable. */
     private volatile boolean closed = false;
     
@@ -65,6 +97,12 @@ public final class Controller implements Closeable
      */
     IProcessingComponentManager componentManager;
 
+    /**
+     * Context key of the executor service used for asynchronous processing.
+     */
+    private static final String ASYNC_EXECUTOR_KEY = Controller.class.getName()
+        + ".asyncExecutor";
+
     /**
      * Attributes provided for this controller at initialization time.
      */
@@ -84,6 +122,17 @@ public final class Controller implements Closeable
      */
     private ProcessingStatistics statistics = new ProcessingStatistics();
 
+    /**
+     * Names under which statistics MBeans of this controller have been registered.
+     */
+    private final List<ObjectName> statisticsMBeanNames = Lists.newArrayList();
+
+    /**
+     * Limits concurrent executions of clustering algorithms, <code>null</code> if there
+     * are no limits.
+     */
+    private volatile AdmissionControl admissionControl;
+
     /**
      * Creates a simple controller with no processing component pooling and no results
      * caching. A controller with equivalent configuration can be obtained from
@@ -165,6 +214,21 @@ public final class Controller implements Closeable
         return this;
     }
 
+    /**
+     * Limits the number of concurrent executions of clustering algorithms in this
+     * controller. Requests exceeding the limits wait in a bounded queue or are rejected
+     * with a {@link ProcessingRejectedException}. The limits should be set before the
+     * controller is used for processing.
+     * 
+     * @param admissionControl the limits to use, <code>null</code> for no limits
+     * @return this controller for convenience
+     */
+    public Controller setAdmissionControl(AdmissionControl admissionControl)
+    {
+        this.admissionControl = admissionControl;
+        return this;
+    }
+
     /**
      * Convenience method for performing processing with the provided query and number of
      * results. The typical use cases for this method is fetching the specified number of
@@ -287,24 +351,192 @@ public final class Controller implements Closeable
      */
     public ProcessingResult process(Map<String, Object> attributes,
         Object... processingComponentClassesOrIds) throws ProcessingException
+    {
+        return process(attributes, createCancellationToken(attributes),
+            processingComponentClassesOrIds);
+    }
+
+    /**
+     * Asynchronously performs processing using components designated by their class. See
+     * {@link #processAsync(Map, Object...)} for details.
+     */
+    public Future<ProcessingResult> processAsync(Map<String, Object> attributes,
+        Class<?>... processingComponentClasses)
+    {
+        return processAsync(attributes, (Object []) processingComponentClasses);
+    }
+
+    /**
+     * Asynchronously performs processing using components designated by their
+     * identifiers. See {@link #processAsync(Map, Object...)} for details.
+     */
+    public Future<ProcessingResult> processAsync(Map<String, Object> attributes,
+        String... processingComponentIdsOrClassNames)
+    {
+        return processAsync(attributes, (Object []) processingComponentIdsOrClassNames);
+    }
+
+    /**
+     * Asynchronously performs processing using components designated by their
+     * identifiers or classes. Processing is performed on an internal thread pool of this
+     * controller with as many threads as there are available processors.
+     * <p>
+     * Cancelling the returned {@link Future} (regardless of the
+     * <code>mayInterruptIfRunning</code> flag) stops the processing at the next
+     * cancellation check performed by the document source, preprocessing or the
+     * clustering algorithm. The components are then recycled immediately. If the
+     * {@link AttributeNames#PROCESSING_DEADLINE} attribute is provided, the deadline is
+     * counted from the call to this method, so that the time spent waiting for a free
+     * thread also counts.
+     * </p>
+     * 
+     * @param attributes attributes to be used during processing, see
+     *            {@link #process(Map, Object...)}
+     * @param processingComponentClassesOrIds classes or identifiers of components to
+     *            perform processing in the order they should be arranged in the pipeline
+     * @return a future with the results of processing. If processing was cancelled or
+     *         the deadline has passed, {@link Future#get()} will throw an
+     *         {@link ExecutionException} caused by {@link ProcessingCancelledException}.
+     */
+    public Future<ProcessingResult> processAsync(final Map<String, Object> attributes,
+        final Object... processingComponentClassesOrIds)
     {
         checkClosed();
 
-        // Automatically initialize the controller if the caller has not done that
-        // explicitly. The extra synchronization overhead does exist, but it's very
-        // small compared to the API simplification benefits.
-        synchronized (this)
-        {
-            if (componentIdToConfiguration == null)
+        final CancellationToken cancellationToken = createCancellationToken(attributes);
+        final ProcessingFuture future = new ProcessingFuture(
+            new Callable<ProcessingResult>()
             {
-                init();
-            }
+                public ProcessingResult call() throws Exception
+                {
+                    return process(attributes, cancellationToken,
+                        processingComponentClassesOrIds);
+                }
+            }, cancellationToken);
+
+        getAsyncExecutor().execute(future);
+        return future;
+    }
+
+    /**
+     * Performs processing of a batch of requests in parallel, using the same processing
+     * components for all requests. Each request is defined by its attributes, as in
+     * {@link #process(Map, Object...)}, and is processed with the components designated
+     * by <code>processingComponentClassesOrIds</code>.
+     * <p>
+     * The requests are processed by <code>threads</code> worker threads. Each worker
+     * obtains one set of components from the component manager and uses it for all the
+     * requests it processes, resetting processing-time attributes between the requests.
+     * This saves the cost of obtaining, initializing and recycling the components for
+     * each request. If results caching is enabled, caching wrappers depend on the
+     * request attributes, so the components are obtained for each request.
+     * </p>
+     * <p>
+     * Request-level {@link Init} attributes are handled as in
+     * {@link #process(Map, Object...)}: ignored by pooled components and used to
+     * initialize components otherwise. In the latter case, a worker obtains new
+     * components whenever a request's {@link Init} attribute values differ from those
+     * its components were initialized with, so batches should be ordered by these values.
+     * </p>
+     * <p>
+     * The results are returned in the order of the requests as soon as they are
+     * available. Workers stay only a limited number of requests ahead of the consumer of
+     * the results, so that large batches can be processed in constant memory.
+     * </p>
+     * 
+     * @param requests attributes of the requests to process
+     * @param threads the number of worker threads to use
+     * @param processingComponentClassesOrIds classes or identifiers of components to
+     *            perform processing in the order they should be arranged in the pipeline
+     * @return results of the processing, in the order of <code>requests</code>. The
+     *         results should be closed if not consumed completely.
+     */
+    public BatchProcessingResults processBatch(List<Map<String, Object>> requests,
+        int threads, Object... processingComponentClassesOrIds)
+    {
+        if (threads <= 0)
+        {
+            throw new IllegalArgumentException("The number of threads must be positive: "
+                + threads);
         }
 
+        checkClosed();
+        ensureInitialized();
+
+        return new BatchProcessingResults(this, requests, threads,
+            processingComponentClassesOrIds);
+    }
+
+    /**
+     * Performs processing with the provided cancellation token.
+     */
+    private ProcessingResult process(Map<String, Object> attributes,
+        CancellationToken cancellationToken, Object... processingComponentClassesOrIds)
+        throws ProcessingException
+    {
+        return process(attributes, cancellationToken, managerProvider,
+            processingComponentClassesOrIds);
+    }
+
+    /**
+     * Creates a {@link ComponentProvider} for a worker processing requests of a batch.
+     * The provider must be disposed of when the worker is done.
+     */
+    ComponentProvider createBatchComponentProvider()
+    {
+        if (componentManager instanceof CachingProcessingComponentManager)
+        {
+            return managerProvider;
+        }
+        else
+        {
+            return new PinnedComponentProvider();
+        }
+    }
+
+    /**
+     * Performs processing of a single request of a batch.
+     */
+    ProcessingResult processBatchRequest(Map<String, Object> attributes,
+        ComponentProvider componentProvider, Object... processingComponentClassesOrIds)
+        throws ProcessingException
+    {
+        return process(attributes, createCancellationToken(attributes),
+            componentProvider, processingComponentClassesOrIds);
+    }
+
+    /**
+     * Automatically initializes the controller if the caller has not done that
+     * explicitly. The extra synchronization overhead does exist, but it's very small
+     * compared to the API simplification benefits.
+     */
+    private synchronized void ensureInitialized()
+    {
+        if (componentIdToConfiguration == null)
+        {
+            init();
+        }
+    }
+
+    /**
+     * Performs processing with the provided cancellation token, obtaining components from
+     * the provided {@link ComponentProvider}.
+     */
+    private ProcessingResult process(Map<String, Object> attributes,
+        CancellationToken cancellationToken, ComponentProvider componentProvider,
+        Object... processingComponentClassesOrIds) throws ProcessingException
+    {
+        checkClosed();
+        ensureInitialized();
+
         // Prepare components for processing
         final IProcessingComponent [] components = new IProcessingComponent [processingComponentClassesOrIds.length];
         final ProcessingComponentConfiguration [] configurations = new ProcessingComponentConfiguration [components.length];
 
+        // Admission permits of clustering algorithms, released after the components
+        // are recycled.
+        final List<AdmissionControl.Permit> permits = Lists.newArrayListWithCapacity(1);
+
         ProcessingResult processingResult = null;
         try
         {
@@ -325,6 +557,14 @@ public final class Controller implements Closeable
                 inputAttributes.putAll(attributes);
             }
 
+            // Wait until all algorithms can be executed or reject the request, before
+            // any documents are fetched.
+            if (admissionControl != null)
+            {
+                acquirePermits(admissionControl, configurations, cancellationToken,
+                    permits);
+            }
+
             // A copy of the input attributes
             final Map<String, Object> attributesCopy = Maps.newHashMap(attributes);
 
@@ -333,55 +573,76 @@ public final class Controller implements Closeable
             final Map<String, Object> resultAttributes = Maps.newHashMap(attributes);
 
             // Perform processing
-            for (int i = 0; i < components.length; i++)
+            final LatencyRecorder previousRecorder = LatencyRecorder
+                .bind(statistics.latencies);
+            final long requestStart = System.nanoTime();
+            try
             {
-                // Create a component for processing. Depending on the manager, a new
-                // component may be instantiated, a pooled one may be returned or we may
-                // get some wrapper that performs some extra actions.
-                components[i] = componentManager.prepare(
-                    configurations[i].componentClass, 
-                    configurations[i].componentId,
-                    inputAttributes, resultAttributes);
-
-                final long componentStart = System.currentTimeMillis();
-                try
-                {
-                    // It would be tempting to provide the inputAttributes map
-                    // in this invocation of performProcessing(). There is a subtle case
-                    // that prevents us from doing so. inputAttributes contains also @Init
-                    // attributes. If we provide them at processing time, useless
-                    // instances of @Init @Processing @Input attributes may be created.
-                    // See ControllerTestsPooling#testComponentConfigurationInitProcessingAttributeCreation()
-                    // for a test case.
-                    ControllerUtils.performProcessing(components[i], attributesCopy,
-                        resultAttributes);
-
-                    // Feed the output of this component as the next one's input.
-                    attributesCopy.putAll(resultAttributes);
-                }
-                finally
+                for (int i = 0; i < components.length; i++)
                 {
-                    final long componentStop = System.currentTimeMillis();
+                    // Do not bother preparing the next component if the request is dead.
+                    ControllerUtils.checkCancelled(cancellationToken);
 
-                    // Log processing time
-                    final long time = componentStop - componentStart;
+                    // Create a component for processing. Depending on the manager, a new
+                    // component may be instantiated, a pooled one may be returned or we may
+                    // get some wrapper that performs some extra actions.
+                    components[i] = componentProvider.prepare(i, configurations[i],
+                        inputAttributes, resultAttributes);
 
-                    // Count only regular processing components, omit wrappers
-                    if (IDocumentSource.class
-                        .isAssignableFrom(configurations[i].componentClass))
+                    final long componentStart = System.currentTimeMillis();
+                    final long componentStartNanos = System.nanoTime();
+                    try
                     {
-                        addTime(AttributeNames.PROCESSING_TIME_SOURCE, time,
-                            resultAttributes);
+                        // It would be tempting to provide the inputAttributes map
+                        // in this invocation of performProcessing(). There is a subtle case
+                        // that prevents us from doing so. inputAttributes contains also @Init
+                        // attributes. If we provide them at processing time, useless
+                        // instances of @Init @Processing @Input attributes may be created.
+                        // See ControllerTestsPooling#testComponentConfigurationInitProcessingAttributeCreation()
+                        // for a test case.
+                        ControllerUtils.performProcessing(components[i], attributesCopy,
+                            resultAttributes, cancellationToken);
+
+                        // Feed the output of this component as the next one's input.
+                        attributesCopy.putAll(resultAttributes);
                     }
-                    if (IClusteringAlgorithm.class
-                        .isAssignableFrom(configurations[i].componentClass))
+                    finally
                     {
-                        addTime(AttributeNames.PROCESSING_TIME_ALGORITHM, time,
-                            resultAttributes);
+                        final long componentStop = System.currentTimeMillis();
+                        statistics.latencies.recordSince(
+                            ProcessingStatistics.COMPONENT_LATENCY_PREFIX
+                                + getComponentName(configurations[i]),
+                            componentStartNanos);
+
+                        // Log processing time
+                        final long time = componentStop - componentStart;
+
+                        // Count only regular processing components, omit wrappers
+                        if (IDocumentSource.class
+                            .isAssignableFrom(configurations[i].componentClass))
+                        {
+                            addTime(AttributeNames.PROCESSING_TIME_SOURCE, time,
+                                resultAttributes);
+                        }
+                        if (IClusteringAlgorithm.class
+                            .isAssignableFrom(configurations[i].componentClass))
+                        {
+                            addTime(AttributeNames.PROCESSING_TIME_ALGORITHM, time,
+                                resultAttributes);
+                        }
+                        addTime(AttributeNames.PROCESSING_TIME_TOTAL, time, resultAttributes);
                     }
-                    addTime(AttributeNames.PROCESSING_TIME_TOTAL, time, resultAttributes);
                 }
             }
+            finally
+            {
+                statistics.latencies.recordSince(ProcessingStatistics.REQUEST_LATENCY,
+                    requestStart);
+                LatencyRecorder.bind(previousRecorder);
+            }
+
+            // Values for the components of this request only are not part of the result.
+            ControllerUtils.removeRequestScoped(resultAttributes);
 
             try {
                 processingResult = new ProcessingResult(resultAttributes);
@@ -401,12 +662,57 @@ public final class Controller implements Closeable
                 {
                     // Recycle a component. A component manager may want to e.g. return
                     // the component to its internal pool.
-                    componentManager.recycle(component, configurations[i].componentId);
+                    componentProvider.recycle(i, component, configurations[i]);
                 }
             }
+
+            for (AdmissionControl.Permit permit : permits)
+            {
+                permit.release();
+            }
+        }
+    }
+
+    /**
+     * Acquires one admission permit for each distinct clustering algorithm in the chain.
+     * Permits are acquired in the order of algorithm names, so that concurrent requests
+     * cannot deadlock. The time expected until an algorithm completes includes the median
+     * processing times of the components preceding it.
+     */
+    private void acquirePermits(AdmissionControl admission,
+        ProcessingComponentConfiguration [] configurations,
+        CancellationToken cancellationToken, List<AdmissionControl.Permit> permits)
+        throws ProcessingException
+    {
+        final SortedMap<String, Long> expectedNanos = Maps.newTreeMap();
+        long chainNanos = 0;
+        for (ProcessingComponentConfiguration configuration : configurations)
+        {
+            final String name = getComponentName(configuration);
+            chainNanos += AdmissionControl.medianNanos(statistics.latencies
+                .getHistogram(ProcessingStatistics.COMPONENT_LATENCY_PREFIX + name));
+            if (IClusteringAlgorithm.class.isAssignableFrom(configuration.componentClass))
+            {
+                expectedNanos.put(name, chainNanos);
+            }
+        }
+
+        for (Map.Entry<String, Long> entry : expectedNanos.entrySet())
+        {
+            permits.add(admission.acquire(entry.getKey(), cancellationToken,
+                entry.getValue()));
         }
     }
 
+    /**
+     * Returns the name of a component used in statistics: its id or class name.
+     */
+    private static String getComponentName(ProcessingComponentConfiguration configuration)
+    {
+        return configuration.componentId != null ? configuration.componentId
+            : configuration.componentClass.getName();
+    }
+
     /**
      * Shuts down this controller. For proper shut down, make sure this method is called
      * after all threads left the processing methods. No calls processing will be
@@ -417,6 +723,7 @@ public final class Controller implements Closeable
         if (closed) return;
         try
         {
+            unregisterStatisticsMBeans();
             if (this.context != null)
             {
                 componentManager.dispose();
@@ -494,6 +801,314 @@ public final class Controller implements Closeable
             + IProcessingComponent.class.getSimpleName() + ">");
     }
 
+    /**
+     * Creates a cancellation token for a request, with a deadline if one was specified
+     * in the request attributes.
+     */
+    private static CancellationToken createCancellationToken(
+        Map<String, Object> attributes)
+    {
+        final Object deadline = attributes.get(AttributeNames.PROCESSING_DEADLINE);
+        if (deadline == null)
+        {
+            return new CancellationToken();
+        }
+
+        final long timeoutMillis;
+        if (deadline instanceof Number)
+        {
+            timeoutMillis = ((Number) deadline).longValue();
+        }
+        else
+        {
+            try
+            {
+                timeoutMillis = Long.parseLong(deadline.toString().trim());
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Invalid value of the "
+                    + AttributeNames.PROCESSING_DEADLINE + " attribute: " + deadline);
+            }
+        }
+
+        if (timeoutMillis <= 0)
+        {
+            throw new IllegalArgumentException("The "
+                + AttributeNames.PROCESSING_DEADLINE + " attribute must be positive: "
+                + deadline);
+        }
+        return new CancellationToken(timeoutMillis);
+    }
+
+    /**
+     * Returns the executor service used by {@link #processAsync(Map, Object...)},
+     * creating it on first use. The executor is shut down when the controller is
+     * disposed of.
+     */
+    private ExecutorService getAsyncExecutor()
+    {
+        final ControllerContextImpl context = this.context;
+        if (context == null)
+        {
+            throw new IllegalStateException("Controller closed.");
+        }
+
+        synchronized (context)
+        {
+            ExecutorService service = (ExecutorService) context
+                .getAttribute(ASYNC_EXECUTOR_KEY);
+            if (service == null)
+            {
+                service = ExecutorServiceUtils.createExecutorService(Runtime
+                    .getRuntime().availableProcessors(), Controller.class);
+                context.setAttribute(ASYNC_EXECUTOR_KEY, service);
+                context.addListener(new ExecutorServiceShutdownListener(
+                    ASYNC_EXECUTOR_KEY));
+            }
+            return service;
+        }
+    }
+
+    /**
+     * Obtains processing components for requests.
+     */
+    interface ComponentProvider
+    {
+        /**
+         * Returns the component at position <code>index</code> of the processing
+         * pipeline, see {@link IProcessingComponentManager#prepare(Class, String, Map, Map)}.
+         */
+        IProcessingComponent prepare(int index,
+            ProcessingComponentConfiguration configuration,
+            Map<String, Object> inputAttributes, Map<String, Object> resultAttributes);
+
+        /**
+         * Called when the request is done with the component.
+         */
+        void recycle(int index, IProcessingComponent component,
+            ProcessingComponentConfiguration configuration);
+
+        /**
+         * Releases all components kept by this provider.
+         */
+        void dispose();
+    }
+
+    /**
+     * Obtains a component from the component manager for each request.
+     */
+    private final ComponentProvider managerProvider = new ComponentProvider()
+    {
+        public IProcessingComponent prepare(int index,
+            ProcessingComponentConfiguration configuration,
+            Map<String, Object> inputAttributes, Map<String, Object> resultAttributes)
+        {
+            return componentManager.prepare(configuration.componentClass,
+                configuration.componentId, inputAttributes, resultAttributes);
+        }
+
+        public void recycle(int index, IProcessingComponent component,
+            ProcessingComponentConfiguration configuration)
+        {
+            componentManager.recycle(component, configuration.componentId);
+        }
+
+        public void dispose()
+        {
+            // Nothing kept.
+        }
+    };
+
+    /**
+     * Obtains components from the component manager once and keeps them for subsequent
+     * requests, resetting their {@link Input} {@link Processing} attributes after each
+     * request, the same way pooled components are reset. If the component manager
+     * initializes components with request attributes, a new component is obtained
+     * whenever the request's {@link Init} {@link Input} attribute values differ from
+     * those the kept component was initialized with. Not thread-safe, each batch worker
+     * uses its own instance.
+     */
+    private final class PinnedComponentProvider implements ComponentProvider
+    {
+        private final List<PinnedComponent> components = Lists.newArrayList();
+
+        /** Pooled components are initialized without request attributes */
+        private final boolean requestInitAttributes =
+            !(componentManager instanceof PoolingProcessingComponentManager);
+
+        public IProcessingComponent prepare(int index,
+            ProcessingComponentConfiguration configuration,
+            Map<String, Object> inputAttributes, Map<String, Object> resultAttributes)
+        {
+            PinnedComponent pinned = index < components.size() ? components.get(index)
+                : null;
+            if (pinned == null)
+            {
+                pinned = pin(index, configuration, Collections.<String> emptySet(),
+                    inputAttributes);
+            }
+
+            if (requestInitAttributes
+                && !pinned.initValues.equals(select(inputAttributes, pinned.initKeys)))
+            {
+                components.set(index, null);
+                componentManager.recycle(pinned.component, configuration.componentId);
+                pinned = pin(index, configuration, pinned.initKeys, inputAttributes);
+            }
+
+            resultAttributes.putAll(pinned.initOutputAttributes);
+            return pinned.component;
+        }
+
+        /**
+         * Obtains a component initialized with the global and component-specific
+         * attributes and the request's values of <code>initKeys</code>. Other attributes
+         * of the request are not bound to the kept instance.
+         */
+        @SuppressWarnings("unchecked")
+        private PinnedComponent pin(int index,
+            ProcessingComponentConfiguration configuration, Set<String> initKeys,
+            Map<String, Object> inputAttributes)
+        {
+            final Map<String, Object> componentAttributes = Maps.newHashMap(initAttributes);
+            componentAttributes.putAll(configuration.attributes);
+            componentAttributes.putAll(select(inputAttributes, initKeys));
+
+            final Map<String, Object> outputAttributes = Maps.newHashMap();
+            final IProcessingComponent component = componentManager.prepare(
+                configuration.componentClass, configuration.componentId,
+                componentAttributes, outputAttributes);
+
+            final Map<String, Object> originalValues = Maps.newHashMap();
+            final Map<String, Object> initValues = Maps.newHashMap();
+            try
+            {
+                CachedAttributeBinder.get(component, originalValues, Input.class,
+                    Processing.class);
+                if (requestInitAttributes)
+                {
+                    CachedAttributeBinder.get(component, initValues, Input.class,
+                        Init.class);
+                }
+            }
+            catch (Exception e)
+            {
+                componentManager.recycle(component, configuration.componentId);
+                throw new ProcessingException("Could not unbind attribute values", e);
+            }
+
+            final Set<String> keys = initValues.keySet();
+            final PinnedComponent pinned = new PinnedComponent(
+                configuration.componentId, component, outputAttributes, originalValues,
+                keys, select(componentAttributes, keys));
+            if (index == components.size())
+            {
+                components.add(pinned);
+            }
+            else
+            {
+                components.set(index, pinned);
+            }
+            return pinned;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void recycle(int index, IProcessingComponent component,
+            ProcessingComponentConfiguration configuration)
+        {
+            try
+            {
+                CachedAttributeBinder.set(component, components.get(index).resetValues,
+                    false, Input.class, Processing.class);
+            }
+            catch (Exception e)
+            {
+                throw new ProcessingException("Could not reset attribute values", e);
+            }
+        }
+
+        public void dispose()
+        {
+            for (PinnedComponent pinned : components)
+            {
+                if (pinned != null)
+                {
+                    componentManager.recycle(pinned.component, pinned.componentId);
+                }
+            }
+            components.clear();
+        }
+    }
+
+    /**
+     * Returns the entries of <code>attributes</code> with the provided keys.
+     */
+    private static Map<String, Object> select(Map<String, Object> attributes,
+        Set<String> keys)
+    {
+        final Map<String, Object> result = Maps.newHashMap();
+        for (String key : keys)
+        {
+            if (attributes.containsKey(key))
+            {
+                result.put(key, attributes.get(key));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A component kept by {@link PinnedComponentProvider}.
+     */
+    private static final class PinnedComponent
+    {
+        final String componentId;
+        final IProcessingComponent component;
+        final Map<String, Object> initOutputAttributes;
+        final Map<String, Object> resetValues;
+
+        /** Keys and values of the {@link Init} {@link Input} attributes bound */
+        final Set<String> initKeys;
+        final Map<String, Object> initValues;
+
+        PinnedComponent(String componentId, IProcessingComponent component,
+            Map<String, Object> initOutputAttributes, Map<String, Object> resetValues,
+            Set<String> initKeys, Map<String, Object> initValues)
+        {
+            this.componentId = componentId;
+            this.component = component;
+            this.initOutputAttributes = initOutputAttributes;
+            this.resetValues = resetValues;
+            this.initKeys = initKeys;
+            this.initValues = initValues;
+        }
+    }
+
+    /**
+     * A {@link Future} returned from {@link Controller#processAsync(Map, Object...)}.
+     * Cancels the request's {@link CancellationToken} so that running components stop at
+     * their next cancellation check.
+     */
+    private static final class ProcessingFuture extends FutureTask<ProcessingResult>
+    {
+        private final CancellationToken cancellationToken;
+
+        ProcessingFuture(Callable<ProcessingResult> callable,
+            CancellationToken cancellationToken)
+        {
+            super(callable);
+            this.cancellationToken = cancellationToken;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning)
+        {
+            cancellationToken.cancel();
+            return super.cancel(mayInterruptIfRunning);
+        }
+    }
+
     /**
      * Adds time to the specified time attribute.
      */
@@ -520,6 +1135,50 @@ public final class Controller implements Closeable
         return statistics.getStatistics();
     }
 
+    /**
+     * Registers a {@link ControllerStatisticsMXBean} exposing statistics of this
+     * controller in the platform MBean server under the provided name. The MBean is
+     * unregistered when the controller is disposed of.
+     */
+    public void registerStatisticsMBean(ObjectName name)
+    {
+        checkClosed();
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                new StatisticsMXBean(), name);
+        }
+        catch (JMException e)
+        {
+            throw ExceptionUtils.wrapAsRuntimeException(e);
+        }
+
+        synchronized (statisticsMBeanNames)
+        {
+            statisticsMBeanNames.add(name);
+        }
+    }
+
+    private void unregisterStatisticsMBeans()
+    {
+        synchronized (statisticsMBeanNames)
+        {
+            for (ObjectName name : statisticsMBeanNames)
+            {
+                try
+                {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+                }
+                catch (JMException e)
+                {
+                    logger.warn(
+                        "Could not unregister statistics MBean: " + name, e);
+                }
+            }
+            statisticsMBeanNames.clear();
+        }
+    }
+
     /**
      * Some managers may want to use this interface to provide additional statistics to
      * the controller.
@@ -537,6 +1196,12 @@ public final class Controller implements Closeable
      */
     final class ProcessingStatistics
     {
+        /** Prefix of component latency histogram names. */
+        static final String COMPONENT_LATENCY_PREFIX = "component.";
+
+        /** Name of the whole request latency histogram. */
+        static final String REQUEST_LATENCY = "request";
+
         /** Total queries processed (including erroneous) */
         long totalQueries = 0;
 
@@ -555,6 +1220,9 @@ public final class Controller implements Closeable
         RollingWindowAverage totalTimeAverage = new RollingWindowAverage(
             5 * RollingWindowAverage.MINUTE, 10 * RollingWindowAverage.SECOND);
 
+        /** Latencies of components and their internal stages, lock-free. */
+        final LatencyRecorder latencies = new LatencyRecorder();
+
         /**
          * Updates the statistics
          */
@@ -592,6 +1260,16 @@ public final class Controller implements Closeable
                 extraStats = Collections.emptyMap();
             }
 
+            final List<LatencyPercentiles> latencyPercentiles = Lists.newArrayList();
+            for (Map.Entry<String, LatencyHistogram> entry : latencies.getHistograms()
+                .entrySet())
+            {
+                latencyPercentiles.add(new LatencyPercentiles(entry.getKey(), entry
+                    .getValue()));
+            }
+
+            final AdmissionControl admission = admissionControl;
+
             // The stats may be still a little off because synchronization does not
             // affect component manager specific stats. Complete accuracy is not
             // worth the extra synchronizations though.
@@ -610,7 +1288,14 @@ public final class Controller implements Closeable
                     totalTimeAverage.getUpdatesInWindow(),
                     totalTimeAverage.getWindowSizeMillis(),
                     (Long) extraStats.get(CachingProcessingComponentManager.CACHE_MISSES),
-                    (Long) extraStats.get(CachingProcessingComponentManager.CACHE_HITS_TOTAL));
+                    (Long) extraStats.get(CachingProcessingComponentManager.CACHE_HITS_TOTAL),
+                    (Long) extraStats.get(CachingProcessingComponentManager.CACHE_EVICTIONS),
+                    (Long) extraStats.get(CachingProcessingComponentManager.CACHE_PERSISTENT_HITS),
+                    (Long) extraStats.get(PoolingProcessingComponentManager.POOL_INSTANTIATIONS),
+                    (Long) extraStats.get(PoolingProcessingComponentManager.POOL_BORROW_WAITS),
+                    admission != null ? Long.valueOf(admission.getQueueDepth()) : null,
+                    admission != null ? Long.valueOf(admission.getRejectionCount()) : null,
+                    latencyPercentiles);
             }
         }
 
@@ -624,4 +1309,108 @@ public final class Controller implements Closeable
             }
         }
     }
+
+    /**
+     * Exposes {@link ProcessingStatistics} through JMX.
+     */
+    private final class StatisticsMXBean implements ControllerStatisticsMXBean
+    {
+        public long getTotalQueries()
+        {
+            synchronized (statistics)
+            {
+                return statistics.totalQueries;
+            }
+        }
+
+        public long getGoodQueries()
+        {
+            synchronized (statistics)
+            {
+                return statistics.goodQueries;
+            }
+        }
+
+        public Map<String, Long> getLatencyCounts()
+        {
+            final Map<String, Long> result = Maps.newTreeMap();
+            for (Map.Entry<String, LatencyHistogram> entry : statistics.latencies
+                .getHistograms().entrySet())
+            {
+                result.put(entry.getKey(), entry.getValue().getCount());
+            }
+            return result;
+        }
+
+        public Map<String, Double> getLatencyMeans()
+        {
+            final Map<String, Double> result = Maps.newTreeMap();
+            for (Map.Entry<String, LatencyHistogram> entry : statistics.latencies
+                .getHistograms().entrySet())
+            {
+                result.put(entry.getKey(),
+                    LatencyPercentiles.toMillis(entry.getValue().getMeanNanos()));
+            }
+            return result;
+        }
+
+        public Map<String, Double> getLatencyMedians()
+        {
+            return getLatencyPercentiles(50);
+        }
+
+        public Map<String, Double> getLatency99thPercentiles()
+        {
+            return getLatencyPercentiles(99);
+        }
+
+        public Map<String, Double> getLatency999thPercentiles()
+        {
+            return getLatencyPercentiles(99.9);
+        }
+
+        public Map<String, Double> getLatencyMaximums()
+        {
+            return getLatencyPercentiles(100);
+        }
+
+        public double getLatencyPercentile(String name, double percentile)
+        {
+            final LatencyHistogram histogram = statistics.latencies.getHistograms().get(
+                name);
+            return histogram != null ? LatencyPercentiles.toMillis(histogram
+                .getValueAtPercentile(percentile)) : -1;
+        }
+
+        public Map<String, Integer> getAdmissionQueueDepths()
+        {
+            final AdmissionControl admission = admissionControl;
+            return admission != null ? admission.getQueueDepths() : Collections
+                .<String, Integer> emptyMap();
+        }
+
+        public Map<String, Long> getAdmissionRejections()
+        {
+            final AdmissionControl admission = admissionControl;
+            return admission != null ? admission.getRejectionCounts() : Collections
+                .<String, Long> emptyMap();
+        }
+
+        public void resetLatencies()
+        {
+            statistics.latencies.reset();
+        }
+
+        private Map<String, Double> getLatencyPercentiles(double percentile)
+        {
+            final Map<String, Double> result = Maps.newTreeMap();
+            for (Map.Entry<String, LatencyHistogram> entry : statistics.latencies
+                .getHistograms().entrySet())
+            {
+                result.put(entry.getKey(), LatencyPercentiles.toMillis(entry.getValue()
+                    .getValueAtPercentile(percentile)));
+            }
+            return result;
+        }
+    }
 }
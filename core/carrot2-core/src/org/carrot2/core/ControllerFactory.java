@@ -12,9 +12,14 @@
 
 package org.carrot2.core;
 
+import java.util.List;
+
 import org.carrot2.util.annotations.AspectModified;
+import org.carrot2.util.pool.BoundedConcurrentPool;
 import org.carrot2.util.pool.FixedSizePool;
 
+import com.google.common.collect.Lists;
+
 /**
  * Creates {@link Controller}s in a number of common configurations. The most useful
  * configurations are:
@@ -55,9 +60,9 @@ public final class ControllerFactory
     /**
      * Creates a controller with processing component pooling but with no results caching.
      * The returned controller will maintain an internal pool of processing components, so
-     * that they are reused between processing requests. Soft references are used to cache
-     * component instances. There is no upper bound on the number of instances the pool
-     * may cache.
+     * that they are reused between processing requests. There is no upper bound on the
+     * number of instances in use at the same time, but only a few idle instances of each
+     * component are kept in the pool.
      * <p>
      * Use this controller in long-running applications and when your processing
      * components are expensive to create. For applications that handle large numbers of
@@ -66,6 +71,7 @@ public final class ControllerFactory
      * 
      * @see #create(boolean, Class...)
      * @see #createPooling(int)
+     * @see #createPooling(int, int, int)
      */
     @SuppressWarnings("unchecked")
     public static Controller createPooling()
@@ -97,6 +103,36 @@ public final class ControllerFactory
         return create(instancePoolSize);
     }
 
+    /**
+     * Creates a controller with processing component pooling but with no results caching.
+     * The returned controller will maintain an internal bounded, hard-referenced pool of
+     * processing components, so that they are reused between processing requests. If
+     * <code>minIdlePerKey</code> is greater than zero, instances of all configured
+     * components are created when the controller is initialized.
+     * <p>
+     * Use this controller in long-running applications when your processing components
+     * are expensive to create and you need to control the number of instances in use.
+     * The number of instantiations and of requests that waited for an instance are
+     * available in {@link Controller#getStatistics()}.
+     * </p>
+     * 
+     * @param maxActivePerKey Maximum number of instances of a single component class-ID
+     *            pair in use at the same time, <code>0</code> for no limit. Requests
+     *            exceeding the limit wait for an instance to be returned to the pool.
+     * @param maxIdlePerKey Maximum number of idle instances of a single component
+     *            class-ID pair kept in the pool.
+     * @param minIdlePerKey Number of instances of a single component class-ID pair to
+     *            create during controller initialization.
+     * @see #create(int, int, int, Class...)
+     * @see BoundedConcurrentPool
+     */
+    @SuppressWarnings("unchecked")
+    public static Controller createPooling(int maxActivePerKey, int maxIdlePerKey,
+        int minIdlePerKey)
+    {
+        return create(maxActivePerKey, maxIdlePerKey, minIdlePerKey);
+    }
+
     /**
      * Creates a controller with no processing component pooling but with results caching.
      * The returned controller will maintain a cache of the processing results. For each
@@ -124,6 +160,24 @@ public final class ControllerFactory
         return create(false, cachedProcessingComponents);
     }
 
+    /**
+     * Creates a controller with no processing component pooling but with results caching
+     * performed according to the provided cache configurations. Each configuration
+     * defines a separate cache with its own capacity and expiration settings, so that,
+     * for example, the results of document sources and clustering algorithms can be
+     * given separate budgets.
+     * 
+     * @param configuration configuration of the first cache
+     * @param configurations configurations of further caches
+     * @see #createCaching(Class...)
+     */
+    public static Controller createCaching(CacheConfiguration configuration,
+        CacheConfiguration... configurations)
+    {
+        return new Controller(addCachingManager(new SimpleProcessingComponentManager(),
+            Lists.asList(configuration, configurations)));
+    }
+
     /**
      * Creates a controller with processing component pooling and results caching. The
      * returned controller combines processing component pooling and processing results
@@ -144,6 +198,22 @@ public final class ControllerFactory
         return create(true, cachedProcessingComponents);
     }
 
+    /**
+     * Creates a controller with processing component pooling and results caching
+     * performed according to the provided cache configurations. Each configuration
+     * defines a separate cache with its own capacity and expiration settings.
+     * 
+     * @param configuration configuration of the first cache
+     * @param configurations configurations of further caches
+     * @see #createCachingPooling(Class...)
+     */
+    public static Controller createCachingPooling(CacheConfiguration configuration,
+        CacheConfiguration... configurations)
+    {
+        return new Controller(addCachingManager(new PoolingProcessingComponentManager(),
+            Lists.asList(configuration, configurations)));
+    }
+
     /**
      * Creates a controller with the specified pooling and caching settings.
      * 
@@ -191,6 +261,34 @@ public final class ControllerFactory
 
         return new Controller(addCachingManager(baseManager, cachedProcessingComponents));
     }
+
+    /**
+     * Creates a controller with the specified bounded pooling and caching settings.
+     * 
+     * @param maxActivePerKey Maximum number of instances of a single component class-ID
+     *            pair in use at the same time, <code>0</code> for no limit.
+     * @param maxIdlePerKey Maximum number of idle instances of a single component
+     *            class-ID pair kept in the pool.
+     * @param minIdlePerKey Number of instances of a single component class-ID pair to
+     *            create during controller initialization.
+     * @param cachedProcessingComponents classes of components whose output should be
+     *            cached by the controller. If a superclass is provided here, e.g.
+     *            {@link IDocumentSource}, all its subclasses will be subject to caching.
+     *            If {@link IProcessingComponent} is provided here, output of all
+     *            components will be cached.
+     * @see BoundedConcurrentPool
+     */
+    public static Controller create(int maxActivePerKey, int maxIdlePerKey,
+        int minIdlePerKey,
+        Class<? extends IProcessingComponent>... cachedProcessingComponents)
+    {
+        final IProcessingComponentManager baseManager = 
+            new PoolingProcessingComponentManager(
+                new BoundedConcurrentPool<IProcessingComponent, String>(maxActivePerKey,
+                    maxIdlePerKey, minIdlePerKey));
+
+        return new Controller(addCachingManager(baseManager, cachedProcessingComponents));
+    }
     
     /**
      * Adds caching manager wrapper if caching is requested.
@@ -206,4 +304,14 @@ public final class ControllerFactory
         return new CachingProcessingComponentManager(baseManager,
             cachedProcessingComponents);
     }
+
+    /**
+     * Adds caching manager wrapper with the provided cache configurations.
+     */
+    @AspectModified("Throws an exception in .NET")
+    private static IProcessingComponentManager addCachingManager(
+        IProcessingComponentManager baseManager, List<CacheConfiguration> configurations)
+    {
+        return new CachingProcessingComponentManager(baseManager, configurations);
+    }
 }
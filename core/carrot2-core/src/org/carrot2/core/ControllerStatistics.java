@@ -13,8 +13,10 @@
 package org.carrot2.core;
 
 import java.io.OutputStream;
+import java.util.List;
 
 import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.ElementList;
 import org.simpleframework.xml.Root;
 import org.simpleframework.xml.core.Persister;
 
@@ -107,12 +109,71 @@ public final class ControllerStatistics
     @Attribute(name = "cache-hits-total", required = false)
     public final Long cacheHitsTotal;
 
+    /**
+     * Number of results evicted from cache due to size, weight or expiration limits. May
+     * be null if the controller does not perform caching.
+     */
+    @Attribute(name = "cache-evictions", required = false)
+    public final Long cacheEvictions;
+
+    /**
+     * Number of requests served from the persistent cache. May be null if the controller
+     * does not perform caching.
+     */
+    @Attribute(name = "cache-persistent-hits", required = false)
+    public final Long cachePersistentHits;
+
+    /**
+     * Number of processing component instances created by the component pool. May be
+     * null if the controller does not perform pooling or its pool does not track
+     * instantiations.
+     */
+    @Attribute(name = "pool-instantiations", required = false)
+    public final Long poolInstantiations;
+
+    /**
+     * Number of requests that had to wait for a pooled processing component instance
+     * because the pool's limit of active instances was reached. May be null if the
+     * controller does not perform pooling or its pool does not track waits.
+     */
+    @Attribute(name = "pool-borrow-waits", required = false)
+    public final Long poolBorrowWaits;
+
+    /**
+     * Number of requests waiting for admission at the time the statistics were taken.
+     * May be null if the controller does not perform admission control.
+     * 
+     * @see AdmissionControl
+     */
+    @Attribute(name = "admission-queue-depth", required = false)
+    public final Long admissionQueueDepth;
+
+    /**
+     * Number of requests rejected by admission control. May be null if the controller
+     * does not perform admission control.
+     * 
+     * @see AdmissionControl
+     */
+    @Attribute(name = "admission-rejections", required = false)
+    public final Long admissionRejections;
+
+    /**
+     * Latency percentiles of processing components and their internal stages, sorted by
+     * name. Unlike the averages above, these are computed over all requests handled by
+     * the controller.
+     */
+    @ElementList(name = "latencies", required = false)
+    public final List<LatencyPercentiles> latencies;
+
     ControllerStatistics(long totalQueries, long goodQueries,
         double algorithmTimeAverageInWindow, long algorithmTimeMeasurementsInWindow,
         long algorithmTimeWindowSize, double sourceTimeAverageInWindow,
         long sourceTimeMeasurementsInWindow, long sourceTimeWindowSize,
         double totalTimeAverageInWindow, long totalTimeMeasurementsInWindow,
-        long totalTimeWindowSize, Long cacheMisses, Long cacheHitsTotal)
+        long totalTimeWindowSize, Long cacheMisses, Long cacheHitsTotal,
+        Long cacheEvictions, Long cachePersistentHits, Long poolInstantiations,
+        Long poolBorrowWaits, Long admissionQueueDepth, Long admissionRejections,
+        List<LatencyPercentiles> latencies)
     {
         this.totalQueries = totalQueries;
         this.goodQueries = goodQueries;
@@ -131,6 +192,16 @@ public final class ControllerStatistics
 
         this.cacheMisses = cacheMisses;
         this.cacheHitsTotal = cacheHitsTotal;
+        this.cacheEvictions = cacheEvictions;
+        this.cachePersistentHits = cachePersistentHits;
+
+        this.poolInstantiations = poolInstantiations;
+        this.poolBorrowWaits = poolBorrowWaits;
+
+        this.admissionQueueDepth = admissionQueueDepth;
+        this.admissionRejections = admissionRejections;
+
+        this.latencies = latencies;
     }
 
     /**
@@ -0,0 +1,75 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link Controller}'s statistics, see
+ * {@link Controller#registerStatisticsMBean(javax.management.ObjectName)}. Latencies are
+ * reported in milliseconds, keyed by component or stage name (see
+ * {@link LatencyPercentiles#name}).
+ */
+public interface ControllerStatisticsMXBean
+{
+    /** @see ControllerStatistics#totalQueries */
+    long getTotalQueries();
+
+    /** @see ControllerStatistics#goodQueries */
+    long getGoodQueries();
+
+    /** Number of latency measurements per component or stage. */
+    Map<String, Long> getLatencyCounts();
+
+    /** Mean latency per component or stage. */
+    Map<String, Double> getLatencyMeans();
+
+    /** Median latency per component or stage. */
+    Map<String, Double> getLatencyMedians();
+
+    /** 99th percentile of latency per component or stage. */
+    Map<String, Double> getLatency99thPercentiles();
+
+    /** 99.9th percentile of latency per component or stage. */
+    Map<String, Double> getLatency999thPercentiles();
+
+    /** Maximum latency per component or stage. */
+    Map<String, Double> getLatencyMaximums();
+
+    /**
+     * Returns the latency of the provided component or stage at the provided percentile
+     * (between 0 and 100), or <code>-1</code> if there is no such component or stage.
+     */
+    double getLatencyPercentile(String name, double percentile);
+
+    /**
+     * Number of requests waiting for admission per clustering algorithm, empty if the
+     * controller does not perform admission control.
+     * 
+     * @see Controller#setAdmissionControl(AdmissionControl)
+     */
+    Map<String, Integer> getAdmissionQueueDepths();
+
+    /**
+     * Number of requests rejected by admission control per clustering algorithm, empty
+     * if the controller does not perform admission control.
+     * 
+     * @see Controller#setAdmissionControl(AdmissionControl)
+     */
+    Map<String, Long> getAdmissionRejections();
+
+    /**
+     * Clears all latency histograms.
+     */
+    void resetLatencies();
+}
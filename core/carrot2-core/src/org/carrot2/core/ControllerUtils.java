@@ -12,9 +12,12 @@
 
 package org.carrot2.core;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 import org.carrot2.core.attribute.*;
+import org.carrot2.util.CancellationToken;
 import org.carrot2.util.attribute.*;
 
 import com.google.common.base.Predicates;
@@ -73,8 +76,8 @@ final class ControllerUtils
             // Check if we need to do binding.
             if (processingComponent.getClass().getAnnotation(Bindable.class) != null)
             {
-                AttributeBinder.set(processingComponent, attributes, Input.class,
-                    Processing.class);
+                CachedAttributeBinder.set(processingComponent, attributes, true,
+                    Input.class, Processing.class);
             }
 
             processingComponent.beforeProcessing();
@@ -100,14 +103,71 @@ final class ControllerUtils
     public static void performProcessing(IProcessingComponent processingComponent,
         Map<String, Object> inputAttributes, Map<String, Object> outputAttributes)
     {
+        performProcessing(processingComponent, inputAttributes, outputAttributes,
+            CancellationToken.current());
+    }
+
+    /**
+     * Performs processing with the provided {@link IProcessingComponent}, binding
+     * <code>cancellationToken</code> to the current thread for the duration of all
+     * processing hooks. If the token gets cancelled, a
+     * {@link ProcessingCancelledException} is thrown.
+     */
+    public static void performProcessing(IProcessingComponent processingComponent,
+        Map<String, Object> inputAttributes, Map<String, Object> outputAttributes,
+        CancellationToken cancellationToken)
+    {
+        final CancellationToken previous = CancellationToken.bind(cancellationToken);
         try
         {
-            beforeProcessing(processingComponent, inputAttributes);
-            processingComponent.process();
+            checkCancelled(cancellationToken);
+            try
+            {
+                beforeProcessing(processingComponent, inputAttributes);
+                processingComponent.process();
+            }
+            finally
+            {
+                afterProcessing(processingComponent, outputAttributes);
+            }
+        }
+        catch (final CancellationException e)
+        {
+            throw new ProcessingCancelledException(e.getMessage(), e);
         }
         finally
         {
-            afterProcessing(processingComponent, outputAttributes);
+            CancellationToken.bind(previous);
+        }
+    }
+
+    /**
+     * Throws a {@link ProcessingCancelledException} if the provided token is cancelled.
+     */
+    public static void checkCancelled(CancellationToken cancellationToken)
+    {
+        try
+        {
+            cancellationToken.throwIfCancelled();
+        }
+        catch (final CancellationException e)
+        {
+            throw new ProcessingCancelledException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Removes {@link IRequestScoped} values from the provided attributes map.
+     */
+    public static void removeRequestScoped(Map<String, Object> attributes)
+    {
+        final Iterator<Object> i = attributes.values().iterator();
+        while (i.hasNext())
+        {
+            if (i.next() instanceof IRequestScoped)
+            {
+                i.remove();
+            }
         }
     }
 
@@ -126,7 +186,7 @@ final class ControllerUtils
             // Check if we need to do binding.
             if (processingComponent.getClass().getAnnotation(Bindable.class) != null)
             {
-                AttributeBinder.get(processingComponent, outputAttributesWithNulls,
+                CachedAttributeBinder.get(processingComponent, outputAttributesWithNulls,
                     Output.class, Processing.class);
             }
             attributes.putAll(Maps.filterValues(outputAttributesWithNulls,
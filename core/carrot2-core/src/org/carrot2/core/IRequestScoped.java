@@ -0,0 +1,24 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+/**
+ * Marks values of {@link org.carrot2.core.attribute.Processing} output attributes that
+ * are only meaningful to the following components of the same request. The
+ * {@link Controller} does not include such values in {@link ProcessingResult}s and
+ * {@link CachingProcessingComponentManager} neither caches them nor uses them in cache
+ * keys.
+ */
+public interface IRequestScoped
+{
+}
@@ -0,0 +1,78 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+import org.carrot2.util.LatencyHistogram;
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Root;
+
+/**
+ * A snapshot of the latency distribution of a processing component or an internal
+ * processing stage, part of {@link ControllerStatistics}. All times are in
+ * milliseconds.
+ */
+@Root(name = "latency")
+public final class LatencyPercentiles
+{
+    /**
+     * Name of the component or stage, e.g. <code>component.lingo</code> or
+     * <code>preprocessing.tokenization</code>.
+     */
+    @Attribute(name = "name")
+    public final String name;
+
+    /** Number of measurements. */
+    @Attribute(name = "count")
+    public final long count;
+
+    /** Mean time. */
+    @Attribute(name = "mean")
+    public final double mean;
+
+    /** Median time. */
+    @Attribute(name = "p50")
+    public final double p50;
+
+    /** 90th percentile of time. */
+    @Attribute(name = "p90")
+    public final double p90;
+
+    /** 99th percentile of time. */
+    @Attribute(name = "p99")
+    public final double p99;
+
+    /** 99.9th percentile of time. */
+    @Attribute(name = "p999")
+    public final double p999;
+
+    /** Maximum time. */
+    @Attribute(name = "max")
+    public final double max;
+
+    LatencyPercentiles(String name, LatencyHistogram histogram)
+    {
+        this.name = name;
+        this.count = histogram.getCount();
+        this.mean = toMillis(histogram.getMeanNanos());
+        this.p50 = toMillis(histogram.getValueAtPercentile(50));
+        this.p90 = toMillis(histogram.getValueAtPercentile(90));
+        this.p99 = toMillis(histogram.getValueAtPercentile(99));
+        this.p999 = toMillis(histogram.getValueAtPercentile(99.9));
+        this.max = toMillis(histogram.getMaxNanos());
+    }
+
+    static double toMillis(double nanos)
+    {
+        return nanos / 1e6;
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import org.carrot2.core.Controller.IControllerStatisticsProvider;
 import org.carrot2.core.attribute.Init;
 import org.carrot2.core.attribute.Processing;
 import org.carrot2.util.ExceptionUtils;
@@ -36,12 +37,12 @@ import org.carrot2.util.attribute.AttributeBindingException;
 import org.carrot2.util.attribute.BindableUtils;
 import org.carrot2.util.attribute.Input;
 import org.carrot2.util.attribute.Output;
+import org.carrot2.util.pool.BoundedConcurrentPool;
 import org.carrot2.util.pool.IActivationListener;
 import org.carrot2.util.pool.IDisposalListener;
 import org.carrot2.util.pool.IInstantiationListener;
 import org.carrot2.util.pool.IParameterizedPool;
 import org.carrot2.util.pool.IPassivationListener;
-import org.carrot2.util.pool.SoftUnboundedPool;
 import org.carrot2.util.resource.IResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,8 +54,22 @@ import com.google.common.collect.Maps;
 /**
  * An {@link IProcessingComponentManager} that pools instances of processing components.
  */
-public class PoolingProcessingComponentManager implements IProcessingComponentManager
+public class PoolingProcessingComponentManager implements IProcessingComponentManager,
+    IControllerStatisticsProvider
 {
+    /**
+     * Default maximum number of idle instances kept for each component class-id pair in
+     * the default pool.
+     */
+    static final int DEFAULT_MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime()
+        .availableProcessors());
+
+    /** Number of component instances created, see {@link BoundedConcurrentPool}. */
+    final static String POOL_INSTANTIATIONS = "pool.instantiations";
+
+    /** Number of borrows that waited for an instance, see {@link BoundedConcurrentPool}. */
+    final static String POOL_BORROW_WAITS = "pool.borrow.waits";
+
     /** Controller context */
     private IControllerContext context;
 
@@ -78,11 +93,14 @@ public class PoolingProcessingComponentManager implements IProcessingComponentMa
 
     /**
      * Creates a new {@link PoolingProcessingComponentManager} using the default pool
-     * implementation {@link SoftUnboundedPool}).
+     * implementation: a {@link BoundedConcurrentPool} with no limit on the number of
+     * active instances, keeping at most {@link #DEFAULT_MAX_IDLE} idle instances of each
+     * component.
      */
     public PoolingProcessingComponentManager()
     {
-        this(new SoftUnboundedPool<IProcessingComponent, String>());
+        this(new BoundedConcurrentPool<IProcessingComponent, String>(0,
+            DEFAULT_MAX_IDLE, 0));
     }
 
     /**
@@ -117,6 +135,34 @@ public class PoolingProcessingComponentManager implements IProcessingComponentMa
         this.initAttributes = Maps.newHashMap(attributes);
         this.componentIdToConfiguration = ProcessingComponentConfiguration
             .indexByComponentId(configurations);
+
+        // Eagerly create instances of the configured components, if the pool
+        // keeps a minimum number of them.
+        if (componentPool instanceof BoundedConcurrentPool<?, ?>)
+        {
+            final BoundedConcurrentPool<IProcessingComponent, String> pool = 
+                (BoundedConcurrentPool<IProcessingComponent, String>) componentPool;
+            for (ProcessingComponentConfiguration configuration : configurations)
+            {
+                try
+                {
+                    pool.preInstantiate(configuration.componentClass,
+                        configuration.componentId);
+                }
+                catch (InstantiationException e)
+                {
+                    throw new ComponentInitializationException(
+                        "Could not instantiate component class: "
+                            + configuration.componentClass.getName(), e);
+                }
+                catch (IllegalAccessException e)
+                {
+                    throw new ComponentInitializationException(
+                        "Could not instantiate component class: "
+                            + configuration.componentClass.getName(), e);
+                }
+            }
+        }
     }
 
     @Override
@@ -163,6 +209,18 @@ public class PoolingProcessingComponentManager implements IProcessingComponentMa
         componentPool.dispose();
     }
 
+    public Map<String, Object> getStatistics()
+    {
+        final Map<String, Object> stats = Maps.newHashMap();
+        if (componentPool instanceof BoundedConcurrentPool<?, ?>)
+        {
+            final BoundedConcurrentPool<?, ?> pool = (BoundedConcurrentPool<?, ?>) componentPool;
+            stats.put(POOL_INSTANTIATIONS, pool.getInstantiationCount());
+            stats.put(POOL_BORROW_WAITS, pool.getBorrowWaitCount());
+        }
+        return stats;
+    }
+
     /**
      * Initializes newly created component instances, remembers attribute values so that
      * they can be reset after the component gets returned to the pool.
@@ -373,7 +431,7 @@ public class PoolingProcessingComponentManager implements IProcessingComponentMa
             final Map<String, Object> originalValues = Maps.newHashMap();
             try
             {
-                AttributeBinder.get(processingComponent, originalValues, Input.class,
+                CachedAttributeBinder.get(processingComponent, originalValues, Input.class,
                     Processing.class);
 
                 resetValues.put(new ReferenceEquality(processingComponent),
@@ -397,8 +455,8 @@ public class PoolingProcessingComponentManager implements IProcessingComponentMa
                 final Map<String, Object> originalAttributes = resetValues
                     .get(new ReferenceEquality(processingComponent));
                 if (originalAttributes != null) {
-                    AttributeBinder.set(processingComponent, originalAttributes, false,
-                        Input.class, Processing.class);
+                    CachedAttributeBinder.set(processingComponent, originalAttributes,
+                        false, Input.class, Processing.class);
                 }
             }
             catch (Exception e)
@@ -0,0 +1,40 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+/**
+ * Exception thrown if processing was cancelled before completion, either explicitly
+ * (e.g. through the {@link java.util.concurrent.Future} returned from
+ * {@link Controller#processAsync(java.util.Map, Object...)}) or because the processing
+ * deadline has passed.
+ * 
+ * @see org.carrot2.core.attribute.AttributeNames#PROCESSING_DEADLINE
+ */
+@SuppressWarnings("serial")
+public class ProcessingCancelledException extends ProcessingException
+{
+    public ProcessingCancelledException(String message)
+    {
+        super(message);
+    }
+
+    public ProcessingCancelledException(Throwable t)
+    {
+        super(t);
+    }
+
+    public ProcessingCancelledException(String message, Throwable t)
+    {
+        super(message, t);
+    }
+}
@@ -0,0 +1,34 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.core;
+
+/**
+ * Exception thrown if a request was not admitted for processing because the controller
+ * is overloaded, see {@link AdmissionControl}. No processing has been performed for the
+ * rejected clustering algorithm, so the request can be safely retried later.
+ */
+@SuppressWarnings("serial")
+public class ProcessingRejectedException extends ProcessingException
+{
+    /**
+     * The estimated number of seconds after which the request may be retried, always
+     * greater than zero.
+     */
+    public final int retryAfterSeconds;
+
+    public ProcessingRejectedException(String message, int retryAfterSeconds)
+    {
+        super(message);
+        this.retryAfterSeconds = Math.max(1, retryAfterSeconds);
+    }
+}
@@ -35,6 +35,11 @@ public final class AttributeNames
      */
     public static final String QUERY = "query";
 
+    /**
+     * @see CommonAttributesDescriptor.Keys#PROCESSING_DEADLINE
+     */
+    public static final String PROCESSING_DEADLINE = "processing-deadline";
+
     /**
      * @see CommonAttributesDescriptor.Keys#RESULTS_TOTAL
      */
@@ -68,6 +68,20 @@ public final class CommonAttributes
     @Label("Query")
     public String query;
 
+    /**
+     * Processing deadline, in milliseconds. If set, processing of the request will be
+     * cancelled once the specified time has elapsed since the controller accepted the
+     * request and a {@link ProcessingCancelledException} will be thrown. Document
+     * sources, preprocessing and the clustering algorithms check the deadline
+     * periodically, so the actual processing time may slightly exceed the deadline.
+     */
+    @Input
+    @Attribute(key = "processing-deadline")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(DefaultGroups.QUERY)
+    @Label("Processing deadline")
+    public Long processingDeadline;
+
     /**
      * Estimated total number of matching documents.
      */
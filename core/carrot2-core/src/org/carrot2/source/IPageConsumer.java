@@ -0,0 +1,43 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.source;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.IRequestScoped;
+
+/**
+ * Receives pages of documents fetched for one request by a {@link MultipageSearchEngine}
+ * and is passed on to the following components of the request, which may use the results
+ * of its work.
+ * 
+ * @see IPageListener
+ * @see MultipageSearchEngine#pageConsumer
+ */
+public interface IPageConsumer extends IRequestScoped
+{
+    /**
+     * Called once for each fetched page. The method may be called concurrently from
+     * several fetching threads and must not modify the documents.
+     */
+    public void pageFetched(List<Document> documents);
+
+    /**
+     * Called once all pages are fetched, with the documents the source returns. Any state
+     * kept for the other fetched documents, for example those with duplicated URLs,
+     * should be dropped.
+     */
+    public void retainDocuments(Collection<Document> documents);
+}
@@ -0,0 +1,31 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.source;
+
+/**
+ * Creates {@link IPageConsumer}s that receive pages of documents fetched by a
+ * {@link MultipageSearchEngine} as soon as they arrive, before the other pages are
+ * fetched. Implementations can use this to perform work on the documents (e.g.
+ * tokenization) in parallel with waiting for the remaining pages. A listener may be
+ * shared by many requests, the state of each request should be kept by its consumer.
+ * 
+ * @see MultipageSearchEngine#pageListener
+ */
+public interface IPageListener
+{
+    /**
+     * Called once for each request, before its pages are fetched. Returns the consumer of
+     * the pages of this request.
+     */
+    public IPageConsumer requestStarted();
+}
@@ -17,8 +17,11 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import org.carrot2.core.*;
+import org.carrot2.core.attribute.Internal;
 import org.carrot2.core.attribute.Processing;
+import org.carrot2.util.CancellationToken;
 import org.carrot2.util.attribute.*;
+import org.carrot2.util.attribute.constraint.ImplementingClasses;
 
 import com.google.common.base.Predicate;
 
@@ -46,6 +49,36 @@ public abstract class MultipageSearchEngine extends SearchEngineBase
     @Group(DefaultGroups.SOURCE_PAGING)
     public SearchMode searchMode = SearchMode.SPECULATIVE;
 
+    /**
+     * Processes each page of search results as soon as it is fetched, in parallel with
+     * fetching of the remaining pages. If <code>null</code>, the fetched pages are only
+     * collected.
+     */
+    @Processing
+    @Input
+    @Attribute(key = "page-listener")
+    @Level(AttributeLevel.ADVANCED)
+    @Label("Page listener")
+    @Group(DefaultGroups.SOURCE_PAGING)
+    @ImplementingClasses(classes = {}, strict = false)
+    public IPageListener pageListener;
+
+    /**
+     * The consumer of the pages fetched for the current request, created by the
+     * {@link #pageListener}. It is passed on to the following components of the request,
+     * but not included in the processing results.
+     */
+    @Processing
+    @Output
+    @Internal
+    @Attribute(key = "page-consumer")
+    public IPageConsumer pageConsumer;
+
+    /**
+     * How often to check for request cancellation while waiting for search results.
+     */
+    private static final long CANCELLATION_CHECK_INTERVAL_MILLIS = 50;
+
     /**
      * Run a request the search engine's API, setting <code>documents</code> to the set of
      * returned documents.
@@ -53,6 +86,7 @@ public abstract class MultipageSearchEngine extends SearchEngineBase
     protected void process(MultipageSearchEngineMetadata metadata,
         ExecutorService executor) throws ProcessingException
     {
+        pageConsumer = pageListener != null ? pageListener.requestStarted() : null;
         final SearchEngineResponse [] responses = runQuery(query, start, results,
             metadata, executor);
 
@@ -92,6 +126,11 @@ public abstract class MultipageSearchEngine extends SearchEngineBase
             documents = Collections.<Document> emptyList();
             resultsTotal = 0;
         }
+
+        if (pageConsumer != null)
+        {
+            pageConsumer.retainDocuments(documents);
+        }
     }
 
     /**
@@ -130,6 +169,9 @@ public abstract class MultipageSearchEngine extends SearchEngineBase
     {
         this.statistics.incrQueryCount();
 
+        // Fetchers run on the executor's threads, capture the request's token here.
+        final CancellationToken cancellationToken = CancellationToken.current();
+
         // Split the requested range into pages.
         SearchRange [] buckets = SearchRange.getSearchRanges(start, results,
             metadata.maxResultIndex, metadata.resultsPerPage, metadata.incrementByPage);
@@ -150,7 +192,9 @@ public abstract class MultipageSearchEngine extends SearchEngineBase
             // number of needed results.
             if (buckets.length == 1 || searchMode == SearchMode.CONSERVATIVE)
             {
-                final SearchEngineResponse response = createFetcher(buckets[0]).call();
+                final SearchEngineResponse response = createPipelinedFetcher(buckets[0])
+                    .call();
+                cancellationToken.throwIfCancelled();
 
                 final long resultsTotal = response.getResultsTotal();
                 responses.add(response);
@@ -174,29 +218,42 @@ public abstract class MultipageSearchEngine extends SearchEngineBase
             }
 
             // Run concurrent requests using the executor.
-            final ArrayList<Callable<SearchEngineResponse>> fetchers = new ArrayList<Callable<SearchEngineResponse>>(
+            final ArrayList<Future<SearchEngineResponse>> futures = new ArrayList<Future<SearchEngineResponse>>(
                 buckets.length);
-
-            for (final SearchRange r : buckets)
+            try
             {
-                fetchers.add(createFetcher(r));
-            }
-
-            // Run requests in parallel.
-            final List<Future<SearchEngineResponse>> futures = executor
-                .invokeAll(fetchers);
+                for (final SearchRange r : buckets)
+                {
+                    cancellationToken.throwIfCancelled();
+                    futures.add(executor.submit(createPipelinedFetcher(r)));
+                }
 
-            // Collect results.
-            for (final Future<SearchEngineResponse> future : futures)
+                // Collect results.
+                for (final Future<SearchEngineResponse> future : futures)
+                {
+                    final SearchEngineResponse response = await(future, cancellationToken);
+                    if (response != null)
+                    {
+                        responses.add(response);
+                    }
+                }
+            }
+            finally
             {
-                if (!future.isCancelled())
+                // Stop any fetchers still running if we're leaving early.
+                for (final Future<SearchEngineResponse> future : futures)
                 {
-                    responses.add(future.get());
+                    future.cancel(true);
                 }
             }
 
             return responses.toArray(new SearchEngineResponse [responses.size()]);
         }
+        catch (final CancellationException e)
+        {
+            // Processing cancelled, let the controller know.
+            throw e;
+        }
         catch (final IOException e)
         {
             throw new ProcessingException(e.getMessage(), e);
@@ -218,6 +275,62 @@ public abstract class MultipageSearchEngine extends SearchEngineBase
         }
     }
 
+    /**
+     * Returns a fetcher that passes the fetched documents to the {@link #pageConsumer},
+     * if there is one, on the fetching thread.
+     */
+    private Callable<SearchEngineResponse> createPipelinedFetcher(SearchRange bucket)
+    {
+        final Callable<SearchEngineResponse> fetcher = createFetcher(bucket);
+        final IPageConsumer consumer = pageConsumer;
+        if (consumer == null)
+        {
+            return fetcher;
+        }
+
+        return new Callable<SearchEngineResponse>()
+        {
+            public SearchEngineResponse call() throws Exception
+            {
+                final SearchEngineResponse response = fetcher.call();
+                if (response != null)
+                {
+                    consumer.pageFetched(Collections
+                        .unmodifiableList(response.results));
+                }
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Waits for a fetcher to complete, periodically checking if the request has been
+     * cancelled. Returns <code>null</code> if the fetcher itself has been cancelled.
+     */
+    private static SearchEngineResponse await(Future<SearchEngineResponse> future,
+        CancellationToken cancellationToken) throws InterruptedException,
+        ExecutionException
+    {
+        while (true)
+        {
+            cancellationToken.throwIfCancelled();
+            if (future.isCancelled())
+            {
+                return null;
+            }
+
+            try
+            {
+                return future.get(CANCELLATION_CHECK_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e)
+            {
+                // Check for cancellation and wait again.
+            }
+        }
+    }
+
     /**
      * An implementation of {@link Callable} that increments page request count statistics
      * before the actual search is made.
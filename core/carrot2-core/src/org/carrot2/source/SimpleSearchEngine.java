@@ -14,6 +14,7 @@ package org.carrot2.source;
 
 import org.carrot2.core.IDocumentSource;
 import org.carrot2.core.ProcessingException;
+import org.carrot2.util.CancellationToken;
 import org.carrot2.util.ExceptionUtils;
 import org.carrot2.util.attribute.Bindable;
 
@@ -54,5 +55,8 @@ public abstract class SimpleSearchEngine extends SearchEngineBase
         {
             throw ExceptionUtils.wrapAs(ProcessingException.class, e);
         }
+
+        // Don't pass the results on if the request has been cancelled in the meantime.
+        CancellationToken.checkCurrent();
     }
 }
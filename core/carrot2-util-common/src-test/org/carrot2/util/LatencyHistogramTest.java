@@ -0,0 +1,161 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link LatencyHistogram} and {@link LatencyRecorder}.
+ */
+public class LatencyHistogramTest extends CarrotTestCase
+{
+    @Test
+    public void testBucketBoundaries()
+    {
+        int previousIndex = -1;
+        for (long value = 0; value < 1L << 20; value += 1 + (value >>> 8))
+        {
+            final int index = LatencyHistogram.bucketIndex(value);
+            assertThat(index).isGreaterThanOrEqualTo(previousIndex);
+            assertThat(LatencyHistogram.bucketUpperBound(index)).isGreaterThanOrEqualTo(
+                value);
+            if (index > 0)
+            {
+                assertThat(LatencyHistogram.bucketUpperBound(index - 1)).isLessThan(value);
+            }
+            previousIndex = index;
+        }
+
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(
+            LatencyHistogram.bucketIndex(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void testEmpty()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getMeanNanos()).isEqualTo(0);
+        assertThat(histogram.getValueAtPercentile(50)).isEqualTo(0);
+    }
+
+    @Test
+    public void testPercentileAccuracy()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final long [] values = new long [randomIntBetween(100, 2000)];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = randomIntBetween(0, 100000000);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        assertThat(histogram.getCount()).isEqualTo(values.length);
+        assertThat(histogram.getMaxNanos()).isEqualTo(values[values.length - 1]);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(
+            values[values.length - 1]);
+
+        for (double percentile : new double []
+        {
+            0, 10, 50, 90, 99, 99.9
+        })
+        {
+            final int rank = Math.max(1,
+                (int) Math.ceil(values.length * percentile / 100.0));
+            final long expected = values[rank - 1];
+            final long actual = histogram.getValueAtPercentile(percentile);
+            assertThat(actual).isGreaterThanOrEqualTo(expected);
+            assertThat((double) actual).isLessThanOrEqualTo(expected * 1.04 + 1);
+        }
+    }
+
+    @Test
+    public void testReset()
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+        assertThat(histogram.getCount()).isEqualTo(0);
+        assertThat(histogram.getMaxNanos()).isEqualTo(0);
+        assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException
+    {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final int threads = randomIntBetween(2, 8);
+        final int perThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread [] workers = new Thread [threads];
+        for (int t = 0; t < threads; t++)
+        {
+            final long value = t + 1;
+            workers[t] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    for (int i = 0; i < perThread; i++)
+                    {
+                        histogram.record(value);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers)
+        {
+            worker.join();
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(threads * perThread);
+        assertThat(histogram.getMaxNanos()).isEqualTo(threads);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(threads);
+    }
+
+    @Test
+    public void testRecorderBinding()
+    {
+        LatencyRecorder.recordCurrent("unbound", System.nanoTime());
+
+        final LatencyRecorder recorder = new LatencyRecorder();
+        final LatencyRecorder previous = LatencyRecorder.bind(recorder);
+        try
+        {
+            LatencyRecorder.recordCurrent("stage", System.nanoTime());
+            LatencyRecorder.recordCurrent("stage", System.nanoTime());
+        }
+        finally
+        {
+            LatencyRecorder.bind(previous);
+        }
+        LatencyRecorder.recordCurrent("stage", System.nanoTime());
+
+        assertThat(recorder.getHistograms().keySet()).containsOnly("stage");
+        assertThat(recorder.getHistogram("stage").getCount()).isEqualTo(2);
+    }
+}
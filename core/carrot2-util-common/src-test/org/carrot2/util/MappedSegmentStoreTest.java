@@ -0,0 +1,191 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.LifecycleScope;
+
+/**
+ * Test cases for {@link MappedSegmentStore}.
+ */
+public class MappedSegmentStoreTest extends CarrotTestCase
+{
+    private static final long MAX_BYTES = 256 * 1024;
+
+    @Test
+    public void testPutGetRemove() throws IOException
+    {
+        final MappedSegmentStore store = new MappedSegmentStore(
+            newTempDir(LifecycleScope.TEST), MAX_BYTES);
+        try
+        {
+            assertThat(store.get("a")).isNull();
+
+            store.put("a", bytes("value a"));
+            store.put("b", bytes("value b"));
+            assertThat(store.get("a")).isEqualTo(bytes("value a"));
+            assertThat(store.get("b")).isEqualTo(bytes("value b"));
+
+            store.put("a", bytes("new value a"));
+            assertThat(store.get("a")).isEqualTo(bytes("new value a"));
+
+            store.remove("b");
+            assertThat(store.get("b")).isNull();
+            assertThat(store.size()).isEqualTo(1);
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException
+    {
+        final File directory = newTempDir(LifecycleScope.TEST);
+        MappedSegmentStore store = new MappedSegmentStore(directory, MAX_BYTES);
+        store.put("a", bytes("value a"));
+        store.put("b", bytes("value b"));
+        store.remove("b");
+        store.close();
+
+        store = new MappedSegmentStore(directory, MAX_BYTES);
+        try
+        {
+            assertThat(store.size()).isEqualTo(1);
+            assertThat(store.get("a")).isEqualTo(bytes("value a"));
+            assertThat(store.get("b")).isNull();
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testRecoveryOfRecordsNotInIndex() throws IOException
+    {
+        final File directory = newTempDir(LifecycleScope.TEST);
+        final MappedSegmentStore store = new MappedSegmentStore(directory, MAX_BYTES);
+        store.put("a", bytes("value a"));
+        store.flush();
+
+        // Not closed, as if the JVM was killed.
+        store.put("b", bytes("value b"));
+        store.remove("a");
+
+        final MappedSegmentStore reopened = new MappedSegmentStore(directory, MAX_BYTES);
+        try
+        {
+            assertThat(reopened.get("a")).isNull();
+            assertThat(reopened.get("b")).isEqualTo(bytes("value b"));
+        }
+        finally
+        {
+            reopened.close();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testRecoveryWithoutIndex() throws IOException
+    {
+        final File directory = newTempDir(LifecycleScope.TEST);
+        MappedSegmentStore store = new MappedSegmentStore(directory, MAX_BYTES);
+        store.put("a", bytes("value a"));
+        store.close();
+
+        assertThat(new File(directory, "index").delete()).isTrue();
+
+        store = new MappedSegmentStore(directory, MAX_BYTES);
+        try
+        {
+            assertThat(store.get("a")).isEqualTo(bytes("value a"));
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException
+    {
+        final File directory = newTempDir(LifecycleScope.TEST);
+        MappedSegmentStore store = new MappedSegmentStore(directory, MAX_BYTES);
+        final byte [] value = new byte [10 * 1024];
+        for (int i = 0; i < 100; i++)
+        {
+            value[0] = (byte) i;
+            store.put("key" + i, value);
+            assertThat(store.getDiskBytes()).isLessThanOrEqualTo(MAX_BYTES);
+        }
+
+        // The most recent entries must have survived compaction.
+        assertThat(store.size()).isLessThan(100);
+        assertThat(store.get("key99")[0]).isEqualTo((byte) 99);
+        assertThat(store.get("key0")).isNull();
+        store.close();
+
+        store = new MappedSegmentStore(directory, MAX_BYTES);
+        try
+        {
+            assertThat(store.get("key99")[0]).isEqualTo((byte) 99);
+            assertThat(directory.listFiles().length).isLessThanOrEqualTo(
+                (int) (MAX_BYTES / (64 * 1024)) + 1);
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testValueLargerThanSegment() throws IOException
+    {
+        final MappedSegmentStore store = new MappedSegmentStore(
+            newTempDir(LifecycleScope.TEST), MAX_BYTES);
+        try
+        {
+            final byte [] value = new byte [100 * 1024];
+            value[value.length - 1] = 1;
+            store.put("large", value);
+            assertThat(store.get("large")).isEqualTo(value);
+
+            // Values that would not fit after compaction are not stored at all.
+            store.put("too large", new byte [(int) MAX_BYTES]);
+            assertThat(store.get("too large")).isNull();
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    private static byte [] bytes(String string)
+    {
+        try
+        {
+            return string.getBytes("UTF-8");
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+}
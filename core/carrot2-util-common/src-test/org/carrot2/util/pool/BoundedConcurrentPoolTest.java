@@ -0,0 +1,163 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util.pool;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.google.common.collect.Lists;
+
+/**
+ * Test cases for {@link BoundedConcurrentPool}.
+ */
+public class BoundedConcurrentPoolTest extends ParameterizedPoolTestBase
+{
+    protected IParameterizedPool<Object, String> createPool()
+    {
+        return new BoundedConcurrentPool<Object, String>(getPoolSize(), getPoolSize(), 0);
+    }
+
+    protected int getPoolSize()
+    {
+        return 4;
+    }
+
+    @Test
+    public void testMaxIdle() throws Exception
+    {
+        final List<Object> disposed = Lists.newArrayList();
+        final BoundedConcurrentPool<Object, String> pool = new BoundedConcurrentPool<Object, String>(
+            0, 2, 0);
+        pool.init(null, null, null, new IDisposalListener<Object, String>()
+        {
+            public void dispose(Object object, String parameter)
+            {
+                disposed.add(object);
+            }
+        });
+
+        final List<Object> borrowed = Lists.newArrayList();
+        for (int i = 0; i < 5; i++)
+        {
+            borrowed.add(pool.borrowObject(Object.class, "a"));
+        }
+        for (Object o : borrowed)
+        {
+            pool.returnObject(o, "a");
+        }
+
+        assertThat(pool.getInstantiationCount()).isEqualTo(5);
+        assertThat(pool.getBorrowCount()).isEqualTo(5);
+        assertThat(pool.getIdleCount()).isEqualTo(2);
+        assertThat(pool.getIdleDisposalCount()).isEqualTo(3);
+        assertThat(disposed).hasSize(3);
+
+        // Idle instances are reused.
+        pool.borrowObject(Object.class, "a");
+        assertThat(pool.getInstantiationCount()).isEqualTo(5);
+
+        pool.dispose();
+        assertThat(disposed).hasSize(4);
+    }
+
+    @Test
+    public void testPreInstantiate() throws Exception
+    {
+        final BoundedConcurrentPool<Object, String> pool = new BoundedConcurrentPool<Object, String>(
+            0, 4, 3);
+        pool.preInstantiate(Object.class, "a");
+        assertThat(pool.getInstantiationCount()).isEqualTo(3);
+        assertThat(pool.getIdleCount()).isEqualTo(3);
+
+        // Only the first call fills the pool.
+        pool.preInstantiate(Object.class, "a");
+        assertThat(pool.getInstantiationCount()).isEqualTo(3);
+
+        pool.borrowObject(Object.class, "a");
+        assertThat(pool.getInstantiationCount()).isEqualTo(3);
+        assertThat(pool.getIdleCount()).isEqualTo(2);
+        pool.dispose();
+    }
+
+    @Test
+    public void testBorrowWait() throws Exception
+    {
+        final BoundedConcurrentPool<Object, String> pool = new BoundedConcurrentPool<Object, String>(
+            1, 1, 0);
+        final Object first = pool.borrowObject(Object.class, "a");
+
+        final Thread t = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    pool.returnObject(pool.borrowObject(Object.class, "a"), "a");
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        t.start();
+        while (t.getState() != Thread.State.WAITING)
+        {
+            Thread.yield();
+        }
+        pool.returnObject(first, "a");
+        t.join();
+
+        assertThat(pool.getBorrowWaitCount()).isEqualTo(1);
+        assertThat(pool.getBorrowCount()).isEqualTo(2);
+        assertThat(pool.getInstantiationCount()).isEqualTo(1);
+        pool.dispose();
+    }
+
+    @ThreadLeakLingering(linger = 2000)
+    @Test
+    public void testExhaustAndReleaseOnDispose() throws Exception
+    {
+        final Thread t1 = Thread.currentThread();
+        final Thread t2 = new Thread()
+        {
+            public void run()
+            {
+                while (t1.getState() != State.WAITING)
+                {
+                    yield();
+                }
+
+                pool.dispose();
+            }
+        };
+        t2.setDaemon(true);
+        t2.start();
+
+        try
+        {
+            for (int i = 0; i < getPoolSize() + 1; i++)
+            {
+                pool.borrowObject(String.class, null);
+            }
+            Assert.fail();
+        }
+        catch (InstantiationException e)
+        {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,171 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cooperative cancellation flag with an optional deadline. A token is bound to the
+ * thread performing a processing request (see {@link #bind(CancellationToken)}), so that
+ * long-running loops deep in the call stack (preprocessing stages, matrix factorizations)
+ * can call {@link #checkCurrent()} without any extra parameters being passed around.
+ */
+public final class CancellationToken
+{
+    /**
+     * A token that is never cancelled, returned from {@link #current()} if no token is
+     * bound to the current thread.
+     */
+    public static final CancellationToken NONE = new CancellationToken(false, 0);
+
+    /** Tokens bound to processing threads. */
+    private static final ThreadLocal<CancellationToken> CURRENT = new ThreadLocal<CancellationToken>();
+
+    /** <code>false</code> for {@link #NONE}. */
+    private final boolean cancellable;
+
+    /** If <code>true</code>, {@link #deadlineNanos} is valid. */
+    private final boolean hasDeadline;
+
+    /** Deadline, in {@link System#nanoTime()} units. */
+    private final long deadlineNanos;
+
+    /** Explicit cancellation flag. */
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a token with no deadline. The token can be cancelled only with
+     * {@link #cancel()}.
+     */
+    public CancellationToken()
+    {
+        this(true, 0);
+    }
+
+    /**
+     * Creates a token that becomes cancelled after <code>timeoutMillis</code>
+     * milliseconds from now or after a call to {@link #cancel()}, whichever comes first.
+     */
+    public CancellationToken(long timeoutMillis)
+    {
+        this(true, timeoutMillis);
+        if (timeoutMillis <= 0)
+        {
+            throw new IllegalArgumentException("Timeout must be positive: "
+                + timeoutMillis);
+        }
+    }
+
+    private CancellationToken(boolean cancellable, long timeoutMillis)
+    {
+        this.cancellable = cancellable;
+        this.hasDeadline = timeoutMillis > 0;
+        this.deadlineNanos = hasDeadline ? System.nanoTime()
+            + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+    }
+
+    /**
+     * Cancels this token. Has no effect on {@link #NONE}.
+     */
+    public void cancel()
+    {
+        if (cancellable)
+        {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if this token has been cancelled or its deadline has
+     * passed.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled || isDeadlineExceeded();
+    }
+
+    /**
+     * Returns <code>true</code> if this token has a deadline and the deadline has passed.
+     */
+    public boolean isDeadlineExceeded()
+    {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Returns the number of nanoseconds left until the deadline (possibly negative) or
+     * {@link Long#MAX_VALUE} if this token has no deadline.
+     */
+    public long remainingNanos()
+    {
+        return hasDeadline ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Throws a {@link CancellationException} if this token is cancelled.
+     */
+    public void throwIfCancelled() throws CancellationException
+    {
+        if (cancelled)
+        {
+            throw new CancellationException("Processing cancelled.");
+        }
+        if (isDeadlineExceeded())
+        {
+            throw new CancellationException("Processing deadline exceeded.");
+        }
+    }
+
+    /**
+     * Binds <code>token</code> to the current thread and returns the previously bound
+     * token (possibly <code>null</code>), which should be restored with another call to
+     * this method once processing is finished.
+     */
+    public static CancellationToken bind(CancellationToken token)
+    {
+        final CancellationToken previous = CURRENT.get();
+        if (token == null)
+        {
+            CURRENT.remove();
+        }
+        else
+        {
+            CURRENT.set(token);
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the token bound to the current thread or {@link #NONE} if no token is
+     * bound.
+     */
+    public static CancellationToken current()
+    {
+        final CancellationToken token = CURRENT.get();
+        return token != null ? token : NONE;
+    }
+
+    /**
+     * Throws a {@link CancellationException} if the token bound to the current thread is
+     * cancelled.
+     */
+    public static void checkCurrent() throws CancellationException
+    {
+        final CancellationToken token = CURRENT.get();
+        if (token != null)
+        {
+            token.throwIfCancelled();
+        }
+    }
+}
@@ -18,7 +18,10 @@ import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.collect.Lists;
@@ -78,6 +81,12 @@ public class ExecutorServiceUtils
             this.threadFactory = threadFactory;
         }
 
+        public AccountingExecutorService(ThreadPoolExecutor delegate, AccountingThreadFactory threadFactory)
+        {
+            this.delegate = delegate;
+            this.threadFactory = threadFactory;
+        }
+
         public void shutdown()
         {
             super.shutdown();
@@ -117,4 +126,24 @@ public class ExecutorServiceUtils
             new AccountingThreadFactory(classLoader, baseName);
         return new AccountingExecutorService(maxConcurrentThreads, threadFactory);
     }
+
+    /**
+     * @return Return an executor service like
+     *         {@link #createExecutorService(int, Class)}, except that threads idle for
+     *         longer than <code>keepAlive</code> exit. Use this method for executors
+     *         shared for the lifetime of the class, which cannot be shut down.
+     */
+    public static ExecutorService createExecutorService(int maxConcurrentThreads,
+        long keepAlive, TimeUnit unit, Class<?> clazz)
+    {
+        final String baseName = clazz.getSimpleName();
+        final ClassLoader classLoader = clazz.getClassLoader();
+        final AccountingThreadFactory threadFactory = 
+            new AccountingThreadFactory(classLoader, baseName);
+        final ThreadPoolExecutor delegate = new ThreadPoolExecutor(maxConcurrentThreads,
+            maxConcurrentThreads, keepAlive, unit, new LinkedBlockingQueue<Runnable>(),
+            threadFactory);
+        delegate.allowCoreThreadTimeOut(true);
+        return new AccountingExecutorService(delegate, threadFactory);
+    }
 }
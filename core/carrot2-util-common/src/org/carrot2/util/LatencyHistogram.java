@@ -0,0 +1,195 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies, in nanoseconds. Values are counted in
+ * logarithmically-spaced buckets, each power of two being divided into
+ * {@value #SUB_BUCKETS} linear sub-buckets (similar to the HDR histogram), so that
+ * percentiles are reported with a relative error of at most about 3%. Values larger than
+ * about 9.7 hours are counted in the last bucket.
+ * <p>
+ * {@link #record(long)} can be called concurrently from any number of threads. Readings
+ * performed concurrently with recording may be slightly inconsistent (e.g. the total
+ * count may not match the sum of bucket counts), which is not relevant for monitoring
+ * purposes.
+ * </p>
+ */
+public final class LatencyHistogram
+{
+    /** Number of linear sub-buckets in each power of two, must be a power of two. */
+    public static final int SUB_BUCKETS = 32;
+
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    /** Base-2 logarithm of the largest distinguished value. */
+    private static final int MAX_EXPONENT = 44;
+
+    /** Largest distinguished value. */
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private static final int BUCKET_COUNT = SUB_BUCKETS
+        + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a single latency value. Negative values are recorded as zero.
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0)
+        {
+            nanos = 0;
+        }
+
+        counts.incrementAndGet(bucketIndex(nanos));
+        totalCount.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+
+        long max;
+        while (nanos > (max = maxNanos.get()))
+        {
+            if (maxNanos.compareAndSet(max, nanos))
+            {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code>, obtained from
+     * {@link System#nanoTime()}.
+     */
+    public void recordSince(long startNanos)
+    {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     */
+    public long getCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the largest recorded value, in nanoseconds.
+     */
+    public long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the mean of recorded values, in nanoseconds, or 0 if no values have been
+     * recorded.
+     */
+    public double getMeanNanos()
+    {
+        final long count = totalCount.get();
+        return count == 0 ? 0 : totalNanos.get() / (double) count;
+    }
+
+    /**
+     * Returns the value at the provided percentile, in nanoseconds, or 0 if no values
+     * have been recorded. The returned value is the upper bound of the bucket containing
+     * the percentile, but no larger than the largest recorded value.
+     *
+     * @param percentile percentile to compute, between 0 and 100
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        if (percentile < 0 || percentile > 100)
+        {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: "
+                + percentile);
+        }
+
+        // Take a snapshot first, so that the total matches the bucket counts.
+        final long [] snapshot = new long [BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            cumulative += snapshot[i];
+            if (cumulative >= rank)
+            {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with this method may be
+     * lost.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+        {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    static int bucketIndex(long value)
+    {
+        if (value > MAX_VALUE)
+        {
+            return BUCKET_COUNT - 1;
+        }
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        final int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+
+        final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        final long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
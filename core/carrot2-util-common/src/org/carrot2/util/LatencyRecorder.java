@@ -0,0 +1,122 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A set of named {@link LatencyHistogram}s. A recorder can be bound to the thread
+ * performing a processing request (see {@link #bind(LatencyRecorder)}), so that
+ * processing stages deep in the call stack can report their latencies with
+ * {@link #recordCurrent(String, long)} without any extra parameters being passed around:
+ *
+ * <pre>
+ * final long start = System.nanoTime();
+ * tokenizer.tokenize(context);
+ * LatencyRecorder.recordCurrent(&quot;preprocessing.tokenization&quot;, start);
+ * </pre>
+ *
+ * This class is thread-safe.
+ */
+public final class LatencyRecorder
+{
+    /** Recorders bound to processing threads. */
+    private static final ThreadLocal<LatencyRecorder> CURRENT = new ThreadLocal<LatencyRecorder>();
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms =
+        new ConcurrentHashMap<String, LatencyHistogram>();
+
+    /**
+     * Returns the histogram with the provided name, creating it if needed.
+     */
+    public LatencyHistogram getHistogram(String name)
+    {
+        LatencyHistogram histogram = histograms.get(name);
+        if (histogram == null)
+        {
+            final LatencyHistogram newHistogram = new LatencyHistogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null)
+            {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns all histograms of this recorder, sorted by name.
+     */
+    public SortedMap<String, LatencyHistogram> getHistograms()
+    {
+        return Collections.unmodifiableSortedMap(new TreeMap<String, LatencyHistogram>(
+            histograms));
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code>, obtained from
+     * {@link System#nanoTime()}, in the histogram with the provided name.
+     */
+    public void recordSince(String name, long startNanos)
+    {
+        getHistogram(name).recordSince(startNanos);
+    }
+
+    /**
+     * Clears all histograms of this recorder.
+     */
+    public void reset()
+    {
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet())
+        {
+            entry.getValue().reset();
+        }
+    }
+
+    /**
+     * Binds <code>recorder</code> to the current thread and returns the previously bound
+     * recorder (possibly <code>null</code>), which should be restored with another call
+     * to this method once processing is finished.
+     */
+    public static LatencyRecorder bind(LatencyRecorder recorder)
+    {
+        final LatencyRecorder previous = CURRENT.get();
+        if (recorder == null)
+        {
+            CURRENT.remove();
+        }
+        else
+        {
+            CURRENT.set(recorder);
+        }
+        return previous;
+    }
+
+    /**
+     * Records the time elapsed since <code>startNanos</code> in the recorder bound to the
+     * current thread. Does nothing if no recorder is bound.
+     */
+    public static void recordCurrent(String name, long startNanos)
+    {
+        final LatencyRecorder recorder = CURRENT.get();
+        if (recorder != null)
+        {
+            recorder.recordSince(name, startNanos);
+        }
+    }
+}
@@ -0,0 +1,671 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent, size-bounded key-value store of byte arrays backed by append-only,
+ * memory-mapped segment files.
+ * <p>
+ * Records are appended to the current segment file; replaced and removed records become
+ * garbage that is reclaimed by compaction. Once the total size of segment files exceeds
+ * the configured maximum, the store rewrites the most recently used entries (up to half
+ * of the maximum size) to new segments and deletes the old ones. The location of each
+ * live record is kept in an on-disk index file, written on {@link #flush()},
+ * {@link #close()} and after each compaction. Records appended after the index was last
+ * written are recovered by scanning segment files when the store is opened, so the
+ * contents of the store survive JVM restarts even if the store was not closed.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public final class MappedSegmentStore implements Closeable
+{
+    /** Marks a live record. */
+    private static final int RECORD_MAGIC = 0x43325245;
+
+    /** Marks a removal record. */
+    private static final int TOMBSTONE_MAGIC = 0x43325444;
+
+    /** Magic number at the start of the index file. */
+    private static final int INDEX_MAGIC = 0x43324958;
+    private static final int INDEX_VERSION = 1;
+
+    /** Record header: magic, key length, value length, checksum. */
+    private static final int HEADER_BYTES = 4 * 4;
+
+    private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+    private static final int MAX_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private static final String INDEX_FILE = "index";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long maximumBytes;
+    private final int segmentBytes;
+
+    /** Segments by identifier. */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+    /** Live records, least recently used first. */
+    private final LinkedHashMap<String, Location> index = new LinkedHashMap<String, Location>(
+        16, 0.75f, true);
+
+    /** The segment new records are appended to, may be <code>null</code>. */
+    private Segment active;
+
+    private int nextSegmentId;
+    private long liveBytes;
+    private long diskBytes;
+    private boolean closed;
+
+    /**
+     * Opens (or creates) a store in the provided directory.
+     *
+     * @param directory the directory to keep segment files in, will be created if
+     *            needed. The directory must not be shared with other stores.
+     * @param maximumBytes the maximum total size of segment files, compaction will be
+     *            triggered when this size is exceeded
+     */
+    public MappedSegmentStore(File directory, long maximumBytes) throws IOException
+    {
+        if (maximumBytes < MIN_SEGMENT_BYTES)
+        {
+            throw new IllegalArgumentException("Maximum size must be at least "
+                + MIN_SEGMENT_BYTES + " bytes: " + maximumBytes);
+        }
+
+        this.directory = directory;
+        this.maximumBytes = maximumBytes;
+        this.segmentBytes = (int) Math.max(MIN_SEGMENT_BYTES,
+            Math.min(MAX_SEGMENT_BYTES, maximumBytes / 8));
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create store directory: "
+                + directory.getAbsolutePath());
+        }
+
+        open();
+    }
+
+    /**
+     * Returns the value stored under <code>key</code> or <code>null</code> if there is
+     * no such value.
+     */
+    public synchronized byte [] get(String key)
+    {
+        checkOpen();
+
+        final Location location = index.get(key);
+        if (location == null)
+        {
+            return null;
+        }
+
+        final ByteBuffer buffer = location.segment.buffer.duplicate();
+        buffer.position(location.offset + 4);
+        final int keyLength = buffer.getInt();
+        final byte [] value = new byte [buffer.getInt()];
+        buffer.position(location.offset + HEADER_BYTES + keyLength);
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Stores <code>value</code> under <code>key</code>, replacing the previous value, if
+     * any. Values larger than the maximum size of the store are not stored.
+     */
+    public synchronized void put(String key, byte [] value) throws IOException
+    {
+        checkOpen();
+
+        final byte [] keyBytes = key.getBytes(UTF8);
+        if (HEADER_BYTES + (long) keyBytes.length + value.length > maximumBytes / 2)
+        {
+            remove(key);
+            return;
+        }
+
+        final Location location = append(RECORD_MAGIC, keyBytes, value);
+        final Location previous = index.put(key, location);
+        liveBytes += location.length;
+        if (previous != null)
+        {
+            liveBytes -= previous.length;
+        }
+
+        if (diskBytes > maximumBytes)
+        {
+            compact();
+        }
+    }
+
+    /**
+     * Removes the value stored under <code>key</code>, if any.
+     */
+    public synchronized void remove(String key) throws IOException
+    {
+        checkOpen();
+
+        final Location previous = index.remove(key);
+        if (previous != null)
+        {
+            liveBytes -= previous.length;
+            append(TOMBSTONE_MAGIC, key.getBytes(UTF8), new byte [0]);
+        }
+    }
+
+    /**
+     * Returns the number of values in this store.
+     */
+    public synchronized int size()
+    {
+        return index.size();
+    }
+
+    /**
+     * Returns the total size of live records in this store.
+     */
+    public synchronized long getLiveBytes()
+    {
+        return liveBytes;
+    }
+
+    /**
+     * Returns the total size of segment files of this store.
+     */
+    public synchronized long getDiskBytes()
+    {
+        return diskBytes;
+    }
+
+    /**
+     * Forces segment contents to the disk and writes the index file.
+     */
+    public synchronized void flush() throws IOException
+    {
+        checkOpen();
+
+        for (Segment segment : segments.values())
+        {
+            segment.buffer.force();
+        }
+        writeIndex();
+    }
+
+    /**
+     * Flushes and closes this store. Subsequent calls have no effect.
+     */
+    public synchronized void close() throws IOException
+    {
+        if (!closed)
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                closed = true;
+                segments.clear();
+                index.clear();
+                active = null;
+            }
+        }
+    }
+
+    /**
+     * Rewrites the most recently used records to new segments and deletes all the old
+     * segments.
+     */
+    private void compact() throws IOException
+    {
+        final List<Map.Entry<String, Location>> entries =
+            new ArrayList<Map.Entry<String, Location>>(index.entrySet());
+
+        // Retain the most recently used records that fit in half of the budget.
+        final long budget = maximumBytes / 2;
+        long retainedBytes = 0;
+        int first = entries.size();
+        while (first > 0 && retainedBytes + entries.get(first - 1).getValue().length <= budget)
+        {
+            first--;
+            retainedBytes += entries.get(first).getValue().length;
+        }
+
+        final List<Segment> oldSegments = new ArrayList<Segment>(segments.values());
+        segments.clear();
+        active = null;
+        diskBytes = 0;
+
+        final LinkedHashMap<String, Location> retained = new LinkedHashMap<String, Location>();
+        for (Map.Entry<String, Location> entry : entries.subList(first, entries.size()))
+        {
+            final Location location = entry.getValue();
+            final ByteBuffer source = location.segment.buffer.duplicate();
+            source.position(location.offset);
+            source.limit(location.offset + location.length);
+
+            final Segment target = segmentFor(location.length);
+            final ByteBuffer buffer = target.buffer.duplicate();
+            buffer.position(target.writePosition);
+            buffer.put(source);
+
+            retained.put(entry.getKey(), new Location(target, target.writePosition,
+                location.length));
+            target.writePosition += location.length;
+        }
+
+        index.clear();
+        index.putAll(retained);
+        liveBytes = retainedBytes;
+
+        // The new index must be in place before the old segments are gone.
+        writeIndex();
+        for (Segment segment : oldSegments)
+        {
+            deleteSegmentFile(segment.file);
+        }
+    }
+
+    /**
+     * Appends a record to the active segment.
+     */
+    private Location append(int magic, byte [] key, byte [] value) throws IOException
+    {
+        final int length = HEADER_BYTES + key.length + value.length;
+        final Segment segment = segmentFor(length);
+        final int offset = segment.writePosition;
+
+        final CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value);
+
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + 4);
+        buffer.putInt(key.length);
+        buffer.putInt(value.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(key);
+        buffer.put(value);
+
+        // Write the magic last so that a partially written record is never recovered.
+        segment.buffer.putInt(offset, magic);
+        segment.writePosition += length;
+
+        return new Location(segment, offset, length);
+    }
+
+    /**
+     * Returns a segment with at least <code>length</code> free bytes, creating a new one
+     * if needed.
+     */
+    private Segment segmentFor(int length) throws IOException
+    {
+        if (active == null || active.capacity - active.writePosition < length)
+        {
+            final int id = nextSegmentId++;
+            active = mapSegment(id, segmentFile(id), Math.max(segmentBytes, length));
+            segments.put(id, active);
+            diskBytes += active.capacity;
+        }
+        return active;
+    }
+
+    /**
+     * Loads the index and recovers records appended after it was written.
+     */
+    private void open() throws IOException
+    {
+        final SortedMap<Integer, File> files = new TreeMap<Integer, File>();
+        final File [] list = directory.listFiles();
+        if (list != null)
+        {
+            for (File file : list)
+            {
+                final String name = file.getName();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                {
+                    try
+                    {
+                        files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), file);
+                    }
+                    catch (NumberFormatException e)
+                    {
+                        // Not our file, ignore.
+                    }
+                }
+            }
+        }
+
+        if (!readIndex(files))
+        {
+            // Start over and recover all records from segment files.
+            segments.clear();
+            index.clear();
+            nextSegmentId = 0;
+        }
+
+        for (Map.Entry<Integer, File> entry : files.entrySet())
+        {
+            final int id = entry.getKey();
+            if (segments.containsKey(id))
+            {
+                continue;
+            }
+
+            if (id < nextSegmentId)
+            {
+                // A leftover of an interrupted compaction.
+                deleteSegmentFile(entry.getValue());
+            }
+            else
+            {
+                final Segment segment = mapSegment(id, entry.getValue(), 0);
+                segments.put(id, segment);
+                nextSegmentId = id + 1;
+            }
+        }
+
+        liveBytes = 0;
+        diskBytes = 0;
+        for (Location location : index.values())
+        {
+            liveBytes += location.length;
+        }
+        for (Segment segment : segments.values())
+        {
+            scan(segment);
+            diskBytes += segment.capacity;
+        }
+
+        if (!segments.isEmpty())
+        {
+            active = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Recovers records from <code>segment</code> starting at its current write position.
+     */
+    private void scan(Segment segment)
+    {
+        final ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = segment.writePosition;
+        while (offset + HEADER_BYTES <= segment.capacity)
+        {
+            buffer.position(offset);
+            final int magic = buffer.getInt();
+            if (magic != RECORD_MAGIC && magic != TOMBSTONE_MAGIC)
+            {
+                break;
+            }
+
+            final int keyLength = buffer.getInt();
+            final int valueLength = buffer.getInt();
+            final int checksum = buffer.getInt();
+            if (keyLength < 0 || valueLength < 0
+                || (long) offset + HEADER_BYTES + keyLength + valueLength > segment.capacity)
+            {
+                break;
+            }
+
+            final byte [] key = new byte [keyLength];
+            final byte [] value = new byte [valueLength];
+            buffer.get(key);
+            buffer.get(value);
+
+            final CRC32 crc = new CRC32();
+            crc.update(key);
+            crc.update(value);
+            if ((int) crc.getValue() != checksum)
+            {
+                break;
+            }
+
+            final int length = HEADER_BYTES + keyLength + valueLength;
+            final String keyString = new String(key, UTF8);
+            final Location previous;
+            if (magic == RECORD_MAGIC)
+            {
+                previous = index.put(keyString, new Location(segment, offset, length));
+                liveBytes += length;
+            }
+            else
+            {
+                previous = index.remove(keyString);
+            }
+            if (previous != null)
+            {
+                liveBytes -= previous.length;
+            }
+
+            offset += length;
+        }
+        segment.writePosition = offset;
+    }
+
+    /**
+     * Reads the index file. Returns <code>false</code> if the index is missing or
+     * invalid.
+     */
+    private boolean readIndex(SortedMap<Integer, File> files)
+    {
+        final File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.isFile())
+        {
+            return false;
+        }
+
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(
+                indexFile)));
+            if (input.readInt() != INDEX_MAGIC || input.readInt() != INDEX_VERSION)
+            {
+                return false;
+            }
+
+            nextSegmentId = input.readInt();
+            final int segmentCount = input.readInt();
+            for (int i = 0; i < segmentCount; i++)
+            {
+                final int id = input.readInt();
+                final int writePosition = input.readInt();
+                final File file = files.get(id);
+                if (file == null)
+                {
+                    return false;
+                }
+                final Segment segment = mapSegment(id, file, 0);
+                if (writePosition < 0 || writePosition > segment.capacity)
+                {
+                    return false;
+                }
+                segment.writePosition = writePosition;
+                segments.put(id, segment);
+            }
+
+            final int entryCount = input.readInt();
+            for (int i = 0; i < entryCount; i++)
+            {
+                final byte [] key = new byte [input.readInt()];
+                input.readFully(key);
+                final Segment segment = segments.get(input.readInt());
+                final int offset = input.readInt();
+                final int length = input.readInt();
+                if (segment == null || offset < 0 || offset + length > segment.writePosition)
+                {
+                    return false;
+                }
+                index.put(new String(key, UTF8), new Location(segment, offset, length));
+            }
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        finally
+        {
+            CloseableUtils.close(input);
+        }
+    }
+
+    /**
+     * Atomically replaces the index file.
+     */
+    private void writeIndex() throws IOException
+    {
+        final File temp = new File(directory, INDEX_FILE + ".tmp");
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(temp)));
+        try
+        {
+            output.writeInt(INDEX_MAGIC);
+            output.writeInt(INDEX_VERSION);
+            output.writeInt(nextSegmentId);
+            output.writeInt(segments.size());
+            for (Segment segment : segments.values())
+            {
+                output.writeInt(segment.id);
+                output.writeInt(segment.writePosition);
+            }
+            output.writeInt(index.size());
+            for (Map.Entry<String, Location> entry : index.entrySet())
+            {
+                final byte [] key = entry.getKey().getBytes(UTF8);
+                output.writeInt(key.length);
+                output.write(key);
+                output.writeInt(entry.getValue().segment.id);
+                output.writeInt(entry.getValue().offset);
+                output.writeInt(entry.getValue().length);
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+
+        final File indexFile = new File(directory, INDEX_FILE);
+        if ((indexFile.exists() && !indexFile.delete()) || !temp.renameTo(indexFile))
+        {
+            throw new IOException("Could not replace index file: "
+                + indexFile.getAbsolutePath());
+        }
+    }
+
+    private File segmentFile(int id)
+    {
+        return new File(directory, String.format(Locale.ROOT, "%s%08d%s",
+            SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Maps a segment file, extending it to <code>capacity</code> bytes if needed.
+     */
+    private static Segment mapSegment(int id, File file, int capacity) throws IOException
+    {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try
+        {
+            if (raf.length() < capacity)
+            {
+                raf.setLength(capacity);
+            }
+            final long length = raf.length();
+            if (length > Integer.MAX_VALUE)
+            {
+                throw new IOException("Segment file too large: " + file.getAbsolutePath());
+            }
+            final MappedByteBuffer buffer = raf.getChannel().map(
+                FileChannel.MapMode.READ_WRITE, 0, length);
+            return new Segment(id, file, buffer);
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    private static void deleteSegmentFile(File file)
+    {
+        // Mapped files may not be deletable on some platforms until the mapping is
+        // garbage-collected. Such files will be removed when the store is next opened.
+        if (!file.delete())
+        {
+            file.deleteOnExit();
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("The store has been closed.");
+        }
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment
+    {
+        final int id;
+        final File file;
+        final MappedByteBuffer buffer;
+        final int capacity;
+
+        /** Offset at which the next record will be written. */
+        int writePosition;
+
+        Segment(int id, File file, MappedByteBuffer buffer)
+        {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = buffer.capacity();
+        }
+    }
+
+    /**
+     * Location of a record.
+     */
+    private static final class Location
+    {
+        final Segment segment;
+        final int offset;
+        final int length;
+
+        Location(Segment segment, int offset, int length)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
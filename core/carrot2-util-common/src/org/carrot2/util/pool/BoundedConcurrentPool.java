@@ -0,0 +1,518 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.util.pool;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.carrot2.util.LatencyRecorder;
+import org.carrot2.util.Pair;
+
+/**
+ * A bounded, hard-referenced {@link IParameterizedPool} that does not take any global
+ * locks. Idle instances of each class-parameter pair are kept on a separate lock-free
+ * stack, so that the most recently used (and therefore likely hot) instance is
+ * borrowed first. The pool has the following bounds, each applying to a single
+ * class-parameter pair:
+ * <ul>
+ * <li><b>maximum active instances</b>: the maximum number of instances borrowed at the
+ * same time. Further borrowers wait until an instance is returned. Zero means no
+ * limit.</li>
+ * <li><b>maximum idle instances</b>: instances returned to the pool when this many
+ * instances are already idle are disposed of.</li>
+ * <li><b>minimum idle instances</b>: the number of instances created eagerly, either
+ * when a class-parameter pair is borrowed for the first time or when
+ * {@link #preInstantiate(Class, Object)} is called.</li>
+ * </ul>
+ * <p>
+ * The pool counts instantiations, borrows and borrows that had to wait for an instance
+ * to be returned. Time spent waiting and instantiating is also reported to the
+ * {@link LatencyRecorder} bound to the borrowing thread, if any, under
+ * {@link #BORROW_WAIT_LATENCY} and {@link #INSTANTIATION_LATENCY}.
+ * </p>
+ */
+public final class BoundedConcurrentPool<T, P> implements IParameterizedPool<T, P>
+{
+    /** Latency histogram name of the time spent waiting for an instance. */
+    public static final String BORROW_WAIT_LATENCY = "pool.borrow-wait";
+
+    /** Latency histogram name of the time spent creating and initializing instances. */
+    public static final String INSTANTIATION_LATENCY = "pool.instantiation";
+
+    private final ConcurrentMap<Pair<Class<? extends T>, P>, KeyPool<T>> pools = new ConcurrentHashMap<Pair<Class<? extends T>, P>, KeyPool<T>>();
+
+    /** Instances currently borrowed, to detect returns of objects not borrowed. */
+    private final ConcurrentMap<Identity, Boolean> borrowed = new ConcurrentHashMap<Identity, Boolean>();
+
+    private IInstantiationListener<T, P> instantiationListener;
+    private IActivationListener<T, P> activationListener;
+    private IPassivationListener<T, P> passivationListener;
+    private IDisposalListener<T, P> disposalListener;
+
+    private final int maxActive;
+    private final int maxIdle;
+    private final int minIdle;
+
+    private volatile boolean disposed;
+
+    private final AtomicLong instantiations = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowWaits = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong idleDisposals = new AtomicLong();
+
+    /**
+     * @param maxActive maximum number of instances borrowed at the same time for a
+     *            single class-parameter pair, zero for no limit
+     * @param maxIdle maximum number of idle instances kept for a single
+     *            class-parameter pair
+     * @param minIdle number of instances to create eagerly for a single class-parameter
+     *            pair, not larger than <code>maxIdle</code> and <code>maxActive</code>
+     */
+    public BoundedConcurrentPool(int maxActive, int maxIdle, int minIdle)
+    {
+        if (maxActive < 0)
+            throw new IllegalArgumentException("Maximum active instances must not be negative: "
+                + maxActive);
+        if (maxIdle <= 0)
+            throw new IllegalArgumentException("Maximum idle instances must be greater than zero: "
+                + maxIdle);
+        if (minIdle < 0 || minIdle > maxIdle || (maxActive > 0 && minIdle > maxActive))
+            throw new IllegalArgumentException("Minimum idle instances must be between zero "
+                + "and the maximum idle and active instances: " + minIdle);
+
+        this.maxActive = maxActive;
+        this.maxIdle = maxIdle;
+        this.minIdle = minIdle;
+    }
+
+    public void init(IInstantiationListener<T, P> objectInstantiationListener,
+        IActivationListener<T, P> objectActivationListener,
+        IPassivationListener<T, P> objectPassivationListener,
+        IDisposalListener<T, P> objectDisposalListener)
+    {
+        this.instantiationListener = objectInstantiationListener;
+        this.activationListener = objectActivationListener;
+        this.passivationListener = objectPassivationListener;
+        this.disposalListener = objectDisposalListener;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <I extends T> I borrowObject(Class<I> clazz, P parameter)
+        throws InstantiationException, IllegalAccessException
+    {
+        final KeyPool<T> pool = getKeyPool(clazz, parameter);
+        borrows.incrementAndGet();
+
+        if (pool.permits != null && !pool.permits.tryAcquire())
+        {
+            borrowWaits.incrementAndGet();
+            final long start = System.nanoTime();
+            try
+            {
+                pool.permits.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                throw new InstantiationException(
+                    "Interrupted while waiting for the object pool: " + clazz + ", "
+                        + parameter);
+            }
+            finally
+            {
+                borrowWaitNanos.addAndGet(System.nanoTime() - start);
+                LatencyRecorder.recordCurrent(BORROW_WAIT_LATENCY, start);
+            }
+
+            if (disposed)
+            {
+                throw new InstantiationException("Pool disposed while waiting.");
+            }
+        }
+
+        I instance = null;
+        try
+        {
+            instance = (I) pool.idle.pop();
+            if (instance == null)
+            {
+                instance = newInstance(clazz, parameter);
+            }
+
+            if (activationListener != null)
+            {
+                activationListener.activate(instance, parameter);
+            }
+            borrowed.put(new Identity(instance), Boolean.TRUE);
+            return instance;
+        }
+        catch (RuntimeException e)
+        {
+            discard(pool, instance, parameter);
+            throw e;
+        }
+        catch (InstantiationException e)
+        {
+            discard(pool, instance, parameter);
+            throw e;
+        }
+        catch (IllegalAccessException e)
+        {
+            discard(pool, instance, parameter);
+            throw e;
+        }
+    }
+
+    public void returnObject(T object, P parameter)
+    {
+        if (object == null)
+        {
+            return;
+        }
+
+        if (passivationListener != null)
+        {
+            passivationListener.passivate(object, parameter);
+        }
+
+        if (borrowed.remove(new Identity(object)) == null)
+        {
+            if (disposed)
+            {
+                // Borrowed before disposal, silently ignore.
+                return;
+            }
+            throw new IllegalStateException("Object has not been borrowed: " + object);
+        }
+
+        @SuppressWarnings(
+        {
+            "unchecked", "rawtypes"
+        })
+        final KeyPool<T> pool = pools.get(new Pair(object.getClass(), parameter));
+        if (pool == null)
+        {
+            throw new IllegalStateException(
+                "Returning an object that was never borrowed: " + object);
+        }
+
+        if (disposed || !pool.idle.push(object, maxIdle))
+        {
+            if (!disposed)
+            {
+                idleDisposals.incrementAndGet();
+            }
+            dispose(object, parameter);
+        }
+        else if (disposed)
+        {
+            // Disposed concurrently with the push above.
+            disposeIdle(pool, parameter);
+        }
+
+        if (pool.permits != null)
+        {
+            pool.permits.release();
+        }
+    }
+
+    /**
+     * Creates the minimum number of idle instances of the provided class and parameter,
+     * if they have not been created yet. Use this method to avoid the cost of
+     * instantiation on the first requests.
+     */
+    public void preInstantiate(Class<? extends T> clazz, P parameter)
+        throws InstantiationException, IllegalAccessException
+    {
+        getKeyPool(clazz, parameter);
+    }
+
+    public void dispose()
+    {
+        if (disposed)
+        {
+            return;
+        }
+        disposed = true;
+
+        for (Map.Entry<Pair<Class<? extends T>, P>, KeyPool<T>> entry : pools.entrySet())
+        {
+            final KeyPool<T> pool = entry.getValue();
+            disposeIdle(pool, entry.getKey().objectB);
+
+            if (pool.permits != null)
+            {
+                // Release all waiting threads, they will find the pool disposed.
+                pool.permits.release(Integer.MAX_VALUE / 2);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of instances created by this pool.
+     */
+    public long getInstantiationCount()
+    {
+        return instantiations.get();
+    }
+
+    /**
+     * Returns the number of borrow requests.
+     */
+    public long getBorrowCount()
+    {
+        return borrows.get();
+    }
+
+    /**
+     * Returns the number of borrow requests that had to wait for an instance to be
+     * returned because the maximum number of active instances was reached.
+     */
+    public long getBorrowWaitCount()
+    {
+        return borrowWaits.get();
+    }
+
+    /**
+     * Returns the total time borrowers spent waiting for instances, in nanoseconds.
+     */
+    public long getBorrowWaitNanos()
+    {
+        return borrowWaitNanos.get();
+    }
+
+    /**
+     * Returns the number of returned instances disposed of because the maximum number of
+     * idle instances was reached.
+     */
+    public long getIdleDisposalCount()
+    {
+        return idleDisposals.get();
+    }
+
+    /**
+     * Returns the number of idle instances across all class-parameter pairs.
+     */
+    public int getIdleCount()
+    {
+        int idle = 0;
+        for (KeyPool<T> pool : pools.values())
+        {
+            idle += pool.idle.size();
+        }
+        return idle;
+    }
+
+    private KeyPool<T> getKeyPool(Class<? extends T> clazz, P parameter)
+        throws InstantiationException, IllegalAccessException
+    {
+        if (disposed)
+        {
+            throw new IllegalStateException("The pool has already been disposed of");
+        }
+
+        final Pair<Class<? extends T>, P> key = new Pair<Class<? extends T>, P>(clazz,
+            parameter);
+        KeyPool<T> pool = pools.get(key);
+        if (pool == null)
+        {
+            final KeyPool<T> newPool = new KeyPool<T>(maxActive);
+            pool = pools.putIfAbsent(key, newPool);
+            if (pool == null)
+            {
+                pool = newPool;
+
+                // Only the thread that created the key pool fills it. Other threads
+                // borrowing in the meantime create their own instances if needed.
+                for (int i = 0; i < minIdle; i++)
+                {
+                    if (!pool.idle.push(newInstance(clazz, parameter), maxIdle))
+                    {
+                        break;
+                    }
+                }
+            }
+        }
+        return pool;
+    }
+
+    private <I extends T> I newInstance(Class<I> clazz, P parameter)
+        throws InstantiationException, IllegalAccessException
+    {
+        final long start = System.nanoTime();
+        final I instance = clazz.newInstance();
+        if (instantiationListener != null)
+        {
+            instantiationListener.objectInstantiated(instance, parameter);
+        }
+        instantiations.incrementAndGet();
+        LatencyRecorder.recordCurrent(INSTANTIATION_LATENCY, start);
+        return instance;
+    }
+
+    /**
+     * Releases the permit of a borrow that failed, disposing of the instance if it was
+     * created.
+     */
+    private void discard(KeyPool<T> pool, T instance, P parameter)
+    {
+        try
+        {
+            if (instance != null)
+            {
+                dispose(instance, parameter);
+            }
+        }
+        finally
+        {
+            if (pool.permits != null)
+            {
+                pool.permits.release();
+            }
+        }
+    }
+
+    private void disposeIdle(KeyPool<T> pool, P parameter)
+    {
+        T instance;
+        while ((instance = pool.idle.pop()) != null)
+        {
+            dispose(instance, parameter);
+        }
+    }
+
+    private void dispose(T instance, P parameter)
+    {
+        if (disposalListener != null)
+        {
+            disposalListener.dispose(instance, parameter);
+        }
+    }
+
+    /**
+     * Idle instances and active instance permits of one class-parameter pair.
+     */
+    private static final class KeyPool<T>
+    {
+        final IdleStack<T> idle = new IdleStack<T>();
+        final Semaphore permits;
+
+        KeyPool(int maxActive)
+        {
+            this.permits = maxActive > 0 ? new Semaphore(maxActive) : null;
+        }
+    }
+
+    /**
+     * A bounded lock-free (Treiber) stack of idle instances.
+     */
+    private static final class IdleStack<T>
+    {
+        private final AtomicReference<Node<T>> head = new AtomicReference<Node<T>>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * Pushes an instance unless the stack already holds <code>maxSize</code>
+         * instances, returns <code>true</code> if the instance was pushed.
+         */
+        boolean push(T instance, int maxSize)
+        {
+            int currentSize;
+            do
+            {
+                currentSize = size.get();
+                if (currentSize >= maxSize)
+                {
+                    return false;
+                }
+            }
+            while (!size.compareAndSet(currentSize, currentSize + 1));
+
+            final Node<T> node = new Node<T>(instance);
+            Node<T> currentHead;
+            do
+            {
+                currentHead = head.get();
+                node.next = currentHead;
+            }
+            while (!head.compareAndSet(currentHead, node));
+            return true;
+        }
+
+        /**
+         * Pops the most recently pushed instance or returns <code>null</code>.
+         */
+        T pop()
+        {
+            Node<T> currentHead;
+            do
+            {
+                currentHead = head.get();
+                if (currentHead == null)
+                {
+                    return null;
+                }
+            }
+            while (!head.compareAndSet(currentHead, currentHead.next));
+
+            size.decrementAndGet();
+            return currentHead.instance;
+        }
+
+        int size()
+        {
+            return size.get();
+        }
+    }
+
+    private static final class Node<T>
+    {
+        final T instance;
+        Node<T> next;
+
+        Node(T instance)
+        {
+            this.instance = instance;
+        }
+    }
+
+    /**
+     * Wraps an instance with identity-based equality.
+     */
+    private static final class Identity
+    {
+        private final Object instance;
+
+        Identity(Object instance)
+        {
+            this.instance = instance;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(instance);
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof Identity && ((Identity) other).instance == instance;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import org.apache.mahout.math.function.IntIntDoubleFunction;
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link CompressedRowDoubleMatrix2D}.
+ */
+@SuppressWarnings("deprecation")
+public class CompressedRowDoubleMatrix2DTest extends CarrotTestCase
+{
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testElementAccess()
+    {
+        final DoubleMatrix2D dense = randomSparse(randomIntBetween(0, 20),
+            randomIntBetween(0, 20));
+        final CompressedRowDoubleMatrix2D compressed = new CompressedRowDoubleMatrix2D(
+            dense);
+
+        MatrixAssertions.assertThat(compressed).isEquivalentTo(dense.toArray());
+        assertThat(compressed.cardinality()).isEqualTo(dense.cardinality());
+        assertThat(compressed.nonZeros()).isEqualTo(dense.cardinality());
+    }
+
+    @Test
+    public void testUnsortedRows()
+    {
+        final CompressedRowDoubleMatrix2D matrix = new CompressedRowDoubleMatrix2D(2, 3,
+            new int []
+            {
+                0, 2, 3
+            }, new int []
+            {
+                2, 0, 1
+            }, new double []
+            {
+                3, 1, 2
+            });
+
+        MatrixAssertions.assertThat(matrix).isEquivalentTo(new double [] []
+        {
+            {
+                1, 0, 3
+            },
+            {
+                0, 2, 0
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateColumns()
+    {
+        new CompressedRowDoubleMatrix2D(1, 3, new int []
+        {
+            0, 2
+        }, new int []
+        {
+            1, 1
+        }, new double []
+        {
+            1, 2
+        });
+    }
+
+    @Test
+    public void testSetNonZero()
+    {
+        final CompressedRowDoubleMatrix2D matrix = new CompressedRowDoubleMatrix2D(
+            new DenseDoubleMatrix2D(new double [] []
+            {
+                {
+                    0, 1
+                }
+            }));
+
+        matrix.set(0, 1, 5);
+        matrix.set(0, 0, 0);
+        assertThat(matrix.get(0, 1)).isEqualTo(5.0);
+
+        try
+        {
+            matrix.set(0, 0, 1);
+            fail();
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testViews()
+    {
+        final DoubleMatrix2D dense = randomSparse(randomIntBetween(3, 20),
+            randomIntBetween(3, 20));
+        final DoubleMatrix2D compressed = new CompressedRowDoubleMatrix2D(dense);
+
+        MatrixAssertions.assertThat(compressed.viewDice()).isEquivalentTo(
+            dense.viewDice().toArray());
+        MatrixAssertions.assertThat(compressed.viewDice().viewDice()).isEquivalentTo(
+            dense.toArray());
+        MatrixAssertions.assertThat(compressed.viewPart(1, 2, 2, 1)).isEquivalentTo(
+            dense.viewPart(1, 2, 2, 1).toArray());
+        MatrixAssertions.assertThat(compressed.viewRowFlip().viewDice()).isEquivalentTo(
+            dense.viewRowFlip().viewDice().toArray());
+
+        final int [] rows = new int []
+        {
+            2, 0
+        };
+        final int [] columns = new int []
+        {
+            1, 2, 0
+        };
+        MatrixAssertions.assertThat(compressed.viewSelection(rows, columns))
+            .isEquivalentTo(dense.viewSelection(rows, columns).toArray());
+        MatrixAssertions.assertThat(compressed.viewSelection(null, columns).copy())
+            .isEquivalentTo(dense.viewSelection(null, columns).toArray());
+        MatrixAssertions.assertThat(compressed.viewDice().viewSelection(columns, rows))
+            .isEquivalentTo(dense.viewDice().viewSelection(columns, rows).toArray());
+        MatrixAssertions.assertThat(
+            compressed.viewSelection(rows, columns).viewDice().viewColumn(1)).isEquivalentTo(
+            dense.viewSelection(rows, columns).viewDice().viewColumn(1).toArray());
+
+        for (int r = 0; r < dense.rows(); r++)
+        {
+            MatrixAssertions.assertThat(compressed.viewRow(r)).isEquivalentTo(
+                dense.viewRow(r).toArray());
+        }
+        for (int c = 0; c < dense.columns(); c++)
+        {
+            MatrixAssertions.assertThat(compressed.viewColumn(c)).isEquivalentTo(
+                dense.viewColumn(c).toArray());
+        }
+    }
+
+    @Test
+    public void testZMult()
+    {
+        final int m = randomIntBetween(1, 20);
+        final int n = randomIntBetween(1, 20);
+        final int p = randomIntBetween(1, 5);
+        final DoubleMatrix2D dense = randomSparse(m, n);
+        final DoubleMatrix2D compressed = new CompressedRowDoubleMatrix2D(dense);
+        final double alpha = randomDouble();
+        final double beta = randomBoolean() ? 0 : randomDouble();
+
+        for (boolean diced : new boolean []
+        {
+            false, true
+        })
+        {
+            final DoubleMatrix2D a = diced ? dense.viewDice() : dense;
+            final DoubleMatrix2D b = diced ? compressed.viewDice() : compressed;
+            for (boolean transposeA : new boolean []
+            {
+                false, true
+            })
+            {
+                for (boolean transposeB : new boolean []
+                {
+                    false, true
+                })
+                {
+                    final int inner = transposeA ? a.rows() : a.columns();
+                    final DoubleMatrix2D B = randomSparse(transposeB ? p : inner,
+                        transposeB ? inner : p);
+                    final DoubleMatrix2D C = randomSparse(transposeA ? a.columns()
+                        : a.rows(), p);
+
+                    final DoubleMatrix2D expected = a.zMult(B, C.copy(), alpha, beta,
+                        transposeA, transposeB);
+                    final DoubleMatrix2D actual = b.zMult(B, C.copy(), alpha, beta,
+                        transposeA, transposeB);
+                    MatrixAssertions.assertThat(actual).isEquivalentTo(expected, DELTA);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testForEachNonZero()
+    {
+        final DoubleMatrix2D dense = randomSparse(randomIntBetween(1, 20),
+            randomIntBetween(1, 20));
+        final DoubleMatrix2D compressed = new CompressedRowDoubleMatrix2D(dense);
+        final IntIntDoubleFunction twice = new IntIntDoubleFunction()
+        {
+            public double apply(int row, int column, double value)
+            {
+                return value * 2;
+            }
+        };
+
+        dense.forEachNonZero(twice);
+        compressed.viewDice().forEachNonZero(twice);
+        MatrixAssertions.assertThat(compressed).isEquivalentTo(dense.toArray());
+
+        final DoubleMatrix2D sum = new DenseDoubleMatrix2D(dense.columns(), dense.rows());
+        compressed.viewDice().forEachNonZero(new IntIntDoubleFunction()
+        {
+            public double apply(int row, int column, double value)
+            {
+                sum.setQuick(row, column, sum.getQuick(row, column) + value);
+                return value;
+            }
+        });
+        MatrixAssertions.assertThat(sum).isEquivalentTo(dense.viewDice().toArray());
+    }
+
+    @Test
+    public void testNormalizeColumnL2()
+    {
+        final DoubleMatrix2D dense = randomSparse(randomIntBetween(1, 20),
+            randomIntBetween(1, 20));
+        final DoubleMatrix2D compressed = new CompressedRowDoubleMatrix2D(dense);
+
+        final double [] expectedNorms = new double [dense.columns()];
+        final double [] norms = new double [dense.columns()];
+        MatrixUtils.normalizeColumnL2(dense, expectedNorms);
+        MatrixUtils.normalizeColumnL2(compressed, norms);
+        MatrixAssertions.assertThat(compressed).isEquivalentTo(dense, DELTA);
+        org.junit.Assert.assertArrayEquals(expectedNorms, norms, DELTA);
+
+        final DoubleMatrix2D diced = new CompressedRowDoubleMatrix2D(dense.viewDice()
+            .copy()).viewDice();
+        MatrixUtils.normalizeColumnL2(dense, null);
+        MatrixUtils.normalizeColumnL2(diced, null);
+        MatrixAssertions.assertThat(diced).isEquivalentTo(dense, DELTA);
+    }
+
+    /**
+     * Returns a random dense matrix with about a third of non-zero elements.
+     */
+    private DoubleMatrix2D randomSparse(int rows, int columns)
+    {
+        final DoubleMatrix2D matrix = new DenseDoubleMatrix2D(rows, columns);
+        for (int r = 0; r < rows; r++)
+        {
+            for (int c = 0; c < columns; c++)
+            {
+                if (randomIntBetween(0, 2) == 0)
+                {
+                    matrix.setQuick(r, c, randomDouble() + 0.1);
+                }
+            }
+        }
+        return matrix;
+    }
+}
@@ -0,0 +1,210 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.fest.assertions.Delta;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link FlatDoubleMatrix2D} and {@link FlatFloatMatrix2D}.
+ */
+@SuppressWarnings("deprecation")
+public class FlatMatrix2DTest extends CarrotTestCase
+{
+    /** Results stored in single precision are rounded */
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void testLayout()
+    {
+        final FlatDoubleMatrix2D rowMajor = new FlatDoubleMatrix2D(2, 3);
+        final FlatDoubleMatrix2D columnMajor = new FlatDoubleMatrix2D(2, 3, true);
+        rowMajor.set(1, 2, 5);
+        columnMajor.set(1, 2, 5);
+
+        assertThat(rowMajor.isRowMajor()).isTrue();
+        assertThat(rowMajor.isColumnMajor()).isFalse();
+        assertThat(rowMajor.elements()[1 * 3 + 2]).isEqualTo(5.0);
+        assertThat(columnMajor.isColumnMajor()).isTrue();
+        assertThat(columnMajor.elements()[2 * 2 + 1]).isEqualTo(5.0);
+
+        assertThat(((FlatMatrix2D) rowMajor.viewDice()).isColumnMajor()).isTrue();
+        assertThat(((FlatMatrix2D) rowMajor.viewPart(0, 0, 1, 3)).isRowMajor()).isFalse();
+    }
+
+    @Test
+    public void testSinglePrecision()
+    {
+        final FlatFloatMatrix2D matrix = new FlatFloatMatrix2D(1, 1);
+        matrix.set(0, 0, 0.1);
+        assertThat(matrix.get(0, 0)).isEqualTo((double) 0.1f);
+        assertThat(matrix.like(2, 2)).isInstanceOf(FlatFloatMatrix2D.class);
+        assertThat(matrix.elements()[0]).isEqualTo(0.1f);
+    }
+
+    @Test
+    public void testViews()
+    {
+        final DoubleMatrix2D dense = random(randomIntBetween(3, 20), randomIntBetween(3,
+            20));
+        final DoubleMatrix2D flat = flat(dense);
+
+        MatrixAssertions.assertThat(flat).isEquivalentTo(dense.toArray());
+        MatrixAssertions.assertThat(flat.viewDice()).isEquivalentTo(
+            dense.viewDice().toArray());
+        MatrixAssertions.assertThat(flat.viewPart(1, 2, 2, 1)).isEquivalentTo(
+            dense.viewPart(1, 2, 2, 1).toArray());
+        MatrixAssertions.assertThat(flat.viewRowFlip().viewDice().viewColumnFlip())
+            .isEquivalentTo(dense.viewRowFlip().viewDice().viewColumnFlip().toArray());
+
+        final int [] rows = new int []
+        {
+            2, 0
+        };
+        final int [] columns = new int []
+        {
+            1, 2, 0
+        };
+        MatrixAssertions.assertThat(flat.viewSelection(rows, columns)).isEquivalentTo(
+            dense.viewSelection(rows, columns).toArray());
+        MatrixAssertions.assertThat(flat.viewDice().viewSelection(columns, rows))
+            .isEquivalentTo(dense.viewDice().viewSelection(columns, rows).toArray());
+        MatrixAssertions.assertThat(
+            flat.viewSelection(rows, columns).viewDice().viewColumn(1)).isEquivalentTo(
+            dense.viewSelection(rows, columns).viewDice().viewColumn(1).toArray());
+        MatrixAssertions.assertThat(flat.viewSelection(rows, null).copy())
+            .isEquivalentTo(dense.viewSelection(rows, null).toArray());
+
+        for (int r = 0; r < dense.rows(); r++)
+        {
+            MatrixAssertions.assertThat(flat.viewRow(r)).isEquivalentTo(
+                dense.viewRow(r).toArray());
+        }
+        for (int c = 0; c < dense.columns(); c++)
+        {
+            MatrixAssertions.assertThat(flat.viewColumn(c)).isEquivalentTo(
+                dense.viewColumn(c).toArray());
+        }
+    }
+
+    @Test
+    public void testViewsShareStorage()
+    {
+        final DoubleMatrix2D dense = random(randomIntBetween(3, 20), randomIntBetween(3,
+            20));
+        final DoubleMatrix2D flat = flat(dense);
+
+        flat.viewColumn(1).assign(0.5);
+        dense.viewColumn(1).assign(0.5);
+        flat.viewDice().viewRow(2).assign(0.25);
+        dense.viewDice().viewRow(2).assign(0.25);
+        flat.viewSelection(new int []
+        {
+            0
+        }, null).viewRow(0).assign(0.125);
+        dense.viewSelection(new int []
+        {
+            0
+        }, null).viewRow(0).assign(0.125);
+        flat.viewPart(1, 1, 2, 2).assign(Functions.plus(1));
+        dense.viewPart(1, 1, 2, 2).assign(Functions.plus(1));
+
+        MatrixAssertions.assertThat(flat).isEquivalentTo(dense.toArray());
+    }
+
+    @Test
+    public void testElementwiseOperations()
+    {
+        final DoubleMatrix2D dense = random(randomIntBetween(1, 20), randomIntBetween(1,
+            20));
+        final DoubleMatrix2D other = random(dense.rows(), dense.columns());
+        final DoubleMatrix2D flat = flat(dense);
+        final DoubleMatrix2D flatOther = randomBoolean() ? flat(other) : other;
+
+        assertThat(flat.aggregate(Functions.PLUS, Functions.SQUARE)).isEqualTo(
+            dense.aggregate(Functions.PLUS, Functions.SQUARE), Delta.delta(DELTA));
+        assertThat(flat.aggregate(flatOther, Functions.PLUS, Functions.MULT)).isEqualTo(
+            dense.aggregate(other, Functions.PLUS, Functions.MULT), Delta.delta(DELTA));
+
+        flat.assign(flatOther, Functions.PLUS);
+        dense.assign(other, Functions.PLUS);
+        flat.assign(Functions.mult(0.5));
+        dense.assign(Functions.mult(0.5));
+        MatrixAssertions.assertThat(flat).isEquivalentTo(dense, DELTA);
+
+        flat.assign(flatOther);
+        MatrixAssertions.assertThat(flat).isEquivalentTo(other, DELTA);
+
+        flat.assign(0.5);
+        assertThat(flat.aggregate(Functions.MIN, Functions.IDENTITY)).isEqualTo(0.5);
+        assertThat(flat.aggregate(Functions.MAX, Functions.IDENTITY)).isEqualTo(0.5);
+    }
+
+    @Test
+    public void testAssignTransposition()
+    {
+        final int size = randomIntBetween(1, 20);
+        final DoubleMatrix2D dense = random(size, size);
+        final DoubleMatrix2D flat = flat(dense);
+
+        // The source shares the storage with the target
+        flat.assign(flat.viewDice());
+        MatrixAssertions.assertThat(flat).isEquivalentTo(dense.viewDice().toArray());
+    }
+
+    @Test
+    public void testZMult()
+    {
+        final DoubleMatrix2D A = random(randomIntBetween(1, 20), randomIntBetween(1, 20));
+        final DoubleMatrix2D B = random(A.rows(), randomIntBetween(1, 20));
+
+        MatrixAssertions.assertThat(flat(A).zMult(flat(B), null, 1, 0, true, false))
+            .isEquivalentTo(A.zMult(B, null, 1, 0, true, false), DELTA);
+        MatrixAssertions.assertThat(flat(A).zMult(B, null, 2, 0, true, false))
+            .isEquivalentTo(A.zMult(B, null, 2, 0, true, false), DELTA);
+    }
+
+    /**
+     * Returns a random dense matrix with values exactly representable in single
+     * precision.
+     */
+    private DoubleMatrix2D random(int rows, int columns)
+    {
+        final DoubleMatrix2D matrix = new DenseDoubleMatrix2D(rows, columns);
+        for (int r = 0; r < rows; r++)
+        {
+            for (int c = 0; c < columns; c++)
+            {
+                matrix.setQuick(r, c, (float) randomDouble());
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Returns a flat copy of the matrix with a random precision and layout.
+     */
+    private DoubleMatrix2D flat(DoubleMatrix2D matrix)
+    {
+        final boolean columnMajor = randomBoolean();
+        final FlatMatrix2D result = randomBoolean() ? new FlatDoubleMatrix2D(matrix
+            .rows(), matrix.columns(), columnMajor) : new FlatFloatMatrix2D(matrix.rows(),
+            matrix.columns(), columnMajor);
+        result.assign(matrix);
+        return result;
+    }
+}
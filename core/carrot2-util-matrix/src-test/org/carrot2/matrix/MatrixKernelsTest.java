@@ -0,0 +1,159 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+
+/**
+ * Test cases for {@link MatrixKernels}.
+ */
+@SuppressWarnings("deprecation")
+@ThreadLeakLingering(linger = 2000)
+public class MatrixKernelsTest extends CarrotTestCase
+{
+    private static final double DELTA = 1e-9;
+
+    /** Products computed in single precision are rounded */
+    private static final double SINGLE_DELTA = 1e-4;
+
+    private long threshold;
+
+    @Before
+    public void forceKernel()
+    {
+        threshold = MatrixKernels.getParallelismThreshold();
+        MatrixKernels.setParallelismThreshold(0);
+    }
+
+    @After
+    public void restoreThreshold()
+    {
+        MatrixKernels.setParallelismThreshold(threshold);
+    }
+
+    @Test
+    public void testMultiply()
+    {
+        // Large enough to span several blocks of the kernel
+        final int m = randomIntBetween(1, 100);
+        final int p = randomIntBetween(1, 150);
+        final int n = randomIntBetween(1, 300);
+
+        for (boolean transposeA : new boolean []
+        {
+            false, true
+        })
+        {
+            for (boolean transposeB : new boolean []
+            {
+                false, true
+            })
+            {
+                final DoubleMatrix2D A = random(transposeA ? p : m, transposeA ? m : p);
+                final DoubleMatrix2D B = random(transposeB ? n : p, transposeB ? p : n);
+
+                final DoubleMatrix2D expected = A.zMult(B, null, 1, 0, transposeA,
+                    transposeB);
+                final DoubleMatrix2D actual = MatrixKernels.multiply(A, B, null,
+                    transposeA, transposeB);
+                MatrixAssertions.assertThat(actual).isEquivalentTo(expected, DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testSinglePrecision()
+    {
+        final int m = randomIntBetween(1, 100);
+        final int p = randomIntBetween(1, 150);
+        final int n = randomIntBetween(1, 300);
+        final boolean transposeA = randomBoolean();
+        final boolean transposeB = randomBoolean();
+
+        final DoubleMatrix2D A = random(transposeA ? p : m, transposeA ? m : p);
+        final DoubleMatrix2D B = random(transposeB ? n : p, transposeB ? p : n);
+        final FlatFloatMatrix2D Af = new FlatFloatMatrix2D(A.rows(), A.columns(),
+            randomBoolean());
+        final FlatFloatMatrix2D Bf = new FlatFloatMatrix2D(B.rows(), B.columns(),
+            randomBoolean());
+        Af.assign(A);
+        Bf.assign(B);
+
+        final DoubleMatrix2D expected = new DenseDoubleMatrix2D(Af.toArray()).zMult(
+            new DenseDoubleMatrix2D(Bf.toArray()), null, 1, 0, transposeA, transposeB);
+        final DoubleMatrix2D actual = MatrixKernels.multiply(Af, Bf, null, transposeA,
+            transposeB);
+        assertThat(actual).isInstanceOf(FlatFloatMatrix2D.class);
+        MatrixAssertions.assertThat(actual).isEquivalentTo(expected, SINGLE_DELTA);
+
+        // Computed in single precision, stored in a double precision matrix
+        final DoubleMatrix2D C = new DenseDoubleMatrix2D(m, n);
+        MatrixKernels.multiply(Af, Bf, C, transposeA, transposeB);
+        MatrixAssertions.assertThat(C).isEquivalentTo(actual.toArray());
+    }
+
+    @Test
+    public void testViews()
+    {
+        final DoubleMatrix2D A = random(20, 30);
+        final DoubleMatrix2D B = random(40, 20);
+        final DoubleMatrix2D C = new DenseDoubleMatrix2D(30, 50);
+
+        // Multiply views, store the result in a view
+        final DoubleMatrix2D Av = A.viewPart(2, 3, 10, 20).viewRowFlip();
+        final DoubleMatrix2D Bv = B.viewDice().viewPart(0, 5, 20, 10);
+        final DoubleMatrix2D Cv = C.viewPart(5, 10, 10, 10);
+        MatrixKernels.multiply(Av, Bv, Cv);
+
+        MatrixAssertions.assertThat(Cv).isEquivalentTo(
+            Av.zMult(Bv, null, 1, 0, false, false), DELTA);
+        assertThat(C.viewPart(0, 0, 5, 50).cardinality()).isEqualTo(0);
+    }
+
+    @Test
+    public void testCompressedRowMatrix()
+    {
+        final DoubleMatrix2D A = random(30, 20);
+        final DoubleMatrix2D B = random(30, 10);
+
+        MatrixAssertions.assertThat(
+            MatrixKernels.multiply(new CompressedRowDoubleMatrix2D(A), B, null, true,
+                false)).isEquivalentTo(A.zMult(B, null, 1, 0, true, false), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInnerDimensionMismatch()
+    {
+        MatrixKernels.multiply(random(3, 4), random(5, 2), null);
+    }
+
+    private DoubleMatrix2D random(int rows, int columns)
+    {
+        final DoubleMatrix2D matrix = new DenseDoubleMatrix2D(rows, columns);
+        for (int r = 0; r < rows; r++)
+        {
+            for (int c = 0; c < columns; c++)
+            {
+                matrix.setQuick(r, c, randomDouble() - 0.5);
+            }
+        }
+        return matrix;
+    }
+}
@@ -12,12 +12,19 @@
 
 package org.carrot2.matrix.factorization;
 
+import java.util.Arrays;
+
+import org.apache.mahout.math.function.Functions;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
 import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.matrix.CompressedRowDoubleMatrix2D;
+import org.carrot2.matrix.FlatFloatMatrix2D;
 import org.carrot2.matrix.MatrixAssertions;
+import org.carrot2.matrix.MatrixUtils;
 import org.carrot2.matrix.factorization.seeding.ISeedingStrategy;
 import org.carrot2.matrix.factorization.seeding.ISeedingStrategyFactory;
 import org.carrot2.util.tests.CarrotTestCase;
+import org.fest.assertions.Delta;
 import org.junit.Test;
 
 /**
@@ -114,6 +121,54 @@ public class MatrixFactorizationTest extends CarrotTestCase
 
         check(expectedU, expectedV, factorization);
         org.junit.Assert.assertArrayEquals(expectedS, factorization.getSingularValues(), DELTA);
+
+        check(expectedU, expectedV, factory.factorize(new CompressedRowDoubleMatrix2D(A)));
+    }
+
+    @Test
+    public void testTruncatedSVD()
+    {
+        // A matrix with quickly decaying singular values: 2^-i, i = 0..29
+        final int rows = randomIntBetween(50, 80);
+        final int columns = randomIntBetween(50, 80);
+        final int rank = 30;
+        final DoubleMatrix2D X = randomOrthonormal(rows, rank);
+        final DoubleMatrix2D Y = randomOrthonormal(columns, rank);
+        for (int c = 0; c < rank; c++)
+        {
+            X.viewColumn(c).assign(Functions.mult(Math.pow(2, -c)));
+        }
+        final DoubleMatrix2D matrix = X.zMult(Y, new DenseDoubleMatrix2D(rows, columns),
+            1, 0, false, true);
+
+        final PartialSingularValueDecompositionFactory factory = new PartialSingularValueDecompositionFactory();
+        final PartialSingularValueDecomposition full = (PartialSingularValueDecomposition) factory
+            .factorize(matrix);
+        factory.setK(5);
+        for (DoubleMatrix2D input : new DoubleMatrix2D []
+        {
+            matrix, new CompressedRowDoubleMatrix2D(matrix)
+        })
+        {
+            final PartialSingularValueDecomposition truncated = (PartialSingularValueDecomposition) factory
+                .factorize(input);
+            assertThat(truncated.getU().columns()).isEqualTo(5);
+            assertThat(truncated.getV().columns()).isEqualTo(5);
+            org.junit.Assert.assertArrayEquals(
+                Arrays.copyOf(full.getSingularValues(), 5), truncated.getSingularValues(),
+                1e-8);
+
+            // Singular vectors are unique up to their signs
+            for (int c = 0; c < 5; c++)
+            {
+                assertThat(
+                    Math.abs(truncated.getU().viewColumn(c).zDotProduct(
+                        full.getU().viewColumn(c)))).isEqualTo(1, Delta.delta(1e-6));
+                assertThat(
+                    Math.abs(truncated.getV().viewColumn(c).zDotProduct(
+                        full.getV().viewColumn(c)))).isEqualTo(1, Delta.delta(1e-6));
+            }
+        }
     }
 
     @Test
@@ -372,6 +427,39 @@ public class MatrixFactorizationTest extends CarrotTestCase
             new LocalNonnegativeMatrixFactorizationFactory());
     }
 
+    @Test
+    public void testApproximationError()
+    {
+        for (IterativeMatrixFactorizationFactory factory : new IterativeMatrixFactorizationFactory []
+        {
+            new NonnegativeMatrixFactorizationEDFactory(),
+            new NonnegativeMatrixFactorizationKLFactory(),
+            new LocalNonnegativeMatrixFactorizationFactory()
+        })
+        {
+            factory.setK(K);
+            factory.setStopThreshold(STOP_THRESHOLD);
+            factory.setSeedingFactory(ConstantSeedingStrategyFactory.INSTANCE);
+            for (int iterations = 0; iterations < 5; iterations++)
+            {
+                factory.setMaxIterations(iterations);
+                for (DoubleMatrix2D input : new DoubleMatrix2D []
+                {
+                    A, new CompressedRowDoubleMatrix2D(A)
+                })
+                {
+                    final IIterativeMatrixFactorization factorization = (IIterativeMatrixFactorization) factory
+                        .factorize(input);
+                    final DoubleMatrix2D difference = factorization.getU().zMult(
+                        factorization.getV(), new DenseDoubleMatrix2D(A.rows(), A.columns()),
+                        1, 0, false, true).assign(A, Functions.MINUS);
+                    assertThat(factorization.getApproximationError()).as(factory.toString())
+                        .isEqualTo(MatrixUtils.frobeniusNorm(difference), Delta.delta(1e-8));
+                }
+            }
+        }
+    }
+
     private IMatrixFactorization checkIterative(DoubleMatrix2D expectedU,
         DoubleMatrix2D expectedV, IterativeMatrixFactorizationFactory factory)
     {
@@ -383,15 +471,53 @@ public class MatrixFactorizationTest extends CarrotTestCase
         IMatrixFactorization factorization = factory.factorize(A);
         check(expectedU, expectedV, factorization);
 
+        // The same results for the compressed sparse input
+        check(expectedU, expectedV, factory.factorize(new CompressedRowDoubleMatrix2D(A)));
+
+        // Single precision input gives single precision factors
+        final IMatrixFactorization singlePrecision = factory
+            .factorize(new FlatFloatMatrix2D(A));
+        assertThat(singlePrecision.getU()).isInstanceOf(FlatFloatMatrix2D.class);
+        check(expectedU, expectedV, singlePrecision, 1e-3);
+
+        // Single precision requested for the compressed sparse input
+        factory.setSinglePrecision(true);
+        final IMatrixFactorization requested = factory
+            .factorize(new CompressedRowDoubleMatrix2D(A));
+        factory.setSinglePrecision(false);
+        assertThat(requested.getU()).isInstanceOf(FlatFloatMatrix2D.class);
+        assertThat(requested.getV()).isInstanceOf(FlatFloatMatrix2D.class);
+        check(expectedU, expectedV, requested, 1e-3);
+
         return factorization;
     }
 
     private void check(DoubleMatrix2D expectedU, DoubleMatrix2D expectedV,
         IMatrixFactorization factorization)
+    {
+        check(expectedU, expectedV, factorization, DELTA);
+    }
+
+    private void check(DoubleMatrix2D expectedU, DoubleMatrix2D expectedV,
+        IMatrixFactorization factorization, double delta)
     {
         final DoubleMatrix2D u = factorization.getU();
-        MatrixAssertions.assertThat(u).as("U").isEquivalentTo(expectedU, DELTA);
-        MatrixAssertions.assertThat(factorization.getV()).as("V").isEquivalentTo(expectedV, DELTA);
+        MatrixAssertions.assertThat(u).as("U").isEquivalentTo(expectedU, delta);
+        MatrixAssertions.assertThat(factorization.getV()).as("V").isEquivalentTo(expectedV, delta);
+    }
+
+    private DoubleMatrix2D randomOrthonormal(int rows, int columns)
+    {
+        final DoubleMatrix2D matrix = new DenseDoubleMatrix2D(rows, columns);
+        for (int r = 0; r < rows; r++)
+        {
+            for (int c = 0; c < columns; c++)
+            {
+                matrix.setQuick(r, c, getRandom().nextGaussian());
+            }
+        }
+        PartialSingularValueDecomposition.orthonormalizeColumns(matrix);
+        return matrix;
     }
 
     /** Returns constant matrices of fixed size */
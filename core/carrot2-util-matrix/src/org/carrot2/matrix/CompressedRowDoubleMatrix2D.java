@@ -0,0 +1,669 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import java.util.Arrays;
+
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.function.IntIntDoubleFunction;
+import org.apache.mahout.math.matrix.DoubleMatrix1D;
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.apache.mahout.math.matrix.impl.AbstractMatrix2D;
+import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix1D;
+import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+
+import com.carrotsearch.hppc.sorting.IndirectComparator;
+import com.carrotsearch.hppc.sorting.IndirectSort;
+
+/**
+ * A sparse matrix stored in the compressed sparse row (CSR) format: column indices and
+ * values of non-zero elements of each row are stored contiguously, in the order of
+ * columns. Memory taken by the matrix and the time of {@link #zMult} and
+ * {@link #forEachNonZero(IntIntDoubleFunction)} are proportional to the number of
+ * non-zero elements rather than the number of rows times columns.
+ * <p>
+ * The structure of the matrix is fixed on construction: non-zero elements can be
+ * modified, but zero elements cannot be set to non-zero values. All views (including
+ * {@link #viewDice()}, {@link #viewPart(int, int, int, int)} and
+ * {@link #viewSelection(int[], int[])}) are supported, multiplication of the matrix or
+ * its transposition ({@link #viewDice()}) is performed natively, other views fall back
+ * to element-wise access, which requires a binary search within a row. Results of
+ * operations such as {@link #like(int, int)} are dense matrices, {@link #copy()} returns
+ * a compressed matrix.
+ */
+@SuppressWarnings("deprecation")
+public class CompressedRowDoubleMatrix2D extends DoubleMatrix2D
+{
+    /** Number of rows and columns of the underlying storage. */
+    final int physicalRows;
+    final int physicalColumns;
+
+    /**
+     * Non-zero elements of row <code>r</code> are stored at indices from
+     * <code>rowPointers[r]</code> (inclusive) to <code>rowPointers[r + 1]</code>
+     * (exclusive) of {@link #columnIndices} and {@link #values}.
+     */
+    final int [] rowPointers;
+
+    /** Column indices of non-zero elements, increasing within each row. */
+    final int [] columnIndices;
+
+    /** Values of non-zero elements. */
+    final double [] values;
+
+    /** Offsets of selected rows and columns, <code>null</code> if not a selection view. */
+    private int [] rowOffsets;
+    private int [] columnOffsets;
+
+    /**
+     * Creates an empty (all zero) matrix.
+     */
+    public CompressedRowDoubleMatrix2D(int rows, int columns)
+    {
+        this(rows, columns, new int [rows + 1], new int [0], new double [0]);
+    }
+
+    /**
+     * Creates a matrix with the provided non-zero elements, the arrays are not copied. See
+     * {@link #rowPointers}. Column indices within each row are sorted if necessary.
+     *
+     * @throws IllegalArgumentException if the arrays are inconsistent or a row contains
+     *             the same column twice
+     */
+    public CompressedRowDoubleMatrix2D(int rows, int columns, int [] rowPointers,
+        int [] columnIndices, double [] values)
+    {
+        if (rowPointers.length != rows + 1 || rowPointers[0] != 0
+            || rowPointers[rows] != columnIndices.length
+            || columnIndices.length != values.length)
+        {
+            throw new IllegalArgumentException("Inconsistent compressed row arrays");
+        }
+
+        setUp(rows, columns);
+        this.physicalRows = rows;
+        this.physicalColumns = columns;
+        this.rowPointers = rowPointers;
+        this.columnIndices = columnIndices;
+        this.values = values;
+
+        for (int r = 0; r < rows; r++)
+        {
+            sortRow(rowPointers[r], rowPointers[r + 1]);
+        }
+    }
+
+    /**
+     * Creates a compressed copy of non-zero elements of the provided matrix.
+     */
+    public CompressedRowDoubleMatrix2D(DoubleMatrix2D matrix)
+    {
+        this(matrix.rows(), matrix.columns(), compress(matrix));
+    }
+
+    private CompressedRowDoubleMatrix2D(int rows, int columns, Object [] arrays)
+    {
+        this(rows, columns, (int []) arrays[0], (int []) arrays[1], (double []) arrays[2]);
+    }
+
+    /**
+     * Returns the row pointers, column indices and values of non-zero elements of a
+     * matrix.
+     */
+    private static Object [] compress(DoubleMatrix2D matrix)
+    {
+        final int rows = matrix.rows();
+        final int columns = matrix.columns();
+        final int [] rowPointers = new int [rows + 1];
+        final int [] columnIndices = new int [matrix.cardinality()];
+        final double [] values = new double [columnIndices.length];
+
+        int index = 0;
+        for (int r = 0; r < rows; r++)
+        {
+            for (int c = 0; c < columns; c++)
+            {
+                final double value = matrix.getQuick(r, c);
+                if (value != 0)
+                {
+                    columnIndices[index] = c;
+                    values[index] = value;
+                    index++;
+                }
+            }
+            rowPointers[r + 1] = index;
+        }
+
+        return new Object []
+        {
+            rowPointers, columnIndices, values
+        };
+    }
+
+    /**
+     * Sorts the elements of a row by column index.
+     */
+    private void sortRow(int start, int end)
+    {
+        for (int i = start + 1; i < end; i++)
+        {
+            if (columnIndices[i - 1] >= columnIndices[i])
+            {
+                final int [] order = IndirectSort.mergesort(start, end - start,
+                    new IndirectComparator.AscendingIntComparator(columnIndices));
+                final int [] sortedColumns = new int [order.length];
+                final double [] sortedValues = new double [order.length];
+                for (int j = 0; j < order.length; j++)
+                {
+                    sortedColumns[j] = columnIndices[order[j]];
+                    sortedValues[j] = values[order[j]];
+                }
+                for (int j = 1; j < sortedColumns.length; j++)
+                {
+                    if (sortedColumns[j - 1] == sortedColumns[j])
+                    {
+                        throw new IllegalArgumentException("Duplicate column index: "
+                            + sortedColumns[j]);
+                    }
+                }
+                System.arraycopy(sortedColumns, 0, columnIndices, start, order.length);
+                System.arraycopy(sortedValues, 0, values, start, order.length);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of stored non-zero elements of the underlying matrix.
+     */
+    public int nonZeros()
+    {
+        return values.length;
+    }
+
+    /**
+     * Returns <code>true</code> if this matrix covers the whole underlying storage in its
+     * original orientation.
+     */
+    final boolean isPlain()
+    {
+        return rowOffsets == null && rowZero == 0 && columnZero == 0
+            && rows == physicalRows && columns == physicalColumns
+            && rowStride == physicalColumns && columnStride == 1;
+    }
+
+    /**
+     * Returns <code>true</code> if this matrix is the transposition of the whole
+     * underlying storage.
+     */
+    final boolean isDiced()
+    {
+        return rowOffsets == null && rowZero == 0 && columnZero == 0
+            && rows == physicalColumns && columns == physicalRows && rowStride == 1
+            && columnStride == physicalColumns;
+    }
+
+    @Override
+    public double getQuick(int row, int column)
+    {
+        return getFlat(index(row, column));
+    }
+
+    @Override
+    public void setQuick(int row, int column, double value)
+    {
+        setFlat(index(row, column), value);
+    }
+
+    /**
+     * Returns the element at the provided row-major index of the underlying storage.
+     */
+    private double getFlat(int index)
+    {
+        final int position = position(index);
+        return position >= 0 ? values[position] : 0;
+    }
+
+    private void setFlat(int index, double value)
+    {
+        final int position = position(index);
+        if (position >= 0)
+        {
+            values[position] = value;
+        }
+        else if (value != 0)
+        {
+            throw new IllegalArgumentException(
+                "Zero elements of a compressed matrix cannot be modified");
+        }
+    }
+
+    /**
+     * Returns the position of the element at the provided row-major index of the
+     * underlying storage in {@link #values}, a negative value for zero elements.
+     */
+    private int position(int index)
+    {
+        final int row = index / physicalColumns;
+        final int column = index - row * physicalColumns;
+        return Arrays.binarySearch(columnIndices, rowPointers[row],
+            rowPointers[row + 1], column);
+    }
+
+    @Override
+    protected int rowOffset(int absRank)
+    {
+        return rowOffsets != null ? rowOffsets[absRank] : absRank;
+    }
+
+    @Override
+    protected int columnOffset(int absRank)
+    {
+        return columnOffsets != null ? columnOffsets[absRank] : absRank;
+    }
+
+    @Override
+    protected int index(int row, int column)
+    {
+        return rowOffset(rowZero + row * rowStride)
+            + columnOffset(columnZero + column * columnStride);
+    }
+
+    @Override
+    protected AbstractMatrix2D vDice()
+    {
+        super.vDice();
+        final int [] tmp = rowOffsets;
+        rowOffsets = columnOffsets;
+        columnOffsets = tmp;
+        return this;
+    }
+
+    @Override
+    public DoubleMatrix2D like(int rows, int columns)
+    {
+        return new DenseDoubleMatrix2D(rows, columns);
+    }
+
+    @Override
+    public DoubleMatrix1D like1D(int size)
+    {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    @Override
+    protected DoubleMatrix1D like1D(int size, int zero, int stride)
+    {
+        if (rowOffsets != null)
+        {
+            throw new IllegalStateException("Not a stride-based view");
+        }
+        return new Vector(this, size, zero, stride, null, 0);
+    }
+
+    @Override
+    public DoubleMatrix1D viewRow(int row)
+    {
+        if (rowOffsets == null)
+        {
+            return super.viewRow(row);
+        }
+        checkRow(row);
+        return new Vector(this, columns, columnZero, columnStride, columnOffsets,
+            rowOffsets[rowZero + row * rowStride]);
+    }
+
+    @Override
+    public DoubleMatrix1D viewColumn(int column)
+    {
+        if (rowOffsets == null)
+        {
+            return super.viewColumn(column);
+        }
+        checkColumn(column);
+        return new Vector(this, rows, rowZero, rowStride, rowOffsets,
+            columnOffsets[columnZero + column * columnStride]);
+    }
+
+    @Override
+    protected DoubleMatrix2D viewSelectionLike(int [] rowOffsets, int [] columnOffsets)
+    {
+        final CompressedRowDoubleMatrix2D view = (CompressedRowDoubleMatrix2D) view();
+        view.setUp(rowOffsets.length, columnOffsets.length, 0, 0, 1, 1);
+        view.rowOffsets = rowOffsets;
+        view.columnOffsets = columnOffsets;
+        return view;
+    }
+
+    /**
+     * Returns a compressed copy of this matrix.
+     */
+    @Override
+    public DoubleMatrix2D copy()
+    {
+        if (isPlain())
+        {
+            return new CompressedRowDoubleMatrix2D(rows, columns, rowPointers.clone(),
+                columnIndices.clone(), values.clone());
+        }
+
+        if (rowOffsets != null && rowStride == 1 && columnStride == 1 && rowZero == 0
+            && columnZero == 0 && isRowSelection(rowOffsets, columnOffsets))
+        {
+            return copySelection();
+        }
+
+        return new CompressedRowDoubleMatrix2D(this);
+    }
+
+    /**
+     * Returns <code>true</code> if the offsets select whole rows and columns of the
+     * underlying storage in its original orientation.
+     */
+    private boolean isRowSelection(int [] rowOffsets, int [] columnOffsets)
+    {
+        for (int offset : rowOffsets)
+        {
+            if (offset % physicalColumns != 0)
+            {
+                return false;
+            }
+        }
+        for (int offset : columnOffsets)
+        {
+            if (offset >= physicalColumns)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies a selection of rows and columns in the original orientation, visiting only
+     * the non-zero elements of selected rows.
+     */
+    private DoubleMatrix2D copySelection()
+    {
+        final int [] selectedColumn = new int [physicalColumns];
+        Arrays.fill(selectedColumn, -1);
+        for (int c = 0; c < columnOffsets.length; c++)
+        {
+            selectedColumn[columnOffsets[c]] = c;
+        }
+
+        final int [] pointers = new int [rows + 1];
+        for (int r = 0; r < rows; r++)
+        {
+            final int physicalRow = rowOffsets[r] / physicalColumns;
+            int count = 0;
+            for (int i = rowPointers[physicalRow]; i < rowPointers[physicalRow + 1]; i++)
+            {
+                if (selectedColumn[columnIndices[i]] >= 0)
+                {
+                    count++;
+                }
+            }
+            pointers[r + 1] = pointers[r] + count;
+        }
+
+        final int [] indices = new int [pointers[rows]];
+        final double [] selectedValues = new double [indices.length];
+        for (int r = 0; r < rows; r++)
+        {
+            final int physicalRow = rowOffsets[r] / physicalColumns;
+            int index = pointers[r];
+            for (int i = rowPointers[physicalRow]; i < rowPointers[physicalRow + 1]; i++)
+            {
+                final int column = selectedColumn[columnIndices[i]];
+                if (column >= 0)
+                {
+                    indices[index] = column;
+                    selectedValues[index] = values[i];
+                    index++;
+                }
+            }
+        }
+
+        return new CompressedRowDoubleMatrix2D(rows, columns, pointers, indices,
+            selectedValues);
+    }
+
+    @Override
+    public int cardinality()
+    {
+        if (isPlain() || isDiced())
+        {
+            int cardinality = 0;
+            for (double value : values)
+            {
+                if (value != 0)
+                {
+                    cardinality++;
+                }
+            }
+            return cardinality;
+        }
+        return super.cardinality();
+    }
+
+    /**
+     * Applies the function to all non-zero elements and stores the returned values
+     * if different from the original ones. Elements are visited in the order of rows and
+     * columns of the underlying storage.
+     */
+    @Override
+    public void forEachNonZero(IntIntDoubleFunction function)
+    {
+        final boolean diced = isDiced();
+        if (!diced && !isPlain())
+        {
+            super.forEachNonZero(function);
+            return;
+        }
+
+        for (int r = 0; r < physicalRows; r++)
+        {
+            for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++)
+            {
+                final double value = values[i];
+                if (value != 0)
+                {
+                    final double result = diced ? function.apply(columnIndices[i], r,
+                        value) : function.apply(r, columnIndices[i], value);
+                    if (result != value)
+                    {
+                        values[i] = result;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies this matrix (or its transposition) by <code>B</code> in time
+     * proportional to the number of non-zero elements times the number of columns of
+     * <code>B</code>. The result is dense. Views other than the whole matrix or its
+     * transposition fall back to the default implementation.
+     */
+    @Override
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha,
+        double beta, boolean transposeA, boolean transposeB)
+    {
+        final boolean diced = isDiced();
+        if (!diced && !isPlain())
+        {
+            return super.zMult(B, C, alpha, beta, transposeA, transposeB);
+        }
+
+        if (transposeB)
+        {
+            B = B.viewDice();
+        }
+
+        final int m = transposeA ? columns : rows;
+        final int n = transposeA ? rows : columns;
+        final int p = B.columns();
+        if (B.rows() != n)
+        {
+            throw new IllegalArgumentException("Matrix inner dimensions must agree: "
+                + m + "x" + n + ", " + B.rows() + "x" + p);
+        }
+        if (C == null)
+        {
+            C = new DenseDoubleMatrix2D(m, p);
+        }
+        else if (C.rows() != m || C.columns() != p)
+        {
+            throw new IllegalArgumentException("Incompatible result matrix: " + C.rows()
+                + "x" + C.columns() + ", expected: " + m + "x" + p);
+        }
+        if (C == B)
+        {
+            throw new IllegalArgumentException("Matrices must not be identical");
+        }
+
+        // Dense copy of B, row-major
+        final double [] b = new double [n * p];
+        for (int r = 0; r < n; r++)
+        {
+            for (int c = 0; c < p; c++)
+            {
+                b[r * p + c] = B.getQuick(r, c);
+            }
+        }
+
+        // Product, row-major
+        final double [] product = new double [m * p];
+        if (transposeA == diced)
+        {
+            // Rows of the result correspond to rows of the underlying storage.
+            for (int r = 0; r < physicalRows; r++)
+            {
+                final int target = r * p;
+                for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++)
+                {
+                    final double value = values[i];
+                    final int source = columnIndices[i] * p;
+                    for (int c = 0; c < p; c++)
+                    {
+                        product[target + c] += value * b[source + c];
+                    }
+                }
+            }
+        }
+        else
+        {
+            // Rows of the result correspond to columns of the underlying storage.
+            for (int r = 0; r < physicalRows; r++)
+            {
+                final int source = r * p;
+                for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++)
+                {
+                    final double value = values[i];
+                    final int target = columnIndices[i] * p;
+                    for (int c = 0; c < p; c++)
+                    {
+                        product[target + c] += value * b[source + c];
+                    }
+                }
+            }
+        }
+
+        if (beta == 0)
+        {
+            for (int r = 0; r < m; r++)
+            {
+                for (int c = 0; c < p; c++)
+                {
+                    C.setQuick(r, c, alpha * product[r * p + c]);
+                }
+            }
+        }
+        else
+        {
+            if (beta != 1)
+            {
+                C.assign(Functions.mult(beta));
+            }
+            for (int r = 0; r < m; r++)
+            {
+                for (int c = 0; c < p; c++)
+                {
+                    C.setQuick(r, c, C.getQuick(r, c) + alpha * product[r * p + c]);
+                }
+            }
+        }
+
+        return C;
+    }
+
+    /**
+     * A row or column view of a compressed matrix.
+     */
+    private static final class Vector extends DoubleMatrix1D
+    {
+        private final CompressedRowDoubleMatrix2D matrix;
+
+        /** Selected offsets, <code>null</code> if not a selection view. */
+        private final int [] offsets;
+
+        /** Offset added to all indices. */
+        private final int offset;
+
+        Vector(CompressedRowDoubleMatrix2D matrix, int size, int zero, int stride,
+            int [] offsets, int offset)
+        {
+            setUp(size, zero, stride);
+            this.matrix = matrix;
+            this.offsets = offsets;
+            this.offset = offset;
+        }
+
+        @Override
+        protected int offset(int absRank)
+        {
+            return offset + (offsets != null ? offsets[absRank] : absRank);
+        }
+
+        @Override
+        public double getQuick(int index)
+        {
+            return matrix.getFlat(index(index));
+        }
+
+        @Override
+        public void setQuick(int index, double value)
+        {
+            matrix.setFlat(index(index), value);
+        }
+
+        @Override
+        public DoubleMatrix1D like(int size)
+        {
+            return new DenseDoubleMatrix1D(size);
+        }
+
+        @Override
+        public DoubleMatrix2D like2D(int rows, int columns)
+        {
+            return new DenseDoubleMatrix2D(rows, columns);
+        }
+
+        @Override
+        protected DoubleMatrix1D viewSelectionLike(int [] offsets)
+        {
+            return new Vector(matrix, offsets.length, 0, 1, offsets, 0);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+
+/**
+ * A dense double precision matrix stored in a flat array, see {@link FlatMatrix2D}.
+ */
+@SuppressWarnings("deprecation")
+public class FlatDoubleMatrix2D extends FlatMatrix2D
+{
+    /** Elements of the matrix, shared by all views. */
+    private final double [] elements;
+
+    /**
+     * Creates a zero matrix stored in the row-major order.
+     */
+    public FlatDoubleMatrix2D(int rows, int columns)
+    {
+        this(rows, columns, false);
+    }
+
+    /**
+     * Creates a zero matrix stored in the row-major or column-major order.
+     */
+    public FlatDoubleMatrix2D(int rows, int columns, boolean columnMajor)
+    {
+        super(rows, columns, columnMajor);
+        this.elements = new double [rows * columns];
+    }
+
+    /**
+     * Creates a row-major matrix with a copy of the provided values.
+     */
+    public FlatDoubleMatrix2D(double [][] values)
+    {
+        this(values.length, values.length == 0 ? 0 : values[0].length);
+        assign(values);
+    }
+
+    /**
+     * Creates a row-major copy of the provided matrix.
+     */
+    public FlatDoubleMatrix2D(DoubleMatrix2D matrix)
+    {
+        this(matrix.rows(), matrix.columns());
+        assign(matrix);
+    }
+
+    /**
+     * Returns the array storing elements of this matrix, shared by all its views. See
+     * {@link #isRowMajor()} and {@link #isColumnMajor()} for the layout.
+     */
+    public double [] elements()
+    {
+        return elements;
+    }
+
+    @Override
+    double getFlat(int index)
+    {
+        return elements[index];
+    }
+
+    @Override
+    void setFlat(int index, double value)
+    {
+        elements[index] = value;
+    }
+
+    @Override
+    Object storage()
+    {
+        return elements;
+    }
+
+    @Override
+    int capacity()
+    {
+        return elements.length;
+    }
+
+    @Override
+    public DoubleMatrix2D like(int rows, int columns)
+    {
+        return new FlatDoubleMatrix2D(rows, columns);
+    }
+}
@@ -0,0 +1,102 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+
+/**
+ * A dense matrix stored in a flat array of single precision values, see
+ * {@link FlatMatrix2D}. Values are rounded to <code>float</code> when set and widened
+ * to <code>double</code> when read, which halves the memory used by the matrix and the
+ * amount of data transferred by element-wise operations.
+ */
+@SuppressWarnings("deprecation")
+public class FlatFloatMatrix2D extends FlatMatrix2D
+{
+    /** Elements of the matrix, shared by all views. */
+    private final float [] elements;
+
+    /**
+     * Creates a zero matrix stored in the row-major order.
+     */
+    public FlatFloatMatrix2D(int rows, int columns)
+    {
+        this(rows, columns, false);
+    }
+
+    /**
+     * Creates a zero matrix stored in the row-major or column-major order.
+     */
+    public FlatFloatMatrix2D(int rows, int columns, boolean columnMajor)
+    {
+        super(rows, columns, columnMajor);
+        this.elements = new float [rows * columns];
+    }
+
+    /**
+     * Creates a row-major matrix with a copy of the provided values.
+     */
+    public FlatFloatMatrix2D(double [][] values)
+    {
+        this(values.length, values.length == 0 ? 0 : values[0].length);
+        assign(values);
+    }
+
+    /**
+     * Creates a row-major copy of the provided matrix.
+     */
+    public FlatFloatMatrix2D(DoubleMatrix2D matrix)
+    {
+        this(matrix.rows(), matrix.columns());
+        assign(matrix);
+    }
+
+    /**
+     * Returns the array storing elements of this matrix, shared by all its views. See
+     * {@link #isRowMajor()} and {@link #isColumnMajor()} for the layout.
+     */
+    public float [] elements()
+    {
+        return elements;
+    }
+
+    @Override
+    double getFlat(int index)
+    {
+        return elements[index];
+    }
+
+    @Override
+    void setFlat(int index, double value)
+    {
+        elements[index] = (float) value;
+    }
+
+    @Override
+    Object storage()
+    {
+        return elements;
+    }
+
+    @Override
+    int capacity()
+    {
+        return elements.length;
+    }
+
+    @Override
+    public DoubleMatrix2D like(int rows, int columns)
+    {
+        return new FlatFloatMatrix2D(rows, columns);
+    }
+}
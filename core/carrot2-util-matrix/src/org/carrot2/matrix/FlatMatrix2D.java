@@ -0,0 +1,401 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import org.apache.mahout.math.function.DoubleDoubleFunction;
+import org.apache.mahout.math.function.DoubleFunction;
+import org.apache.mahout.math.matrix.DoubleMatrix1D;
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.apache.mahout.math.matrix.impl.AbstractMatrix2D;
+import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix1D;
+
+/**
+ * Base class of dense matrices stored in a single flat array of primitives, in the
+ * row-major or column-major order. All views share the array of the matrix they were
+ * created from. Element-wise operations ({@link #assign(double)},
+ * {@link #assign(DoubleFunction)}, {@link #assign(DoubleMatrix2D, DoubleDoubleFunction)}
+ * and the aggregations) on matrices that cover their whole storage run directly over the
+ * array, products are computed by {@link MatrixKernels}.
+ *
+ * @see FlatDoubleMatrix2D
+ * @see FlatFloatMatrix2D
+ */
+@SuppressWarnings("deprecation")
+public abstract class FlatMatrix2D extends DoubleMatrix2D
+{
+    /** Offsets of selected rows and columns, <code>null</code> if not a selection view. */
+    private int [] rowOffsets;
+    private int [] columnOffsets;
+
+    FlatMatrix2D(int rows, int columns, boolean columnMajor)
+    {
+        if (columnMajor)
+        {
+            setUp(rows, columns, 0, 0, 1, rows);
+        }
+        else
+        {
+            setUp(rows, columns);
+        }
+    }
+
+    /**
+     * Returns the element at the provided index of the underlying array.
+     */
+    abstract double getFlat(int index);
+
+    /**
+     * Sets the element at the provided index of the underlying array.
+     */
+    abstract void setFlat(int index, double value);
+
+    /**
+     * Returns the underlying array.
+     */
+    abstract Object storage();
+
+    /**
+     * Returns the length of the underlying array.
+     */
+    abstract int capacity();
+
+    /**
+     * Returns <code>true</code> if this matrix covers its whole storage in the row-major
+     * order, that is element <code>(r, c)</code> is at index
+     * <code>r * columns() + c</code> of the underlying array.
+     */
+    public boolean isRowMajor()
+    {
+        return isWhole() && columnStride == 1 && rowStride == columns;
+    }
+
+    /**
+     * Returns <code>true</code> if this matrix covers its whole storage in the
+     * column-major order, that is element <code>(r, c)</code> is at index
+     * <code>c * rows() + r</code> of the underlying array.
+     */
+    public boolean isColumnMajor()
+    {
+        return isWhole() && rowStride == 1 && columnStride == rows;
+    }
+
+    private boolean isWhole()
+    {
+        return rowOffsets == null && rowZero == 0 && columnZero == 0
+            && rows * columns == capacity();
+    }
+
+    /**
+     * Returns <code>true</code> if the provided matrix has the same shape and storage
+     * layout as this one, so that their elements can be matched by the index of the
+     * underlying array.
+     */
+    private boolean isAligned(DoubleMatrix2D other)
+    {
+        if (!(other instanceof FlatMatrix2D) || other.rows() != rows
+            || other.columns() != columns)
+        {
+            return false;
+        }
+        final FlatMatrix2D flat = (FlatMatrix2D) other;
+        return (isRowMajor() && flat.isRowMajor())
+            || (isColumnMajor() && flat.isColumnMajor());
+    }
+
+    @Override
+    public double getQuick(int row, int column)
+    {
+        return getFlat(index(row, column));
+    }
+
+    @Override
+    public void setQuick(int row, int column, double value)
+    {
+        setFlat(index(row, column), value);
+    }
+
+    @Override
+    protected int rowOffset(int absRank)
+    {
+        return rowOffsets != null ? rowOffsets[absRank] : absRank;
+    }
+
+    @Override
+    protected int columnOffset(int absRank)
+    {
+        return columnOffsets != null ? columnOffsets[absRank] : absRank;
+    }
+
+    @Override
+    protected int index(int row, int column)
+    {
+        if (rowOffsets == null)
+        {
+            return rowZero + row * rowStride + columnZero + column * columnStride;
+        }
+        return rowOffsets[rowZero + row * rowStride]
+            + columnOffsets[columnZero + column * columnStride];
+    }
+
+    @Override
+    protected AbstractMatrix2D vDice()
+    {
+        super.vDice();
+        final int [] tmp = rowOffsets;
+        rowOffsets = columnOffsets;
+        columnOffsets = tmp;
+        return this;
+    }
+
+    @Override
+    public DoubleMatrix1D like1D(int size)
+    {
+        return new DenseDoubleMatrix1D(size);
+    }
+
+    @Override
+    protected DoubleMatrix1D like1D(int size, int zero, int stride)
+    {
+        if (rowOffsets != null)
+        {
+            throw new IllegalStateException("Not a stride-based view");
+        }
+        return new Vector(this, size, zero, stride, null, 0);
+    }
+
+    @Override
+    public DoubleMatrix1D viewRow(int row)
+    {
+        if (rowOffsets == null)
+        {
+            return super.viewRow(row);
+        }
+        checkRow(row);
+        return new Vector(this, columns, columnZero, columnStride, columnOffsets,
+            rowOffsets[rowZero + row * rowStride]);
+    }
+
+    @Override
+    public DoubleMatrix1D viewColumn(int column)
+    {
+        if (rowOffsets == null)
+        {
+            return super.viewColumn(column);
+        }
+        checkColumn(column);
+        return new Vector(this, rows, rowZero, rowStride, rowOffsets,
+            columnOffsets[columnZero + column * columnStride]);
+    }
+
+    @Override
+    protected DoubleMatrix2D viewSelectionLike(int [] rowOffsets, int [] columnOffsets)
+    {
+        final FlatMatrix2D view = (FlatMatrix2D) view();
+        view.setUp(rowOffsets.length, columnOffsets.length, 0, 0, 1, 1);
+        view.rowOffsets = rowOffsets;
+        view.columnOffsets = columnOffsets;
+        return view;
+    }
+
+    @Override
+    protected boolean haveSharedCellsRaw(DoubleMatrix2D other)
+    {
+        return other instanceof FlatMatrix2D
+            && ((FlatMatrix2D) other).storage() == storage();
+    }
+
+    @Override
+    public DoubleMatrix2D assign(double value)
+    {
+        if (!isRowMajor() && !isColumnMajor())
+        {
+            return super.assign(value);
+        }
+
+        for (int i = capacity() - 1; i >= 0; i--)
+        {
+            setFlat(i, value);
+        }
+        return this;
+    }
+
+    @Override
+    public void assign(DoubleFunction function)
+    {
+        if (!isRowMajor() && !isColumnMajor())
+        {
+            super.assign(function);
+            return;
+        }
+
+        // The same order of function calls as in Colt for row-major matrices
+        final int capacity = capacity();
+        for (int i = 0; i < capacity; i++)
+        {
+            setFlat(i, function.apply(getFlat(i)));
+        }
+    }
+
+    @Override
+    public DoubleMatrix2D assign(DoubleMatrix2D other)
+    {
+        if (!isAligned(other))
+        {
+            return super.assign(other);
+        }
+
+        final FlatMatrix2D flat = (FlatMatrix2D) other;
+        if (flat.storage() != storage())
+        {
+            for (int i = capacity() - 1; i >= 0; i--)
+            {
+                setFlat(i, flat.getFlat(i));
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public DoubleMatrix2D assign(DoubleMatrix2D other, DoubleDoubleFunction function)
+    {
+        if (!isAligned(other))
+        {
+            return super.assign(other, function);
+        }
+
+        final FlatMatrix2D flat = (FlatMatrix2D) other;
+        final int capacity = capacity();
+        for (int i = 0; i < capacity; i++)
+        {
+            setFlat(i, function.apply(getFlat(i), flat.getFlat(i)));
+        }
+        return this;
+    }
+
+    @Override
+    public double aggregate(DoubleDoubleFunction aggregator, DoubleFunction function)
+    {
+        if (size() == 0 || (!isRowMajor() && !isColumnMajor()))
+        {
+            return super.aggregate(aggregator, function);
+        }
+
+        final int last = capacity() - 1;
+        double result = function.apply(getFlat(last));
+        for (int i = last - 1; i >= 0; i--)
+        {
+            result = aggregator.apply(result, function.apply(getFlat(i)));
+        }
+        return result;
+    }
+
+    @Override
+    public double aggregate(DoubleMatrix2D other, DoubleDoubleFunction aggregator,
+        DoubleDoubleFunction function)
+    {
+        if (size() == 0 || !isAligned(other))
+        {
+            return super.aggregate(other, aggregator, function);
+        }
+
+        final FlatMatrix2D flat = (FlatMatrix2D) other;
+        final int last = capacity() - 1;
+        double result = function.apply(getFlat(last), flat.getFlat(last));
+        for (int i = last - 1; i >= 0; i--)
+        {
+            result = aggregator.apply(result, function.apply(getFlat(i), flat.getFlat(i)));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the product with {@link MatrixKernels} if <code>alpha</code> is 1 and
+     * <code>beta</code> is 0.
+     */
+    @Override
+    public DoubleMatrix2D zMult(DoubleMatrix2D B, DoubleMatrix2D C, double alpha,
+        double beta, boolean transposeA, boolean transposeB)
+    {
+        if (alpha != 1 || beta != 0)
+        {
+            return super.zMult(B, C, alpha, beta, transposeA, transposeB);
+        }
+        return MatrixKernels.multiply(this, B, C, transposeA, transposeB);
+    }
+
+    /**
+     * A row or column view of a flat matrix.
+     */
+    private static final class Vector extends DoubleMatrix1D
+    {
+        private final FlatMatrix2D matrix;
+
+        /** Selected offsets, <code>null</code> if not a selection view. */
+        private final int [] offsets;
+
+        /** Offset added to all indices. */
+        private final int offset;
+
+        Vector(FlatMatrix2D matrix, int size, int zero, int stride, int [] offsets,
+            int offset)
+        {
+            setUp(size, zero, stride);
+            this.matrix = matrix;
+            this.offsets = offsets;
+            this.offset = offset;
+        }
+
+        @Override
+        protected int offset(int absRank)
+        {
+            return offset + (offsets != null ? offsets[absRank] : absRank);
+        }
+
+        @Override
+        public double getQuick(int index)
+        {
+            return matrix.getFlat(index(index));
+        }
+
+        @Override
+        public void setQuick(int index, double value)
+        {
+            matrix.setFlat(index(index), value);
+        }
+
+        @Override
+        public DoubleMatrix1D like(int size)
+        {
+            return new DenseDoubleMatrix1D(size);
+        }
+
+        @Override
+        public DoubleMatrix2D like2D(int rows, int columns)
+        {
+            return matrix.like(rows, columns);
+        }
+
+        @Override
+        protected DoubleMatrix1D viewSelectionLike(int [] offsets)
+        {
+            return new Vector(matrix, offsets.length, 0, 1, offsets, 0);
+        }
+
+        @Override
+        protected boolean haveSharedCellsRaw(DoubleMatrix1D other)
+        {
+            return other instanceof Vector
+                && ((Vector) other).matrix.storage() == matrix.storage();
+        }
+    }
+}
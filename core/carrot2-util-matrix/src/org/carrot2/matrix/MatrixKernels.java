@@ -0,0 +1,466 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.matrix;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.carrot2.util.ExecutorServiceUtils;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+
+/**
+ * Dense matrix multiplication kernels. Products are computed on flat row-major arrays
+ * (the storage of {@link FlatDoubleMatrix2D}s or copies of other matrices) in cache-sized
+ * blocks. Products of two {@link FlatFloatMatrix2D}s are computed in single precision on
+ * their <code>float</code> storage, which halves the memory traffic. Rows of the result
+ * of large products are split among the calling thread and a shared pool of daemon
+ * threads. Each element of the result is summed in the same order regardless of the
+ * number of threads, so results do not depend on the parallelism.
+ */
+@SuppressWarnings("deprecation")
+public final class MatrixKernels
+{
+    /**
+     * The default minimum number of multiply-add operations of a product computed with
+     * multiple threads.
+     */
+    public static final long DEFAULT_PARALLELISM_THRESHOLD = 1L << 20;
+
+    /** Block sizes along the inner and the column dimension */
+    private static final int BLOCK_INNER = 64;
+    private static final int BLOCK_COLUMNS = 256;
+
+    /** The minimum number of result rows computed by a single task */
+    private static final int MIN_ROWS_PER_TASK = 4;
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static volatile long parallelismThreshold = DEFAULT_PARALLELISM_THRESHOLD;
+
+    /** Idle executor threads exit after this time */
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    /** Shared executor, created on first use */
+    private static volatile ExecutorService executor;
+
+    private MatrixKernels()
+    {
+        // no instances.
+    }
+
+    /**
+     * Sets the minimum number of multiply-add operations of a product computed with
+     * multiple threads. Smaller products are computed on the calling thread, by
+     * {@link DoubleMatrix2D#zMult(DoubleMatrix2D, DoubleMatrix2D, double, double, boolean, boolean)}
+     * unless one of the matrices is a {@link FlatMatrix2D}. Use {@link Long#MAX_VALUE} to
+     * compute all products on the calling thread.
+     */
+    public static void setParallelismThreshold(long threshold)
+    {
+        if (threshold < 0)
+        {
+            throw new IllegalArgumentException("Threshold must not be negative: "
+                + threshold);
+        }
+        parallelismThreshold = threshold;
+    }
+
+    /**
+     * Returns the minimum number of multiply-add operations of a product computed with
+     * multiple threads.
+     */
+    public static long getParallelismThreshold()
+    {
+        return parallelismThreshold;
+    }
+
+    /**
+     * Computes <code>C = A * B</code>.
+     *
+     * @see #multiply(DoubleMatrix2D, DoubleMatrix2D, DoubleMatrix2D, boolean, boolean)
+     */
+    public static DoubleMatrix2D multiply(DoubleMatrix2D A, DoubleMatrix2D B,
+        DoubleMatrix2D C)
+    {
+        return multiply(A, B, C, false, false);
+    }
+
+    /**
+     * Computes <code>C = op(A) * op(B)</code>, where <code>op(X)</code> is
+     * <code>X'</code> if the corresponding transposition flag is set, <code>X</code>
+     * otherwise. Products involving a {@link CompressedRowDoubleMatrix2D} use its sparse
+     * implementation.
+     *
+     * @param C the result matrix, a new {@link FlatFloatMatrix2D} (if both operands
+     *            are {@link FlatFloatMatrix2D}s) or {@link FlatDoubleMatrix2D} is
+     *            allocated if <code>null</code>
+     * @return the result matrix <code>C</code>
+     */
+    public static DoubleMatrix2D multiply(DoubleMatrix2D A, DoubleMatrix2D B,
+        DoubleMatrix2D C, boolean transposeA, boolean transposeB)
+    {
+        final int m = transposeA ? A.columns() : A.rows();
+        final int p = transposeA ? A.rows() : A.columns();
+        final int n = transposeB ? B.rows() : B.columns();
+        if ((transposeB ? B.columns() : B.rows()) != p)
+        {
+            throw new IllegalArgumentException("Matrix inner dimensions must agree: " + m
+                + "x" + p + ", " + (transposeB ? B.columns() : B.rows()) + "x" + n);
+        }
+        final boolean singlePrecision = A instanceof FlatFloatMatrix2D
+            && B instanceof FlatFloatMatrix2D;
+        if (C == null)
+        {
+            C = singlePrecision ? new FlatFloatMatrix2D(m, n) : new FlatDoubleMatrix2D(m,
+                n);
+        }
+        if (C.rows() != m || C.columns() != n)
+        {
+            throw new IllegalArgumentException("Incompatible result matrix: " + C.rows()
+                + "x" + C.columns() + ", expected " + m + "x" + n);
+        }
+
+        if (A instanceof CompressedRowDoubleMatrix2D)
+        {
+            return A.zMult(B, C, 1, 0, transposeA, transposeB);
+        }
+        if (B instanceof CompressedRowDoubleMatrix2D)
+        {
+            // op(A) * op(B) = (op(B)' * op(A)')'
+            B.zMult(A, C.viewDice(), 1, 0, !transposeB, !transposeA);
+            return C;
+        }
+
+        final long operations = (long) m * n * p;
+        if (operations < parallelismThreshold && !(A instanceof FlatMatrix2D)
+            && !(B instanceof FlatMatrix2D) && !(C instanceof FlatMatrix2D))
+        {
+            return A.zMult(B, C, 1, 0, transposeA, transposeB);
+        }
+
+        final int tasks = operations < parallelismThreshold ? 1 : Math.max(1,
+            Math.min(PARALLELISM, m / MIN_ROWS_PER_TASK));
+        if (singlePrecision)
+        {
+            multiplySingle(A, B, C, transposeA, transposeB, m, p, n, tasks);
+        }
+        else
+        {
+            multiplyDouble(A, B, C, transposeA, transposeB, m, p, n, tasks);
+        }
+        return C;
+    }
+
+    /**
+     * Computes the product in double precision.
+     */
+    private static void multiplyDouble(DoubleMatrix2D A, DoubleMatrix2D B,
+        DoubleMatrix2D C, boolean transposeA, boolean transposeB, int m, final int p,
+        final int n, int tasks)
+    {
+        final double [] a = toArray(A, transposeA);
+        final double [] b = toArray(B, transposeB);
+
+        // Compute directly into the result's storage if possible
+        final double [] c;
+        final boolean direct = C instanceof FlatDoubleMatrix2D
+            && ((FlatDoubleMatrix2D) C).isRowMajor()
+            && ((FlatDoubleMatrix2D) C).elements() != a
+            && ((FlatDoubleMatrix2D) C).elements() != b;
+        if (direct)
+        {
+            c = ((FlatDoubleMatrix2D) C).elements();
+            Arrays.fill(c, 0);
+        }
+        else
+        {
+            c = new double [m * n];
+        }
+
+        if (tasks == 1)
+        {
+            multiply(a, b, c, p, n, 0, m);
+        }
+        else
+        {
+            final List<Runnable> slices = Lists.newArrayList();
+            for (int i = 0; i < tasks; i++)
+            {
+                final int from = (int) ((long) m * i / tasks);
+                final int to = (int) ((long) m * (i + 1) / tasks);
+                slices.add(new Runnable()
+                {
+                    public void run()
+                    {
+                        multiply(a, b, c, p, n, from, to);
+                    }
+                });
+            }
+            invokeAll(slices);
+        }
+
+        if (!direct)
+        {
+            for (int i = 0, index = 0; i < m; i++)
+            {
+                for (int j = 0; j < n; j++)
+                {
+                    C.setQuick(i, j, c[index++]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the product of two {@link FlatFloatMatrix2D}s in single precision.
+     */
+    private static void multiplySingle(DoubleMatrix2D A, DoubleMatrix2D B,
+        DoubleMatrix2D C, boolean transposeA, boolean transposeB, int m, final int p,
+        final int n, int tasks)
+    {
+        final float [] a = toFloatArray((FlatFloatMatrix2D) A, transposeA);
+        final float [] b = toFloatArray((FlatFloatMatrix2D) B, transposeB);
+
+        // Compute directly into the result's storage if possible
+        final float [] c;
+        final boolean direct = C instanceof FlatFloatMatrix2D
+            && ((FlatFloatMatrix2D) C).isRowMajor()
+            && ((FlatFloatMatrix2D) C).elements() != a
+            && ((FlatFloatMatrix2D) C).elements() != b;
+        if (direct)
+        {
+            c = ((FlatFloatMatrix2D) C).elements();
+            Arrays.fill(c, 0);
+        }
+        else
+        {
+            c = new float [m * n];
+        }
+
+        if (tasks == 1)
+        {
+            multiply(a, b, c, p, n, 0, m);
+        }
+        else
+        {
+            final List<Runnable> slices = Lists.newArrayList();
+            for (int i = 0; i < tasks; i++)
+            {
+                final int from = (int) ((long) m * i / tasks);
+                final int to = (int) ((long) m * (i + 1) / tasks);
+                slices.add(new Runnable()
+                {
+                    public void run()
+                    {
+                        multiply(a, b, c, p, n, from, to);
+                    }
+                });
+            }
+            invokeAll(slices);
+        }
+
+        if (!direct)
+        {
+            for (int i = 0, index = 0; i < m; i++)
+            {
+                for (int j = 0; j < n; j++)
+                {
+                    C.setQuick(i, j, c[index++]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies rows <code>from</code> (inclusive) to <code>to</code> (exclusive) of the
+     * row-major matrix <code>a</code> with <code>p</code> columns by the row-major matrix
+     * <code>b</code> with <code>n</code> columns, adding the result to <code>c</code>.
+     */
+    static void multiply(double [] a, double [] b, double [] c, int p, int n, int from,
+        int to)
+    {
+        for (int l0 = 0; l0 < p; l0 += BLOCK_INNER)
+        {
+            final int l1 = Math.min(p, l0 + BLOCK_INNER);
+            for (int j0 = 0; j0 < n; j0 += BLOCK_COLUMNS)
+            {
+                final int j1 = Math.min(n, j0 + BLOCK_COLUMNS);
+                for (int i = from; i < to; i++)
+                {
+                    final int rowA = i * p;
+                    final int rowC = i * n;
+                    for (int l = l0; l < l1; l++)
+                    {
+                        final double value = a[rowA + l];
+                        final int rowB = l * n;
+                        for (int j = j0; j < j1; j++)
+                        {
+                            c[rowC + j] += value * b[rowB + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Single precision version of
+     * {@link #multiply(double[], double[], double[], int, int, int, int)}.
+     */
+    static void multiply(float [] a, float [] b, float [] c, int p, int n, int from,
+        int to)
+    {
+        for (int l0 = 0; l0 < p; l0 += BLOCK_INNER)
+        {
+            final int l1 = Math.min(p, l0 + BLOCK_INNER);
+            for (int j0 = 0; j0 < n; j0 += BLOCK_COLUMNS)
+            {
+                final int j1 = Math.min(n, j0 + BLOCK_COLUMNS);
+                for (int i = from; i < to; i++)
+                {
+                    final int rowA = i * p;
+                    final int rowC = i * n;
+                    for (int l = l0; l < l1; l++)
+                    {
+                        final float value = a[rowA + l];
+                        final int rowB = l * n;
+                        for (int j = j0; j < j1; j++)
+                        {
+                            c[rowC + j] += value * b[rowB + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the matrix or its transposition as a row-major array. The storage of a
+     * {@link FlatDoubleMatrix2D} with a matching layout is returned without copying.
+     */
+    private static double [] toArray(DoubleMatrix2D matrix, boolean transpose)
+    {
+        if (matrix instanceof FlatDoubleMatrix2D)
+        {
+            final FlatDoubleMatrix2D flat = (FlatDoubleMatrix2D) matrix;
+            if (transpose ? flat.isColumnMajor() : flat.isRowMajor())
+            {
+                return flat.elements();
+            }
+        }
+
+        final DoubleMatrix2D view = transpose ? matrix.viewDice() : matrix;
+        final int rows = view.rows();
+        final int columns = view.columns();
+        final double [] result = new double [rows * columns];
+        for (int r = 0, index = 0; r < rows; r++)
+        {
+            for (int c = 0; c < columns; c++)
+            {
+                result[index++] = view.getQuick(r, c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the matrix or its transposition as a row-major array. The storage of a
+     * matrix with a matching layout is returned without copying.
+     */
+    private static float [] toFloatArray(FlatFloatMatrix2D matrix, boolean transpose)
+    {
+        if (transpose ? matrix.isColumnMajor() : matrix.isRowMajor())
+        {
+            return matrix.elements();
+        }
+
+        final DoubleMatrix2D view = transpose ? matrix.viewDice() : matrix;
+        final int rows = view.rows();
+        final int columns = view.columns();
+        final float [] result = new float [rows * columns];
+        for (int r = 0, index = 0; r < rows; r++)
+        {
+            for (int c = 0; c < columns; c++)
+            {
+                result[index++] = (float) view.getQuick(r, c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the first task on the calling thread and the remaining ones on the shared
+     * executor, then waits for all of them to complete.
+     */
+    private static void invokeAll(List<Runnable> tasks)
+    {
+        final ExecutorService executor = getExecutor();
+        final List<Future<?>> futures = Lists.newArrayList();
+        try
+        {
+            for (Runnable task : tasks.subList(1, tasks.size()))
+            {
+                futures.add(executor.submit(task));
+            }
+            tasks.get(0).run();
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw (CancellationException) new CancellationException(
+                "Interrupted while multiplying matrices.").initCause(e);
+        }
+        catch (ExecutionException e)
+        {
+            throw Throwables.propagate(e.getCause());
+        }
+        finally
+        {
+            for (Future<?> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private static ExecutorService getExecutor()
+    {
+        ExecutorService result = executor;
+        if (result == null)
+        {
+            synchronized (MatrixKernels.class)
+            {
+                result = executor;
+                if (result == null)
+                {
+                    executor = result = ExecutorServiceUtils.createExecutorService(
+                        PARALLELISM, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                        MatrixKernels.class);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -44,6 +44,16 @@ public class MatrixUtils
     {
         work = prepareWork(A, work);
 
+        if (A instanceof CompressedRowDoubleMatrix2D)
+        {
+            final CompressedRowDoubleMatrix2D compressed = (CompressedRowDoubleMatrix2D) A;
+            if (compressed.isPlain() || compressed.isDiced())
+            {
+                normalizeCompressedColumnL2(compressed, work);
+                return A;
+            }
+        }
+
         // Calculate the L2 norm for each column
         for (int r = 0; r < A.rows(); r++)
         {
@@ -65,6 +75,46 @@ public class MatrixUtils
         return A;
     }
 
+    /**
+     * Normalizes columns of a compressed matrix (or rows of the underlying storage, if
+     * the matrix is transposed), visiting only the non-zero elements.
+     */
+    private static void normalizeCompressedColumnL2(CompressedRowDoubleMatrix2D A,
+        double [] work)
+    {
+        final int [] rowPointers = A.rowPointers;
+        final int [] columnIndices = A.columnIndices;
+        final double [] values = A.values;
+        final boolean diced = A.isDiced();
+
+        for (int r = 0; r < A.physicalRows; r++)
+        {
+            for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++)
+            {
+                work[diced ? r : columnIndices[i]] += values[i] * values[i];
+            }
+        }
+
+        // Take the square root
+        for (int c = 0; c < work.length; c++)
+        {
+            work[c] = Math.sqrt(work[c]);
+        }
+
+        // Normalize
+        for (int r = 0; r < A.physicalRows; r++)
+        {
+            for (int i = rowPointers[r]; i < rowPointers[r + 1]; i++)
+            {
+                final double norm = work[diced ? r : columnIndices[i]];
+                if (norm != 0)
+                {
+                    values[i] /= norm;
+                }
+            }
+        }
+    }
+
     /**
      * Normalizes column vectors of a sparse matrix <code>A</code> so that their L2 norm
      * (Euclidean distance) is equal to 1.0.
@@ -80,6 +130,11 @@ public class MatrixUtils
     public static DoubleMatrix2D normalizeSparseColumnL2(final DoubleMatrix2D A,
         final double [] work)
     {
+        if (A instanceof CompressedRowDoubleMatrix2D)
+        {
+            return normalizeColumnL2(A, work);
+        }
+
         final double [] w = prepareWork(A, work);
 
         A.forEachNonZero(new IntIntDoubleFunction()
@@ -193,7 +248,7 @@ public class MatrixUtils
         double orthogonality = 0;
 
         // Compute pairwise inner products
-        DoubleMatrix2D cosines = A.zMult(A, null, 1, 0, true, false);
+        DoubleMatrix2D cosines = MatrixKernels.multiply(A, A, null, true, false);
 
         for (int r = 0; r < cosines.rows(); r++)
         {
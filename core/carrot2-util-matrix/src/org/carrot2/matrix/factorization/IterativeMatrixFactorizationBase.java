@@ -13,7 +13,9 @@
 package org.carrot2.matrix.factorization;
 
 import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.function.IntIntDoubleFunction;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.carrot2.matrix.MatrixKernels;
 import org.carrot2.matrix.MatrixUtils;
 import org.carrot2.matrix.factorization.seeding.ISeedingStrategy;
 import org.carrot2.matrix.factorization.seeding.RandomSeedingStrategy;
@@ -38,9 +40,9 @@ abstract class IterativeMatrixFactorizationBase extends MatrixFactorizationBase
     /**
      * If the percentage decrease in approximation error becomes smaller than
      * <code>stopThreshold</code>, the algorithm will stop. Note: calculation of
-     * approximation error is quite costly. Setting the threshold to -1 turns off
-     * approximation error calculation and hence makes the algorithm do the maximum number
-     * of iterations.
+     * approximation error is cheap compared to an iteration of the algorithm. Setting the
+     * threshold to -1 turns off approximation error calculation and hence makes the
+     * algorithm do the maximum number of iterations.
      */
     protected double stopThreshold;
     protected static double DEFAULT_STOP_THRESHOLD = -1.0;
@@ -60,6 +62,9 @@ abstract class IterativeMatrixFactorizationBase extends MatrixFactorizationBase
     /** Approximation errors during subsequent iterations */
     protected double [] approximationErrors;
 
+    /** Squared Frobenius norm of the input matrix, -1 if not computed yet */
+    private double squaredNormA = -1;
+
     /** Iteration counter */
     protected int iterationsCompleted;
 
@@ -102,19 +107,68 @@ abstract class IterativeMatrixFactorizationBase extends MatrixFactorizationBase
     }
 
     /**
+     * Computes the approximation error <code>||A - UV'||</code> using the identity
+     * <code>||A - UV'||^2 = ||A||^2 - 2 tr(V'A'U) + tr((U'U)(V'V))</code>, which does not
+     * require the <code>m x n</code> product <code>UV'</code>.
+     * 
      * @return true if the decrease in the approximation error is smaller than the
      *         <code>stopThreshold</code>
      */
     protected boolean updateApproximationError()
+    {
+        final DoubleMatrix2D AV = MatrixKernels.multiply(A, V, null);
+        final DoubleMatrix2D VtV = MatrixKernels.multiply(V, V, null, true, false);
+        return updateApproximationError(AV, VtV);
+    }
+
+    /**
+     * Computes the approximation error from the trace identity (see
+     * {@link #updateApproximationError()}), reusing the <code>AV</code> and
+     * <code>V'V</code> products computed by the update of <code>U</code>.
+     * 
+     * @return true if the decrease in the approximation error is smaller than the
+     *         <code>stopThreshold</code>
+     */
+    protected boolean updateApproximationError(DoubleMatrix2D AV, DoubleMatrix2D VtV)
+    {
+        final DoubleMatrix2D UtU = MatrixKernels.multiply(U, U, null, true, false);
+        final double squaredError = squaredNormA() - 2 * U.aggregate(AV, Functions.PLUS,
+            Functions.MULT) + UtU.aggregate(VtV, Functions.PLUS, Functions.MULT);
+        return updateApproximationError(squaredError);
+    }
+
+    /**
+     * Computes the approximation error from the already computed <code>UV'</code>
+     * product, visiting only non-zero elements of <code>A</code>.
+     * 
+     * @return true if the decrease in the approximation error is smaller than the
+     *         <code>stopThreshold</code>
+     */
+    protected boolean updateApproximationError(final DoubleMatrix2D UV)
+    {
+        final double [] dotProduct = new double [1];
+        A.forEachNonZero(new IntIntDoubleFunction()
+        {
+            public double apply(int row, int column, double value)
+            {
+                dotProduct[0] += value * UV.getQuick(row, column);
+                return value;
+            }
+        });
+        final double squaredError = squaredNormA() - 2 * dotProduct[0]
+            + UV.aggregate(Functions.PLUS, Functions.SQUARE);
+        return updateApproximationError(squaredError);
+    }
+
+    private boolean updateApproximationError(double squaredError)
     {
         if (approximationErrors == null)
         {
             approximationErrors = new double [maxIterations + 1];
         }
 
-        // Approximation error
-        double newApproximationError = MatrixUtils.frobeniusNorm(U.zMult(V, null, 1, 0,
-            false, true).assign(A, Functions.MINUS));
+        // Rounding errors may make a near-exact approximation slightly negative
+        double newApproximationError = Math.sqrt(Math.max(0, squaredError));
         approximationErrors[iterationsCompleted] = newApproximationError;
 
         if ((approximationError - newApproximationError) / approximationError < stopThreshold)
@@ -129,6 +183,27 @@ abstract class IterativeMatrixFactorizationBase extends MatrixFactorizationBase
         }
     }
 
+    /**
+     * Returns the squared Frobenius norm of <code>A</code>, computed once.
+     */
+    private double squaredNormA()
+    {
+        if (squaredNormA < 0)
+        {
+            final double [] sum = new double [1];
+            A.forEachNonZero(new IntIntDoubleFunction()
+            {
+                public double apply(int row, int column, double value)
+                {
+                    sum[0] += value * value;
+                    return value;
+                }
+            });
+            squaredNormA = sum[0];
+        }
+        return squaredNormA;
+    }
+
     /**
      * Orders U and V matrices according to the 'activity' of base vectors.
      */
@@ -195,9 +270,9 @@ abstract class IterativeMatrixFactorizationBase extends MatrixFactorizationBase
      * approximation error becomes smaller than <code>stopThreshold</code>, the algorithm
      * will stop.
      * <p>
-     * Note: calculation of approximation error is quite costly. Setting the threshold to
-     * -1 turns off calculation of the approximation error and hence makes the algorithm
-     * do the maximum allowed number of iterations.
+     * Note: calculation of approximation error is cheap compared to an iteration of the
+     * algorithm. Setting the threshold to -1 turns off calculation of the approximation
+     * error and hence makes the algorithm do the maximum allowed number of iterations.
      */
     public void setStopThreshold(double stopThreshold)
     {
@@ -52,6 +52,10 @@ public abstract class IterativeMatrixFactorizationFactory implements
     protected boolean ordered;
     protected static final boolean DEFAULT_ORDERED = true;
 
+    /** Compute factors in single precision */
+    protected boolean singlePrecision;
+    protected static final boolean DEFAULT_SINGLE_PRECISION = false;
+
     public IterativeMatrixFactorizationFactory()
     {
         this.k = DEFAULT_K;
@@ -59,6 +63,7 @@ public abstract class IterativeMatrixFactorizationFactory implements
         this.stopThreshold = DEFAULT_STOP_THRESHOLD;
         this.seedingFactory = DEFAULT_SEEDING_FACTORY;
         this.ordered = DEFAULT_ORDERED;
+        this.singlePrecision = DEFAULT_SINGLE_PRECISION;
     }
 
     /**
@@ -155,4 +160,22 @@ public abstract class IterativeMatrixFactorizationFactory implements
     {
         this.ordered = ordered;
     }
+
+    /**
+     * Returns <code>true</code> when factorizations compute factors in single precision.
+     */
+    public boolean isSinglePrecision()
+    {
+        return singlePrecision;
+    }
+
+    /**
+     * Set to <code>true</code> to compute factors in single precision.
+     * 
+     * @param singlePrecision
+     */
+    public void setSinglePrecision(boolean singlePrecision)
+    {
+        this.singlePrecision = singlePrecision;
+    }
 }
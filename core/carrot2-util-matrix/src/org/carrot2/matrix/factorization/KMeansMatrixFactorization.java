@@ -12,11 +12,14 @@
 
 package org.carrot2.matrix.factorization;
 
-import org.apache.mahout.math.function.Functions;
+import java.util.Arrays;
+
+import org.apache.mahout.math.function.IntIntDoubleFunction;
 import org.apache.mahout.math.function.Mult;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
-import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.matrix.MatrixKernels;
 import org.carrot2.matrix.MatrixUtils;
+import org.carrot2.util.CancellationToken;
 
 /**
  * Performs matrix factorization using the K-means clustering algorithm. This kind of
@@ -41,53 +44,58 @@ public class KMeansMatrixFactorization extends IterativeMatrixFactorizationBase
     {
         int n = A.columns();
 
-        // Distances to centroids
-        DoubleMatrix2D D = new DenseDoubleMatrix2D(k, n);
+        // Distances to centroids, computed as (A'U)' so that sparse matrices are
+        // multiplied natively
+        DoubleMatrix2D DT = newMatrix(n, k);
+        DoubleMatrix2D D = DT.viewDice();
 
         // Object-cluster assignments
-        V = new DenseDoubleMatrix2D(n, k);
+        V = newMatrix(n, k);
 
         // Initialize the centroids with some document vectors
-        U = new DenseDoubleMatrix2D(A.rows(), k);
+        U = newMatrix(A.rows(), k);
         U.assign(A.viewPart(0, 0, A.rows(), k));
 
-        int [] minIndices = new int [D.columns()];
+        final int [] minIndices = new int [D.columns()];
         double [] minValues = new double [D.columns()];
+        int [] counts = new int [k];
 
         for (iterationsCompleted = 0; iterationsCompleted < maxIterations; iterationsCompleted++)
         {
+            CancellationToken.checkCurrent();
+
             // Calculate cosine distances
-            U.zMult(A, D, 1, 0, true, false);
+            MatrixKernels.multiply(A, U, DT, true, false);
 
             V.assign(0);
             U.assign(0);
+            Arrays.fill(counts, 0);
 
             // For each object
             MatrixUtils.maxInColumns(D, minIndices, minValues);
             for (int i = 0; i < minIndices.length; i++)
             {
                 V.setQuick(i, minIndices[i], 1);
+                counts[minIndices[i]]++;
             }
 
-            // Update centroids
-            for (int c = 0; c < V.columns(); c++)
+            // Update centroids: sum
+            A.forEachNonZero(new IntIntDoubleFunction()
             {
-                // Sum
-                int count = 0;
-                for (int d = 0; d < V.rows(); d++)
+                public double apply(int row, int column, double value)
                 {
-                    if (V.getQuick(d, c) != 0)
-                    {
-                        count++;
-                        U.viewColumn(c).assign(A.viewColumn(d), Functions.PLUS);
-                    }
+                    final int c = minIndices[column];
+                    U.setQuick(row, c, U.getQuick(row, c) + value);
+                    return value;
                 }
+            });
 
-                // Divide
-                U.viewColumn(c).assign(Mult.div(count));
-                MatrixUtils.normalizeColumnL2(U, null);
+            // Divide
+            for (int c = 0; c < V.columns(); c++)
+            {
+                U.viewColumn(c).assign(Mult.div(counts[c]));
             }
-
+            MatrixUtils.normalizeColumnL2(U, null);
         }
     }
 
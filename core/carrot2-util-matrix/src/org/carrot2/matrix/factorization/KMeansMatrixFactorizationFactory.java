@@ -26,6 +26,7 @@ public class KMeansMatrixFactorizationFactory extends IterativeMatrixFactorizati
         factorization.setK(k);
         factorization.setMaxIterations(maxIterations);
         factorization.setStopThreshold(stopThreshold);
+        factorization.setSinglePrecision(singlePrecision);
 
         factorization.compute();
 
@@ -16,8 +16,9 @@ import org.apache.mahout.math.function.DoubleDoubleFunction;
 import org.apache.mahout.math.function.DoubleFunction;
 import org.apache.mahout.math.function.Functions;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
-import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.matrix.MatrixKernels;
 import org.carrot2.matrix.MatrixUtils;
+import org.carrot2.util.CancellationToken;
 
 /**
  * Performs matrix factorization using the Local Non-negative Matrix Factorization
@@ -63,16 +64,16 @@ public class LocalNonnegativeMatrixFactorization extends IterativeMatrixFactoriz
         double eps = 1e-9;
 
         // Seed U and V with initial values
-        U = new DenseDoubleMatrix2D(A.rows(), k);
-        V = new DenseDoubleMatrix2D(A.columns(), k);
+        U = newMatrix(A.rows(), k);
+        V = newMatrix(A.columns(), k);
         seedingStrategy.seed(A, U, V);
 
         // Temporary matrices
-        DoubleMatrix2D Aeps = A.copy();
+        DoubleMatrix2D Aeps = newMatrix(A.rows(), A.columns()).assign(A);
         Aeps.assign(Functions.plus(eps));
-        DoubleMatrix2D UV = new DenseDoubleMatrix2D(A.rows(), A.columns());
-        DoubleMatrix2D VT = new DenseDoubleMatrix2D(A.columns(), k);
-        DoubleMatrix2D UT = new DenseDoubleMatrix2D(A.rows(), k);
+        DoubleMatrix2D UV = newMatrix(A.rows(), A.columns());
+        DoubleMatrix2D VT = newMatrix(A.columns(), k);
+        DoubleMatrix2D UT = newMatrix(A.rows(), k);
         double [] work = new double [U.columns()];
 
         // Colt functions
@@ -80,33 +81,39 @@ public class LocalNonnegativeMatrixFactorization extends IterativeMatrixFactoriz
         DoubleDoubleFunction sqrtMult = Functions.chain(Functions.SQRT, Functions.MULT);
         DoubleFunction plusEps = Functions.plus(eps);
 
+        MatrixKernels.multiply(U, V, UV, false, true); // UV <- U*V'
         if (stopThreshold >= 0)
         {
-            updateApproximationError();
+            updateApproximationError(UV);
         }
 
         for (int i = 0; i < maxIterations; i++)
         {
-            // Update V
-            U.zMult(V, UV, 1, 0, false, true); // UV <- U*V'
+            CancellationToken.checkCurrent();
+
+            // Update V, UV holds U*V' computed at the end of the previous iteration
             UV.assign(plusEps); // UV <- UV + eps
             UV.assign(Aeps, invDiv); // UV <- Aeps ./ UV
-            UV.zMult(U, VT, 1, 0, true, false); // VT <- UV' * U
+            MatrixKernels.multiply(UV, U, VT, true, false); // VT <- UV' * U
             V.assign(VT, sqrtMult); // V <- sqrt(V .* VT)
 
             // Update U
-            U.zMult(V, UV, 1, 0, false, true); // UV <- U*V'
+            MatrixKernels.multiply(U, V, UV, false, true); // UV <- U*V'
             UV.assign(plusEps); // UV <- UV + eps
             UV.assign(Aeps, invDiv); // UV <- Aeps ./ UV
-            UV.zMult(V, UT, 1, 0, false, false); // UT <- UV * V
+            MatrixKernels.multiply(UV, V, UT); // UT <- UV * V
             U.assign(UT, Functions.MULT); // U <- U .* UT
 
             MatrixUtils.normalizeColumnL1(U, work);
 
             iterationsCompleted++;
+            if (stopThreshold >= 0 || i + 1 < maxIterations)
+            {
+                MatrixKernels.multiply(U, V, UV, false, true); // UV <- U*V'
+            }
             if (stopThreshold >= 0)
             {
-                if (updateApproximationError())
+                if (updateApproximationError(UV))
                 {
                     break;
                 }
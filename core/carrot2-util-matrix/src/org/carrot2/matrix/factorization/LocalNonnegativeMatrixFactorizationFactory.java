@@ -30,6 +30,7 @@ public class LocalNonnegativeMatrixFactorizationFactory extends
         factorization.setStopThreshold(stopThreshold);
         factorization.setSeedingStrategy(createSeedingStrategy());
         factorization.setOrdered(ordered);
+        factorization.setSinglePrecision(singlePrecision);
 
         factorization.compute();
 
@@ -13,6 +13,8 @@
 package org.carrot2.matrix.factorization;
 
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
+import org.carrot2.matrix.FlatDoubleMatrix2D;
+import org.carrot2.matrix.FlatFloatMatrix2D;
 
 /**
  * Abstract implementation of the {@link IMatrixFactorization} interface.
@@ -29,6 +31,9 @@ abstract class MatrixFactorizationBase implements IMatrixFactorization
     /** Coefficient result matrix */
     protected DoubleMatrix2D V;
 
+    /** Compute in single precision */
+    protected boolean singlePrecision;
+
     /**
      * Creates the MatrixFactorizationBase object for matrix A. All computations will be
      * performed during the invocation of the constructor. By default
@@ -41,6 +46,38 @@ abstract class MatrixFactorizationBase implements IMatrixFactorization
         this.A = A;
     }
 
+    /**
+     * Creates a zero matrix for factors and intermediate results: a single precision
+     * {@link FlatFloatMatrix2D} if single precision is requested (see
+     * {@link #setSinglePrecision(boolean)}) or the input matrix is one, a
+     * {@link FlatDoubleMatrix2D} otherwise.
+     */
+    protected DoubleMatrix2D newMatrix(int rows, int columns)
+    {
+        if (singlePrecision || A instanceof FlatFloatMatrix2D)
+        {
+            return new FlatFloatMatrix2D(rows, columns);
+        }
+        return new FlatDoubleMatrix2D(rows, columns);
+    }
+
+    /**
+     * Returns <code>true</code> when factors are computed in single precision.
+     */
+    public boolean isSinglePrecision()
+    {
+        return singlePrecision;
+    }
+
+    /**
+     * Set to <code>true</code> to compute and store factors in single precision, which
+     * halves their memory footprint at the cost of accuracy.
+     */
+    public void setSinglePrecision(boolean singlePrecision)
+    {
+        this.singlePrecision = singlePrecision;
+    }
+
     public DoubleMatrix2D getU()
     {
         return U;
@@ -15,7 +15,8 @@ package org.carrot2.matrix.factorization;
 import org.apache.mahout.math.function.DoubleFunction;
 import org.apache.mahout.math.function.Functions;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
-import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.matrix.MatrixKernels;
+import org.carrot2.util.CancellationToken;
 
 /**
  * Performs matrix factorization using the Non-negative Matrix Factorization algorithm
@@ -57,16 +58,17 @@ public class NonnegativeMatrixFactorizationED extends IterativeMatrixFactorizati
         double eps = 1e-9;
 
         // Seed U and V with initial values
-        U = new DenseDoubleMatrix2D(A.rows(), k);
-        V = new DenseDoubleMatrix2D(A.columns(), k);
+        U = newMatrix(A.rows(), k);
+        V = newMatrix(A.columns(), k);
         seedingStrategy.seed(A, U, V);
 
         // Temporary matrices
-        DoubleMatrix2D T = new DenseDoubleMatrix2D(k, k);
-        DoubleMatrix2D UT1 = new DenseDoubleMatrix2D(A.rows(), k);
-        DoubleMatrix2D UT2 = new DenseDoubleMatrix2D(A.rows(), k);
-        DoubleMatrix2D VT1 = new DenseDoubleMatrix2D(A.columns(), k);
-        DoubleMatrix2D VT2 = new DenseDoubleMatrix2D(A.columns(), k);
+        DoubleMatrix2D T = newMatrix(k, k);
+        DoubleMatrix2D AV = newMatrix(A.rows(), k);
+        DoubleMatrix2D UT1 = newMatrix(A.rows(), k);
+        DoubleMatrix2D UT2 = newMatrix(A.rows(), k);
+        DoubleMatrix2D VT1 = newMatrix(A.columns(), k);
+        DoubleMatrix2D VT2 = newMatrix(A.columns(), k);
         DoubleFunction plusEps = Functions.plus(eps);
 
         if (stopThreshold >= 0)
@@ -76,19 +78,22 @@ public class NonnegativeMatrixFactorizationED extends IterativeMatrixFactorizati
 
         for (int i = 0; i < maxIterations; i++)
         {
+            CancellationToken.checkCurrent();
+
             // Update V
-            U.zMult(U, T, 1, 0, true, false); // T <- U'U
-            A.zMult(U, VT1, 1, 0, true, false); // VT1 <- A'U
-            V.zMult(T, VT2, 1, 0, false, false); // VT2 <- VT
+            MatrixKernels.multiply(U, U, T, true, false); // T <- U'U
+            MatrixKernels.multiply(A, U, VT1, true, false); // VT1 <- A'U
+            MatrixKernels.multiply(V, T, VT2); // VT2 <- VT
             VT1.assign(plusEps); // TODO: shift this to the dividing function?
             VT2.assign(plusEps);
             VT1.assign(VT2, Functions.DIV); // VT1 <- VT1 ./ VT2
             V.assign(VT1, Functions.MULT); // V <- V .* VT1
 
             // Update U
-            V.zMult(V, T, 1, 0, true, false); // T <- V'V
-            A.zMult(V, UT1, 1, 0, false, false); // UT1 <- AV
-            U.zMult(T, UT2, 1, 0, false, false); // UT2 <- UT
+            MatrixKernels.multiply(V, V, T, true, false); // T <- V'V
+            MatrixKernels.multiply(A, V, AV); // AV <- AV
+            UT1.assign(AV); // UT1 <- AV
+            MatrixKernels.multiply(U, T, UT2); // UT2 <- UT
             UT1.assign(plusEps);
             UT2.assign(plusEps);
             UT1.assign(UT2, Functions.DIV); // UT1 <- UT1 ./ UT2
@@ -97,7 +102,8 @@ public class NonnegativeMatrixFactorizationED extends IterativeMatrixFactorizati
             iterationsCompleted++;
             if (stopThreshold >= 0)
             {
-                if (updateApproximationError())
+                // AV and T = V'V are still valid, V has not changed since
+                if (updateApproximationError(AV, T))
                 {
                     break;
                 }
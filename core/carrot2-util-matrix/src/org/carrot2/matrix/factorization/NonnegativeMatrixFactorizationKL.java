@@ -16,8 +16,9 @@ import org.apache.mahout.math.function.DoubleDoubleFunction;
 import org.apache.mahout.math.function.DoubleFunction;
 import org.apache.mahout.math.function.Functions;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
-import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.matrix.MatrixKernels;
 import org.carrot2.matrix.MatrixUtils;
+import org.carrot2.util.CancellationToken;
 
 /**
  * Performs matrix factorization using the Non-negative Matrix Factorization by
@@ -64,49 +65,55 @@ public class NonnegativeMatrixFactorizationKL extends IterativeMatrixFactorizati
         double eps = 1e-9;
 
         // Seed U and V with initial values
-        U = new DenseDoubleMatrix2D(m, k);
-        V = new DenseDoubleMatrix2D(n, k);
+        U = newMatrix(m, k);
+        V = newMatrix(n, k);
         seedingStrategy.seed(A, U, V);
 
         // Temporary matrices
-        DoubleMatrix2D Aeps = A.copy();
+        DoubleMatrix2D Aeps = newMatrix(A.rows(), A.columns()).assign(A);
         Aeps.assign(Functions.plus(eps));
-        DoubleMatrix2D UV = new DenseDoubleMatrix2D(m, n);
-        DoubleMatrix2D VT = new DenseDoubleMatrix2D(n, k);
-        DoubleMatrix2D UT = new DenseDoubleMatrix2D(m, k);
+        DoubleMatrix2D UV = newMatrix(m, n);
+        DoubleMatrix2D VT = newMatrix(n, k);
+        DoubleMatrix2D UT = newMatrix(m, k);
         double [] work = new double [U.columns()];
 
         // Colt functions
         DoubleDoubleFunction invDiv = Functions.swapArgs(Functions.DIV);
         DoubleFunction plusEps = Functions.plus(eps);
 
+        MatrixKernels.multiply(U, V, UV, false, true); // UV <- U*V'
         if (stopThreshold >= 0)
         {
-            updateApproximationError();
+            updateApproximationError(UV);
         }
 
         for (int i = 0; i < maxIterations; i++)
         {
-            // Update V
-            U.zMult(V, UV, 1, 0, false, true); // UV <- U*V'
+            CancellationToken.checkCurrent();
+
+            // Update V, UV holds U*V' computed at the end of the previous iteration
             UV.assign(plusEps); // UV <- UV + eps
             UV.assign(Aeps, invDiv); // UV <- Aeps ./ UV
-            UV.zMult(U, VT, 1, 0, true, false); // VT <- UV' * U
+            MatrixKernels.multiply(UV, U, VT, true, false); // VT <- UV' * U
             V.assign(VT, Functions.MULT); // V <- V .* VT
 
             // Update U
-            U.zMult(V, UV, 1, 0, false, true); // UV <- U*V'
+            MatrixKernels.multiply(U, V, UV, false, true); // UV <- U*V'
             UV.assign(plusEps); // UV <- UV + eps
             UV.assign(Aeps, invDiv); // UV <- Aeps ./ UV
-            UV.zMult(V, UT, 1, 0, false, false); // UT <- UV * V
+            MatrixKernels.multiply(UV, V, UT); // UT <- UV * V
             U.assign(UT, Functions.MULT); // U <- U .* UT
 
             MatrixUtils.normalizeColumnL1(U, work);
 
             iterationsCompleted++;
+            if (stopThreshold >= 0 || i + 1 < maxIterations)
+            {
+                MatrixKernels.multiply(U, V, UV, false, true); // UV <- U*V'
+            }
             if (stopThreshold >= 0)
             {
-                if (updateApproximationError())
+                if (updateApproximationError(UV))
                 {
                     break;
                 }
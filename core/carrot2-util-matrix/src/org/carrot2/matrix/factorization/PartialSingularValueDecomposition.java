@@ -13,15 +13,25 @@
 package org.carrot2.matrix.factorization;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.SingularValueDecomposition;
+import org.apache.mahout.math.function.Functions;
+import org.apache.mahout.math.matrix.DoubleMatrix1D;
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
 import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
+import org.carrot2.matrix.MatrixKernels;
 
 /**
- * Performs matrix factorization using the Singular Value Decomposition algorithm.
+ * Performs matrix factorization using the Singular Value Decomposition algorithm. If
+ * only the first <i>k</i> singular vectors are requested and <i>k</i> is small compared
+ * to the dimensions of the matrix, the decomposition is computed with a randomized range
+ * finder (Halko, Martinsson, Tropp, <i>Finding structure with randomness</i>), which
+ * only multiplies the input matrix by thin dense matrices and therefore also benefits
+ * from sparse input. Otherwise, the full decomposition of a dense copy of the matrix is
+ * computed.
  */
 @SuppressWarnings("deprecation")
 public class PartialSingularValueDecomposition extends MatrixFactorizationBase implements
@@ -33,6 +43,15 @@ public class PartialSingularValueDecomposition extends MatrixFactorizationBase i
     /** The default number of desired base vectors */
     protected static final int DEFAULT_K = -1;
 
+    /** The number of additional random vectors sampled by the range finder */
+    protected static final int OVERSAMPLING = 10;
+
+    /** The number of power iterations performed by the range finder */
+    protected static final int POWER_ITERATIONS = 2;
+
+    /** Seed of the random projection, fixed so that results are repeatable */
+    private static final long SEED = 0x5eed;
+
     /** Singular values */
     private double [] S;
 
@@ -50,35 +69,129 @@ public class PartialSingularValueDecomposition extends MatrixFactorizationBase i
     }
 
     public void compute()
+    {
+        final int minDimension = Math.min(A.rows(), A.columns());
+        final int rank = (k > 0 ? Math.min(k, minDimension) : minDimension);
+        if (rank + OVERSAMPLING < minDimension)
+        {
+            computeRandomized(rank);
+        }
+        else
+        {
+            computeFull(rank);
+        }
+    }
+
+    /**
+     * Computes the full decomposition of a dense copy of the matrix and keeps the first
+     * <code>rank</code> singular triplets.
+     */
+    private void computeFull(int rank)
     {
         // Use Colt's SVD
         SingularValueDecomposition svd;
         if (A.columns() > A.rows())
         {
             svd = new SingularValueDecomposition(new DenseMatrix(A.viewDice().toArray()));
-            V = toColtMatrix(svd.getU());
-            U = toColtMatrix(svd.getV());
+            V = toColtMatrix(svd.getU(), rank);
+            U = toColtMatrix(svd.getV(), rank);
         }
         else
         {
             svd = new SingularValueDecomposition(new DenseMatrix(A.toArray()));
-            U = toColtMatrix(svd.getU());
-            V = toColtMatrix(svd.getV());
+            U = toColtMatrix(svd.getU(), rank);
+            V = toColtMatrix(svd.getV(), rank);
         }
 
-        S = svd.getSingularValues();
+        S = Arrays.copyOf(svd.getSingularValues(), rank);
+    }
+
+    /**
+     * Computes the first <code>rank</code> singular triplets using a randomized range
+     * finder with power iterations. The orthonormal basis <code>Q</code> of the range of
+     * <code>A</code> is found by multiplying <code>A</code> by a random Gaussian matrix,
+     * then the small matrix <code>Q'A</code> is decomposed exactly.
+     */
+    private void computeRandomized(int rank)
+    {
+        final int rows = A.rows();
+        final int columns = A.columns();
+        final int samples = rank + OVERSAMPLING;
 
-        if (k > 0 && k < S.length)
+        final Random random = new Random(SEED);
+        final DoubleMatrix2D omega = new DenseDoubleMatrix2D(columns, samples);
+        for (int r = 0; r < columns; r++)
         {
-            U = U.viewPart(0, 0, U.rows(), k);
-            V = V.viewPart(0, 0, V.rows(), k);
-            S = Arrays.copyOf(S, k);
+            for (int c = 0; c < samples; c++)
+            {
+                omega.setQuick(r, c, random.nextGaussian());
+            }
+        }
+
+        // Q = orth(A * Omega), refined by power iterations on A * A'
+        final DoubleMatrix2D Q = new DenseDoubleMatrix2D(rows, samples);
+        final DoubleMatrix2D Z = new DenseDoubleMatrix2D(columns, samples);
+        MatrixKernels.multiply(A, omega, Q);
+        orthonormalizeColumns(Q);
+        for (int i = 0; i < POWER_ITERATIONS; i++)
+        {
+            MatrixKernels.multiply(A, Q, Z, true, false);
+            orthonormalizeColumns(Z);
+            MatrixKernels.multiply(A, Z, Q);
+            orthonormalizeColumns(Q);
+        }
+
+        // B' = A' * Q = Ub * S * Vb', hence A ~ Q * B = (Q * Vb) * S * Ub'
+        MatrixKernels.multiply(A, Q, Z, true, false);
+        final SingularValueDecomposition svd = new SingularValueDecomposition(
+            new DenseMatrix(Z.toArray()));
+
+        V = toColtMatrix(svd.getU(), rank);
+        U = MatrixKernels.multiply(Q, toColtMatrix(svd.getV(), rank), null);
+        S = Arrays.copyOf(svd.getSingularValues(), rank);
+    }
+
+    /**
+     * Orthonormalizes columns of the matrix in place using the modified Gram-Schmidt
+     * process with reorthogonalization. Columns linearly dependent on the preceding ones
+     * are set to zero.
+     */
+    static void orthonormalizeColumns(DoubleMatrix2D A)
+    {
+        for (int c = 0; c < A.columns(); c++)
+        {
+            final DoubleMatrix1D column = A.viewColumn(c);
+            final double initialNorm = Math.sqrt(column.zDotProduct(column));
+
+            // Two passes are enough to keep the basis orthogonal in floating point
+            for (int pass = 0; pass < 2; pass++)
+            {
+                for (int p = 0; p < c; p++)
+                {
+                    final DoubleMatrix1D previous = A.viewColumn(p);
+                    final double dot = column.zDotProduct(previous);
+                    if (dot != 0)
+                    {
+                        column.assign(previous, Functions.minusMult(dot));
+                    }
+                }
+            }
+
+            final double norm = Math.sqrt(column.zDotProduct(column));
+            if (norm <= initialNorm * 1e-10 || norm == 0)
+            {
+                column.assign(0);
+            }
+            else
+            {
+                column.assign(Functions.div(norm));
+            }
         }
     }
 
-    private static DenseDoubleMatrix2D toColtMatrix(Matrix m)
+    private static DenseDoubleMatrix2D toColtMatrix(Matrix m, int columns)
     {
-        DenseDoubleMatrix2D result = new DenseDoubleMatrix2D(m.rowSize(), m.columnSize());
+        DenseDoubleMatrix2D result = new DenseDoubleMatrix2D(m.rowSize(), columns);
         for (int r = 0; r < result.rows(); r++)
         {
             for (int c = 0; c < result.columns(); c++)
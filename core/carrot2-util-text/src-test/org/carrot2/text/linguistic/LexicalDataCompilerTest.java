@@ -0,0 +1,127 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.linguistic;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.util.resource.DirLocator;
+import org.carrot2.util.resource.IResource;
+import org.carrot2.util.resource.IResourceLocator;
+import org.carrot2.util.resource.ResourceLookup;
+import org.carrot2.util.resource.ResourceLookup.Location;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.LifecycleScope;
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for {@link LexicalDataCompiler} and lazy loading of lexical resources in
+ * {@link DefaultLexicalDataFactory}.
+ */
+public class LexicalDataCompilerTest extends CarrotTestCase
+{
+    /**
+     * Records names of requested resources.
+     */
+    private static final class RecordingLocator implements IResourceLocator
+    {
+        final IResourceLocator delegate;
+        final Set<String> requested = Collections.synchronizedSet(Sets.<String> newHashSet());
+
+        RecordingLocator(IResourceLocator delegate)
+        {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public IResource [] getAll(String resource)
+        {
+            requested.add(resource);
+            return delegate.getAll(resource);
+        }
+    }
+
+    @Test
+    public void testLanguagesLoadedOnFirstUse()
+    {
+        final RecordingLocator locator = new RecordingLocator(
+            Location.CONTEXT_CLASS_LOADER.locator);
+        final DefaultLexicalDataFactory factory = new DefaultLexicalDataFactory();
+        factory.mergeResources = false;
+        factory.resourceLookup = new ResourceLookup(locator);
+
+        final ILexicalData english = factory.getLexicalData(LanguageCode.ENGLISH);
+        assertTrue(english.isStopLabel("information about"));
+        assertThat(locator.requested).containsOnly("stopwords.en", "stoplabels.en",
+            "stoplabels.en.bin");
+
+        assertThat(factory.getLexicalData(LanguageCode.ENGLISH)).isSameAs(english);
+        factory.getLexicalData(LanguageCode.GERMAN);
+        assertThat(locator.requested).contains("stopwords.de");
+        assertThat(locator.requested).excludes("stopwords.fr");
+    }
+
+    @Test
+    public void testCompiledStoplabelsUsed() throws IOException
+    {
+        final File dir = newTempDir(LifecycleScope.TEST);
+        FileUtils.writeStringToFile(new File(dir, "stoplabels.en"), "(?i)unique .*\nfoo");
+
+        final ResourceLookup compileLookup = new ResourceLookup(new DirLocator(dir),
+            Location.CONTEXT_CLASS_LOADER.locator);
+        final List<File> files = LexicalDataCompiler.compile(compileLookup, dir);
+        assertThat(files).contains(new File(dir, "stoplabels.en.bin"),
+            new File(dir, "stoplabels.merged.bin"));
+
+        for (boolean merge : new boolean [] {false, true})
+        {
+            final DefaultLexicalDataFactory factory = new DefaultLexicalDataFactory();
+            factory.mergeResources = merge;
+            factory.resourceLookup = new ResourceLookup(new DirLocator(dir),
+                Location.CONTEXT_CLASS_LOADER.locator);
+
+            final ILexicalData data = factory.getLexicalData(LanguageCode.ENGLISH);
+            assertTrue(data.isStopLabel("Unique label"));
+            assertTrue(data.isStopLabel("foo"));
+            assertFalse(data.isStopLabel("information about"));
+        }
+    }
+
+    @Test
+    public void testStaleCompiledStoplabelsIgnored() throws IOException
+    {
+        final File dir = newTempDir(LifecycleScope.TEST);
+        FileUtils.writeStringToFile(new File(dir, "stoplabels.en"), "foo");
+        LexicalDataCompiler.compile(new ResourceLookup(new DirLocator(dir),
+            Location.CONTEXT_CLASS_LOADER.locator), dir);
+
+        // Expressions edited after compilation.
+        FileUtils.writeStringToFile(new File(dir, "stoplabels.en"), "bar");
+
+        final DefaultLexicalDataFactory factory = new DefaultLexicalDataFactory();
+        factory.mergeResources = false;
+        factory.resourceLookup = new ResourceLookup(new DirLocator(dir),
+            Location.CONTEXT_CLASS_LOADER.locator);
+
+        final ILexicalData data = factory.getLexicalData(LanguageCode.ENGLISH);
+        assertTrue(data.isStopLabel("bar"));
+        assertFalse(data.isStopLabel("foo"));
+    }
+}
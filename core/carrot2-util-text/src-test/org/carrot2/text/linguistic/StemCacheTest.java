@@ -0,0 +1,98 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.linguistic;
+
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.util.MutableCharArray;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link StemCache}.
+ */
+public class StemCacheTest extends CarrotTestCase
+{
+    /**
+     * Strips the last character of words longer than two characters, counts invocations.
+     */
+    static final class CountingStemmer implements IStemmer
+    {
+        int invocations;
+
+        public CharSequence stem(CharSequence word)
+        {
+            invocations++;
+            return word.length() > 2 ? word.subSequence(0, word.length() - 1) : null;
+        }
+    }
+
+    @Test
+    public void testCachedStems()
+    {
+        final StemCache cache = StemCache.get(LanguageCode.CROATIAN, CountingStemmer.class);
+        cache.clear();
+
+        final CountingStemmer stemmer = new CountingStemmer();
+        final IStemmer cached = cache.wrap(stemmer);
+        final long hits = cache.getHitCount();
+        final long misses = cache.getMissCount();
+
+        assertThat(cached.stem(new MutableCharArray("cats")).toString()).isEqualTo("cat");
+        assertThat(cached.stem("cats").toString()).isEqualTo("cat");
+        assertThat(cached.stem(new MutableCharArray("at"))).isNull();
+        assertThat(cached.stem("at")).isNull();
+
+        assertThat(stemmer.invocations).isEqualTo(2);
+        assertThat(cache.getHitCount() - hits).isEqualTo(2);
+        assertThat(cache.getMissCount() - misses).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSharedAcrossStemmers()
+    {
+        final StemCache cache = StemCache.get(LanguageCode.SLOVAK, CountingStemmer.class);
+        cache.clear();
+
+        final CountingStemmer first = new CountingStemmer();
+        final CountingStemmer second = new CountingStemmer();
+        cache.wrap(first).stem("dogs");
+
+        assertThat(cache.wrap(second).stem("dogs").toString()).isEqualTo("dog");
+        assertThat(second.invocations).isEqualTo(0);
+    }
+
+    @Test
+    public void testSeparateCachesPerLanguage()
+    {
+        assertThat(StemCache.get(LanguageCode.SLOVAK, CountingStemmer.class)).isSameAs(
+            StemCache.get(LanguageCode.SLOVAK, CountingStemmer.class));
+        assertThat(StemCache.get(LanguageCode.SLOVAK, CountingStemmer.class)).isNotSameAs(
+            StemCache.get(LanguageCode.CROATIAN, CountingStemmer.class));
+    }
+
+    @Test
+    public void testIdentityStemmerNotWrapped()
+    {
+        final IStemmer stemmer = new IdentityStemmer();
+        assertThat(StemCache.get(LanguageCode.ENGLISH, IdentityStemmer.class).wrap(stemmer))
+            .isSameAs(stemmer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongStemmerClass()
+    {
+        StemCache.get(LanguageCode.ENGLISH, CountingStemmer.class).wrap(
+            new IdentityStemmer());
+    }
+}
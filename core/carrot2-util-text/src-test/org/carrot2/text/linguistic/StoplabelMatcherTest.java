@@ -0,0 +1,265 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.linguistic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.io.IOUtils;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Test cases for {@link StoplabelMatcher}. Results are compared with matching the union
+ * of expressions with {@link Pattern}.
+ */
+public class StoplabelMatcherTest extends CarrotTestCase
+{
+    @Test
+    public void testLiterals()
+    {
+        check(patterns("(?i)(days?|read(ing)?s?)", "ご利用", "Exact"),
+            "day", "DAYS", "dayss", "readings", "ReAdS", "ご利用", "ご利", "Exact", "exact", "");
+    }
+
+    @Test
+    public void testAutomaton()
+    {
+        check(patterns("(?i).*(page|part) \\d+.*", "(?i)information (about|on).*",
+            "[a-c]{2,3}x", "[^a]b", "a.c", "(?i:ab)c", "x(?i)y(z)", "\\w+\\s\\W"),
+            "Page 12", "my PART 3 of", "page x", "information about", "Information On it",
+            "abx", "acbx", "abcdx", "bb", "ab", "Ab", "a\nc", "abc", "ABc", "ABC", "xYZ",
+            "XYZ", "xyZ", "abc_ -", "abc  ");
+    }
+
+    @Test
+    public void testUnsupportedConstructs()
+    {
+        check(patterns("^abc$", "(a)\\1", "a++", "\\bword\\b", "(?=x)x.*", "[a-z&&[^b]]"),
+            "abc", "aa", "aaa", "word", "xyz", "c", "b");
+    }
+
+    @Test
+    public void testSupplementaryCharacters()
+    {
+        check(patterns("a.c", "(?i)x😀"), "a😀c", "ac", "X😀");
+    }
+
+    @Test
+    public void testResources() throws IOException
+    {
+        final List<Pattern> patterns = Lists.newArrayList();
+        final List<String> words = Lists.newArrayList("page 12", "part 3", "a range", "of");
+        for (LanguageCode language : LanguageCode.values())
+        {
+            final InputStream is = getClass().getResourceAsStream(
+                "/stoplabels." + language.getIsoCode());
+            if (is == null)
+            {
+                continue;
+            }
+
+            try
+            {
+                for (String line : IOUtils.readLines(is, "UTF-8"))
+                {
+                    line = line.trim();
+                    if (line.length() == 0 || line.startsWith("#"))
+                    {
+                        continue;
+                    }
+                    patterns.add(Pattern.compile(line));
+                    for (String word : line.replaceAll("\\(\\?i\\)", "").split(
+                        "[()|?*.+\\\\]+"))
+                    {
+                        if (word.length() > 0)
+                        {
+                            words.add(word);
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+
+        final List<String> labels = Lists.newArrayList(words);
+        for (int i = 0; i < 5000; i++)
+        {
+            final StringBuilder label = new StringBuilder();
+            for (int j = randomIntBetween(1, 3); j > 0; j--)
+            {
+                if (label.length() > 0)
+                {
+                    label.append(' ');
+                }
+                final String word = words.get(randomIntBetween(0, words.size() - 1));
+                label.append(randomBoolean() ? word : word.toUpperCase(Locale.ENGLISH));
+            }
+            labels.add(label.toString());
+        }
+
+        check(patterns, labels.toArray(new String [labels.size()]));
+    }
+
+    @Test
+    public void testSerialization() throws IOException
+    {
+        final List<Pattern> patterns = patterns("(?i)(days?|reads?)", "^abc$",
+            "(?i).*(page|part) \\d+.*", "a.c");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new StoplabelMatcher(patterns).write(new DataOutputStream(bytes));
+
+        // Expressions in a different order.
+        final List<Pattern> reversed = Lists.reverse(patterns);
+        final StoplabelMatcher matcher = StoplabelMatcher.read(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())), reversed);
+        assertThat(matcher).isNotNull();
+
+        final Pattern union = StoplabelMatcher.union(patterns);
+        for (String label : new String []
+        {
+            "Days", "read", "abc", "abcd", "Page 12", "a page 3 of", "a😀c", "abc", "x"
+        })
+        {
+            assertEquals(label, union.matcher(label).matches(), matcher.matches(label));
+        }
+    }
+
+    @Test
+    public void testSerializedWithDifferentExpressions() throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new StoplabelMatcher(patterns("a.c", "b")).write(new DataOutputStream(bytes));
+
+        assertThat(StoplabelMatcher.read(new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray())), patterns("a.c", "c"))).isNull();
+    }
+
+    @Test
+    public void testRandomExpressions()
+    {
+        for (int round = 0; round < 200; round++)
+        {
+            final List<Pattern> patterns = Lists.newArrayList();
+            for (int i = randomIntBetween(1, 5); i > 0; i--)
+            {
+                final String expression = (randomBoolean() ? "(?i)" : "")
+                    + randomExpression(3);
+                try
+                {
+                    patterns.add(Pattern.compile(expression));
+                }
+                catch (PatternSyntaxException e)
+                {
+                    // Dangling quantifiers and the like, ignore.
+                }
+            }
+
+            final String [] labels = new String [200];
+            for (int i = 0; i < labels.length; i++)
+            {
+                final StringBuilder label = new StringBuilder();
+                for (int j = randomIntBetween(0, 6); j > 0; j--)
+                {
+                    label.append("abAB1 \n".charAt(randomIntBetween(0, 6)));
+                }
+                labels[i] = label.toString();
+            }
+            if (!patterns.isEmpty())
+            {
+                check(patterns, labels);
+            }
+        }
+    }
+
+    private String randomExpression(int depth)
+    {
+        final StringBuilder b = new StringBuilder();
+        for (int i = randomIntBetween(1, 3); i > 0; i--)
+        {
+            switch (randomIntBetween(0, depth > 0 ? 9 : 6))
+            {
+                case 0:
+                    b.append('.');
+                    break;
+                case 1:
+                    b.append(randomFrom(new String []
+                    {
+                        "[ab]", "[^a]", "[A-b]", "\\d", "\\s", "\\w", "[a\\d]", "\\W"
+                    }));
+                    break;
+                case 2:
+                case 3:
+                case 4:
+                    b.append("abAB1 ".charAt(randomIntBetween(0, 5)));
+                    break;
+                case 5:
+                    b.append(randomFrom(new String []
+                    {
+                        "?", "*", "+", "{1,2}", "{2}", "{0,}", "*?"
+                    }));
+                    break;
+                case 6:
+                    b.append(randomBoolean() ? "(?i)" : "(?-i)");
+                    break;
+                default:
+                    b.append(randomFrom(new String []
+                    {
+                        "(", "(?:", "(?i:"
+                    }));
+                    b.append(randomExpression(depth - 1));
+                    if (randomBoolean())
+                    {
+                        b.append('|').append(randomExpression(depth - 1));
+                    }
+                    b.append(')');
+            }
+        }
+        return b.toString();
+    }
+
+    private static List<Pattern> patterns(String... expressions)
+    {
+        final List<Pattern> patterns = Lists.newArrayList();
+        for (String expression : expressions)
+        {
+            patterns.add(Pattern.compile(expression));
+        }
+        return patterns;
+    }
+
+    private static void check(List<Pattern> patterns, String... labels)
+    {
+        final StoplabelMatcher matcher = new StoplabelMatcher(patterns);
+        final Pattern union = StoplabelMatcher.union(patterns);
+        for (String label : labels)
+        {
+            assertEquals(patterns + " on: " + label, union.matcher(label).matches(),
+                matcher.matches(label));
+        }
+    }
+}
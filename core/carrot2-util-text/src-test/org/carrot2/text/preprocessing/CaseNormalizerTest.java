@@ -276,5 +276,56 @@ public class CaseNormalizerTest extends PreprocessingContextTestBase
     }
 
     // @formatter:on
+
+    @Test
+    public void testHashAggregationSameAsSorting()
+    {
+        final String [] vocabulary = new String [randomIntBetween(10, 200)];
+        for (int i = 0; i < vocabulary.length; i++)
+        {
+            vocabulary[i] = randomAsciiOfLengthBetween(1, 4).toLowerCase();
+        }
+
+        for (int i = randomIntBetween(1, 50); i > 0; i--)
+        {
+            contextBuilder.newDoc(randomText(vocabulary, 10), randomText(vocabulary, 50));
+        }
+        contextBuilder.setAttribute(AttributeUtils.getKey(CaseNormalizer.class, "dfThreshold"),
+            randomIntBetween(1, 3));
+
+        final PreprocessingContext expected = contextBuilder.buildContext();
+        final PreprocessingContext actual = contextBuilder.setAttribute(
+            AttributeUtils.getKey(CaseNormalizer.class, "hashAggregation"), true)
+            .buildContext();
+
+        assertThat(actual.allTokens.wordIndex).isEqualTo(expected.allTokens.wordIndex);
+        assertThat(actual.allWords.image).isEqualTo(expected.allWords.image);
+        assertThat(actual.allWords.tf).isEqualTo(expected.allWords.tf);
+        assertThat(actual.allWords.tfByDocument).isEqualTo(expected.allWords.tfByDocument);
+        assertThat(actual.allWords.fieldIndices).isEqualTo(expected.allWords.fieldIndices);
+        assertThat(actual.allWords.type).isEqualTo(expected.allWords.type);
+    }
+
+    private String randomText(String [] vocabulary, int maxWords)
+    {
+        final StringBuilder b = new StringBuilder();
+        for (int i = randomIntBetween(0, maxWords); i > 0; i--)
+        {
+            final String word = vocabulary[randomIntBetween(0, vocabulary.length - 1)];
+            switch (randomIntBetween(0, 3))
+            {
+                case 0:
+                    b.append(word.toUpperCase());
+                    break;
+                case 1:
+                    b.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+                    break;
+                default:
+                    b.append(word);
+            }
+            b.append(rarely() ? ". " : " ");
+        }
+        return b.toString();
+    }
 }
 
@@ -0,0 +1,172 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.analysis.ExtendedWhitespaceTokenizer;
+import org.carrot2.text.preprocessing.pipeline.BasicPreprocessingPipeline;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.google.common.collect.Lists;
+
+/**
+ * Test cases for {@link DocumentTokenCache}.
+ */
+@ThreadLeakLingering(linger = 2000)
+public class DocumentTokenCacheTest extends CarrotTestCase
+{
+    @Test
+    public void testSameContextAsWithoutCache()
+    {
+        final List<Document> all = Lists.newArrayList();
+        for (int i = randomIntBetween(1, 600); i > 0; i--)
+        {
+            all.add(new Document(randomText(), rarely() ? null : randomText()));
+        }
+
+        final DocumentTokenCache cache = DocumentTokenCache.getShared();
+        final long hits = cache.getHitCount();
+        for (int round = 0; round < 3; round++)
+        {
+            // Overlapping, differently ordered subsets of documents.
+            final List<Document> documents = Lists.newArrayList(all.subList(
+                randomIntBetween(0, all.size() / 2), all.size()));
+            Collections.shuffle(documents, getRandom());
+
+            final int threads = randomIntBetween(1, 3);
+            final PreprocessingContext expected = preprocess(documents, false, threads);
+            final PreprocessingContext actual = preprocess(documents, true, threads);
+
+            assertTrue(Arrays.deepEquals(actual.allTokens.image, expected.allTokens.image));
+            assertThat(actual.allTokens.type).isEqualTo(expected.allTokens.type);
+            assertThat(actual.allTokens.documentIndex).isEqualTo(
+                expected.allTokens.documentIndex);
+            assertThat(actual.allTokens.fieldIndex).isEqualTo(expected.allTokens.fieldIndex);
+            assertTrue(Arrays.deepEquals(actual.allWords.image, expected.allWords.image));
+            assertThat(actual.allWords.tf).isEqualTo(expected.allWords.tf);
+        }
+        assertThat(cache.getHitCount()).isGreaterThan(hits);
+    }
+
+    @Test
+    public void testKeyDependsOnContentAndLanguage()
+    {
+        final String [] fields = new String []
+        {
+            Document.TITLE, Document.SUMMARY
+        };
+        final Class<ExtendedWhitespaceTokenizer> tokenizer = ExtendedWhitespaceTokenizer.class;
+
+        final DocumentTokenCache.Key key = DocumentTokenCache.key(new Document("a", "b"),
+            fields, LanguageCode.ENGLISH, tokenizer);
+        assertEquals(key, DocumentTokenCache.key(new Document("a", "b"), fields,
+            LanguageCode.ENGLISH, tokenizer));
+        assertFalse(key.equals(DocumentTokenCache.key(new Document("ab", ""), fields,
+            LanguageCode.ENGLISH, tokenizer)));
+        assertFalse(key.equals(DocumentTokenCache.key(new Document("a", "b"), fields,
+            LanguageCode.GERMAN, tokenizer)));
+        assertFalse(key.equals(DocumentTokenCache.key(new Document("a", "b"), new String []
+        {
+            Document.SUMMARY, Document.TITLE
+        }, LanguageCode.ENGLISH, tokenizer)));
+    }
+
+    @Test
+    public void testHashCollision()
+    {
+        final String [] fields = new String []
+        {
+            Document.TITLE
+        };
+        final long hash1 = randomLong(), hash2 = randomLong();
+        final DocumentTokenCache.Key key = new DocumentTokenCache.Key(hash1, hash2,
+            fields, new String []
+            {
+                "a"
+            }, LanguageCode.ENGLISH, ExtendedWhitespaceTokenizer.class);
+        final DocumentTokenCache.Key colliding = new DocumentTokenCache.Key(hash1, hash2,
+            fields, new String []
+            {
+                "b"
+            }, LanguageCode.ENGLISH, ExtendedWhitespaceTokenizer.class);
+
+        final DocumentTokenCache cache = new DocumentTokenCache(10000);
+        cache.put(key, new DocumentTokenCache.Entry(new char [] []
+        {
+            "a".toCharArray()
+        }, new int []
+        {
+            0
+        }, new short [1], new byte [1]));
+
+        // Tokens of another document with the same hash must not be returned.
+        assertThat(cache.get(colliding)).isNull();
+        assertThat(cache.get(key)).isNotNull();
+    }
+
+    @Test
+    public void testMemoryBudget()
+    {
+        final DocumentTokenCache cache = new DocumentTokenCache(10000);
+        final String [] fields = new String []
+        {
+            Document.TITLE
+        };
+        for (int i = 0; i < 1000; i++)
+        {
+            final DocumentTokenCache.Key key = DocumentTokenCache.key(new Document("doc "
+                + i), fields, LanguageCode.ENGLISH, ExtendedWhitespaceTokenizer.class);
+            cache.put(key, new DocumentTokenCache.Entry(new char [] []
+            {
+                "doc".toCharArray(), Integer.toString(i).toCharArray()
+            }, new int []
+            {
+                0, 1
+            }, new short [2], new byte [2]));
+        }
+
+        assertThat(cache.getEvictionCount()).isGreaterThan(0);
+        assertThat(cache.size()).isLessThan(1000);
+    }
+
+    private String randomText()
+    {
+        final String [] words =
+        {
+            "Data", "data", "mining", "Mining", "clustering", "search-results", "e-mail",
+            "www.carrot2.org", "3.14", "is", "the", ".", "!", "DATA", "ŁÓDŹ"
+        };
+        final StringBuilder b = new StringBuilder();
+        for (int i = randomIntBetween(0, 20); i > 0; i--)
+        {
+            b.append(words[randomIntBetween(0, words.length - 1)]).append(' ');
+        }
+        return b.toString();
+    }
+
+    private PreprocessingContext preprocess(List<Document> documents, boolean cache,
+        int threads)
+    {
+        final BasicPreprocessingPipeline pipeline = new BasicPreprocessingPipeline();
+        pipeline.tokenizer.documentTokenCache = cache;
+        pipeline.threads = threads;
+        return pipeline.preprocess(documents, null, LanguageCode.ENGLISH);
+    }
+}
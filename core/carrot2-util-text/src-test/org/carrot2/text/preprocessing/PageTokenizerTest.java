@@ -0,0 +1,142 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.linguistic.DefaultTokenizerFactory;
+import org.carrot2.text.preprocessing.pipeline.BasicPreprocessingPipeline;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Test cases for {@link PageTokenizer}.
+ */
+public class PageTokenizerTest extends CarrotTestCase
+{
+    @Test
+    public void testSameContextAsWithoutPretokenization()
+    {
+        final List<Document> pretokenized = Lists.newArrayList();
+        final List<Document> plain = Lists.newArrayList();
+        final int count = randomIntBetween(1, 50);
+        for (int i = 0; i < count; i++)
+        {
+            final String title = i == 0 ? "Data mining" : randomText();
+            final String summary = rarely() ? "" : randomText();
+
+            // Copies, so that pretokenized values are not shared.
+            pretokenized.add(new Document(title, summary));
+            plain.add(new Document(new String(title), new String(summary)));
+        }
+
+        // Tokenize in pages, like a search engine would.
+        final PretokenizedFields consumer = (PretokenizedFields) new PageTokenizer()
+            .requestStarted();
+        for (int from = 0; from < count; from += 10)
+        {
+            consumer.pageFetched(pretokenized.subList(from, Math.min(count, from + 10)));
+        }
+        consumer.retainDocuments(pretokenized);
+
+        final PreprocessingContext expected = preprocess(plain, null);
+        final PreprocessingContext actual = preprocess(pretokenized, consumer);
+
+        // All non-empty fields were replayed and are no longer kept.
+        assertThat(consumer.getReplayedCount()).isEqualTo(nonEmptyFields(pretokenized));
+        assertThat(consumer.size()).isEqualTo(0);
+        preprocess(pretokenized, consumer);
+        assertThat(consumer.getReplayedCount()).isEqualTo(nonEmptyFields(pretokenized));
+
+        assertTrue(Arrays.deepEquals(actual.allTokens.image, expected.allTokens.image));
+        assertThat(actual.allTokens.type).isEqualTo(expected.allTokens.type);
+        assertThat(actual.allTokens.documentIndex).isEqualTo(
+            expected.allTokens.documentIndex);
+        assertThat(actual.allTokens.fieldIndex).isEqualTo(expected.allTokens.fieldIndex);
+        assertTrue(Arrays.deepEquals(actual.allWords.image, expected.allWords.image));
+        assertThat(actual.allWords.tf).isEqualTo(expected.allWords.tf);
+    }
+
+    private String randomText()
+    {
+        final String [] words =
+        {
+            "Data", "data", "mining", "Mining", "clustering", "search-results", "e-mail",
+            "www.carrot2.org", "3.14", "is", "the", ".", "!", "DATA", "ŁÓDŹ"
+        };
+        final StringBuilder b = new StringBuilder();
+        for (int i = randomIntBetween(0, 20); i > 0; i--)
+        {
+            b.append(words[randomIntBetween(0, words.length - 1)]).append(' ');
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void testRetainDocuments()
+    {
+        final Document retained = new Document("retained", "retained summary");
+        final Document duplicate = new Document("duplicate", "duplicate summary");
+        final PretokenizedFields consumer = (PretokenizedFields) new PageTokenizer()
+            .requestStarted();
+        consumer.pageFetched(Lists.newArrayList(retained, duplicate));
+        assertThat(consumer.size()).isEqualTo(4);
+
+        consumer.retainDocuments(Lists.newArrayList(retained));
+        assertThat(consumer.size()).isEqualTo(2);
+        assertThat(consumer.take(duplicate.getTitle(),
+            new DefaultTokenizerFactory().getTokenizer(LanguageCode.ENGLISH).getClass()))
+            .isNull();
+    }
+
+    @Test
+    public void testEquality()
+    {
+        final PageTokenizer pageTokenizer = new PageTokenizer();
+
+        // Each request gets its own consumer.
+        assertThat(pageTokenizer.requestStarted()).isNotSameAs(
+            pageTokenizer.requestStarted());
+
+        assertThat(pageTokenizer).isEqualTo(new PageTokenizer());
+        assertThat(pageTokenizer.hashCode()).isEqualTo(new PageTokenizer().hashCode());
+        assertThat(pageTokenizer).isNotEqualTo(
+            new PageTokenizer(Arrays.asList(Document.TITLE),
+                new DefaultTokenizerFactory()));
+    }
+
+    private int nonEmptyFields(List<Document> documents)
+    {
+        int fields = 0;
+        for (Document document : documents)
+        {
+            fields += StringUtils.isEmpty(document.getTitle()) ? 0 : 1;
+            fields += StringUtils.isEmpty(document.getSummary()) ? 0 : 1;
+        }
+        return fields;
+    }
+
+    private PreprocessingContext preprocess(List<Document> documents,
+        PretokenizedFields consumer)
+    {
+        final BasicPreprocessingPipeline pipeline = new BasicPreprocessingPipeline();
+        pipeline.tokenizer.pageConsumer = consumer;
+        return pipeline.preprocess(documents, null, LanguageCode.ENGLISH);
+    }
+}
@@ -0,0 +1,144 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.preprocessing.pipeline.CompletePreprocessingPipeline;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Test cases for parallel preprocessing, see
+ * {@link CompletePreprocessingPipeline#threads}.
+ */
+@ThreadLeakLingering(linger = 2000)
+public class ParallelPreprocessingTest extends CarrotTestCase
+{
+    @Test
+    public void testSlices()
+    {
+        assertThat(ParallelPreprocessing.slices(0, 4, 10)).isEqualTo(new int [] {0, 0});
+        assertThat(ParallelPreprocessing.slices(15, 4, 10)).isEqualTo(new int [] {0, 15});
+        assertThat(ParallelPreprocessing.slices(25, 4, 10)).isEqualTo(
+            new int [] {0, 12, 25});
+        assertThat(ParallelPreprocessing.slices(100, 4, 10)).isEqualTo(
+            new int [] {0, 25, 50, 75, 100});
+    }
+
+    @Test
+    public void testInvokeAllBounded()
+    {
+        final Thread caller = Thread.currentThread();
+        final Set<Thread> threads = Collections.synchronizedSet(Sets.<Thread> newHashSet());
+        final List<Callable<Integer>> tasks = Lists.newArrayList();
+        final int count = randomIntBetween(2, 64);
+        for (int i = 0; i < count; i++)
+        {
+            final int index = i;
+            tasks.add(new Callable<Integer>()
+            {
+                public Integer call() throws Exception
+                {
+                    if (Thread.currentThread() != caller)
+                    {
+                        threads.add(Thread.currentThread());
+                    }
+                    return index;
+                }
+            });
+        }
+
+        final List<Integer> results = ParallelPreprocessing.invokeAll(tasks);
+        for (int i = 0; i < count; i++)
+        {
+            assertThat(results.get(i)).isEqualTo(i);
+        }
+        assertThat(threads.size()).isLessThanOrEqualTo(
+            Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void testSameResultsAsSerial()
+    {
+        final String [] vocabulary = new String [randomIntBetween(5000, 10000)];
+        for (int i = 0; i < vocabulary.length; i++)
+        {
+            vocabulary[i] = randomAsciiOfLengthBetween(3, 8)
+                + (rarely() ? "ing" : (rarely() ? "s" : ""));
+        }
+
+        final List<Document> documents = Lists.newArrayList();
+        for (int i = randomIntBetween(1000, 2000); i > 0; i--)
+        {
+            documents.add(new Document(randomText(vocabulary, 10), randomText(
+                vocabulary, 30)));
+        }
+
+        final PreprocessingContext expected = preprocess(documents, 1);
+        final PreprocessingContext actual = preprocess(documents, randomIntBetween(2, 8));
+
+        assertTrue(Arrays.deepEquals(expected.allTokens.image, actual.allTokens.image));
+        assertThat(actual.allTokens.type).isEqualTo(expected.allTokens.type);
+        assertThat(actual.allTokens.documentIndex).isEqualTo(
+            expected.allTokens.documentIndex);
+        assertThat(actual.allTokens.fieldIndex).isEqualTo(expected.allTokens.fieldIndex);
+        assertThat(actual.allTokens.wordIndex).isEqualTo(expected.allTokens.wordIndex);
+
+        assertTrue(Arrays.deepEquals(expected.allWords.image, actual.allWords.image));
+        assertThat(actual.allWords.type).isEqualTo(expected.allWords.type);
+        assertThat(actual.allWords.stemIndex).isEqualTo(expected.allWords.stemIndex);
+
+        assertTrue(Arrays.deepEquals(expected.allStems.image, actual.allStems.image));
+        assertThat(actual.allStems.tf).isEqualTo(expected.allStems.tf);
+        assertTrue(Arrays.deepEquals(expected.allStems.tfByDocument,
+            actual.allStems.tfByDocument));
+
+        assertTrue(Arrays.deepEquals(expected.allPhrases.wordIndices,
+            actual.allPhrases.wordIndices));
+        assertThat(actual.allLabels.featureIndex).isEqualTo(
+            expected.allLabels.featureIndex);
+        assertThat(actual.allLabels.documentIndices).isEqualTo(
+            expected.allLabels.documentIndices);
+    }
+
+    private String randomText(String [] vocabulary, int maxWords)
+    {
+        final StringBuilder b = new StringBuilder();
+        for (int i = randomIntBetween(0, maxWords); i > 0; i--)
+        {
+            final String word = vocabulary[randomIntBetween(0, vocabulary.length - 1)];
+            b.append(rarely() ? word.toUpperCase() : word);
+            b.append(rarely() ? ". " : " ");
+        }
+        return b.toString();
+    }
+
+    private PreprocessingContext preprocess(List<Document> documents, int threads)
+    {
+        final CompletePreprocessingPipeline pipeline = new CompletePreprocessingPipeline();
+        pipeline.threads = threads;
+        pipeline.documentAssigner.minClusterSize = 1;
+        return pipeline.preprocess(documents, null, LanguageCode.ENGLISH);
+    }
+}
@@ -358,5 +358,25 @@ public class PhraseExtractorTest extends CarrotTestCase
         }
     }
 
+    @Test
+    public void testTfByDocumentSortedByDocument()
+    {
+        PreprocessingContextBuilder builder = contextBuilder;
+        final int documents = randomIntBetween(2, 100);
+        for (int i = 0; i < documents; i++)
+        {
+            builder = builder.newDoc(rarely() ? "x y" : "a b c", "a b");
+        }
+        final PreprocessingContext context = builder.buildContext();
+
+        for (int [] tfByDocument : context.allPhrases.tfByDocument)
+        {
+            for (int i = 2; i < tfByDocument.length; i += 2)
+            {
+                assertThat(tfByDocument[i]).isGreaterThan(tfByDocument[i - 2]);
+            }
+        }
+    }
+
     // @formatter:on
 }
@@ -0,0 +1,375 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.preprocessing.pipeline.BasicPreprocessingPipeline;
+import org.carrot2.text.preprocessing.pipeline.CompletePreprocessingPipeline;
+import org.carrot2.util.CancellationToken;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.google.common.collect.Lists;
+
+/**
+ * Test cases for {@link PreprocessingContextCache}.
+ */
+@ThreadLeakLingering(linger = 2000)
+public class PreprocessingContextCacheTest extends CarrotTestCase
+{
+    @Test
+    public void testBasicStepsShared()
+    {
+        final List<Document> documents = randomDocuments();
+
+        final PreprocessingContext expected = basic(false).preprocess(documents, "data",
+            LanguageCode.ENGLISH);
+        final PreprocessingContext first = complete(true).preprocess(documents, "data",
+            LanguageCode.ENGLISH);
+        final PreprocessingContext second = basic(true).preprocess(documents, "data",
+            LanguageCode.ENGLISH);
+
+        assertBasicEquals(first, expected);
+        assertBasicEquals(second, expected);
+        assertThat(second.allTokens.image).isSameAs(first.allTokens.image);
+        assertThat(second.allWords.type).isSameAs(first.allWords.type);
+        assertThat(second.allStems.tfByDocument).isSameAs(first.allStems.tfByDocument);
+    }
+
+    @Test
+    public void testCompleteStepsShared()
+    {
+        final List<Document> documents = randomDocuments();
+
+        final PreprocessingContext expected = complete(false).preprocess(documents,
+            "data", LanguageCode.ENGLISH);
+        final PreprocessingContext first = complete(true).preprocess(documents, "data",
+            LanguageCode.ENGLISH);
+        final PreprocessingContext second = complete(true).preprocess(documents, "data",
+            LanguageCode.ENGLISH);
+
+        for (PreprocessingContext actual : new PreprocessingContext []
+        {
+            first, second
+        })
+        {
+            assertBasicEquals(actual, expected);
+            assertTrue(Arrays.deepEquals(actual.allPhrases.wordIndices,
+                expected.allPhrases.wordIndices));
+            assertThat(actual.allLabels.featureIndex).isEqualTo(
+                expected.allLabels.featureIndex);
+            assertThat(actual.allLabels.documentIndices).isEqualTo(
+                expected.allLabels.documentIndices);
+            assertThat(actual.allLabels.firstPhraseIndex).isEqualTo(
+                expected.allLabels.firstPhraseIndex);
+        }
+
+        assertThat(second.allPhrases.tf).isSameAs(first.allPhrases.tf);
+        if (second.allLabels.documentIndices.length > 0)
+        {
+            // Document sets may be modified by clustering algorithms.
+            assertThat(second.allLabels.documentIndices[0]).isNotSameAs(
+                first.allLabels.documentIndices[0]);
+        }
+    }
+
+    @Test
+    public void testDifferentSettingsOfCompleteStepsReuseBasicSteps()
+    {
+        final List<Document> documents = randomDocuments();
+        final PreprocessingContextCache cache = PreprocessingContextCache.getShared();
+
+        final PreprocessingContext first = complete(true).preprocess(documents, "data",
+            LanguageCode.ENGLISH);
+        final long basicLoads = cache.getBasicLoadCount();
+        final long completeLoads = cache.getCompleteLoadCount();
+
+        final CompletePreprocessingPipeline pipeline = complete(true);
+        pipeline.documentAssigner.minClusterSize = 3;
+        final PreprocessingContext second = pipeline.preprocess(documents, "data",
+            LanguageCode.ENGLISH);
+
+        assertThat(cache.getBasicLoadCount()).isEqualTo(basicLoads);
+        assertThat(cache.getCompleteLoadCount()).isEqualTo(completeLoads + 1);
+        assertThat(second.allTokens.image).isSameAs(first.allTokens.image);
+    }
+
+    @Test
+    public void testNotSharedForDifferentInput()
+    {
+        final List<Document> documents = randomDocuments();
+        final PreprocessingContext first = basic(true).preprocess(documents, null,
+            LanguageCode.ENGLISH);
+
+        // Equal, but different documents.
+        final List<Document> copies = Lists.newArrayList();
+        for (Document document : documents)
+        {
+            copies.add(new Document(document.getTitle(), document.getSummary()));
+        }
+        assertThat(basic(true).preprocess(copies, null, LanguageCode.ENGLISH).allTokens.image)
+            .isNotSameAs(first.allTokens.image);
+
+        // Different query, marked in word types.
+        assertThat(basic(true).preprocess(documents, "data", LanguageCode.ENGLISH).allWords.type)
+            .isNotSameAs(first.allWords.type);
+
+        // Different language.
+        assertThat(basic(true).preprocess(documents, null, LanguageCode.GERMAN).allTokens.image)
+            .isNotSameAs(first.allTokens.image);
+
+        // Different settings.
+        final BasicPreprocessingPipeline pipeline = basic(true);
+        pipeline.caseNormalizer.dfThreshold = 2;
+        assertThat(pipeline.preprocess(documents, null, LanguageCode.ENGLISH).allWords.image)
+            .isNotSameAs(first.allWords.image);
+    }
+
+    @Test
+    public void testConcurrentPipelines() throws Exception
+    {
+        final List<Document> documents = randomDocuments();
+        final PreprocessingContextCache cache = PreprocessingContextCache.getShared();
+        final long loads = cache.getCompleteLoadCount();
+
+        final List<Callable<PreprocessingContext>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 4; i++)
+        {
+            tasks.add(new Callable<PreprocessingContext>()
+            {
+                public PreprocessingContext call()
+                {
+                    return complete(true).preprocess(documents, "data",
+                        LanguageCode.ENGLISH);
+                }
+            });
+        }
+
+        final List<PreprocessingContext> contexts = ParallelPreprocessing.invokeAll(tasks);
+        assertThat(cache.getCompleteLoadCount()).isEqualTo(loads + 1);
+        for (PreprocessingContext context : contexts)
+        {
+            assertThat(context.allPhrases.wordIndices).isSameAs(
+                contexts.get(0).allPhrases.wordIndices);
+        }
+    }
+
+    @Test
+    public void testCancelledLoadRecomputedByWaiter() throws Exception
+    {
+        final PreprocessingContextCache cache = new PreprocessingContextCache(1);
+        final Object key = new Object();
+
+        // A starts loading and runs until its request is cancelled.
+        final CountDownLatch started = new CountDownLatch(1);
+        final CancellationToken tokenA = new CancellationToken();
+        final AtomicReference<Throwable> failureA = new AtomicReference<Throwable>();
+        final Thread a = basic(cache, key, new PreprocessingContext(null, null, null),
+            tokenA, new Runnable()
+            {
+                public void run()
+                {
+                    started.countDown();
+                    while (true)
+                    {
+                        CancellationToken.checkCurrent();
+                        Thread.yield();
+                    }
+                }
+            }, failureA);
+        started.await();
+
+        // B waits for A's results, then computes them on its own.
+        final PreprocessingContext contextB = new PreprocessingContext(null, null, null);
+        final AtomicInteger runsB = new AtomicInteger();
+        final AtomicReference<Throwable> failureB = new AtomicReference<Throwable>();
+        final Thread b = basic(cache, key, contextB, new CancellationToken(),
+            new Runnable()
+            {
+                public void run()
+                {
+                    runsB.incrementAndGet();
+                    contextB.allTokens.image = new char [0] [];
+                }
+            }, failureB);
+        while (b.getState() != Thread.State.TIMED_WAITING
+            && b.getState() != Thread.State.WAITING)
+        {
+            Thread.yield();
+        }
+        assertThat(runsB.get()).isEqualTo(0);
+
+        tokenA.cancel();
+        a.join();
+        b.join();
+
+        assertThat(failureA.get()).isInstanceOf(CancellationException.class);
+        assertThat(failureB.get()).isNull();
+        assertThat(runsB.get()).isEqualTo(1);
+
+        // B's results are published.
+        final PreprocessingContext contextC = new PreprocessingContext(null, null, null);
+        cache.basic(key, contextC, new Runnable()
+        {
+            public void run()
+            {
+                fail("Results should be published.");
+            }
+        });
+        assertThat(contextC.allTokens.image).isSameAs(contextB.allTokens.image);
+    }
+
+    @Test
+    public void testWaiterCancelled() throws Exception
+    {
+        final PreprocessingContextCache cache = new PreprocessingContextCache(1);
+        final Object key = new Object();
+
+        // A loads until released.
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Throwable> failureA = new AtomicReference<Throwable>();
+        final Thread a = basic(cache, key, new PreprocessingContext(null, null, null),
+            new CancellationToken(), new Runnable()
+            {
+                public void run()
+                {
+                    started.countDown();
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }, failureA);
+        started.await();
+
+        // B gives up waiting when its deadline passes.
+        final AtomicReference<Throwable> failureB = new AtomicReference<Throwable>();
+        final Thread b = basic(cache, key, new PreprocessingContext(null, null, null),
+            new CancellationToken(randomIntBetween(1, 50)), new Runnable()
+            {
+                public void run()
+                {
+                    fail("Results are being computed by another thread.");
+                }
+            }, failureB);
+        try
+        {
+            b.join(TimeUnit.SECONDS.toMillis(10));
+            assertThat(failureB.get()).isInstanceOf(CancellationException.class);
+            assertTrue(a.isAlive());
+        }
+        finally
+        {
+            release.countDown();
+        }
+        a.join();
+        b.join();
+        assertThat(failureA.get()).isNull();
+    }
+
+    /**
+     * Starts a thread running {@link PreprocessingContextCache#basic} with the provided
+     * token bound, storing its failure, if any.
+     */
+    private static Thread basic(final PreprocessingContextCache cache, final Object key,
+        final PreprocessingContext context, final CancellationToken token,
+        final Runnable stages, final AtomicReference<Throwable> failure)
+    {
+        final Thread thread = new Thread()
+        {
+            public void run()
+            {
+                CancellationToken.bind(token);
+                try
+                {
+                    cache.basic(key, context, stages);
+                }
+                catch (Throwable t)
+                {
+                    failure.set(t);
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private List<Document> randomDocuments()
+    {
+        final String [] words =
+        {
+            "Data", "data", "mining", "Mining", "clustering", "search", "results",
+            "e-mail", "is", "the", ".", "DATA", "text", "analysis"
+        };
+
+        final List<Document> documents = Lists.newArrayList();
+        for (int i = randomIntBetween(1, 30); i > 0; i--)
+        {
+            final StringBuilder title = new StringBuilder();
+            final StringBuilder summary = new StringBuilder();
+            for (int j = randomIntBetween(0, 5); j > 0; j--)
+            {
+                title.append(randomFrom(words)).append(' ');
+            }
+            for (int j = randomIntBetween(0, 20); j > 0; j--)
+            {
+                summary.append(randomFrom(words)).append(' ');
+            }
+            documents.add(new Document(title.toString(), summary.toString()));
+        }
+        return documents;
+    }
+
+    private static BasicPreprocessingPipeline basic(boolean shared)
+    {
+        final BasicPreprocessingPipeline pipeline = new BasicPreprocessingPipeline();
+        pipeline.sharedPreprocessing = shared;
+        return pipeline;
+    }
+
+    private static CompletePreprocessingPipeline complete(boolean shared)
+    {
+        final CompletePreprocessingPipeline pipeline = new CompletePreprocessingPipeline();
+        pipeline.sharedPreprocessing = shared;
+        return pipeline;
+    }
+
+    private static void assertBasicEquals(PreprocessingContext actual,
+        PreprocessingContext expected)
+    {
+        assertTrue(Arrays.deepEquals(actual.allTokens.image, expected.allTokens.image));
+        assertThat(actual.allTokens.wordIndex).isEqualTo(expected.allTokens.wordIndex);
+        assertTrue(Arrays.deepEquals(actual.allWords.image, expected.allWords.image));
+        assertThat(actual.allWords.type).isEqualTo(expected.allWords.type);
+        assertThat(actual.allWords.stemIndex).isEqualTo(expected.allWords.stemIndex);
+        assertTrue(Arrays.deepEquals(actual.allStems.image, expected.allStems.image));
+        assertTrue(Arrays.deepEquals(actual.allStems.tfByDocument,
+            expected.allStems.tfByDocument));
+    }
+}
@@ -14,6 +14,7 @@ package org.carrot2.text.preprocessing;
 
 import static org.carrot2.text.analysis.ITokenizer.*;
 
+import org.carrot2.util.attribute.AttributeUtils;
 import org.carrot2.util.tests.CarrotTestCase;
 import org.junit.Before;
 import org.junit.Test;
@@ -210,5 +211,23 @@ public class StemmerSyntheticTest extends CarrotTestCase
                              TT_TERM, TT_TERM, null);
     }
 
+    @Test
+    public void testStemCache()
+    {
+        contextBuilder.setAttribute(
+            AttributeUtils.getKey(LanguageModelStemmer.class, "stemCache"), true);
+
+        for (int i = 0; i < 2; i++)
+        {
+            PreprocessingContextAssert a = contextBuilder
+                .newDoc("abc abc", "bcd bcd bcd")
+                .buildContextAssert();
+
+            a.constainsStem("a").withTf(2 * (i + 1)).withFieldIndices(0);
+            a.constainsStem("b").withTf(3 * (i + 1)).withFieldIndices(1);
+            assertThat(a.context.allStems.image.length).isEqualTo(2);
+        }
+    }
+
     // @formatter:on
 }
@@ -15,6 +15,9 @@ package org.carrot2.text.preprocessing;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.carrotsearch.hppc.sorting.IndirectComparator;
+import com.carrotsearch.hppc.sorting.IndirectSort;
+
 /**
  * Test cases for {@link SuffixSorter}.
  */
@@ -160,6 +163,82 @@ public class SuffixSorterTest extends PreprocessingComponentTestBase
         checkAsserts(expectedSuffixOrder, expectedLcpArray);
     }
 
+    @Test
+    public void testRandomCodes()
+    {
+        for (int round = 0; round < 100; round++)
+        {
+            final int [] intCodes = new int [randomIntBetween(1, 500)];
+            final int words = randomIntBetween(1, 20);
+            int separatorCode = -1;
+            int maxWordCode = -1;
+            for (int i = 0; i < intCodes.length - 1; i++)
+            {
+                if (rarely())
+                {
+                    intCodes[i] = separatorCode--;
+                }
+                else
+                {
+                    intCodes[i] = randomIntBetween(0, words - 1);
+                    maxWordCode = Math.max(maxWordCode, intCodes[i]);
+                }
+            }
+            intCodes[intCodes.length - 1] = separatorCode;
+
+            checkAgainstComparisonSort(intCodes, maxWordCode);
+        }
+    }
+
+    @Test
+    public void testRepetitiveCodes()
+    {
+        // Near-duplicate documents: the same phrase repeated, with separators.
+        final int [] intCodes = new int [2000];
+        int separatorCode = -1;
+        for (int i = 0; i < intCodes.length - 1; i++)
+        {
+            intCodes[i] = (i % 50 == 49) ? separatorCode-- : (i % 7);
+        }
+        intCodes[intCodes.length - 1] = separatorCode;
+
+        checkAgainstComparisonSort(intCodes, 6);
+    }
+
+    private void checkAgainstComparisonSort(final int [] intCodes, int maxWordCode)
+    {
+        final int [] expectedSuffixOrder = IndirectSort.mergesort(0, intCodes.length,
+            new IndirectComparator()
+            {
+                public int compare(int a, int b)
+                {
+                    while (a != b && intCodes[a] == intCodes[b])
+                    {
+                        a++;
+                        b++;
+                    }
+                    return intCodes[b] - intCodes[a];
+                }
+            });
+
+        final int [] expectedLcpArray = new int [intCodes.length];
+        for (int i = 1; i < intCodes.length; i++)
+        {
+            int lcp = 0;
+            while (intCodes[expectedSuffixOrder[i - 1] + lcp] == intCodes[expectedSuffixOrder[i]
+                + lcp])
+            {
+                lcp++;
+            }
+            expectedLcpArray[i] = lcp;
+        }
+
+        final int [] suffixOrder = SuffixSorter.suffixArray(intCodes, maxWordCode);
+        assertThat(suffixOrder).isEqualTo(expectedSuffixOrder);
+        assertThat(SuffixSorter.calculateLcp(intCodes, suffixOrder)).isEqualTo(
+            expectedLcpArray);
+    }
+
     private void checkAsserts(int [] expectedSuffixOrder, int [] expectedLcpArray)
     {
         tokenizer.tokenize(context);
@@ -0,0 +1,142 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.carrot2.text.preprocessing.pipeline.BasicPreprocessingPipeline;
+import org.carrot2.text.util.MutableCharArray;
+import org.carrot2.util.attribute.AttributeUtils;
+import org.carrot2.util.tests.CarrotTestCase;
+import org.junit.Test;
+
+import com.carrotsearch.randomizedtesting.annotations.ThreadLeakLingering;
+import com.google.common.collect.Lists;
+
+/**
+ * Test cases for {@link TermDictionary}.
+ */
+@ThreadLeakLingering(linger = 2000)
+public class TermDictionaryTest extends CarrotTestCase
+{
+    @Test
+    public void testCanonicalImages()
+    {
+        final TermDictionary dictionary = new TermDictionary(1000);
+        final char [] image = dictionary.intern(new MutableCharArray("xabcx".toCharArray(),
+            1, 3));
+
+        assertThat(new String(image)).isEqualTo("abc");
+        assertThat(dictionary.intern(new MutableCharArray("abc"))).isSameAs(image);
+        assertThat(dictionary.getId("abc".toCharArray())).isEqualTo(
+            dictionary.getId(new MutableCharArray("abc")));
+        assertThat(dictionary.getId("abd".toCharArray())).isEqualTo(-1);
+
+        assertThat(dictionary.size()).isEqualTo(1);
+        assertThat(dictionary.getHitCount()).isEqualTo(1);
+        assertThat(dictionary.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDistinctIds()
+    {
+        final TermDictionary dictionary = new TermDictionary(1000);
+        dictionary.intern(new MutableCharArray("a"));
+        dictionary.intern(new MutableCharArray("b"));
+
+        assertThat(dictionary.getId("a".toCharArray())).isNotEqualTo(
+            dictionary.getId("b".toCharArray()));
+    }
+
+    @Test
+    public void testFrequentTermsSurviveEviction()
+    {
+        final TermDictionary dictionary = new TermDictionary(320);
+        for (int i = 0; i < 10; i++)
+        {
+            dictionary.intern(new MutableCharArray("frequent"));
+        }
+        final int id = dictionary.getId("frequent".toCharArray());
+
+        for (int i = 0; i < 5000; i++)
+        {
+            dictionary.intern(new MutableCharArray("rare" + i));
+            dictionary.intern(new MutableCharArray("frequent"));
+        }
+
+        assertThat(dictionary.getEvictionCount()).isGreaterThan(0);
+        assertThat(dictionary.size()).isLessThanOrEqualTo(320);
+        assertThat(dictionary.getId("frequent".toCharArray())).isEqualTo(id);
+    }
+
+    @Test
+    public void testConcurrentInterning() throws Exception
+    {
+        final TermDictionary dictionary = new TermDictionary(100000);
+        final List<Callable<char [][]>> tasks = Lists.newArrayList();
+        for (int t = 0; t < 4; t++)
+        {
+            tasks.add(new Callable<char [][]>()
+            {
+                public char [][] call()
+                {
+                    final char [][] images = new char [1000] [];
+                    for (int i = 0; i < images.length; i++)
+                    {
+                        images[i] = dictionary.intern(new MutableCharArray("t" + i));
+                    }
+                    return images;
+                }
+            });
+        }
+
+        final List<char [][]> results = ParallelPreprocessing.invokeAll(tasks);
+        for (char [][] images : results)
+        {
+            for (int i = 0; i < images.length; i++)
+            {
+                assertThat(images[i]).isSameAs(results.get(0)[i]);
+            }
+        }
+        assertThat(dictionary.size()).isEqualTo(1000);
+    }
+
+    @Test
+    public void testSharedDictionaryPreprocessing()
+    {
+        final PreprocessingContextBuilder builder = new PreprocessingContextBuilder()
+            .withPreprocessingPipeline(new BasicPreprocessingPipeline())
+            .newDoc("Data mining", "Mining of data, data MINING")
+            .newDoc("Text clustering", "data");
+
+        final PreprocessingContext expected = builder.buildContext();
+        builder.setAttribute(
+            AttributeUtils.getKey(BasicPreprocessingPipeline.class, "sharedTermDictionary"),
+            true);
+        final PreprocessingContext first = builder.buildContext();
+        final PreprocessingContext second = builder.buildContext();
+
+        assertThat(first.getTermDictionary()).isSameAs(TermDictionary.getShared());
+        assertThat(first.allWords.image).isEqualTo(expected.allWords.image);
+        assertThat(first.allWords.tf).isEqualTo(expected.allWords.tf);
+        assertThat(first.allWords.stemIndex).isEqualTo(expected.allWords.stemIndex);
+        assertThat(first.allTokens.wordIndex).isEqualTo(expected.allTokens.wordIndex);
+
+        // Images are shared across requests.
+        for (int i = 0; i < first.allWords.image.length; i++)
+        {
+            assertThat(second.allWords.image[i]).isSameAs(first.allWords.image[i]);
+        }
+    }
+}
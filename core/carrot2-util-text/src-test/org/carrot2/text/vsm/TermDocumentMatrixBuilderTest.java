@@ -159,7 +159,8 @@ public class TermDocumentMatrixBuilderTest extends TermDocumentMatrixBuilderTest
             }
         };
 
-        matrixBuilder.maximumMatrixSize = 3 * 2;
+        // Each stem appears in one document, so two stems fit the limit
+        matrixBuilder.maximumMatrixSize = 2;
         check(expectedTdMatrixElements, expectedTdMatrixStemIndices);
     }
 
@@ -12,30 +12,27 @@
 
 package org.carrot2.text.linguistic;
 
-import java.util.ArrayList;
-import java.util.regex.Pattern;
-
 import org.carrot2.text.util.MutableCharArray;
 
 import com.carrotsearch.hppc.ObjectOpenHashSet;
 
 /**
- * {@link ILexicalData} implemented on top of a hash set (stopwords) and a regular
- * expression pattern (stoplabels).
+ * {@link ILexicalData} implemented on top of a hash set (stopwords) and an automaton
+ * compiled from regular expressions (stoplabels), see {@link StoplabelMatcher}.
  */
 final class DefaultLexicalData implements ILexicalData
 {
     private final ObjectOpenHashSet<MutableCharArray> stopwords;
-    private final Pattern stoplabelPattern;
+    private final StoplabelMatcher stoplabelMatcher;
 
     /*
      * 
      */
     public DefaultLexicalData(ObjectOpenHashSet<MutableCharArray> stopwords, 
-                              ArrayList<Pattern> stoplabels)
+                              StoplabelMatcher stoplabelMatcher)
     {
         this.stopwords = stopwords;
-        this.stoplabelPattern = union(stoplabels);
+        this.stoplabelMatcher = stoplabelMatcher;
     }
 
     /*
@@ -53,34 +50,9 @@ final class DefaultLexicalData implements ILexicalData
     @Override
     public boolean isStopLabel(CharSequence label)
     {
-        if (this.stoplabelPattern == null)
+        if (this.stoplabelMatcher == null)
             return false;
 
-        return stoplabelPattern.matcher(label).matches();
-    }
-
-    /**
-     * Combines a number of patterns into a single pattern with a union
-     * of all of them. With automata-based pattern engines, this should
-     * be faster and memory-friendly.
-     */
-    private static Pattern union(ArrayList<Pattern> patterns)
-    {
-        final StringBuilder union = new StringBuilder();
-        if (patterns.size() > 0)
-        {
-            union.append("(");
-            for (int i = 0; i < patterns.size(); i++)
-            {
-                if (i > 0) union.append(")|(");
-                union.append(patterns.get(i).toString());
-            }
-            union.append(")");
-            return Pattern.compile(union.toString());
-        }
-        else
-        {
-            return null;
-        }
+        return stoplabelMatcher.matches(label);
     }
 }
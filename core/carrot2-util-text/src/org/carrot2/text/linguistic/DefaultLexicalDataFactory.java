@@ -14,15 +14,18 @@ package org.carrot2.text.linguistic;
 
 import static org.carrot2.util.resource.ResourceLookup.Location.CONTEXT_CLASS_LOADER;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -59,6 +62,10 @@ import com.google.common.collect.Sets;
  * between <b>all</b> threads using this class. Additional attributes control resource reloading
  * and merging: {@link #resourceLookup}, {@link #reloadResources}, 
  * {@link #mergeResources}.
+ * <p>
+ * Resources of each language are loaded when first requested. Stop labels precompiled
+ * with {@link LexicalDataCompiler} are used if they are found next to the stop label
+ * expressions and were compiled from the same expressions.
  */
 @Bindable(inherit = LexicalDataLoader.class)
 public class DefaultLexicalDataFactory implements ILexicalDataFactory
@@ -66,11 +73,22 @@ public class DefaultLexicalDataFactory implements ILexicalDataFactory
     /** */
     final static Logger logger = LoggerFactory.getLogger(DefaultLexicalDataFactory.class);
 
-    private final static Function<ResourceLookup, HashMap<LanguageCode, ILexicalData>> resourceLoader =
-        new Function<ResourceLookup, HashMap<LanguageCode, ILexicalData>>()
+    /**
+     * Name suffix of precompiled stoplabel resources, see {@link LexicalDataCompiler}.
+     */
+    final static String COMPILED_SUFFIX = ".bin";
+
+    /**
+     * Cache key of merged lexical resources, also used in the names of precompiled merged
+     * resources.
+     */
+    final static String MERGED = "merged";
+
+    private final static Function<ResourceLookup, LexicalResources> resourceLoader =
+        new Function<ResourceLookup, LexicalResources>()
     {
-        public java.util.HashMap<LanguageCode, ILexicalData> apply(ResourceLookup resourceLookup) {
-            return reloadResources(resourceLookup);
+        public LexicalResources apply(ResourceLookup resourceLookup) {
+            return new LexicalResources(resourceLookup);
         }
 
         public boolean equals(Object other) {
@@ -87,8 +105,43 @@ public class DefaultLexicalDataFactory implements ILexicalDataFactory
      * Static shared cache of lexical resources, keyed by a {@link ResourceLookup} 
      * used to search for resources. 
      */
-    private final static ResourceCache<HashMap<LanguageCode, ILexicalData>> cache 
-        = new ResourceCache<HashMap<LanguageCode, ILexicalData>>(resourceLoader);
+    private final static ResourceCache<LexicalResources> cache 
+        = new ResourceCache<LexicalResources>(resourceLoader);
+
+    /**
+     * Lexical resources available from a single {@link ResourceLookup}. Resources of
+     * each language (and the merged resources) are loaded on first use.
+     */
+    private final static class LexicalResources
+    {
+        private final ResourceLookup resourceLookup;
+        private final ConcurrentMap<String, ILexicalData> loaded = Maps.newConcurrentMap();
+
+        LexicalResources(ResourceLookup resourceLookup)
+        {
+            this.resourceLookup = resourceLookup;
+        }
+
+        ILexicalData get(LanguageCode languageCode)
+        {
+            final String key = (languageCode == null ? MERGED : languageCode.getIsoCode());
+            ILexicalData lexicalData = loaded.get(key);
+            if (lexicalData == null)
+            {
+                synchronized (this)
+                {
+                    lexicalData = loaded.get(key);
+                    if (lexicalData == null)
+                    {
+                        logger.debug("Loading lexical resources: {}", key);
+                        lexicalData = load(resourceLookup, languageCode);
+                        loaded.put(key, lexicalData);
+                    }
+                }
+            }
+            return lexicalData;
+        }
+    }
 
     @Processing
     @Input
@@ -135,7 +188,7 @@ public class DefaultLexicalDataFactory implements ILexicalDataFactory
             languageCode = null;
         }
 
-        // Prepare cache key.
+        // Resources of the requested language are loaded outside of the cache's lock.
         ILexicalData lexicalData = cache.get(resourceLookup, reloadResources).get(languageCode);
 
         // Reset reload resources trigger.
@@ -145,32 +198,106 @@ public class DefaultLexicalDataFactory implements ILexicalDataFactory
     }
 
     /**
-     * Reload all lexical resources associated with the given key.
+     * Loads lexical resources of the given language or merged resources of all languages
+     * if <code>languageCode</code> is <code>null</code>.
      */
-    private static HashMap<LanguageCode, ILexicalData> reloadResources(ResourceLookup resourceLookup)
+    private static ILexicalData load(ResourceLookup resourceLookup, LanguageCode languageCode)
     {
-        // Load lexical resources.
-        ObjectOpenHashSet<MutableCharArray> mergedStopwords = ObjectOpenHashSet.newInstance();
-        ArrayList<Pattern> mergedStoplabels = Lists.newArrayList();
+        final ObjectOpenHashSet<MutableCharArray> stopwords = ObjectOpenHashSet.newInstance();
+        for (LanguageCode language : languages(languageCode))
+        {
+            stopwords.addAll(toLower(load(resourceLookup, "stopwords." + language.getIsoCode())));
+        }
 
-        HashMap<LanguageCode, ILexicalData> resourceMap = Maps.newHashMap();
-        for (LanguageCode languageCode : LanguageCode.values())
+        final ArrayList<Pattern> stoplabels = loadStoplabels(resourceLookup, languageCode);
+        final StoplabelMatcher stoplabelMatcher;
+        if (stoplabels.isEmpty())
+        {
+            stoplabelMatcher = null;
+        }
+        else
         {
-            final String isoCode = languageCode.getIsoCode();
+            final StoplabelMatcher compiled = loadCompiled(resourceLookup,
+                compiledStoplabelsName(languageCode), stoplabels);
+            stoplabelMatcher = (compiled != null ? compiled : new StoplabelMatcher(stoplabels));
+        }
 
-            ObjectOpenHashSet<MutableCharArray> stopwords = 
-                toLower(load(resourceLookup, "stopwords." + isoCode));
-            ArrayList<Pattern> stoplabels = 
-                compile(load(resourceLookup, "stoplabels." + isoCode));
+        return new DefaultLexicalData(stopwords, stoplabelMatcher);
+    }
 
-            mergedStopwords.addAll(stopwords);
-            mergedStoplabels.addAll(stoplabels);
-            
-            resourceMap.put(languageCode, new DefaultLexicalData(stopwords, stoplabels));
+    /**
+     * Loads stop label expressions of the given language or of all languages if
+     * <code>languageCode</code> is <code>null</code>.
+     */
+    static ArrayList<Pattern> loadStoplabels(ResourceLookup resourceLookup,
+        LanguageCode languageCode)
+    {
+        final ArrayList<Pattern> stoplabels = Lists.newArrayList();
+        for (LanguageCode language : languages(languageCode))
+        {
+            stoplabels.addAll(compile(load(resourceLookup, "stoplabels." + language.getIsoCode())));
         }
-        resourceMap.put(null, new DefaultLexicalData(mergedStopwords, mergedStoplabels));
+        return stoplabels;
+    }
+
+    /**
+     * Name of the precompiled stop labels resource of the given language or of all
+     * languages if <code>languageCode</code> is <code>null</code>.
+     */
+    static String compiledStoplabelsName(LanguageCode languageCode)
+    {
+        return "stoplabels." + (languageCode == null ? MERGED : languageCode.getIsoCode())
+            + COMPILED_SUFFIX;
+    }
+
+    private static LanguageCode [] languages(LanguageCode languageCode)
+    {
+        return languageCode == null ? LanguageCode.values() : new LanguageCode []
+        {
+            languageCode
+        };
+    }
 
-        return resourceMap;
+    /**
+     * Attempts to read precompiled stop labels. Returns <code>null</code> if there is no
+     * such resource, it cannot be read or was compiled from different expressions.
+     */
+    private static StoplabelMatcher loadCompiled(ResourceLookup resourceLookup,
+        String resourceName, List<Pattern> stoplabels)
+    {
+        final IResource resource = resourceLookup.getFirst(resourceName);
+        if (resource == null)
+        {
+            return null;
+        }
+
+        try
+        {
+            final InputStream is = resource.open();
+            if (is == null)
+                throw new IOException("Resource returned null stream: " + resource);
+
+            try
+            {
+                final StoplabelMatcher matcher = StoplabelMatcher.read(
+                    new DataInputStream(new BufferedInputStream(is)), stoplabels);
+                if (matcher == null)
+                {
+                    logger.info("Ignoring precompiled stop labels not matching the expressions: "
+                        + resource);
+                }
+                return matcher;
+            }
+            finally
+            {
+                is.close();
+            }
+        }
+        catch (IOException e)
+        {
+            logger.warn("Could not read precompiled stop labels from: " + resource, e);
+            return null;
+        }
     }
 
     /**
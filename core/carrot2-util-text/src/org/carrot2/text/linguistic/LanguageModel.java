@@ -27,11 +27,15 @@ public final class LanguageModel
     private final IFactory<IStemmer> stemmerFactory;
     private final IFactory<ITokenizer> tokenizerFactory;
     private final IFactory<ILexicalData> lexicalDataFactory;
+    private final IFactory<IStemmer> newStemmerFactory;
+    private final IFactory<ITokenizer> newTokenizerFactory;
 
     LanguageModel(LanguageCode languageCode, IFactory<IStemmer> stemmerFactory,
         IFactory<ITokenizer> tokenizerFactory, IFactory<ILexicalData> lexicalDataFactory)
     {
         this.languageCode = languageCode;
+        this.newStemmerFactory = stemmerFactory;
+        this.newTokenizerFactory = tokenizerFactory;
         this.stemmerFactory = new CachedInstanceFactoryDecorator<IStemmer>(stemmerFactory);
         this.tokenizerFactory = new CachedInstanceFactoryDecorator<ITokenizer>(
             tokenizerFactory);
@@ -92,4 +96,24 @@ public final class LanguageModel
     {
         return tokenizerFactory.createInstance();
     }
+
+    /**
+     * Returns a stemmer from the underlying factory rather than the instance cached by
+     * {@link #getStemmer()}. Stemmers are not thread-safe, use this method to obtain
+     * one for each thread stemming words in parallel.
+     */
+    public IStemmer createStemmer()
+    {
+        return newStemmerFactory.createInstance();
+    }
+
+    /**
+     * Returns a tokenizer from the underlying factory rather than the instance cached by
+     * {@link #getTokenizer()}. Tokenizers are not thread-safe, use this method to obtain
+     * one for each thread tokenizing documents in parallel.
+     */
+    public ITokenizer createTokenizer()
+    {
+        return newTokenizerFactory.createInstance();
+    }
 }
@@ -0,0 +1,112 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.linguistic;
+
+import static org.carrot2.util.resource.ResourceLookup.Location.CONTEXT_CLASS_LOADER;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.carrot2.core.LanguageCode;
+import org.carrot2.util.resource.ResourceLookup;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Precompiles stop label expressions into binary resources read by
+ * {@link DefaultLexicalDataFactory}, which saves compiling the expressions on first use
+ * of each language. One resource is written for each language and one for the merged
+ * stop labels of all languages. Precompiled resources must be placed in the same
+ * location as the stop label expressions; resources compiled from different expressions
+ * are ignored.
+ */
+public final class LexicalDataCompiler
+{
+    private LexicalDataCompiler()
+    {
+        // No instances.
+    }
+
+    /**
+     * Compiles stop labels found in the provided {@link ResourceLookup} and writes them to
+     * <code>outputDir</code>. Returns the files written.
+     */
+    public static List<File> compile(ResourceLookup resourceLookup, File outputDir)
+        throws IOException
+    {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs())
+        {
+            throw new IOException("Could not create output folder: "
+                + outputDir.getAbsolutePath());
+        }
+
+        final List<LanguageCode> languages = Lists.newArrayList(LanguageCode.values());
+        languages.add(null);
+
+        final List<File> files = Lists.newArrayList();
+        for (LanguageCode language : languages)
+        {
+            final ArrayList<Pattern> stoplabels = DefaultLexicalDataFactory.loadStoplabels(
+                resourceLookup, language);
+            if (stoplabels.isEmpty())
+            {
+                continue;
+            }
+
+            final File file = new File(outputDir,
+                DefaultLexicalDataFactory.compiledStoplabelsName(language));
+            write(new StoplabelMatcher(stoplabels), file);
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static void write(StoplabelMatcher matcher, File file)
+        throws IOException
+    {
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(file)));
+        try
+        {
+            matcher.write(output);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * Compiles stop labels available from the context class loader. The only argument is
+     * the output folder.
+     */
+    public static void main(String [] args) throws IOException
+    {
+        if (args.length != 1)
+        {
+            System.err.println("Usage: LexicalDataCompiler <output-dir>");
+            System.exit(1);
+        }
+
+        for (File file : compile(new ResourceLookup(CONTEXT_CLASS_LOADER), new File(args[0])))
+        {
+            System.out.println("Compiled: " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,245 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.linguistic;
+
+import java.util.concurrent.ConcurrentMap;
+
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.util.MutableCharArray;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+
+/**
+ * A bounded, thread-safe cache of stems shared across requests. There is one cache for
+ * each language and stemmer class, see {@link #get(LanguageCode, Class)}. Words for
+ * which the stemmer returns <code>null</code> (no stem) are cached too.
+ * <p>
+ * Use {@link #wrap(IStemmer)} to obtain a stemmer that consults the cache before
+ * delegating to the actual stemmer.
+ */
+public final class StemCache
+{
+    /** Maximum number of words cached for each language and stemmer class. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 250000;
+
+    /** Marks cached words for which the stemmer returned <code>null</code>. */
+    private static final char [] NO_STEM = new char [0];
+
+    /** All caches created so far. */
+    private static final ConcurrentMap<Key, StemCache> caches = Maps.newConcurrentMap();
+
+    private final LanguageCode language;
+    private final Class<? extends IStemmer> stemmerClass;
+
+    /** Lower-case words to their stems or {@link #NO_STEM}. */
+    private final Cache<MutableCharArray, char []> stems;
+
+    /**
+     * Identifies a cache.
+     */
+    private static final class Key
+    {
+        final LanguageCode language;
+        final Class<? extends IStemmer> stemmerClass;
+
+        Key(LanguageCode language, Class<? extends IStemmer> stemmerClass)
+        {
+            this.language = language;
+            this.stemmerClass = stemmerClass;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof Key)
+            {
+                final Key other = (Key) obj;
+                return language == other.language && stemmerClass == other.stemmerClass;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(language, stemmerClass);
+        }
+    }
+
+    /**
+     * A stemmer consulting the cache first.
+     */
+    private static final class CachingStemmer implements IStemmer
+    {
+        private final IStemmer delegate;
+        private final Cache<MutableCharArray, char []> stems;
+        private final MutableCharArray probe = new MutableCharArray("");
+
+        CachingStemmer(IStemmer delegate, Cache<MutableCharArray, char []> stems)
+        {
+            this.delegate = delegate;
+            this.stems = stems;
+        }
+
+        @Override
+        public CharSequence stem(CharSequence word)
+        {
+            final MutableCharArray key;
+            if (word instanceof MutableCharArray)
+            {
+                key = (MutableCharArray) word;
+            }
+            else
+            {
+                probe.reset(word);
+                key = probe;
+            }
+
+            char [] stem = stems.getIfPresent(key);
+            if (stem == null)
+            {
+                final CharSequence stemmed = delegate.stem(word);
+                stem = (stemmed == null ? NO_STEM : toCharArray(stemmed));
+                stems.put(new MutableCharArray(toCharArray(key)), stem);
+            }
+
+            return stem == NO_STEM ? null : new MutableCharArray(stem);
+        }
+
+        private static char [] toCharArray(CharSequence chs)
+        {
+            final char [] chars = new char [chs.length()];
+            for (int i = 0; i < chars.length; i++)
+            {
+                chars[i] = chs.charAt(i);
+            }
+            return chars;
+        }
+    }
+
+    private StemCache(LanguageCode language, Class<? extends IStemmer> stemmerClass,
+        int maximumSize)
+    {
+        this.language = language;
+        this.stemmerClass = stemmerClass;
+        this.stems = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats()
+            .build();
+    }
+
+    /**
+     * Returns the cache for the provided language and stemmer class, creating it if
+     * necessary.
+     */
+    public static StemCache get(LanguageCode language,
+        Class<? extends IStemmer> stemmerClass)
+    {
+        final Key key = new Key(language, stemmerClass);
+        StemCache cache = caches.get(key);
+        if (cache == null)
+        {
+            final StemCache newCache = new StemCache(language, stemmerClass,
+                DEFAULT_MAXIMUM_SIZE);
+            cache = caches.putIfAbsent(key, newCache);
+            if (cache == null)
+            {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns a stemmer that looks up stems in this cache and delegates to
+     * <code>stemmer</code> on cache misses. The returned stemmer is not thread-safe if
+     * <code>stemmer</code> is not thread-safe, but any number of stemmers can share one
+     * cache. {@link IdentityStemmer}s are returned as they are.
+     */
+    public IStemmer wrap(IStemmer stemmer)
+    {
+        if (stemmer.getClass() != stemmerClass)
+        {
+            throw new IllegalArgumentException("This cache is for "
+                + stemmerClass.getName() + " stemmers, not: "
+                + stemmer.getClass().getName());
+        }
+
+        if (stemmer instanceof IdentityStemmer)
+        {
+            return stemmer;
+        }
+        return new CachingStemmer(stemmer, stems);
+    }
+
+    public LanguageCode getLanguage()
+    {
+        return language;
+    }
+
+    public Class<? extends IStemmer> getStemmerClass()
+    {
+        return stemmerClass;
+    }
+
+    /**
+     * Returns the number of words currently in the cache.
+     */
+    public long size()
+    {
+        return stems.size();
+    }
+
+    /**
+     * Returns the number of stem lookups served from the cache.
+     */
+    public long getHitCount()
+    {
+        return stems.stats().hitCount();
+    }
+
+    /**
+     * Returns the number of stem lookups that required stemming.
+     */
+    public long getMissCount()
+    {
+        return stems.stats().missCount();
+    }
+
+    /**
+     * Returns the ratio of stem lookups served from the cache, <code>1.0</code> if there
+     * were no lookups.
+     */
+    public double getHitRate()
+    {
+        return stems.stats().hitRate();
+    }
+
+    /**
+     * Returns all statistics of the underlying cache.
+     */
+    public CacheStats getStats()
+    {
+        return stems.stats();
+    }
+
+    /**
+     * Removes all words from this cache.
+     */
+    public void clear()
+    {
+        stems.invalidateAll();
+    }
+}
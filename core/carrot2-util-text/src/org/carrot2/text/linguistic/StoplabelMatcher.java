@@ -0,0 +1,1422 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.linguistic;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+
+/**
+ * Matches labels against a set of stoplabel regular expressions in time linear in the
+ * length of the label, regardless of the number of expressions.
+ * <p>
+ * Expressions that match a finite set of plain words (like
+ * <code>(?i)(day|days|page)</code>) are expanded into hash sets. The remaining
+ * expressions are compiled into a single deterministic automaton. Expressions using
+ * constructs the automaton does not support (anchors, back references, look-arounds,
+ * possessive quantifiers and the like) are matched with {@link Pattern}s, as are labels
+ * containing supplementary characters. A label matches if any of the expressions matches
+ * the whole label, with the semantics of {@link java.util.regex.Matcher#matches()}.
+ */
+final class StoplabelMatcher
+{
+    /** The maximum number of deterministic automaton states. */
+    private static final int MAX_DFA_STATES = 20000;
+
+    /** The maximum number of words a single expression may be expanded to. */
+    private static final int MAX_LITERALS = 10000;
+
+    /** The maximum bound of counted repetitions (<code>{n,m}</code>). */
+    private static final int MAX_REPETITIONS = 100;
+
+    /** Marks the beginning of a serialized matcher. */
+    private static final int MAGIC = 0x43324c58;
+
+    /** Version of the serialized format. */
+    private static final int VERSION = 1;
+
+    /** Words matched exactly. */
+    private final Set<String> literals = new HashSet<String>();
+
+    /** Words matched ignoring the case of ASCII letters, lower-cased. */
+    private final Set<String> foldedLiterals = new HashSet<String>();
+
+    /** The automaton, <code>null</code> if there are no expressions to match with it. */
+    private final Dfa dfa;
+
+    /** Expressions not supported by the automaton. */
+    private final List<String> fallbackExpressions = Lists.newArrayList();
+
+    /** Union of {@link #fallbackExpressions}, <code>null</code> if none. */
+    private final Pattern fallback;
+
+    /** All expressions. */
+    private final List<Pattern> patterns;
+
+    /**
+     * Union of all expressions, for labels with supplementary characters. Compiled on
+     * first use.
+     */
+    private volatile Pattern all;
+
+    /**
+     * Compiles the provided stoplabel expressions.
+     */
+    StoplabelMatcher(List<Pattern> patterns)
+    {
+        final List<Node> automatonNodes = Lists.newArrayList();
+        final List<Pattern> automatonPatterns = Lists.newArrayList();
+        final List<Pattern> unsupported = Lists.newArrayList();
+
+        for (Pattern pattern : patterns)
+        {
+            final Node node;
+            try
+            {
+                node = new Parser(pattern.pattern()).parse();
+            }
+            catch (UnsupportedOperationException e)
+            {
+                unsupported.add(pattern);
+                continue;
+            }
+
+            if (!addLiterals(node))
+            {
+                automatonNodes.add(node);
+                automatonPatterns.add(pattern);
+            }
+        }
+
+        Dfa dfa = null;
+        if (!automatonNodes.isEmpty())
+        {
+            try
+            {
+                dfa = new Dfa(automatonNodes);
+            }
+            catch (UnsupportedOperationException e)
+            {
+                // Too many states, match these expressions with regular expressions.
+                unsupported.addAll(automatonPatterns);
+            }
+        }
+
+        for (Pattern pattern : unsupported)
+        {
+            fallbackExpressions.add(pattern.pattern());
+        }
+        this.dfa = dfa;
+        this.fallback = union(unsupported);
+        this.patterns = patterns;
+    }
+
+    /**
+     * Reads a matcher serialized with {@link #write(DataOutput)}.
+     */
+    private StoplabelMatcher(DataInput input, List<Pattern> patterns) throws IOException
+    {
+        readStrings(input, literals);
+        readStrings(input, foldedLiterals);
+        readStrings(input, fallbackExpressions);
+        this.dfa = input.readBoolean() ? new Dfa(input) : null;
+
+        final List<Pattern> unsupported = Lists.newArrayList();
+        for (String expression : fallbackExpressions)
+        {
+            unsupported.add(Pattern.compile(expression));
+        }
+        this.fallback = union(unsupported);
+        this.patterns = patterns;
+    }
+
+    /**
+     * Serializes the compiled matcher, along with a checksum of the expressions it was
+     * compiled from, see {@link #checksum(List)}.
+     */
+    void write(DataOutput output) throws IOException
+    {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(checksum(patterns));
+        writeStrings(output, literals);
+        writeStrings(output, foldedLiterals);
+        writeStrings(output, fallbackExpressions);
+        output.writeBoolean(dfa != null);
+        if (dfa != null)
+        {
+            dfa.write(output);
+        }
+    }
+
+    /**
+     * Reads a serialized matcher compiled from the provided expressions. Returns
+     * <code>null</code> if the serialized matcher was compiled from different expressions
+     * or with an incompatible version of this class.
+     */
+    static StoplabelMatcher read(DataInput input, List<Pattern> patterns)
+        throws IOException
+    {
+        if (input.readInt() != MAGIC)
+        {
+            throw new IOException("Not a compiled stoplabel matcher.");
+        }
+        if (input.readInt() != VERSION || input.readLong() != checksum(patterns))
+        {
+            return null;
+        }
+        return new StoplabelMatcher(input, patterns);
+    }
+
+    /**
+     * Returns a checksum of the expressions, independent of their order.
+     */
+    static long checksum(List<Pattern> patterns)
+    {
+        final List<String> expressions = Lists.newArrayList();
+        for (Pattern pattern : patterns)
+        {
+            expressions.add(pattern.pattern());
+        }
+        Collections.sort(expressions);
+
+        final CRC32 crc = new CRC32();
+        for (String expression : expressions)
+        {
+            crc.update(expression.getBytes(Charsets.UTF_8));
+            crc.update('\n');
+        }
+        return ((long) expressions.size() << 32) ^ crc.getValue();
+    }
+
+    private static void writeStrings(DataOutput output, Collection<String> strings)
+        throws IOException
+    {
+        output.writeInt(strings.size());
+        for (String string : strings)
+        {
+            output.writeInt(string.length());
+            output.writeChars(string);
+        }
+    }
+
+    private static void readStrings(DataInput input, Collection<String> strings)
+        throws IOException
+    {
+        final int count = input.readInt();
+        for (int i = 0; i < count; i++)
+        {
+            final char [] chars = new char [input.readInt()];
+            for (int j = 0; j < chars.length; j++)
+            {
+                chars[j] = input.readChar();
+            }
+            strings.add(new String(chars));
+        }
+    }
+
+    private static void writeInts(DataOutput output, int [] values) throws IOException
+    {
+        output.writeInt(values.length);
+        for (int value : values)
+        {
+            output.writeInt(value);
+        }
+    }
+
+    private static int [] readInts(DataInput input) throws IOException
+    {
+        final int [] values = new int [input.readInt()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = input.readInt();
+        }
+        return values;
+    }
+
+    /**
+     * Returns <code>true</code> if the label matches any of the expressions.
+     */
+    boolean matches(CharSequence label)
+    {
+        for (int i = 0; i < label.length(); i++)
+        {
+            if (isSurrogate(label.charAt(i)))
+            {
+                return matchesAll(label);
+            }
+        }
+
+        if (!literals.isEmpty() || !foldedLiterals.isEmpty())
+        {
+            final String string = label.toString();
+            if (literals.contains(string) || foldedLiterals.contains(toLowerAscii(string)))
+            {
+                return true;
+            }
+        }
+
+        return (dfa != null && dfa.matches(label))
+            || (fallback != null && fallback.matcher(label).matches());
+    }
+
+    private boolean matchesAll(CharSequence label)
+    {
+        Pattern all = this.all;
+        if (all == null)
+        {
+            this.all = all = union(patterns);
+        }
+        return all.matcher(label).matches();
+    }
+
+    /**
+     * Combines a number of patterns into a single pattern with a union of all of them.
+     */
+    static Pattern union(List<Pattern> patterns)
+    {
+        final StringBuilder union = new StringBuilder();
+        if (patterns.size() > 0)
+        {
+            union.append("(");
+            for (int i = 0; i < patterns.size(); i++)
+            {
+                if (i > 0) union.append(")|(");
+                union.append(patterns.get(i).toString());
+            }
+            union.append(")");
+            return Pattern.compile(union.toString());
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Adds all words matched by the expression to literal sets, if the expression
+     * matches a (small) finite set of words with uniform case sensitivity.
+     */
+    private boolean addLiterals(Node node)
+    {
+        final List<String> words = expand(node);
+        if (words == null)
+        {
+            return false;
+        }
+
+        // All words must be either case-sensitive or insensitive.
+        boolean folded = false;
+        boolean caseSensitive = false;
+        for (String word : words)
+        {
+            folded |= word.startsWith("i");
+            caseSensitive |= word.startsWith("s");
+        }
+        if (folded && caseSensitive)
+        {
+            return false;
+        }
+
+        for (String word : words)
+        {
+            (folded ? foldedLiterals : literals).add(word.substring(1));
+        }
+        return true;
+    }
+
+    /**
+     * Expands a node into the list of words it matches. Each word is prefixed with
+     * <code>i</code> if it contains case-insensitive ASCII letters, <code>s</code> if it
+     * contains case-sensitive ASCII letters and <code>-</code> otherwise. Returns
+     * <code>null</code> if the node matches a large or infinite set of words.
+     */
+    private static List<String> expand(Node node)
+    {
+        switch (node.kind)
+        {
+            case Node.EMPTY:
+                return Lists.newArrayList("-");
+
+            case Node.CHARS:
+                final int [] r = node.ranges;
+                if (r.length == 2 && r[0] == r[1])
+                {
+                    final char c = (char) r[0];
+                    return Lists.newArrayList((isAsciiLetter(c) ? "s" : "-") + c);
+                }
+                if (r.length == 4 && r[0] == r[1] && r[2] == r[3] && r[0] >= 'A'
+                    && r[0] <= 'Z' && r[2] == r[0] + 32)
+                {
+                    return Lists.newArrayList("i" + (char) r[2]);
+                }
+                return null;
+
+            case Node.ALTERNATION:
+            {
+                final List<String> result = Lists.newArrayList();
+                for (Node child : node.children)
+                {
+                    final List<String> words = expand(child);
+                    if (words == null || result.size() + words.size() > MAX_LITERALS)
+                    {
+                        return null;
+                    }
+                    result.addAll(words);
+                }
+                return result;
+            }
+
+            case Node.CONCATENATION:
+            {
+                List<String> result = Lists.newArrayList("-");
+                for (Node child : node.children)
+                {
+                    result = concatenate(result, expand(child));
+                    if (result == null)
+                    {
+                        return null;
+                    }
+                }
+                return result;
+            }
+
+            case Node.REPETITION:
+            {
+                if (node.max < 0)
+                {
+                    return null;
+                }
+
+                final List<String> words = expand(node.children.get(0));
+                List<String> result = Lists.newArrayList("-");
+                List<String> all = Lists.newArrayList();
+                for (int i = 0; i <= node.max && result != null; i++)
+                {
+                    if (i >= node.min)
+                    {
+                        all.addAll(result);
+                    }
+                    if (i < node.max)
+                    {
+                        result = concatenate(result, words);
+                    }
+                }
+                return result == null || all.size() > MAX_LITERALS ? null : all;
+            }
+
+            default:
+                throw new RuntimeException("Unknown node: " + node.kind);
+        }
+    }
+
+    private static List<String> concatenate(List<String> prefixes, List<String> suffixes)
+    {
+        if (suffixes == null || (long) prefixes.size() * suffixes.size() > MAX_LITERALS)
+        {
+            return null;
+        }
+
+        final List<String> result = new ArrayList<String>(prefixes.size() * suffixes.size());
+        for (String prefix : prefixes)
+        {
+            for (String suffix : suffixes)
+            {
+                final char p = prefix.charAt(0);
+                final char s = suffix.charAt(0);
+                if ((p == 'i' && s == 's') || (p == 's' && s == 'i'))
+                {
+                    // Mixed case sensitivity, not a plain word.
+                    return null;
+                }
+                result.add((p == '-' ? s : p) + prefix.substring(1) + suffix.substring(1));
+            }
+        }
+        return result;
+    }
+
+    private static boolean isSurrogate(char c)
+    {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private static boolean isAsciiLetter(char c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static String toLowerAscii(String s)
+    {
+        for (int i = 0; i < s.length(); i++)
+        {
+            final char c = s.charAt(i);
+            if (c >= 'A' && c <= 'Z')
+            {
+                final char [] chars = s.toCharArray();
+                for (int j = i; j < chars.length; j++)
+                {
+                    if (chars[j] >= 'A' && chars[j] <= 'Z')
+                    {
+                        chars[j] += 32;
+                    }
+                }
+                return new String(chars);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * A node of a parsed regular expression.
+     */
+    static final class Node
+    {
+        static final int EMPTY = 0;
+        static final int CHARS = 1;
+        static final int CONCATENATION = 2;
+        static final int ALTERNATION = 3;
+        static final int REPETITION = 4;
+
+        final int kind;
+
+        /** Sorted, disjoint, inclusive ranges of characters for {@link #CHARS}. */
+        int [] ranges;
+
+        List<Node> children;
+
+        /** Repetition bounds, {@link #max} is negative for unbounded repetitions. */
+        int min, max;
+
+        Node(int kind)
+        {
+            this.kind = kind;
+        }
+
+        static Node chars(int [] ranges)
+        {
+            final Node node = new Node(CHARS);
+            node.ranges = ranges;
+            return node;
+        }
+
+        static Node list(int kind, List<Node> children)
+        {
+            if (children.size() == 1)
+            {
+                return children.get(0);
+            }
+            final Node node = new Node(kind);
+            node.children = children;
+            return node;
+        }
+    }
+
+    /**
+     * Parses the subset of {@link Pattern} syntax supported by the automaton. Throws
+     * {@link UnsupportedOperationException} on other constructs.
+     */
+    static final class Parser
+    {
+        private static final int [] ANY = complement(new int []
+        {
+            '\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029
+        });
+        private static final int [] DIGITS = new int []
+        {
+            '0', '9'
+        };
+        private static final int [] SPACES = new int []
+        {
+            '\t', '\r', ' ', ' '
+        };
+        private static final int [] WORD = new int []
+        {
+            '0', '9', 'A', 'Z', '_', '_', 'a', 'z'
+        };
+
+        private final String pattern;
+        private int pos;
+        private boolean caseInsensitive;
+
+        Parser(String pattern)
+        {
+            this.pattern = pattern;
+        }
+
+        Node parse()
+        {
+            final Node node = parseAlternation();
+            if (pos != pattern.length())
+            {
+                throw unsupported();
+            }
+            return node;
+        }
+
+        private Node parseAlternation()
+        {
+            final List<Node> alternatives = Lists.newArrayList();
+            alternatives.add(parseConcatenation());
+            while (more() && peek() == '|')
+            {
+                pos++;
+                alternatives.add(parseConcatenation());
+            }
+            return Node.list(Node.ALTERNATION, alternatives);
+        }
+
+        private Node parseConcatenation()
+        {
+            final List<Node> nodes = Lists.newArrayList();
+            while (more() && peek() != '|' && peek() != ')')
+            {
+                nodes.add(parseRepetition());
+            }
+            if (nodes.isEmpty())
+            {
+                return new Node(Node.EMPTY);
+            }
+            return Node.list(Node.CONCATENATION, nodes);
+        }
+
+        private Node parseRepetition()
+        {
+            Node node = parseAtom();
+            while (more())
+            {
+                final char c = peek();
+                int min, max;
+                if (c == '?')
+                {
+                    min = 0;
+                    max = 1;
+                }
+                else if (c == '*')
+                {
+                    min = 0;
+                    max = -1;
+                }
+                else if (c == '+')
+                {
+                    min = 1;
+                    max = -1;
+                }
+                else if (c == '{')
+                {
+                    pos++;
+                    min = parseNumber();
+                    max = min;
+                    if (more() && peek() == ',')
+                    {
+                        pos++;
+                        max = (more() && peek() == '}') ? -1 : parseNumber();
+                    }
+                    if (!more() || peek() != '}' || min > MAX_REPETITIONS
+                        || max > MAX_REPETITIONS || (max >= 0 && max < min))
+                    {
+                        throw unsupported();
+                    }
+                }
+                else
+                {
+                    break;
+                }
+                pos++;
+
+                // Reluctant quantifiers match the same strings as a whole.
+                // Possessive ones may not.
+                if (more() && peek() == '?')
+                {
+                    pos++;
+                }
+                else if (more() && peek() == '+')
+                {
+                    throw unsupported();
+                }
+
+                // Stacked quantifiers are not handled consistently by Pattern.
+                if (more() && "?*+{".indexOf(peek()) >= 0)
+                {
+                    throw unsupported();
+                }
+
+                final Node repetition = new Node(Node.REPETITION);
+                repetition.children = Lists.newArrayList(node);
+                repetition.min = min;
+                repetition.max = max;
+                node = repetition;
+            }
+            return node;
+        }
+
+        private int parseNumber()
+        {
+            final int start = pos;
+            while (more() && peek() >= '0' && peek() <= '9' && pos - start < 4)
+            {
+                pos++;
+            }
+            if (start == pos)
+            {
+                throw unsupported();
+            }
+            return Integer.parseInt(pattern.substring(start, pos));
+        }
+
+        private Node parseAtom()
+        {
+            final char c = next();
+            switch (c)
+            {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    return Node.chars(parseClass());
+                case '.':
+                    return Node.chars(ANY);
+                case '\\':
+                    return Node.chars(fold(parseEscape()));
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw unsupported();
+                default:
+                    checkSupported(c);
+                    return Node.chars(fold(new int []
+                    {
+                        c, c
+                    }));
+            }
+        }
+
+        private Node parseGroup()
+        {
+            final boolean enclosingCaseInsensitive = caseInsensitive;
+            if (more() && peek() == '?')
+            {
+                pos++;
+                boolean flags = false;
+                boolean on = true;
+                while (more() && (peek() == 'i' || peek() == '-'))
+                {
+                    flags = true;
+                    if (next() == '-')
+                    {
+                        on = false;
+                    }
+                    else
+                    {
+                        caseInsensitive = on;
+                    }
+                }
+
+                final char c = next();
+                if (c == ')' && flags)
+                {
+                    // Flags apply until the end of the enclosing group.
+                    return new Node(Node.EMPTY);
+                }
+                if (c != ':')
+                {
+                    throw unsupported();
+                }
+            }
+
+            final Node node = parseAlternation();
+            if (next() != ')')
+            {
+                throw unsupported();
+            }
+            caseInsensitive = enclosingCaseInsensitive;
+            return node;
+        }
+
+        private int [] parseClass()
+        {
+            boolean negated = false;
+            if (more() && peek() == '^')
+            {
+                pos++;
+                negated = true;
+            }
+
+            final IntArrayList ranges = new IntArrayList();
+            boolean first = true;
+            while (true)
+            {
+                char c = next();
+                if (c == ']' && !first)
+                {
+                    break;
+                }
+                first = false;
+
+                if (c == '[' || c == ']' || (c == '&' && more() && peek() == '&'))
+                {
+                    throw unsupported();
+                }
+
+                if (c == '\\')
+                {
+                    final int [] escaped = parseEscape();
+                    if (escaped.length != 2 || escaped[0] != escaped[1])
+                    {
+                        ranges.add(escaped, 0, escaped.length);
+                        continue;
+                    }
+                    c = (char) escaped[0];
+                }
+                checkSupported(c);
+
+                if (more() && peek() == '-' && pos + 1 < pattern.length()
+                    && pattern.charAt(pos + 1) != ']')
+                {
+                    pos++;
+                    char to = next();
+                    if (to == '\\')
+                    {
+                        final int [] escaped = parseEscape();
+                        if (escaped.length != 2 || escaped[0] != escaped[1])
+                        {
+                            throw unsupported();
+                        }
+                        to = (char) escaped[0];
+                    }
+                    else if (to == '[')
+                    {
+                        throw unsupported();
+                    }
+                    checkSupported(to);
+                    if (to < c)
+                    {
+                        throw unsupported();
+                    }
+                    ranges.add(c, to);
+                }
+                else
+                {
+                    ranges.add(c, c);
+                }
+            }
+
+            final int [] set = fold(normalize(ranges.toArray()));
+            return negated ? complement(set) : set;
+        }
+
+        /**
+         * Parses an escape sequence (after the backslash).
+         */
+        private int [] parseEscape()
+        {
+            final char c = next();
+            switch (c)
+            {
+                case 'd':
+                    return DIGITS;
+                case 'D':
+                    return complement(DIGITS);
+                case 's':
+                    return SPACES;
+                case 'S':
+                    return complement(SPACES);
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return complement(WORD);
+                case 't':
+                    return single('\t');
+                case 'n':
+                    return single('\n');
+                case 'r':
+                    return single('\r');
+                case 'f':
+                    return single('\f');
+                case 'a':
+                    return single('\u0007');
+                case 'e':
+                    return single('\u001B');
+                case 'x':
+                    return single(parseHex(2));
+                case 'u':
+                    return single(parseHex(4));
+                default:
+                    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                        || (c >= '0' && c <= '9'))
+                    {
+                        throw unsupported();
+                    }
+                    checkSupported(c);
+                    return single(c);
+            }
+        }
+
+        private char parseHex(int digits)
+        {
+            if (pos + digits > pattern.length())
+            {
+                throw unsupported();
+            }
+            try
+            {
+                final char c = (char) Integer.parseInt(
+                    pattern.substring(pos, pos + digits), 16);
+                pos += digits;
+                checkSupported(c);
+                return c;
+            }
+            catch (NumberFormatException e)
+            {
+                throw unsupported();
+            }
+        }
+
+        private static int [] single(char c)
+        {
+            return new int []
+            {
+                c, c
+            };
+        }
+
+        /**
+         * Adds the other case of ASCII letters in case-insensitive mode.
+         */
+        private int [] fold(int [] ranges)
+        {
+            if (!caseInsensitive)
+            {
+                return ranges;
+            }
+
+            final IntArrayList folded = new IntArrayList();
+            folded.add(ranges, 0, ranges.length);
+            for (int i = 0; i < ranges.length; i += 2)
+            {
+                addShifted(folded, ranges[i], ranges[i + 1], 'a', 'z', -32);
+                addShifted(folded, ranges[i], ranges[i + 1], 'A', 'Z', 32);
+            }
+            return normalize(folded.toArray());
+        }
+
+        private static void addShifted(IntArrayList ranges, int from, int to, int min,
+            int max, int shift)
+        {
+            final int lo = Math.max(from, min);
+            final int hi = Math.min(to, max);
+            if (lo <= hi)
+            {
+                ranges.add(lo + shift, hi + shift);
+            }
+        }
+
+        private void checkSupported(char c)
+        {
+            if (isSurrogate(c))
+            {
+                throw unsupported();
+            }
+        }
+
+        private boolean more()
+        {
+            return pos < pattern.length();
+        }
+
+        private char peek()
+        {
+            return pattern.charAt(pos);
+        }
+
+        private char next()
+        {
+            if (!more())
+            {
+                throw unsupported();
+            }
+            return pattern.charAt(pos++);
+        }
+
+        private UnsupportedOperationException unsupported()
+        {
+            return new UnsupportedOperationException("Unsupported expression: " + pattern);
+        }
+    }
+
+    /**
+     * Sorts and merges character ranges.
+     */
+    static int [] normalize(int [] ranges)
+    {
+        final int count = ranges.length / 2;
+        final long [] packed = new long [count];
+        for (int i = 0; i < count; i++)
+        {
+            packed[i] = ((long) ranges[2 * i] << 32) | ranges[2 * i + 1];
+        }
+        Arrays.sort(packed);
+
+        final IntArrayList merged = new IntArrayList();
+        for (int i = 0; i < count; i++)
+        {
+            final int from = (int) (packed[i] >>> 32);
+            final int to = (int) packed[i];
+            final int last = merged.size() - 1;
+            if (last > 0 && from <= merged.get(last) + 1)
+            {
+                merged.set(last, Math.max(merged.get(last), to));
+            }
+            else
+            {
+                merged.add(from, to);
+            }
+        }
+        return merged.toArray();
+    }
+
+    /**
+     * Complements normalized character ranges within the basic multilingual plane.
+     */
+    static int [] complement(int [] ranges)
+    {
+        final IntArrayList result = new IntArrayList();
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2)
+        {
+            if (ranges[i] > next)
+            {
+                result.add(next, ranges[i] - 1);
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE)
+        {
+            result.add(next, Character.MAX_VALUE);
+        }
+        return result.toArray();
+    }
+
+    /**
+     * A deterministic automaton built from the union of expressions by subset
+     * construction. The input alphabet is divided into classes of characters that no
+     * expression distinguishes.
+     */
+    static final class Dfa
+    {
+        private static final int DEAD = 0;
+
+        /** Lower bounds of character classes, sorted. */
+        private final int [] classStarts;
+
+        /** Character classes of ASCII characters. */
+        private final int [] asciiClasses = new int [128];
+
+        private final int classCount;
+        private final int [] transitions;
+        private final boolean [] accepting;
+        private final int start;
+
+        /* Nondeterministic automaton under construction. */
+        private final List<IntArrayList> epsilons = Lists.newArrayList();
+        private final List<int []> labels = Lists.newArrayList();
+        private final IntArrayList targets = new IntArrayList();
+
+        /* Epsilon closure computation. */
+        private int [] visited;
+        private int visitMark;
+        private final IntArrayList stack = new IntArrayList();
+        private final IntArrayList result = new IntArrayList();
+
+        /**
+         * Reads an automaton serialized with {@link #write(DataOutput)}.
+         */
+        Dfa(DataInput input) throws IOException
+        {
+            this.classStarts = readInts(input);
+            this.classCount = classStarts.length;
+            this.transitions = readInts(input);
+            this.accepting = new boolean [input.readInt()];
+            for (int i = 0; i < accepting.length; i++)
+            {
+                accepting[i] = input.readBoolean();
+            }
+            this.start = 1;
+
+            if (transitions.length != accepting.length * classCount)
+            {
+                throw new IOException("Corrupted automaton.");
+            }
+            for (int c = 0; c < asciiClasses.length; c++)
+            {
+                asciiClasses[c] = classOf((char) c);
+            }
+        }
+
+        void write(DataOutput output) throws IOException
+        {
+            writeInts(output, classStarts);
+            writeInts(output, transitions);
+            output.writeInt(accepting.length);
+            for (boolean accept : accepting)
+            {
+                output.writeBoolean(accept);
+            }
+        }
+
+        Dfa(List<Node> nodes)
+        {
+            // Character classes.
+            final IntArrayList bounds = new IntArrayList();
+            bounds.add(0, Character.MAX_VALUE + 1);
+            for (Node node : nodes)
+            {
+                collectBounds(node, bounds);
+            }
+            final int [] sortedBounds = bounds.toArray();
+            Arrays.sort(sortedBounds);
+            final IntArrayList starts = new IntArrayList();
+            for (int i = 0; i < sortedBounds.length && sortedBounds[i] <= Character.MAX_VALUE; i++)
+            {
+                if (starts.isEmpty() || starts.get(starts.size() - 1) != sortedBounds[i])
+                {
+                    starts.add(sortedBounds[i]);
+                }
+            }
+            this.classStarts = starts.toArray();
+            this.classCount = classStarts.length;
+            for (int c = 0; c < asciiClasses.length; c++)
+            {
+                asciiClasses[c] = classOf((char) c);
+            }
+
+            // Nondeterministic automaton: union of all expressions.
+            final int nfaStart = newState();
+            final int nfaAccept = newState();
+            for (Node node : nodes)
+            {
+                final int [] fragment = build(node);
+                epsilons.get(nfaStart).add(fragment[0]);
+                epsilons.get(fragment[1]).add(nfaAccept);
+            }
+
+            // Subset construction, state 0 is the dead state.
+            final Map<StateSet, Integer> states = new HashMap<StateSet, Integer>();
+            final List<int []> pending = Lists.newArrayList();
+            final IntArrayList table = new IntArrayList();
+            final List<Boolean> accepts = Lists.newArrayList();
+
+            final int [] empty = new int [0];
+            states.put(new StateSet(empty), DEAD);
+            pending.add(empty);
+            accepts.add(false);
+
+            final int [] initial = closure(new int []
+            {
+                nfaStart
+            });
+            states.put(new StateSet(initial), 1);
+            pending.add(initial);
+            accepts.add(contains(initial, nfaAccept));
+
+            final IntArrayList [] moves = new IntArrayList [classCount];
+            for (int i = 0; i < classCount; i++)
+            {
+                moves[i] = new IntArrayList();
+            }
+
+            for (int state = 0; state < pending.size(); state++)
+            {
+                for (IntArrayList move : moves)
+                {
+                    move.clear();
+                }
+                for (int nfaState : pending.get(state))
+                {
+                    final int [] ranges = labels.get(nfaState);
+                    if (ranges == null)
+                    {
+                        continue;
+                    }
+                    for (int i = 0; i < ranges.length; i += 2)
+                    {
+                        final int to = classOf((char) ranges[i + 1]);
+                        for (int k = classOf((char) ranges[i]); k <= to; k++)
+                        {
+                            moves[k].add(targets.get(nfaState));
+                        }
+                    }
+                }
+
+                for (int k = 0; k < classCount; k++)
+                {
+                    // Adjacent classes often lead to the same states.
+                    if (moves[k].isEmpty())
+                    {
+                        table.add(DEAD);
+                        continue;
+                    }
+                    if (k > 0 && moves[k].equals(moves[k - 1]))
+                    {
+                        table.add(table.get(table.size() - 1));
+                        continue;
+                    }
+
+                    final int [] target = closure(moves[k].toArray());
+                    final StateSet key = new StateSet(target);
+                    Integer index = states.get(key);
+                    if (index == null)
+                    {
+                        if (pending.size() >= MAX_DFA_STATES)
+                        {
+                            throw new UnsupportedOperationException(
+                                "Too many automaton states.");
+                        }
+                        index = pending.size();
+                        states.put(key, index);
+                        pending.add(target);
+                        accepts.add(contains(target, nfaAccept));
+                    }
+                    table.add(index);
+                }
+            }
+
+            this.transitions = table.toArray();
+            this.accepting = new boolean [accepts.size()];
+            for (int i = 0; i < accepting.length; i++)
+            {
+                accepting[i] = accepts.get(i);
+            }
+            this.start = 1;
+        }
+
+        boolean matches(CharSequence label)
+        {
+            int state = start;
+            for (int i = 0; i < label.length() && state != DEAD; i++)
+            {
+                final char c = label.charAt(i);
+                state = transitions[state * classCount
+                    + (c < asciiClasses.length ? asciiClasses[c] : classOf(c))];
+            }
+            return accepting[state];
+        }
+
+        private int classOf(char c)
+        {
+            int index = Arrays.binarySearch(classStarts, c);
+            return index >= 0 ? index : -index - 2;
+        }
+
+        private static void collectBounds(Node node, IntArrayList bounds)
+        {
+            if (node.kind == Node.CHARS)
+            {
+                for (int i = 0; i < node.ranges.length; i += 2)
+                {
+                    bounds.add(node.ranges[i], node.ranges[i + 1] + 1);
+                }
+            }
+            else if (node.children != null)
+            {
+                for (Node child : node.children)
+                {
+                    collectBounds(child, bounds);
+                }
+            }
+        }
+
+        private int newState()
+        {
+            epsilons.add(new IntArrayList(2));
+            labels.add(null);
+            targets.add(-1);
+            return epsilons.size() - 1;
+        }
+
+        /**
+         * Builds a fragment of the nondeterministic automaton for the node, returns its
+         * start and end state.
+         */
+        private int [] build(Node node)
+        {
+            final int start = newState();
+            int end = start;
+            switch (node.kind)
+            {
+                case Node.EMPTY:
+                    break;
+
+                case Node.CHARS:
+                    end = newState();
+                    labels.set(start, node.ranges);
+                    targets.set(start, end);
+                    break;
+
+                case Node.CONCATENATION:
+                    for (Node child : node.children)
+                    {
+                        final int [] fragment = build(child);
+                        epsilons.get(end).add(fragment[0]);
+                        end = fragment[1];
+                    }
+                    break;
+
+                case Node.ALTERNATION:
+                    end = newState();
+                    for (Node child : node.children)
+                    {
+                        final int [] fragment = build(child);
+                        epsilons.get(start).add(fragment[0]);
+                        epsilons.get(fragment[1]).add(end);
+                    }
+                    break;
+
+                case Node.REPETITION:
+                    final Node child = node.children.get(0);
+                    for (int i = 0; i < node.min; i++)
+                    {
+                        final int [] fragment = build(child);
+                        epsilons.get(end).add(fragment[0]);
+                        end = fragment[1];
+                    }
+
+                    if (node.max < 0)
+                    {
+                        final int [] fragment = build(child);
+                        final int loopEnd = newState();
+                        epsilons.get(end).add(fragment[0]);
+                        epsilons.get(end).add(loopEnd);
+                        epsilons.get(fragment[1]).add(fragment[0]);
+                        epsilons.get(fragment[1]).add(loopEnd);
+                        end = loopEnd;
+                    }
+                    else
+                    {
+                        final int optionalEnd = newState();
+                        for (int i = node.min; i < node.max; i++)
+                        {
+                            final int [] fragment = build(child);
+                            epsilons.get(end).add(fragment[0]);
+                            epsilons.get(end).add(optionalEnd);
+                            end = fragment[1];
+                        }
+                        epsilons.get(end).add(optionalEnd);
+                        end = optionalEnd;
+                    }
+                    break;
+
+                default:
+                    throw new RuntimeException("Unknown node: " + node.kind);
+            }
+            return new int []
+            {
+                start, end
+            };
+        }
+
+        /**
+         * Returns the sorted epsilon closure of the provided states.
+         */
+        private int [] closure(int [] states)
+        {
+            if (visited == null)
+            {
+                visited = new int [epsilons.size()];
+            }
+            final int mark = ++visitMark;
+            stack.clear();
+            result.clear();
+            for (int state : states)
+            {
+                if (visited[state] != mark)
+                {
+                    visited[state] = mark;
+                    stack.add(state);
+                }
+            }
+
+            while (!stack.isEmpty())
+            {
+                final int state = stack.remove(stack.size() - 1);
+                if (labels.get(state) != null || state == 1)
+                {
+                    // Only states with transitions and the accepting state matter.
+                    result.add(state);
+                }
+                final IntArrayList next = epsilons.get(state);
+                for (int i = 0; i < next.size(); i++)
+                {
+                    final int target = next.get(i);
+                    if (visited[target] != mark)
+                    {
+                        visited[target] = mark;
+                        stack.add(target);
+                    }
+                }
+            }
+
+            final int [] sorted = result.toArray();
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        private static boolean contains(int [] sorted, int state)
+        {
+            return Arrays.binarySearch(sorted, state) >= 0;
+        }
+    }
+
+    /**
+     * A sorted set of nondeterministic automaton states, used as a hash key.
+     */
+    private static final class StateSet
+    {
+        private final int [] states;
+        private final int hash;
+
+        StateSet(int [] states)
+        {
+            this.states = states;
+            this.hash = Arrays.hashCode(states);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof StateSet && Arrays.equals(states, ((StateSet) obj).states);
+        }
+    }
+}
@@ -35,6 +35,7 @@ import com.carrotsearch.hppc.ByteArrayList;
 import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntStack;
 import com.carrotsearch.hppc.ShortArrayList;
+import com.carrotsearch.hppc.sorting.IndirectComparator;
 import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.google.common.collect.Lists;
 
@@ -72,11 +73,29 @@ public final class CaseNormalizer
     @Group(DefaultGroups.PREPROCESSING)
     public int dfThreshold = 1;
 
+    /**
+     * Aggregate words with a hash table instead of sorting all tokens. Tokens are grouped
+     * in a single pass and only the distinct words are sorted, which is faster for large
+     * inputs. The results are the same as with sorting.
+     */
+    @Processing
+    @Input
+    @Attribute
+    @Label("Hash-based word aggregation")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(DefaultGroups.PREPROCESSING)
+    public boolean hashAggregation = false;
+
     /**
      * Performs normalization and saves the results to the <code>context</code>.
      */
     public void normalize(PreprocessingContext context)
     {
+        if (hashAggregation && normalizeByHashing(context))
+        {
+            return;
+        }
+
         // Local references to already existing arrays
         final char [][] tokenImages = context.allTokens.image;
         final short [] tokenTypesArray = context.allTokens.type;
@@ -231,6 +250,361 @@ public final class CaseNormalizer
         context.allWords.type = types.toArray();
     }
 
+    /**
+     * Performs normalization using a case-insensitive hash table of words. Returns
+     * <code>false</code> (and does not modify the <code>context</code>) if the same word
+     * appears both as an indexed and a non-indexed token, in which case the results of
+     * sorting depend on the order of tokens and cannot be reproduced.
+     */
+    private boolean normalizeByHashing(PreprocessingContext context)
+    {
+        // Local references to already existing arrays
+        final char [][] tokenImages = context.allTokens.image;
+        final short [] tokenTypesArray = context.allTokens.type;
+        final int [] documentIndexesArray = context.allTokens.documentIndex;
+        final byte [] tokensFieldIndex = context.allTokens.fieldIndex;
+        final int tokenCount = tokenImages.length;
+
+        // Group tokens into case variants and variants into words, in one pass.
+        final CaseInsensitiveWordTable words = new CaseInsensitiveWordTable(tokenImages);
+        final int [] tokenVariants = new int [tokenCount];
+        for (int i = 0; i < tokenCount; i++)
+        {
+            if (tokenImages[i] == null)
+            {
+                tokenVariants[i] = -1;
+                continue;
+            }
+
+            final int variant = words.addToken(i);
+            tokenVariants[i] = variant;
+            words.variantFields[variant] |= 1 << tokensFieldIndex[i];
+            words.variantIndexed[variant] |= isNotIndexed(tokenTypesArray[i]) ? NOT_INDEXED
+                : INDEXED;
+        }
+
+        // Order words and their variants as the normalizing comparator does.
+        final int wordCount = words.wordCount;
+        final int [] wordOrder = IndirectSort.mergesort(0, wordCount,
+            new IndirectComparator()
+            {
+                public int compare(int a, int b)
+                {
+                    return CharArrayComparators.NORMALIZING_CHAR_ARRAY_COMPARATOR.compare(
+                        words.wordImage(a), words.wordImage(b));
+                }
+            });
+
+        final int [] variantOrder = new int [words.variantCount];
+        final int [] wordVariantsStart = new int [wordCount + 1];
+        int variantIndex = 0;
+        for (int w = 0; w < wordCount; w++)
+        {
+            final int word = wordOrder[w];
+            wordVariantsStart[w] = variantIndex;
+            byte indexed = 0;
+            for (int v = words.wordFirstVariant[word]; v >= 0; v = words.variantNext[v])
+            {
+                // Insertion sort, words have very few variants.
+                int j = variantIndex++;
+                while (j > wordVariantsStart[w]
+                    && CharArrayComparators.NORMALIZING_CHAR_ARRAY_COMPARATOR.compare(
+                        tokenImages[words.variantFirstToken[variantOrder[j - 1]]],
+                        tokenImages[words.variantFirstToken[v]]) > 0)
+                {
+                    variantOrder[j] = variantOrder[j - 1];
+                    j--;
+                }
+                variantOrder[j] = v;
+                indexed |= words.variantIndexed[v];
+            }
+
+            if (indexed == (INDEXED | NOT_INDEXED))
+            {
+                return false;
+            }
+        }
+        wordVariantsStart[wordCount] = variantIndex;
+
+        // Tokens in the order of variants, in the order of appearance within variants.
+        final int [] variantTokensStart = new int [words.variantCount + 1];
+        for (int v = 0; v < variantOrder.length; v++)
+        {
+            variantTokensStart[v + 1] = variantTokensStart[v]
+                + words.variantTf[variantOrder[v]];
+        }
+        final int [] variantPositions = new int [words.variantCount];
+        for (int v = 0; v < variantOrder.length; v++)
+        {
+            variantPositions[variantOrder[v]] = variantTokensStart[v];
+        }
+        final int [] tokensByVariant = new int [variantTokensStart[variantOrder.length]];
+        for (int i = 0; i < tokenCount; i++)
+        {
+            if (tokenVariants[i] >= 0)
+            {
+                tokensByVariant[variantPositions[tokenVariants[i]]++] = i;
+            }
+        }
+
+        // Create holders for new arrays
+        final List<char []> normalizedWordImages = Lists.newArrayList();
+        final IntArrayList normalizedWordTf = new IntArrayList();
+        final List<int []> wordTfByDocumentList = Lists.newArrayList();
+        final ByteArrayList fieldIndexList = new ByteArrayList();
+        final ShortArrayList types = new ShortArrayList();
+
+        final int [] wordIndexes = new int [tokenCount];
+        Arrays.fill(wordIndexes, -1);
+
+        final IntStack wordDocuments = new IntStack();
+        for (int w = 0; w < wordCount; w++)
+        {
+            final int firstVariant = wordVariantsStart[w];
+            final int lastVariant = wordVariantsStart[w + 1];
+            if (words.variantIndexed[variantOrder[firstVariant]] != INDEXED)
+            {
+                continue;
+            }
+
+            /*
+             * Select the most frequent variant. This reproduces the sort-based
+             * selection exactly: the running count is restarted only after a more
+             * frequent variant is found.
+             */
+            int totalTf = 0;
+            int tf = 1;
+            int maxTf = 1;
+            int maxTfToken = words.variantFirstToken[variantOrder[firstVariant]];
+            byte fieldIndices = 0;
+            for (int v = firstVariant; v < lastVariant; v++)
+            {
+                final int variant = variantOrder[v];
+                totalTf += words.variantTf[variant];
+                fieldIndices |= words.variantFields[variant];
+
+                tf += words.variantTf[variant] - 1;
+                if (maxTf < tf)
+                {
+                    maxTf = tf;
+                    maxTfToken = words.variantLastToken[variant];
+                    tf = 1;
+                }
+            }
+
+            final int from = variantTokensStart[firstVariant];
+            final int to = variantTokensStart[lastVariant];
+            if (to - from >= dfThreshold)
+            {
+                wordDocuments.clear();
+                for (int i = from; i < to; i++)
+                {
+                    wordDocuments.push(documentIndexesArray[tokensByVariant[i]]);
+                }
+
+                final int [] sparseEncoding = SparseArray.toSparseEncoding(wordDocuments);
+                final int df = (sparseEncoding.length >> 1);
+                if (df >= dfThreshold)
+                {
+                    wordTfByDocumentList.add(sparseEncoding);
+                    normalizedWordImages.add(tokenImages[maxTfToken]);
+                    types.add(tokenTypesArray[maxTfToken]);
+                    normalizedWordTf.add(totalTf);
+                    fieldIndexList.add(fieldIndices);
+
+                    for (int i = from; i < to; i++)
+                    {
+                        wordIndexes[tokensByVariant[i]] = normalizedWordImages.size() - 1;
+                    }
+                }
+            }
+        }
+
+        // Mapping from allTokens
+        context.allTokens.wordIndex = wordIndexes;
+
+        context.allWords.image = normalizedWordImages
+            .toArray(new char [normalizedWordImages.size()] []);
+        context.allWords.tf = normalizedWordTf.toArray();
+        context.allWords.tfByDocument = 
+            wordTfByDocumentList.toArray(new int [wordTfByDocumentList.size()] []);
+        context.allWords.fieldIndices = fieldIndexList.toArray();
+        context.allWords.type = types.toArray();
+        return true;
+    }
+
+    /** A case variant with at least one indexed token. */
+    private static final byte INDEXED = 1;
+
+    /** A case variant with at least one non-indexed token. */
+    private static final byte NOT_INDEXED = 2;
+
+    /**
+     * An open-addressing hash table of words, keyed case-insensitively. Each word has a
+     * list of its case variants (distinct images of tokens), all data is kept in
+     * parallel arrays.
+     */
+    private static final class CaseInsensitiveWordTable
+    {
+        private final char [][] tokenImages;
+
+        /** Word index + 1 in each slot, 0 for empty slots. */
+        private int [] slots;
+        private int [] wordHash;
+
+        int wordCount;
+        int [] wordFirstVariant;
+
+        int variantCount;
+        int [] variantFirstToken;
+        int [] variantLastToken;
+        int [] variantNext;
+        int [] variantTf;
+        byte [] variantFields;
+        byte [] variantIndexed;
+
+        CaseInsensitiveWordTable(char [][] tokenImages)
+        {
+            this.tokenImages = tokenImages;
+
+            final int expected = Math.max(16, tokenImages.length / 4);
+            this.slots = new int [Integer.highestOneBit(expected) << 2];
+            this.wordHash = new int [expected];
+            this.wordFirstVariant = new int [expected];
+            this.variantFirstToken = new int [expected];
+            this.variantLastToken = new int [expected];
+            this.variantNext = new int [expected];
+            this.variantTf = new int [expected];
+            this.variantFields = new byte [expected];
+            this.variantIndexed = new byte [expected];
+        }
+
+        char [] wordImage(int word)
+        {
+            return tokenImages[variantFirstToken[wordFirstVariant[word]]];
+        }
+
+        /**
+         * Adds a token, returns the index of its case variant.
+         */
+        int addToken(int token)
+        {
+            final char [] image = tokenImages[token];
+            final int hash = hash(image);
+            final int mask = slots.length - 1;
+
+            int slot = hash & mask;
+            int word;
+            while ((word = slots[slot] - 1) >= 0)
+            {
+                if (wordHash[word] == hash && equalsIgnoreCase(wordImage(word), image))
+                {
+                    for (int v = wordFirstVariant[word]; v >= 0; v = variantNext[v])
+                    {
+                        final char [] variantImage = tokenImages[variantFirstToken[v]];
+                        if (variantImage == image || Arrays.equals(variantImage, image))
+                        {
+                            variantTf[v]++;
+                            variantLastToken[v] = token;
+                            return v;
+                        }
+                    }
+
+                    // A new case variant of an existing word.
+                    final int v = newVariant(token);
+                    variantNext[v] = wordFirstVariant[word];
+                    wordFirstVariant[word] = v;
+                    return v;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            // A new word.
+            if (wordCount == wordHash.length)
+            {
+                wordHash = Arrays.copyOf(wordHash, wordCount * 2);
+                wordFirstVariant = Arrays.copyOf(wordFirstVariant, wordCount * 2);
+            }
+            word = wordCount++;
+            wordHash[word] = hash;
+            wordFirstVariant[word] = newVariant(token);
+            slots[slot] = word + 1;
+
+            if (wordCount * 2 > slots.length)
+            {
+                rehash();
+            }
+            return wordFirstVariant[word];
+        }
+
+        private int newVariant(int token)
+        {
+            if (variantCount == variantFirstToken.length)
+            {
+                final int capacity = variantCount * 2;
+                variantFirstToken = Arrays.copyOf(variantFirstToken, capacity);
+                variantLastToken = Arrays.copyOf(variantLastToken, capacity);
+                variantNext = Arrays.copyOf(variantNext, capacity);
+                variantTf = Arrays.copyOf(variantTf, capacity);
+                variantFields = Arrays.copyOf(variantFields, capacity);
+                variantIndexed = Arrays.copyOf(variantIndexed, capacity);
+            }
+
+            final int v = variantCount++;
+            variantFirstToken[v] = token;
+            variantLastToken[v] = token;
+            variantNext[v] = -1;
+            variantTf[v] = 1;
+            return v;
+        }
+
+        private void rehash()
+        {
+            slots = new int [slots.length * 2];
+            final int mask = slots.length - 1;
+            for (int word = 0; word < wordCount; word++)
+            {
+                int slot = wordHash[word] & mask;
+                while (slots[slot] != 0)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = word + 1;
+            }
+        }
+
+        private static int hash(char [] image)
+        {
+            int h = image.length;
+            for (int i = 0; i < image.length; i++)
+            {
+                h = 31 * h + Character.toLowerCase((int) image[i]);
+            }
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Case-insensitive equality, consistent with the normalizing comparator.
+         */
+        private static boolean equalsIgnoreCase(char [] a, char [] b)
+        {
+            if (a.length != b.length)
+            {
+                return false;
+            }
+            for (int i = 0; i < a.length; i++)
+            {
+                if (a[i] != b[i]
+                    && Character.toLowerCase((int) a[i]) != Character.toLowerCase((int) b[i]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Initializes the counters for the a token image.
      */
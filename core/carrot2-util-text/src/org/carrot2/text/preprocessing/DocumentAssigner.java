@@ -13,6 +13,8 @@
 package org.carrot2.text.preprocessing;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.carrot2.core.attribute.Processing;
 import org.carrot2.text.analysis.TokenTypeUtils;
@@ -71,10 +73,88 @@ public class DocumentAssigner
     @Group(DefaultGroups.PREPROCESSING)
     public int minClusterSize = 2;
 
+    /**
+     * The minimum number of labels to process on each thread, see
+     * {@link #assign(PreprocessingContext, int)}.
+     */
+    final static int MIN_LABELS_PER_THREAD = 500;
+
     /**
      * Assigns document to label candidates.
      */
     public void assign(PreprocessingContext context)
+    {
+        assign(context, 1);
+    }
+
+    /**
+     * Assigns document to label candidates, using up to <code>threads</code> threads.
+     * Each thread computes document sets of a contiguous slice of labels. The results are
+     * the same regardless of the number of threads.
+     */
+    public void assign(final PreprocessingContext context, int threads)
+    {
+        final int [] labelsFeatureIndex = context.allLabels.featureIndex;
+        final BitSet [] labelsDocumentIndices = new BitSet [labelsFeatureIndex.length];
+
+        final int [] slices = ParallelPreprocessing.slices(labelsFeatureIndex.length,
+            threads, MIN_LABELS_PER_THREAD);
+        if (slices.length == 2)
+        {
+            assign(context, 0, labelsFeatureIndex.length, labelsDocumentIndices);
+        }
+        else
+        {
+            final List<Callable<Void>> tasks = Lists.newArrayList();
+            for (int i = 0; i < slices.length - 1; i++)
+            {
+                final int from = slices[i];
+                final int to = slices[i + 1];
+                tasks.add(new Callable<Void>()
+                {
+                    public Void call()
+                    {
+                        assign(context, from, to, labelsDocumentIndices);
+                        return null;
+                    }
+                });
+            }
+            ParallelPreprocessing.invokeAll(tasks);
+        }
+
+        // Filter out labels that do not meet the minimum cluster size
+        if (minClusterSize > 1)
+        {
+            final IntArrayList newFeatureIndex = new IntArrayList(
+                labelsFeatureIndex.length);
+            final ArrayList<BitSet> newDocumentIndices = Lists
+                .newArrayListWithExpectedSize(labelsFeatureIndex.length);
+
+            for (int i = 0; i < labelsFeatureIndex.length; i++)
+            {
+                if (labelsDocumentIndices[i].cardinality() >= minClusterSize)
+                {
+                    newFeatureIndex.add(labelsFeatureIndex[i]);
+                    newDocumentIndices.add(labelsDocumentIndices[i]);
+                }
+            }
+            context.allLabels.documentIndices = newDocumentIndices
+                .toArray(new BitSet [newDocumentIndices.size()]);
+            context.allLabels.featureIndex = newFeatureIndex.toArray();
+            LabelFilterProcessor.updateFirstPhraseIndex(context);
+        }
+        else
+        {
+            context.allLabels.documentIndices = labelsDocumentIndices;
+        }
+    }
+
+    /**
+     * Computes document sets of labels from <code>from</code> (inclusive) to
+     * <code>to</code> (exclusive).
+     */
+    private void assign(PreprocessingContext context, int from, int to,
+        BitSet [] labelsDocumentIndices)
     {
         final int [] labelsFeatureIndex = context.allLabels.featureIndex;
         final int [][] stemsTfByDocument = context.allStems.tfByDocument;
@@ -85,9 +165,7 @@ public class DocumentAssigner
         final int wordCount = wordsStemIndex.length;
         final int documentCount = context.documents.size();
 
-        final BitSet [] labelsDocumentIndices = new BitSet [labelsFeatureIndex.length];
-
-        for (int i = 0; i < labelsFeatureIndex.length; i++)
+        for (int i = from; i < to; i++)
         {
             final BitSet documentIndices = new BitSet(documentCount);
 
@@ -136,32 +214,6 @@ public class DocumentAssigner
 
             labelsDocumentIndices[i] = documentIndices;
         }
-
-        // Filter out labels that do not meet the minimum cluster size
-        if (minClusterSize > 1)
-        {
-            final IntArrayList newFeatureIndex = new IntArrayList(
-                labelsFeatureIndex.length);
-            final ArrayList<BitSet> newDocumentIndices = Lists
-                .newArrayListWithExpectedSize(labelsFeatureIndex.length);
-
-            for (int i = 0; i < labelsFeatureIndex.length; i++)
-            {
-                if (labelsDocumentIndices[i].cardinality() >= minClusterSize)
-                {
-                    newFeatureIndex.add(labelsFeatureIndex[i]);
-                    newDocumentIndices.add(labelsDocumentIndices[i]);
-                }
-            }
-            context.allLabels.documentIndices = newDocumentIndices
-                .toArray(new BitSet [newDocumentIndices.size()]);
-            context.allLabels.featureIndex = newFeatureIndex.toArray();
-            LabelFilterProcessor.updateFirstPhraseIndex(context);
-        }
-        else
-        {
-            context.allLabels.documentIndices = labelsDocumentIndices;
-        }
     }
 
     private static void addTfByDocumentToBitSet(final BitSet documentIndices,
@@ -0,0 +1,301 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.text.analysis.ITokenizer;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * A bounded, thread-safe cache of token streams of documents, shared across requests.
+ * Documents are identified by the contents of their tokenized fields, the language and
+ * the tokenizer class, so that the same document returned for different queries is
+ * tokenized only once. See {@link Tokenizer#documentTokenCache}.
+ * <p>
+ * The cache is bounded by the estimated number of bytes taken by the cached tokens and
+ * the field values they were created from.
+ */
+public final class DocumentTokenCache
+{
+    /** Default memory budget of the {@link #getShared()} cache, in bytes. */
+    public static final long DEFAULT_MAXIMUM_BYTES = 32 * 1024 * 1024;
+
+    /** Estimated size of an object header plus a reference to it. */
+    private static final int OBJECT_OVERHEAD = 24;
+
+    /** Multipliers of the two halves of the content hash. */
+    private static final long HASH_MULTIPLIER_1 = 0x9e3779b97f4a7c15L;
+    private static final long HASH_MULTIPLIER_2 = 0xc6a4a7935bd1e995L;
+
+    /** The process-wide cache. */
+    private static volatile DocumentTokenCache shared;
+
+    private final Cache<Key, Entry> entries;
+
+    /**
+     * Identifies a document's token stream. Keys hold the tokenized field values and
+     * compare them when hashes match, so that documents whose hashes collide never share
+     * tokens.
+     */
+    static final class Key
+    {
+        /** 128-bit hash of the contents of tokenized fields. */
+        final long hash1, hash2;
+        final String [] fieldNames;
+        final String [] fieldValues;
+        final LanguageCode language;
+        final Class<? extends ITokenizer> tokenizerClass;
+
+        Key(long hash1, long hash2, String [] fieldNames, String [] fieldValues,
+            LanguageCode language, Class<? extends ITokenizer> tokenizerClass)
+        {
+            this.hash1 = hash1;
+            this.hash2 = hash2;
+            this.fieldNames = fieldNames;
+            this.fieldValues = fieldValues;
+            this.language = language;
+            this.tokenizerClass = tokenizerClass;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof Key)
+            {
+                final Key other = (Key) obj;
+                return hash1 == other.hash1 && hash2 == other.hash2
+                    && language == other.language && tokenizerClass == other.tokenizerClass
+                    && Arrays.equals(fieldNames, other.fieldNames)
+                    && Arrays.equals(fieldValues, other.fieldValues);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (int) (hash1 ^ (hash1 >>> 32));
+        }
+
+        /**
+         * Estimated number of bytes taken by this key, including the field values it
+         * keeps reachable.
+         */
+        int weight()
+        {
+            int weight = 3 * OBJECT_OVERHEAD + fieldNames.length * 8
+                + fieldValues.length * 8;
+            for (String fieldValue : fieldValues)
+            {
+                if (fieldValue != null)
+                {
+                    weight += 2 * OBJECT_OVERHEAD + fieldValue.length() * 2;
+                }
+            }
+            return weight;
+        }
+    }
+
+    /**
+     * Tokens of a single document, including field separators (with field index
+     * <code>-1</code>), excluding the document separator. Distinct token images are
+     * stored once, so that they can be interned once per document. Arrays must not be
+     * modified.
+     */
+    static final class Entry
+    {
+        /** Distinct token images of the document. */
+        final char [][] images;
+
+        /** Index of each token's image in {@link #images}, <code>-1</code> for separators. */
+        final int [] imageIndices;
+
+        final short [] types;
+        final byte [] fieldIndices;
+
+        Entry(char [][] images, int [] imageIndices, short [] types, byte [] fieldIndices)
+        {
+            this.images = images;
+            this.imageIndices = imageIndices;
+            this.types = types;
+            this.fieldIndices = fieldIndices;
+        }
+
+        /**
+         * Estimated number of bytes taken by this entry.
+         */
+        int weight()
+        {
+            int weight = 5 * OBJECT_OVERHEAD + images.length * 8 + imageIndices.length * 4
+                + types.length * 2 + fieldIndices.length;
+            for (char [] image : images)
+            {
+                weight += OBJECT_OVERHEAD + image.length * 2;
+            }
+            return weight;
+        }
+    }
+
+    /**
+     * Creates a cache holding tokens of at most <code>maximumBytes</code> bytes (estimated).
+     */
+    public DocumentTokenCache(long maximumBytes)
+    {
+        this.entries = CacheBuilder.newBuilder().maximumWeight(maximumBytes)
+            .weigher(new Weigher<Key, Entry>()
+            {
+                public int weigh(Key key, Entry entry)
+                {
+                    return key.weight() + entry.weight();
+                }
+            }).recordStats().build();
+    }
+
+    /**
+     * Returns the process-wide cache, creating it if necessary, with the
+     * {@link #DEFAULT_MAXIMUM_BYTES} memory budget.
+     */
+    public static DocumentTokenCache getShared()
+    {
+        DocumentTokenCache cache = shared;
+        if (cache == null)
+        {
+            synchronized (DocumentTokenCache.class)
+            {
+                cache = shared;
+                if (cache == null)
+                {
+                    shared = cache = new DocumentTokenCache(DEFAULT_MAXIMUM_BYTES);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns the key of the provided document's fields, tokenized in the given order.
+     */
+    static Key key(Document document, String [] fieldNames, LanguageCode language,
+        Class<? extends ITokenizer> tokenizerClass)
+    {
+        final String [] fieldValues = new String [fieldNames.length];
+        long hash1 = 0, hash2 = 0;
+        for (int f = 0; f < fieldNames.length; f++)
+        {
+            final String fieldName = fieldNames[f];
+            final String fieldValue = document.getField(fieldName);
+            fieldValues[f] = fieldValue;
+            final int length = (fieldValue == null ? -1 : fieldValue.length());
+            hash1 = (hash1 + fieldName.hashCode()) * HASH_MULTIPLIER_1 + length;
+            hash2 = (hash2 ^ fieldName.hashCode()) * HASH_MULTIPLIER_2 + length;
+            for (int i = 0; i < length; i++)
+            {
+                final char c = fieldValue.charAt(i);
+                hash1 = (hash1 + c) * HASH_MULTIPLIER_1;
+                hash2 = (hash2 ^ c) * HASH_MULTIPLIER_2;
+            }
+        }
+        return new Key(mix(hash1), mix(hash2), fieldNames.clone(), fieldValues, language,
+            tokenizerClass);
+    }
+
+    /**
+     * Spreads the bits of a hash, see MurmurHash3's 64-bit finalizer.
+     */
+    private static long mix(long h)
+    {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Returns the cached tokens, <code>null</code> if not cached.
+     */
+    Entry get(Key key)
+    {
+        return entries.getIfPresent(key);
+    }
+
+    void put(Key key, Entry entry)
+    {
+        entries.put(key, entry);
+    }
+
+    /**
+     * Returns the number of documents currently in the cache.
+     */
+    public long size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of documents whose tokens were served from the cache.
+     */
+    public long getHitCount()
+    {
+        return entries.stats().hitCount();
+    }
+
+    /**
+     * Returns the number of documents that had to be tokenized.
+     */
+    public long getMissCount()
+    {
+        return entries.stats().missCount();
+    }
+
+    /**
+     * Returns the ratio of documents served from the cache, <code>1.0</code> if there
+     * were no lookups.
+     */
+    public double getHitRate()
+    {
+        return entries.stats().hitRate();
+    }
+
+    /**
+     * Returns the number of documents evicted to stay within the memory budget.
+     */
+    public long getEvictionCount()
+    {
+        return entries.stats().evictionCount();
+    }
+
+    /**
+     * Returns all statistics of the underlying cache.
+     */
+    public CacheStats getStats()
+    {
+        return entries.stats();
+    }
+
+    /**
+     * Removes all documents from this cache.
+     */
+    public void clear()
+    {
+        entries.invalidateAll();
+    }
+}
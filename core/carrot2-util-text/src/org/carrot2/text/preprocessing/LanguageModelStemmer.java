@@ -13,16 +13,28 @@
 package org.carrot2.text.preprocessing;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
+import org.carrot2.core.attribute.Processing;
 import org.carrot2.text.analysis.ITokenizer;
 import org.carrot2.text.linguistic.IStemmer;
+import org.carrot2.text.linguistic.StemCache;
 import org.carrot2.text.preprocessing.PreprocessingContext.AllStems;
 import org.carrot2.text.preprocessing.PreprocessingContext.AllWords;
 import org.carrot2.text.util.CharArrayComparators;
 import org.carrot2.text.util.MutableCharArray;
 import org.carrot2.util.CharArrayUtils;
+import org.carrot2.util.attribute.Attribute;
+import org.carrot2.util.attribute.AttributeLevel;
 import org.carrot2.util.attribute.Bindable;
+import org.carrot2.util.attribute.DefaultGroups;
+import org.carrot2.util.attribute.Group;
+import org.carrot2.util.attribute.Input;
+import org.carrot2.util.attribute.Label;
+import org.carrot2.util.attribute.Level;
 
 import com.carrotsearch.hppc.ByteArrayList;
 import com.carrotsearch.hppc.IntArrayList;
@@ -48,20 +60,113 @@ import com.google.common.collect.Sets;
 @Bindable(prefix = "LanguageModelStemmer")
 public final class LanguageModelStemmer
 {
+    /**
+     * The minimum number of words to stem on each thread, see
+     * {@link #stem(PreprocessingContext, int)}.
+     */
+    final static int MIN_WORDS_PER_THREAD = 2000;
+
+    /**
+     * Look up stems in a cache shared across requests before stemming words. There is
+     * one bounded cache for each language and stemmer, see {@link StemCache}. The cache
+     * saves repeated stemming of words common in many requests.
+     */
+    @Processing
+    @Input
+    @Attribute
+    @Label("Cross-request stem cache")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(DefaultGroups.PREPROCESSING)
+    public boolean stemCache = false;
+
     /**
      * Performs stemming and saves the results to the <code>context</code>.
      */
     public void stem(PreprocessingContext context)
     {
-        final IStemmer stemmer = context.language.getStemmer();
+        stem(context, 1);
+    }
+
+    /**
+     * Performs stemming and saves the results to the <code>context</code>, using up to
+     * <code>threads</code> threads. Each thread stems a contiguous slice of distinct
+     * words with its own {@link IStemmer}. The results are the same regardless of the
+     * number of threads.
+     */
+    public void stem(PreprocessingContext context, int threads)
+    {
+        final IStemmer stemmer = withCache(context, context.language.getStemmer());
 
         final char [][] wordImages = context.allWords.image;
         final char [][] stemImages = new char [wordImages.length] [];
 
+        final int [] slices = ParallelPreprocessing.slices(wordImages.length, threads,
+            MIN_WORDS_PER_THREAD);
+        if (slices.length == 2)
+        {
+            stem(wordImages, 0, wordImages.length, stemmer, context, stemImages);
+        }
+        else
+        {
+            final List<Callable<Void>> tasks = Lists.newArrayList();
+            for (int i = 0; i < slices.length - 1; i++)
+            {
+                final int from = slices[i];
+                final int to = slices[i + 1];
+                final IStemmer sliceStemmer = withCache(context,
+                    context.language.createStemmer());
+                tasks.add(new Callable<Void>()
+                {
+                    public Void call()
+                    {
+                        stem(wordImages, from, to, sliceStemmer, null, stemImages);
+                        return null;
+                    }
+                });
+            }
+            ParallelPreprocessing.invokeAll(tasks);
+
+            // Intern stems in the order of words, as the serial stemming does.
+            final MutableCharArray mutableCharArray = new MutableCharArray(
+                CharArrayUtils.EMPTY_ARRAY);
+            for (int i = 0; i < stemImages.length; i++)
+            {
+                if (stemImages[i] != wordImages[i])
+                {
+                    mutableCharArray.reset(stemImages[i]);
+                    stemImages[i] = context.intern(mutableCharArray);
+                }
+            }
+        }
+
+        addStemStatistics(context, stemImages, prepareQueryWords(context.query, stemmer));
+    }
+
+    /**
+     * Wraps the stemmer with the shared {@link StemCache} if enabled.
+     */
+    private IStemmer withCache(PreprocessingContext context, IStemmer stemmer)
+    {
+        if (!stemCache)
+        {
+            return stemmer;
+        }
+        return StemCache.get(context.language.getLanguageCode(), stemmer.getClass()).wrap(
+            stemmer);
+    }
+
+    /**
+     * Stems words from <code>from</code> (inclusive) to <code>to</code> (exclusive).
+     * If <code>context</code> is <code>null</code>, stems different from their words are
+     * copied rather than interned.
+     */
+    private static void stem(char [][] wordImages, int from, int to, IStemmer stemmer,
+        PreprocessingContext context, char [][] stemImages)
+    {
         final MutableCharArray mutableCharArray = new MutableCharArray(CharArrayUtils.EMPTY_ARRAY);
         char [] buffer = new char [128];
 
-        for (int i = 0; i < wordImages.length; i++)
+        for (int i = from; i < to; i++)
         {
             final char [] word = wordImages[i];
             if (buffer.length < word.length) buffer = new char [word.length];
@@ -73,20 +178,28 @@ public final class LanguageModelStemmer
             if (stemmed != null)
             {
                 mutableCharArray.reset(stemmed);
-                stemImages[i] = context.intern(mutableCharArray);
+                stemImages[i] = intern(context, mutableCharArray);
             }
             else
             {
                 // We need to put the original word here, otherwise, we wouldn't be able
                 // to compute frequencies for stems.
                 if (different)
-                    stemImages[i] = context.intern(mutableCharArray);
+                    stemImages[i] = intern(context, mutableCharArray);
                 else
                     stemImages[i] = word;
             }
         }
+    }
 
-        addStemStatistics(context, stemImages, prepareQueryWords(context.query, stemmer));
+    private static char [] intern(PreprocessingContext context, MutableCharArray chars)
+    {
+        if (context != null)
+        {
+            return context.intern(chars);
+        }
+        return Arrays.copyOfRange(chars.getBuffer(), chars.getStart(), chars.getStart()
+            + chars.length());
     }
 
     /**
@@ -0,0 +1,106 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.source.IPageConsumer;
+import org.carrot2.source.IPageListener;
+import org.carrot2.source.MultipageSearchEngine;
+import org.carrot2.text.linguistic.DefaultTokenizerFactory;
+import org.carrot2.text.linguistic.ITokenizerFactory;
+import org.carrot2.util.annotations.ThreadSafe;
+
+/**
+ * Tokenizes documents as soon as their page is fetched by a {@link MultipageSearchEngine},
+ * so that tokenization happens while waiting for the remaining pages. Set this class as
+ * the {@link MultipageSearchEngine#pageListener} to enable this pipelined mode.
+ * <p>
+ * The tokens of each request are kept by the source's
+ * {@link MultipageSearchEngine#pageConsumer}, which is passed on to the
+ * {@link Tokenizer#pageConsumer}. The tokenizer replays the tokens if it uses the same
+ * kind of tokenizer, so the resulting {@link PreprocessingContext} is exactly the same as
+ * without pipelining. Documents are tokenized with the tokenizer of their language or,
+ * if they have no language, of {@link LanguageCode#ENGLISH}.
+ * </p>
+ * <p>
+ * Instances keep no state, so one instance can be shared by all requests. Instances with
+ * the same fields and tokenizer factory class are equal, because they lead to the same
+ * processing results.
+ * </p>
+ */
+@ThreadSafe
+public class PageTokenizer implements IPageListener
+{
+    /**
+     * Default fields to tokenize, the same as the defaults of
+     * {@link Tokenizer#documentFields}.
+     */
+    private static final List<String> DEFAULT_FIELDS = Arrays.asList(Document.TITLE,
+        Document.SUMMARY);
+
+    private final String [] documentFields;
+    private final ITokenizerFactory tokenizerFactory;
+
+    /**
+     * Tokenizes the title and summary of documents with the
+     * {@link DefaultTokenizerFactory}.
+     */
+    public PageTokenizer()
+    {
+        this(DEFAULT_FIELDS, new DefaultTokenizerFactory());
+    }
+
+    /**
+     * Tokenizes the provided fields of documents with tokenizers created by the provided
+     * factory. The fields and the factory should match those used in preprocessing.
+     */
+    public PageTokenizer(Collection<String> documentFields,
+        ITokenizerFactory tokenizerFactory)
+    {
+        this.documentFields = documentFields.toArray(new String [documentFields.size()]);
+        this.tokenizerFactory = tokenizerFactory;
+    }
+
+    public IPageConsumer requestStarted()
+    {
+        return new PretokenizedFields(documentFields, tokenizerFactory);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == this)
+        {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass())
+        {
+            return false;
+        }
+        final PageTokenizer other = (PageTokenizer) obj;
+        return Arrays.equals(documentFields, other.documentFields)
+            && tokenizerFactory.getClass() == other.tokenizerFactory.getClass();
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Arrays.hashCode(documentFields) * 31
+            + tokenizerFactory.getClass().hashCode();
+    }
+}
@@ -0,0 +1,202 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.carrot2.core.ProcessingCancelledException;
+import org.carrot2.core.ProcessingException;
+import org.carrot2.util.ExecutorServiceUtils;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Utilities for running preprocessing steps on slices of the input in parallel. Each step
+ * merges the results of slices in their order, so that the output does not depend on the
+ * number of threads.
+ */
+final class ParallelPreprocessing
+{
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /** Idle executor threads exit after this time */
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    /** Executor shared by all requests, created on first use */
+    private static volatile ExecutorService executor;
+
+    private ParallelPreprocessing()
+    {
+        // no instances.
+    }
+
+    /**
+     * Splits <code>count</code> elements into at most <code>maxSlices</code> contiguous
+     * slices of at least <code>minSliceSize</code> elements (except when there are fewer
+     * elements in total).
+     * 
+     * @return slice boundaries, slice <code>i</code> spans elements from
+     *         <code>bounds[i]</code> (inclusive) to <code>bounds[i + 1]</code>
+     *         (exclusive)
+     */
+    static int [] slices(int count, int maxSlices, int minSliceSize)
+    {
+        final int slices = Math.max(1, Math.min(maxSlices, count / minSliceSize));
+        final int [] bounds = new int [slices + 1];
+        for (int i = 0; i <= slices; i++)
+        {
+            bounds[i] = (int) ((long) count * i / slices);
+        }
+        return bounds;
+    }
+
+    /**
+     * Runs the provided tasks, the first one on the calling thread and the others on the
+     * executor shared by all requests. The executor runs at most as many tasks at a time
+     * as there are processors, so the total parallelism does not grow with the number of
+     * concurrent requests. Tasks the executor has not started by the time the calling
+     * thread finishes its own are run on the calling thread, so that a busy executor
+     * does not delay the request.
+     * 
+     * @return results of the tasks, in the order of the tasks
+     * @throws ProcessingCancelledException if the calling thread was interrupted
+     */
+    static <T> List<T> invokeAll(List<? extends Callable<T>> tasks)
+    {
+        final List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+        if (tasks.size() == 1)
+        {
+            results.add(call(tasks.get(0)));
+            return results;
+        }
+
+        final ExecutorService executor = getExecutor();
+        final List<ClaimedTask<T>> claimed = Lists.newArrayList();
+        final List<Future<T>> futures = Lists.newArrayList();
+        try
+        {
+            for (Callable<T> task : tasks.subList(1, tasks.size()))
+            {
+                final ClaimedTask<T> claimedTask = new ClaimedTask<T>(task);
+                claimed.add(claimedTask);
+                futures.add(executor.submit(claimedTask));
+            }
+
+            results.add(call(tasks.get(0)));
+            for (int i = 0; i < claimed.size(); i++)
+            {
+                final ClaimedTask<T> task = claimed.get(i);
+                if (task.claim())
+                {
+                    results.add(call(task.task));
+                }
+                else
+                {
+                    results.add(futures.get(i).get());
+                }
+            }
+            return results;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ProcessingCancelledException(
+                "Interrupted while waiting for preprocessing", e);
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ProcessingException(cause);
+        }
+        finally
+        {
+            for (ClaimedTask<T> task : claimed)
+            {
+                task.claim();
+            }
+            for (Future<T> future : futures)
+            {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * A task run either by the executor or by the calling thread, whichever claims it
+     * first.
+     */
+    private static final class ClaimedTask<T> implements Callable<T>
+    {
+        final Callable<T> task;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        ClaimedTask(Callable<T> task)
+        {
+            this.task = task;
+        }
+
+        boolean claim()
+        {
+            return claimed.compareAndSet(false, true);
+        }
+
+        public T call() throws Exception
+        {
+            // The calling thread runs the task and ignores this result.
+            return claim() ? task.call() : null;
+        }
+    }
+
+    private static ExecutorService getExecutor()
+    {
+        ExecutorService result = executor;
+        if (result == null)
+        {
+            synchronized (ParallelPreprocessing.class)
+            {
+                result = executor;
+                if (result == null)
+                {
+                    executor = result = ExecutorServiceUtils.createExecutorService(
+                        PARALLELISM, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                        ParallelPreprocessing.class);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static <T> T call(Callable<T> task)
+    {
+        try
+        {
+            return task.call();
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new ProcessingException(e);
+        }
+    }
+}
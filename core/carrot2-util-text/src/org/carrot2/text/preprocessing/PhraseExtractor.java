@@ -12,19 +12,18 @@
 
 package org.carrot2.text.preprocessing;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 
 import org.carrot2.core.attribute.Processing;
 import org.carrot2.text.preprocessing.PreprocessingContext.AllPhrases;
 import org.carrot2.text.preprocessing.PreprocessingContext.AllTokens;
-import org.carrot2.util.IntMapUtils;
 import org.carrot2.util.attribute.*;
 import org.carrot2.util.attribute.constraint.IntRange;
 
 import com.carrotsearch.hppc.IntArrayList;
-import com.carrotsearch.hppc.IntIntOpenHashMap;
-import com.carrotsearch.hppc.cursors.IntIntCursor;
+import com.carrotsearch.hppc.sorting.IndirectComparator;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.google.common.collect.Lists;
 
 /**
@@ -90,70 +89,60 @@ public class PhraseExtractor
         final int [] documentIndexArray = context.allTokens.documentIndex;
         final int [] stemIndexes = context.allWords.stemIndex;
 
+        final DocumentCounter documentCounter = new DocumentCounter(
+            context.documents.size());
+
         // Find all subphrases
-        List<Substring> rcs = discoverRcs(suffixArray, lcpArray, documentIndexArray);
+        final Rcs rcs = discoverRcs(suffixArray, lcpArray, documentIndexArray,
+            documentCounter);
 
-        List<int []> phraseWordIndexes = Lists.newArrayList();
-        IntArrayList phraseTf = new IntArrayList();
-        List<int []> phraseTfByDocumentList = Lists.newArrayList();
+        final List<int []> phraseWordIndexes = Lists.newArrayList();
+        final IntArrayList phraseTf = new IntArrayList();
+        final List<int []> phraseTfByDocumentList = Lists.newArrayList();
 
         if (rcs.size() > 0)
         {
             // Determine most frequent originals and create the final phrase
-            // array. Also merge the phrase tf by document maps into flat
-            // arrays.
-            Collections.sort(rcs, new SubstringComparator(wordIndexesArray, stemIndexes));
-
-            int totalPhraseTf = rcs.get(0).frequency;
-            Substring mostFrequentOriginal = rcs.get(0);
-            IntIntOpenHashMap phraseTfByDocument = new IntIntOpenHashMap();
-            phraseTfByDocument.putAll(mostFrequentOriginal.tfByDocument);
-
-            // Don't change the rcs list type from ArrayList or we'll
-            // run into O(n^2) iteration cost :)
-            for (int i = 0; i < rcs.size() - 1; i++)
+            // array. Also merge the phrase tf by document counts into flat
+            // arrays. The sort is stable, so the order of variants of the same
+            // phrase is the order of their discovery.
+            final int [] order = IndirectSort.mergesort(0, rcs.size(), new RcsComparator(
+                rcs, wordIndexesArray, stemIndexes));
+
+            int groupStart = 0;
+            for (int i = 1; i <= order.length; i++)
             {
-                final Substring substring = rcs.get(i);
-                final Substring nextSubstring = rcs.get(i + 1);
-
-                if (substring
-                    .isEquivalentTo(nextSubstring, wordIndexesArray, stemIndexes))
+                if (i < order.length
+                    && rcs.isEquivalent(order[i - 1], order[i], wordIndexesArray,
+                        stemIndexes))
                 {
-                    totalPhraseTf += nextSubstring.frequency;
-                    addAllWithOffset(phraseTfByDocument, nextSubstring.tfByDocument, -1);
-                    if (mostFrequentOriginal.frequency < nextSubstring.frequency)
-                    {
-                        mostFrequentOriginal = nextSubstring;
-                    }
+                    continue;
                 }
-                else
+
+                // Phrases from groupStart to i are variants of the same phrase.
+                int totalPhraseTf = 0;
+                int mostFrequentOriginal = order[groupStart];
+                for (int j = groupStart; j < i; j++)
                 {
-                    int [] wordIndexes = new int [(mostFrequentOriginal.to - mostFrequentOriginal.from)];
-                    for (int j = 0; j < wordIndexes.length; j++)
+                    final int variant = order[j];
+                    totalPhraseTf += rcs.frequency(variant);
+                    if (rcs.frequency(mostFrequentOriginal) < rcs.frequency(variant))
                     {
-                        wordIndexes[j] = wordIndexesArray[mostFrequentOriginal.from + j];
+                        mostFrequentOriginal = variant;
                     }
-                    phraseWordIndexes.add(wordIndexes);
-                    phraseTf.add(totalPhraseTf);
-                    phraseTfByDocumentList.add(IntMapUtils.flatten(phraseTfByDocument));
-
-                    totalPhraseTf = nextSubstring.frequency;
-                    mostFrequentOriginal = nextSubstring;
-                    phraseTfByDocument.clear();
-                    phraseTfByDocument.putAll(nextSubstring.tfByDocument);
+                    documentCounter.addAll(suffixArray, documentIndexArray,
+                        rcs.lb.get(variant), rcs.rb.get(variant));
                 }
-            }
 
-            // Add the last substring
-            final Substring substring = rcs.get(rcs.size() - 1);
-            int [] wordIndexes = new int [(substring.to - substring.from)];
-            for (int j = 0; j < wordIndexes.length; j++)
-            {
-                wordIndexes[j] = wordIndexesArray[mostFrequentOriginal.from + j];
+                final int from = rcs.from.get(mostFrequentOriginal);
+                final int [] wordIndexes = new int [rcs.length.get(mostFrequentOriginal)];
+                System.arraycopy(wordIndexesArray, from, wordIndexes, 0, wordIndexes.length);
+                phraseWordIndexes.add(wordIndexes);
+                phraseTf.add(totalPhraseTf);
+                phraseTfByDocumentList.add(documentCounter.flattenAndClear());
+
+                groupStart = i;
             }
-            phraseWordIndexes.add(wordIndexes);
-            phraseTf.add(totalPhraseTf);
-            phraseTfByDocumentList.add(IntMapUtils.flatten(phraseTfByDocument));
         }
 
         // Store the results to allPhrases
@@ -166,164 +155,230 @@ public class PhraseExtractor
 
     /**
      * Discovers Right Complete Substrings in the given LCP Suffix Array.
+     * <p>
+     * Each substring on the stack corresponds to a range of the suffix array, from the
+     * suffix preceding the one at which it was pushed to the suffix preceding the one at
+     * which it was popped. Its frequency is the size of this range, its tf by document is
+     * counted from the range when needed, so no per-substring data is kept.
      */
-    private List<Substring> discoverRcs(int [] suffixArray, int [] lcpArray,
-        int [] documentIndexArray)
+    private Rcs discoverRcs(int [] suffixArray, int [] lcpArray,
+        int [] documentIndexArray, DocumentCounter documentCounter)
     {
-        Substring [] rcsStack;
-        int sp;
-
-        int i;
-        rcsStack = new Substring [lcpArray.length];
-        sp = -1;
+        // Lengths of phrases on the stack are increasing, so the stack is shallow.
+        final int [] stackFrom = new int [MAX_PHRASE_LENGTH];
+        final int [] stackLength = new int [MAX_PHRASE_LENGTH];
+        final int [] stackLb = new int [MAX_PHRASE_LENGTH];
+        int sp = -1;
 
-        i = 1;
+        int i = 1;
 
-        final List<Substring> result = Lists.newArrayList();
+        final Rcs result = new Rcs();
         while (i < lcpArray.length - 1)
         {
             final int currentSuffixIndex = suffixArray[i];
-            final int currentDocumentIndex = documentIndexArray[currentSuffixIndex];
             final int currentLcp = Math.min(MAX_PHRASE_LENGTH, lcpArray[i]);
 
-            if (sp < 0)
+            if (sp < 0 || stackLength[sp] < currentLcp)
             {
-                if (currentLcp >= MIN_PHRASE_LENGTH)
+                // Push phrases of length from MIN_PHRASE_LENGTH (or the length of
+                // the topmost phrase, which the new phrases extend) to currentLcp.
+                for (int length = Math.max(MIN_PHRASE_LENGTH,
+                    sp < 0 ? 0 : stackLength[sp] + 1); length <= currentLcp; length++)
                 {
-                    // Push to the stack phrases of length 2..currentLcp. Only the 
-                    // topmost phrase will get its frequencies incremented, the other
-                    // ones will "inherit" the counts when the topmost phrase is 
-                    // popped off the stack.
-                    final int length = currentLcp;
-                    for (int j = length - 2; j >= 0; j--)
-                    {
-                        sp++;
-
-                        // Set initial tf = 2 for the topmost phrase. For the other phrases,
-                        // set tf = 1. During popping of the topmost phrase, the phrase lying
-                        // "below" on the stack, will get its tf increased by the tf of 
-                        // the phrase being popped, minus 1.
-                        rcsStack[sp] = new Substring(i, currentSuffixIndex,
-                            currentSuffixIndex + currentLcp - j, (j == 0 ? 2 : 1));
-
-                        // By document tf. Again, topmost phrase gets tf = 2, the other
-                        // ones get tf = 1. This time, we need to track from which document's
-                        // tf we need to set off the "minus 1", hence the documentIndexToOffset field.
-                        rcsStack[sp].tfByDocument = new IntIntOpenHashMap();
-                        rcsStack[sp].tfByDocument.put(
-                            documentIndexArray[suffixArray[i - 1]], 1);
-                        if (j == 0)
-                        {
-                            rcsStack[sp].tfByDocument.putOrAdd(currentDocumentIndex,
-                                1, 1);
-                        }
-                        else
-                        {
-                            rcsStack[sp].documentIndexToOffset = documentIndexArray[suffixArray[i - 1]];
-                        }
-                    }
+                    sp++;
+                    stackFrom[sp] = currentSuffixIndex;
+                    stackLength[sp] = length;
+                    stackLb[sp] = i - 1;
                 }
 
                 i++;
             }
+            else if (stackLength[sp] == currentLcp)
+            {
+                // Extend the range of the generalized phrase
+                i++;
+            }
             else
             {
-                Substring r = rcsStack[sp];
-                if ((r.to - r.from) < currentLcp)
+                // Pop generalized phrases off the stack
+                do
                 {
-                    Substring r1 = rcsStack[sp];
-
-                    // The phrase we're about to add is an extension of the topmost
-                    // phrase on the stack. The new phrase will contribute to the 
-                    // topmost phrase's tf, so we need to track the document index
-                    // from which we'd set off the "minus 1".
-                    r1.documentIndexToOffset = documentIndexArray[suffixArray[i - 1]];
-
-                    // Add the intermediate phrases too (which makes
-                    // the algorithm no longer linear btw)
-                    int length = currentLcp - (r1.to - r1.from);
-                    for (int j = length - 1; j >= 0; j--)
+                    final int lb = stackLb[sp];
+                    final int rb = i - 1;
+                    if (dfThreshold <= 1
+                        || documentCounter.countDistinct(suffixArray, documentIndexArray,
+                            lb, rb) >= dfThreshold)
                     {
-                        if (currentLcp - j >= MIN_PHRASE_LENGTH)
-                        {
-                            sp++;
-                            rcsStack[sp] = new Substring(i, currentSuffixIndex,
-                                currentSuffixIndex + currentLcp - j, (j == 0 ? 2 : 1));
-
-                            rcsStack[sp].tfByDocument = new IntIntOpenHashMap();
-                            rcsStack[sp].tfByDocument.put(
-                                documentIndexArray[suffixArray[i - 1]], 1);
-                            if (j == 0)
-                            {
-                                rcsStack[sp].tfByDocument.putOrAdd(currentDocumentIndex,
-                                    1, 1);
-                            }
-                            else
-                            {
-                                rcsStack[sp].documentIndexToOffset = documentIndexArray[suffixArray[i - 1]];
-                            }
-                        }
+                        // Add the generalized phrase to the result
+                        result.add(stackFrom[sp], stackLength[sp], lb, rb);
                     }
-
-                    i++;
+                    sp--;
                 }
-                else
-                {
-                    Substring r1 = rcsStack[sp];
-                    if ((r1.to - r1.from) == currentLcp)
-                    {
-                        // Increase the frequency of the generalized phrase
-                        rcsStack[sp].frequency += 1;
-                        rcsStack[sp].tfByDocument.putOrAdd(currentDocumentIndex, 1, 1);
+                while (sp >= 0 && stackLength[sp] > currentLcp);
+            }
+        }
 
-                        i++;
-                    }
-                    else
-                    {
-                        Substring s;
-
-                        // Pop generalized phrases off the stack
-                        do
-                        {
-                            if (rcsStack[sp].tfByDocument.size() >= dfThreshold)
-                            {
-                                // Add the generalized phrase to the result
-                                result.add(rcsStack[sp]);
-                            }
-
-                            s = rcsStack[sp];
-                            sp--;
-
-                            // As we update only the frequency of the stack's
-                            // topmost substring we need to propagate the
-                            // accumulated frequencies to the shorter
-                            // substrings
-                            if (sp >= 0)
-                            {
-                                // The "minus 1" mentioned above.
-                                rcsStack[sp].frequency += s.frequency - 1;
-                                addAllWithOffset(rcsStack[sp].tfByDocument,
-                                    s.tfByDocument, rcsStack[sp].documentIndexToOffset);
-                            }
-                        }
-                        while (sp >= 0
-                            && (rcsStack[sp].to - rcsStack[sp].from) > currentLcp);
-                    }
+        return result;
+    }
+
+    /**
+     * Right Complete Substrings, stored in parallel arrays.
+     */
+    private static final class Rcs
+    {
+        /** Start position of each substring in the tokens */
+        final IntArrayList from = new IntArrayList();
+
+        /** Length of each substring */
+        final IntArrayList length = new IntArrayList();
+
+        /** First index of each substring's occurrences in the suffix array */
+        final IntArrayList lb = new IntArrayList();
+
+        /** Last index (inclusive) of each substring's occurrences in the suffix array */
+        final IntArrayList rb = new IntArrayList();
+
+        void add(int from, int length, int lb, int rb)
+        {
+            this.from.add(from);
+            this.length.add(length);
+            this.lb.add(lb);
+            this.rb.add(rb);
+        }
+
+        int size()
+        {
+            return from.size();
+        }
+
+        int frequency(int index)
+        {
+            return rb.get(index) - lb.get(index) + 1;
+        }
+
+        /**
+         * Compares substrings in an inflection-insensitive way: by length, then by stems
+         * of words.
+         */
+        int compare(int a, int b, int [] tokensWordIndex, int [] wordsStemIndex)
+        {
+            final int aLength = length.get(a);
+            final int bLength = length.get(b);
+            if (aLength != bLength)
+            {
+                return aLength - bLength;
+            }
+
+            final int aFrom = from.get(a);
+            final int bFrom = from.get(b);
+            for (int i = 0; i < aLength; i++)
+            {
+                final int stemIndex1 = wordsStemIndex[tokensWordIndex[aFrom + i]];
+                final int stemIndex2 = wordsStemIndex[tokensWordIndex[bFrom + i]];
+                if (stemIndex1 != stemIndex2)
+                {
+                    return stemIndex1 - stemIndex2;
                 }
             }
+            return 0;
         }
 
-        return result;
+        boolean isEquivalent(int a, int b, int [] tokensWordIndex, int [] wordsStemIndex)
+        {
+            return compare(a, b, tokensWordIndex, wordsStemIndex) == 0;
+        }
     }
 
-    private static void addAllWithOffset(IntIntOpenHashMap dest, IntIntOpenHashMap src,
-        int documentIndexToOffset)
+    /**
+     * Orders {@link Rcs} so that different inflection variants of the same phrase are
+     * next to each other.
+     */
+    private static final class RcsComparator implements IndirectComparator
+    {
+        private final Rcs rcs;
+        private final int [] tokensWordIndex;
+        private final int [] wordsStemIndex;
+
+        RcsComparator(Rcs rcs, int [] tokensWordIndex, int [] wordsStemIndex)
+        {
+            this.rcs = rcs;
+            this.tokensWordIndex = tokensWordIndex;
+            this.wordsStemIndex = wordsStemIndex;
+        }
+
+        public int compare(int a, int b)
+        {
+            return rcs.compare(a, b, tokensWordIndex, wordsStemIndex);
+        }
+    }
+
+    /**
+     * Counts term frequencies by document in a dense array, reused for all phrases.
+     */
+    private static final class DocumentCounter
     {
-        for (IntIntCursor c : src)
+        private final int [] counts;
+        private final IntArrayList documents = new IntArrayList();
+
+        DocumentCounter(int documentCount)
+        {
+            this.counts = new int [documentCount];
+        }
+
+        /**
+         * Adds documents of suffixes from <code>lb</code> to <code>rb</code>
+         * (inclusive).
+         */
+        void addAll(int [] suffixArray, int [] documentIndexArray, int lb, int rb)
+        {
+            for (int k = lb; k <= rb; k++)
+            {
+                final int document = documentIndexArray[suffixArray[k]];
+                if (counts[document]++ == 0)
+                {
+                    documents.add(document);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of distinct documents of suffixes from <code>lb</code> to
+         * <code>rb</code> (inclusive).
+         */
+        int countDistinct(int [] suffixArray, int [] documentIndexArray, int lb, int rb)
         {
-            final int key = c.key;
-            final int value = c.value + (key != documentIndexToOffset ? 0 : -1);
-            dest.putOrAdd(key, value, value);
+            addAll(suffixArray, documentIndexArray, lb, rb);
+            final int distinct = documents.size();
+            clear();
+            return distinct;
+        }
+
+        /**
+         * Returns the counts as [document, tf] pairs sorted by document and clears the
+         * counts.
+         */
+        int [] flattenAndClear()
+        {
+            final int [] documentsArray = documents.toArray();
+            Arrays.sort(documentsArray);
+            final int [] result = new int [documentsArray.length * 2];
+            for (int i = 0; i < documentsArray.length; i++)
+            {
+                result[i * 2] = documentsArray[i];
+                result[i * 2 + 1] = counts[documentsArray[i]];
+            }
+            clear();
+            return result;
+        }
+
+        private void clear()
+        {
+            final int [] buffer = documents.buffer;
+            for (int i = documents.size() - 1; i >= 0; i--)
+            {
+                counts[buffer[i]] = 0;
+            }
+            documents.clear();
         }
     }
 }
@@ -52,16 +52,34 @@ public final class PreprocessingContext
      */
     private ObjectOpenHashSet<MutableCharArray> tokenCache = ObjectOpenHashSet.newInstance();
 
+    /**
+     * Term dictionary shared with other contexts, may be <code>null</code>. Provides
+     * canonical buffers for tokens missing in {@link #tokenCache}.
+     */
+    private final TermDictionary termDictionary;
+
     /**
      * Creates a preprocessing context for the provided <code>documents</code> and with
      * the provided <code>languageModel</code>.
      */
     public PreprocessingContext(LanguageModel languageModel, List<Document> documents,
         String query)
+    {
+        this(languageModel, documents, query, null);
+    }
+
+    /**
+     * Creates a preprocessing context for the provided <code>documents</code> and with
+     * the provided <code>languageModel</code>. Token images will be interned in the
+     * provided <code>termDictionary</code>, if not <code>null</code>.
+     */
+    public PreprocessingContext(LanguageModel languageModel, List<Document> documents,
+        String query, TermDictionary termDictionary)
     {
         this.query = query;
         this.documents = documents;
         this.language = languageModel;
+        this.termDictionary = termDictionary;
     }
 
     /**
@@ -744,7 +762,9 @@ public final class PreprocessingContext
     }
 
     /**
-     * Return a unique char buffer representing a given character sequence.
+     * Return a unique char buffer representing a given character sequence. Buffers are
+     * unique within this context, even if the shared {@link TermDictionary} evicts terms
+     * in the meantime.
      */
     public char [] intern(MutableCharArray chs)
     {
@@ -754,10 +774,26 @@ public final class PreprocessingContext
         }
         else
         {
-            final char [] tokenImage = new char [chs.length()];
-            System.arraycopy(chs.getBuffer(), chs.getStart(), tokenImage, 0, chs.length());
+            final char [] tokenImage;
+            if (termDictionary != null)
+            {
+                tokenImage = termDictionary.intern(chs);
+            }
+            else
+            {
+                tokenImage = new char [chs.length()];
+                System.arraycopy(chs.getBuffer(), chs.getStart(), tokenImage, 0, chs.length());
+            }
             tokenCache.add(new MutableCharArray(tokenImage));
             return tokenImage;
         }
     }
+
+    /**
+     * Returns the shared term dictionary used by this context or <code>null</code>.
+     */
+    public TermDictionary getTermDictionary()
+    {
+        return termDictionary;
+    }
 }
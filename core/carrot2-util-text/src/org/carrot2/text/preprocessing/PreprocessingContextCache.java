@@ -0,0 +1,543 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.core.ProcessingCancelledException;
+import org.carrot2.util.CancellationToken;
+import org.carrot2.util.attribute.AttributeBinder;
+import org.carrot2.util.attribute.AttributeBindingException;
+import org.carrot2.util.attribute.Bindable;
+import org.carrot2.util.attribute.Input;
+
+import com.carrotsearch.hppc.BitSet;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+
+/**
+ * Shares the results of preprocessing stages among preprocessing pipelines processing the
+ * same documents, for example several clustering algorithms run on one search result.
+ * Results are published in two steps:
+ * <ul>
+ * <li>basic stages (tokenization, case normalization, stemming, stop word marking),
+ * keyed by the documents, the query (stemming marks query words), the language and the
+ * settings of these stages,</li>
+ * <li>complete stages (phrase extraction, label filtering, document assignment), keyed
+ * additionally by the settings of these stages.</li>
+ * </ul>
+ * Documents are compared by identity. Pipelines requesting results being computed by
+ * another thread wait for them instead of computing them again, unless their own request
+ * gets cancelled. If the other thread fails to compute the results, for example because
+ * its request was cancelled, a waiting pipeline computes them on its own. The arrays of
+ * a published context are shared with contexts that reuse them and must not be modified,
+ * except for {@link PreprocessingContext.AllLabels#documentIndices}, which are copied for
+ * each context.
+ * <p>
+ * The cache holds a bounded number of recently used results of each kind.
+ */
+public final class PreprocessingContextCache
+{
+    /** Default maximum number of results of each kind. */
+    public static final int DEFAULT_MAXIMUM_SIZE = 16;
+
+    /** Results not used for this many seconds are evicted. */
+    private static final int EXPIRE_AFTER_ACCESS_SECONDS = 60;
+
+    /** The process-wide cache. */
+    private static volatile PreprocessingContextCache shared;
+
+    /** Interval of checking cancellation while waiting for results. */
+    private static final long CHECK_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Cache<Object, BasicResults> basicResults;
+    private final Cache<Object, CompleteResults> completeResults;
+
+    /** Latches released when results being computed are published (or not). */
+    private final ConcurrentMap<Object, CountDownLatch> basicLoading = Maps
+        .newConcurrentMap();
+    private final ConcurrentMap<Object, CountDownLatch> completeLoading = Maps
+        .newConcurrentMap();
+
+    /** The number of times the stages were run to publish their results. */
+    private final AtomicLong basicLoads = new AtomicLong();
+    private final AtomicLong completeLoads = new AtomicLong();
+
+    /**
+     * Results of the basic preprocessing stages.
+     */
+    private static final class BasicResults
+    {
+        final char [][] tokenImage;
+        final short [] tokenType;
+        final byte [] tokenFieldIndex;
+        final int [] tokenDocumentIndex;
+        final int [] tokenWordIndex;
+
+        final String [] fieldName;
+
+        final char [][] wordImage;
+        final short [] wordType;
+        final int [] wordTf;
+        final int [][] wordTfByDocument;
+        final int [] wordStemIndex;
+        final byte [] wordFieldIndices;
+
+        final char [][] stemImage;
+        final int [] stemMostFrequentOriginalWordIndex;
+        final int [] stemTf;
+        final int [][] stemTfByDocument;
+        final byte [] stemFieldIndices;
+
+        BasicResults(PreprocessingContext context)
+        {
+            tokenImage = context.allTokens.image;
+            tokenType = context.allTokens.type;
+            tokenFieldIndex = context.allTokens.fieldIndex;
+            tokenDocumentIndex = context.allTokens.documentIndex;
+            tokenWordIndex = context.allTokens.wordIndex;
+
+            fieldName = context.allFields.name;
+
+            wordImage = context.allWords.image;
+            wordType = context.allWords.type;
+            wordTf = context.allWords.tf;
+            wordTfByDocument = context.allWords.tfByDocument;
+            wordStemIndex = context.allWords.stemIndex;
+            wordFieldIndices = context.allWords.fieldIndices;
+
+            stemImage = context.allStems.image;
+            stemMostFrequentOriginalWordIndex = context.allStems.mostFrequentOriginalWordIndex;
+            stemTf = context.allStems.tf;
+            stemTfByDocument = context.allStems.tfByDocument;
+            stemFieldIndices = context.allStems.fieldIndices;
+        }
+
+        void copyTo(PreprocessingContext context)
+        {
+            context.allTokens.image = tokenImage;
+            context.allTokens.type = tokenType;
+            context.allTokens.fieldIndex = tokenFieldIndex;
+            context.allTokens.documentIndex = tokenDocumentIndex;
+            context.allTokens.wordIndex = tokenWordIndex;
+
+            context.allFields.name = fieldName;
+
+            context.allWords.image = wordImage;
+            context.allWords.type = wordType;
+            context.allWords.tf = wordTf;
+            context.allWords.tfByDocument = wordTfByDocument;
+            context.allWords.stemIndex = wordStemIndex;
+            context.allWords.fieldIndices = wordFieldIndices;
+
+            context.allStems.image = stemImage;
+            context.allStems.mostFrequentOriginalWordIndex = stemMostFrequentOriginalWordIndex;
+            context.allStems.tf = stemTf;
+            context.allStems.tfByDocument = stemTfByDocument;
+            context.allStems.fieldIndices = stemFieldIndices;
+        }
+    }
+
+    /**
+     * Results of the complete preprocessing stages, along with the basic ones.
+     */
+    private static final class CompleteResults
+    {
+        final BasicResults basic;
+
+        final int [] tokenSuffixOrder;
+        final int [] tokenLcp;
+
+        final int [][] phraseWordIndices;
+        final int [] phraseTf;
+        final int [][] phraseTfByDocument;
+
+        final int [] labelFeatureIndex;
+        final BitSet [] labelDocumentIndices;
+        final int labelFirstPhraseIndex;
+
+        CompleteResults(PreprocessingContext context)
+        {
+            basic = new BasicResults(context);
+
+            tokenSuffixOrder = context.allTokens.suffixOrder;
+            tokenLcp = context.allTokens.lcp;
+
+            phraseWordIndices = context.allPhrases.wordIndices;
+            phraseTf = context.allPhrases.tf;
+            phraseTfByDocument = context.allPhrases.tfByDocument;
+
+            labelFeatureIndex = context.allLabels.featureIndex;
+            labelDocumentIndices = copy(context.allLabels.documentIndices);
+            labelFirstPhraseIndex = context.allLabels.firstPhraseIndex;
+        }
+
+        void copyTo(PreprocessingContext context)
+        {
+            basic.copyTo(context);
+
+            context.allTokens.suffixOrder = tokenSuffixOrder;
+            context.allTokens.lcp = tokenLcp;
+
+            context.allPhrases.wordIndices = phraseWordIndices;
+            context.allPhrases.tf = phraseTf;
+            context.allPhrases.tfByDocument = phraseTfByDocument;
+
+            context.allLabels.featureIndex = labelFeatureIndex;
+            context.allLabels.documentIndices = copy(labelDocumentIndices);
+            context.allLabels.firstPhraseIndex = labelFirstPhraseIndex;
+        }
+
+        /**
+         * Clustering algorithms may modify label document sets, copy them.
+         */
+        private static BitSet [] copy(BitSet [] sets)
+        {
+            if (sets == null)
+            {
+                return null;
+            }
+
+            final BitSet [] copy = new BitSet [sets.length];
+            for (int i = 0; i < sets.length; i++)
+            {
+                copy[i] = (sets[i] != null ? (BitSet) sets[i].clone() : null);
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * Documents compared by identity.
+     */
+    private static final class DocumentsKey
+    {
+        private final Document [] documents;
+        private final int hash;
+
+        DocumentsKey(List<Document> documents)
+        {
+            this.documents = documents.toArray(new Document [documents.size()]);
+
+            int hash = 0;
+            for (Document document : this.documents)
+            {
+                hash = hash * 31 + System.identityHashCode(document);
+            }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof DocumentsKey)
+            {
+                final Document [] other = ((DocumentsKey) obj).documents;
+                if (other.length != documents.length)
+                {
+                    return false;
+                }
+                for (int i = 0; i < documents.length; i++)
+                {
+                    if (documents[i] != other[i])
+                    {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * Creates a cache holding at most <code>maximumSize</code> results of each kind.
+     */
+    public PreprocessingContextCache(int maximumSize)
+    {
+        this.basicResults = CacheBuilder.newBuilder().maximumSize(maximumSize)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS_SECONDS, TimeUnit.SECONDS).recordStats()
+            .build();
+        this.completeResults = CacheBuilder.newBuilder().maximumSize(maximumSize)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS_SECONDS, TimeUnit.SECONDS).recordStats()
+            .build();
+    }
+
+    /**
+     * Returns the process-wide cache, creating it if necessary.
+     */
+    public static PreprocessingContextCache getShared()
+    {
+        PreprocessingContextCache cache = shared;
+        if (cache == null)
+        {
+            synchronized (PreprocessingContextCache.class)
+            {
+                cache = shared;
+                if (cache == null)
+                {
+                    shared = cache = new PreprocessingContextCache(DEFAULT_MAXIMUM_SIZE);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Returns a key of the results of the basic stages for the provided documents, query
+     * and language. <code>components</code> are the objects carrying attributes of the
+     * stages, see {@link #settings(Object...)}.
+     */
+    public static Object basicKey(List<Document> documents, String query,
+        LanguageCode language, Object... components)
+    {
+        return Arrays.asList(new DocumentsKey(documents), query, language,
+            settings(components));
+    }
+
+    /**
+     * Returns a key of the results of the complete stages, following the basic stages
+     * identified by <code>basicKey</code>.
+     */
+    public static Object completeKey(Object basicKey, Object... components)
+    {
+        return Arrays.asList(basicKey, settings(components));
+    }
+
+    /**
+     * Returns values of all {@link Input} attributes of the provided objects. Values
+     * that are {@link Bindable} themselves are replaced with their classes, their
+     * attributes are included in the returned map. Non-bindable objects (for example
+     * custom factories) are included as they are, so they match only themselves, unless
+     * they implement {@link Object#equals(Object)}.
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> settings(Object... objects)
+    {
+        final Map<String, Object> values = Maps.newHashMap();
+        final Map<String, Object> settings = Maps.newHashMap();
+        for (int i = 0; i < objects.length; i++)
+        {
+            final Object object = objects[i];
+            if (object == null || object.getClass().getAnnotation(Bindable.class) == null)
+            {
+                settings.put("#" + i, object);
+                continue;
+            }
+
+            settings.put("#" + i, object.getClass());
+            try
+            {
+                AttributeBinder.get(object, values, Input.class);
+            }
+            catch (InstantiationException e)
+            {
+                throw Throwables.propagate(e);
+            }
+            catch (AttributeBindingException e)
+            {
+                throw Throwables.propagate(e);
+            }
+        }
+
+        for (Map.Entry<String, Object> e : values.entrySet())
+        {
+            final Object value = e.getValue();
+            settings.put(e.getKey(), value != null
+                && value.getClass().getAnnotation(Bindable.class) != null ? value.getClass()
+                : value);
+        }
+        return settings;
+    }
+
+    /**
+     * Fills the provided context with the results of the basic stages identified by
+     * <code>key</code>. If not available, the results are computed on the provided
+     * context by running <code>stages</code> and published.
+     */
+    public void basic(Object key, PreprocessingContext context, Runnable stages)
+    {
+        final BasicResults results = acquire(basicResults, basicLoading, key);
+        if (results != null)
+        {
+            results.copyTo(context);
+            return;
+        }
+
+        try
+        {
+            stages.run();
+            basicResults.put(key, new BasicResults(context));
+            basicLoads.incrementAndGet();
+        }
+        finally
+        {
+            release(basicLoading, key);
+        }
+    }
+
+    /**
+     * Fills the provided context with the results of the complete stages identified by
+     * <code>key</code>. If not available, the results are computed on the provided
+     * context by running <code>stages</code> and published.
+     */
+    public void complete(Object key, PreprocessingContext context, Runnable stages)
+    {
+        final CompleteResults results = acquire(completeResults, completeLoading, key);
+        if (results != null)
+        {
+            results.copyTo(context);
+            return;
+        }
+
+        try
+        {
+            stages.run();
+            completeResults.put(key, new CompleteResults(context));
+            completeLoads.incrementAndGet();
+        }
+        finally
+        {
+            release(completeLoading, key);
+        }
+    }
+
+    /**
+     * Returns the published results identified by <code>key</code>, waiting for them if
+     * another thread is computing them. Returns <code>null</code> if the results are not
+     * available and the calling thread should compute them, in which case
+     * {@link #release(ConcurrentMap, Object)} must be called once the results are
+     * published or computing them failed. If the other thread fails to publish the
+     * results, for example because its request was cancelled, the calling thread
+     * computes them instead.
+     * 
+     * @throws CancellationException if the token bound to the calling thread (see
+     *             {@link CancellationToken#current()}) gets cancelled while waiting
+     */
+    private static <V> V acquire(Cache<Object, V> cache,
+        ConcurrentMap<Object, CountDownLatch> loading, Object key)
+    {
+        V results = cache.getIfPresent(key);
+        while (results == null)
+        {
+            final CountDownLatch latch = new CountDownLatch(1);
+            final CountDownLatch other = loading.putIfAbsent(key, latch);
+            if (other == null)
+            {
+                // Results could have been published before we started loading.
+                results = cache.asMap().get(key);
+                if (results != null)
+                {
+                    release(loading, key);
+                }
+                return results;
+            }
+
+            await(other);
+            results = cache.asMap().get(key);
+        }
+        return results;
+    }
+
+    /**
+     * Wakes up threads waiting for the results identified by <code>key</code>.
+     */
+    private static void release(ConcurrentMap<Object, CountDownLatch> loading, Object key)
+    {
+        loading.remove(key).countDown();
+    }
+
+    /**
+     * Waits for the latch to be released, checking the token bound to the calling
+     * thread in the meantime.
+     */
+    private static void await(CountDownLatch latch)
+    {
+        final CancellationToken token = CancellationToken.current();
+        try
+        {
+            while (!latch.await(Math.min(token.remainingNanos(), CHECK_INTERVAL_NANOS),
+                TimeUnit.NANOSECONDS))
+            {
+                token.throwIfCancelled();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ProcessingCancelledException(
+                "Interrupted while waiting for preprocessing", e);
+        }
+    }
+
+    /**
+     * Returns statistics of lookups of the results of the basic stages. Loads are counted
+     * by {@link #getBasicLoadCount()}.
+     */
+    public CacheStats getBasicStats()
+    {
+        return basicResults.stats();
+    }
+
+    /**
+     * Returns statistics of lookups of the results of the complete stages. Loads are
+     * counted by {@link #getCompleteLoadCount()}.
+     */
+    public CacheStats getCompleteStats()
+    {
+        return completeResults.stats();
+    }
+
+    /**
+     * Returns the number of times the basic stages were run to publish their results.
+     */
+    public long getBasicLoadCount()
+    {
+        return basicLoads.get();
+    }
+
+    /**
+     * Returns the number of times the complete stages were run to publish their results.
+     */
+    public long getCompleteLoadCount()
+    {
+        return completeLoads.get();
+    }
+
+    /**
+     * Removes all results from this cache.
+     */
+    public void clear()
+    {
+        basicResults.invalidateAll();
+        completeResults.invalidateAll();
+    }
+}
@@ -0,0 +1,204 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
+import org.carrot2.source.IPageConsumer;
+import org.carrot2.text.analysis.ITokenizer;
+import org.carrot2.text.linguistic.ITokenizerFactory;
+import org.carrot2.text.util.MutableCharArray;
+import org.carrot2.util.CharArrayUtils;
+import org.carrot2.util.ExceptionUtils;
+
+import com.carrotsearch.hppc.ShortArrayList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Tokens of document field values tokenized by a {@link PageTokenizer} for one request.
+ * Entries are keyed by the identity of the field value string and are removed when
+ * {@link Tokenizer} takes them. {@link Tokenizer} replays an entry only if it was
+ * created with a tokenizer of the same class, so that the resulting tokens are exactly
+ * the same.
+ */
+final class PretokenizedFields implements IPageConsumer
+{
+    /**
+     * Tokens of a single field value.
+     */
+    static final class Entry
+    {
+        final Class<? extends ITokenizer> tokenizerClass;
+        final char [][] images;
+        final short [] types;
+
+        Entry(Class<? extends ITokenizer> tokenizerClass, char [][] images, short [] types)
+        {
+            this.tokenizerClass = tokenizerClass;
+            this.images = images;
+            this.types = types;
+        }
+    }
+
+    private final String [] documentFields;
+    private final ITokenizerFactory tokenizerFactory;
+
+    private final Map<String, Entry> entries = new IdentityHashMap<String, Entry>();
+
+    /** The number of entries taken for replay. */
+    private int replayed;
+
+    PretokenizedFields(String [] documentFields, ITokenizerFactory tokenizerFactory)
+    {
+        this.documentFields = documentFields;
+        this.tokenizerFactory = tokenizerFactory;
+    }
+
+    public void pageFetched(List<Document> documents)
+    {
+        // Tokenizers are not thread-safe, create them for each page.
+        final EnumMap<LanguageCode, ITokenizer> tokenizers = Maps
+            .newEnumMap(LanguageCode.class);
+        final Map<String, Entry> tokenized = Maps.newIdentityHashMap();
+
+        for (Document document : documents)
+        {
+            final LanguageCode language = document.getLanguage() != null ? document
+                .getLanguage() : LanguageCode.ENGLISH;
+            ITokenizer tokenizer = tokenizers.get(language);
+            if (tokenizer == null)
+            {
+                tokenizer = tokenizerFactory.getTokenizer(language);
+                if (tokenizer == null)
+                {
+                    continue;
+                }
+                tokenizers.put(language, tokenizer);
+            }
+
+            for (String fieldName : documentFields)
+            {
+                final String fieldValue = document.getField(fieldName);
+                if (!StringUtils.isEmpty(fieldValue))
+                {
+                    tokenized.put(fieldValue, tokenize(fieldValue, tokenizer));
+                }
+            }
+        }
+
+        synchronized (this)
+        {
+            entries.putAll(tokenized);
+        }
+    }
+
+    public synchronized void retainDocuments(Collection<Document> documents)
+    {
+        final Set<String> fieldValues = Sets.newIdentityHashSet();
+        for (Document document : documents)
+        {
+            for (String fieldName : documentFields)
+            {
+                final String fieldValue = document.getField(fieldName);
+                if (fieldValue != null)
+                {
+                    fieldValues.add(fieldValue);
+                }
+            }
+        }
+        entries.keySet().retainAll(fieldValues);
+    }
+
+    /**
+     * Removes the tokens of the provided field value and returns them if they were
+     * created with a tokenizer of the provided class, returns <code>null</code>
+     * otherwise.
+     */
+    synchronized Entry take(String fieldValue, Class<? extends ITokenizer> tokenizerClass)
+    {
+        final Entry entry = entries.remove(fieldValue);
+        if (entry != null && entry.tokenizerClass == tokenizerClass)
+        {
+            replayed++;
+            return entry;
+        }
+        return null;
+    }
+
+    /**
+     * Removes all entries that have not been taken.
+     */
+    synchronized void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of entries kept.
+     */
+    synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of entries taken for replay so far.
+     */
+    synchronized int getReplayedCount()
+    {
+        return replayed;
+    }
+
+    /**
+     * Tokenizes the provided field value.
+     */
+    static Entry tokenize(String fieldValue, ITokenizer tokenizer)
+    {
+        final List<char []> images = Lists.newArrayList();
+        final ShortArrayList types = new ShortArrayList();
+        final MutableCharArray wrapper = new MutableCharArray(CharArrayUtils.EMPTY_ARRAY);
+        try
+        {
+            short tokenType;
+            tokenizer.reset(new StringReader(fieldValue));
+            while ((tokenType = tokenizer.nextToken()) != ITokenizer.TT_EOF)
+            {
+                tokenizer.setTermBuffer(wrapper);
+                images.add(Arrays.copyOfRange(wrapper.getBuffer(), wrapper.getStart(),
+                    wrapper.getStart() + wrapper.length()));
+                types.add(tokenType);
+            }
+        }
+        catch (IOException e)
+        {
+            // Not possible (StringReader above)?
+            throw ExceptionUtils.wrapAsRuntimeException(e);
+        }
+
+        return new Entry(tokenizer.getClass(), images.toArray(new char [images.size()] []),
+            types.toArray());
+    }
+}
@@ -12,48 +12,18 @@
 
 package org.carrot2.text.preprocessing;
 
-import com.carrotsearch.hppc.sorting.IndirectComparator;
-import com.carrotsearch.hppc.sorting.IndirectSort;
+import java.util.Arrays;
 
 /**
- * A simple suffix sorting utility based on the generic sorting routines from {@link IndirectSort}.
+ * Suffix sorting utility. The suffix array is built in linear time with the SA-IS
+ * algorithm over the integer alphabet of word indices, the LCP array with Kasai's
+ * algorithm.
+ * 
+ * @see <a href="http://dx.doi.org/10.1109/DCC.2009.42">G. Nong, S. Zhang, W. H. Chan,
+ *      Linear Suffix Array Construction by Almost Pure Induced-Sorting</a>
  */
 final class SuffixSorter
 {
-    /**
-     * An int comparator that enables suffix sorting.
-     */
-    private static class SuffixComparator implements IndirectComparator
-    {
-        private int [] suffixData;
-
-        public SuffixComparator(int [] suffixData)
-        {
-            this.suffixData = suffixData;
-        }
-
-        public int compare(int suffixA, int suffixB)
-        {
-            if (suffixA == suffixB)
-            {
-                return 0;
-            }
-
-            /*
-             * Suffix data ends with a unique negative value, so we don't need to do extra
-             * range checks and we still won't run into array index out of bounds
-             * exceptions.
-             */
-            while (suffixData[suffixA] == suffixData[suffixB])
-            {
-                suffixA++;
-                suffixB++;
-            }
-
-            return suffixData[suffixB] - suffixData[suffixA];
-        }
-    }
-
     /**
      * Performs suffix sorting and saves the results to the <code>context</code>.
      */
@@ -63,22 +33,27 @@ final class SuffixSorter
          * Create a temporary array based on word indices with -1 values replaced with
          * unique negative values. This will ensure that the phrases discovered based on
          * the sorted/lcp array will not cross sentence/field boundaries. At some point we
-         * may want to make it an option. In this case, we'll need to review Substring and
-         * SubstringComparator for possible array index out of bounds.
+         * may want to make it an option. In this case, we'll need to review phrase
+         * comparison in PhraseExtractor for possible array index out of bounds.
          */
         final int [] intCodes = new int [context.allTokens.wordIndex.length];
         System.arraycopy(context.allTokens.wordIndex, 0, intCodes, 0, intCodes.length);
         int currentSeparatorCode = -1;
+        int maxWordCode = -1;
         for (int i = 0; i < intCodes.length; i++)
         {
             if (intCodes[i] < 0)
             {
                 intCodes[i] = currentSeparatorCode--;
             }
+            else
+            {
+                maxWordCode = Math.max(maxWordCode, intCodes[i]);
+            }
         }
 
         // Create suffix order
-        int [] suffixOrder = IndirectSort.mergesort(0, intCodes.length, new SuffixComparator(intCodes));
+        final int [] suffixOrder = suffixArray(intCodes, maxWordCode);
         context.allTokens.suffixOrder = suffixOrder;
         
         // Add LCPs
@@ -86,24 +61,235 @@ final class SuffixSorter
     }
 
     /**
-     * Calculates the Longest Common Prefix values for each token.
+     * Builds the suffix array of <code>intCodes</code>. Suffixes are ordered by
+     * descending codes, so word codes come before separators and separators follow in
+     * the order of their appearance.
      */
-    private int [] calculateLcp(int [] intCodes, int [] suffixOrder)
+    static int [] suffixArray(int [] intCodes, int maxWordCode)
     {
-        // LCP array
-        int [] lcpArray = new int [intCodes.length];
+        final int n = intCodes.length;
+
+        /*
+         * Map codes to a dense alphabet, in which the ascending order is the required
+         * descending order of codes, and append a unique sentinel smaller than any
+         * other symbol, as required by SA-IS.
+         */
+        final int [] s = new int [n + 1];
+        int alphabetSize = 1;
+        for (int i = 0; i < n; i++)
+        {
+            s[i] = maxWordCode + 1 - intCodes[i];
+            alphabetSize = Math.max(alphabetSize, s[i] + 1);
+        }
+        s[n] = 0;
+
+        final int [] sa = new int [n + 1];
+        sais(s, sa, n + 1, alphabetSize);
+
+        // The sentinel suffix is always the first one.
+        final int [] suffixOrder = new int [n];
+        System.arraycopy(sa, 1, suffixOrder, 0, n);
+        return suffixOrder;
+    }
+
+    /**
+     * Calculates the Longest Common Prefix values for each token with Kasai's
+     * algorithm. The LCP of the first suffix is 0.
+     */
+    static int [] calculateLcp(int [] intCodes, int [] suffixOrder)
+    {
+        final int n = intCodes.length;
+        final int [] rank = new int [n];
+        for (int i = 0; i < n; i++)
+        {
+            rank[suffixOrder[i]] = i;
+        }
 
-        lcpArray[0] = 0;
-        for (int i = 1; i < lcpArray.length - 1; i++)
+        // LCP array
+        final int [] lcpArray = new int [n];
+        int lcp = 0;
+        for (int i = 0; i < n; i++)
         {
-            int lcp = 0;
-            while (intCodes[suffixOrder[i - 1] + lcp] == intCodes[suffixOrder[i] + lcp])
+            if (rank[i] > 0)
+            {
+                final int j = suffixOrder[rank[i] - 1];
+                while (i + lcp < n && j + lcp < n && intCodes[i + lcp] == intCodes[j + lcp])
+                {
+                    lcp++;
+                }
+                lcpArray[rank[i]] = lcp;
+                if (lcp > 0)
+                {
+                    lcp--;
+                }
+            }
+            else
             {
-                lcp++;
+                lcp = 0;
             }
-            lcpArray[i] = lcp;
         }
 
         return lcpArray;
     }
+
+    /**
+     * Builds the suffix array <code>sa</code> of the first <code>n</code> symbols of
+     * <code>s</code>. Symbols must be from <code>[0, k)</code>, the last symbol must be a
+     * unique <code>0</code>.
+     */
+    private static void sais(int [] s, int [] sa, int n, int k)
+    {
+        // Classify suffixes as S-type (true) or L-type (false).
+        final boolean [] t = new boolean [n];
+        t[n - 1] = true;
+        for (int i = n - 2; i >= 0; i--)
+        {
+            t[i] = s[i] < s[i + 1] || (s[i] == s[i + 1] && t[i + 1]);
+        }
+
+        // Sort LMS substrings by inducing from their bucket ends.
+        final int [] buckets = new int [k];
+        bucketBounds(s, n, buckets, true);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = 1; i < n; i++)
+        {
+            if (isLms(t, i))
+            {
+                sa[--buckets[s[i]]] = i;
+            }
+        }
+        induce(s, sa, t, n, buckets);
+
+        // Compact the sorted LMS substrings into the first n1 items of sa.
+        int n1 = 0;
+        for (int i = 0; i < n; i++)
+        {
+            if (isLms(t, sa[i]))
+            {
+                sa[n1++] = sa[i];
+            }
+        }
+
+        // Name LMS substrings, equal substrings get equal names.
+        Arrays.fill(sa, n1, n, -1);
+        int name = 0;
+        int previous = -1;
+        for (int i = 0; i < n1; i++)
+        {
+            final int position = sa[i];
+            boolean different = false;
+            for (int d = 0; d < n; d++)
+            {
+                if (previous == -1 || s[position + d] != s[previous + d]
+                    || t[position + d] != t[previous + d])
+                {
+                    different = true;
+                    break;
+                }
+                else if (d > 0 && (isLms(t, position + d) || isLms(t, previous + d)))
+                {
+                    break;
+                }
+            }
+            if (different)
+            {
+                name++;
+                previous = position;
+            }
+
+            // LMS positions are at least two apart, so halves do not collide.
+            sa[n1 + position / 2] = name - 1;
+        }
+
+        // The reduced string, made of names of LMS substrings in text order.
+        final int [] s1 = new int [n1];
+        for (int i = n1, j = 0; i < n; i++)
+        {
+            if (sa[i] >= 0)
+            {
+                s1[j++] = sa[i];
+            }
+        }
+
+        // Sort the LMS suffixes, recursively if names are not unique.
+        final int [] sa1 = new int [n1];
+        if (name < n1)
+        {
+            sais(s1, sa1, n1, name);
+        }
+        else
+        {
+            for (int i = 0; i < n1; i++)
+            {
+                sa1[s1[i]] = i;
+            }
+        }
+
+        // Induce the suffix array from the sorted LMS suffixes.
+        for (int i = 1, j = 0; i < n; i++)
+        {
+            if (isLms(t, i))
+            {
+                s1[j++] = i;
+            }
+        }
+        bucketBounds(s, n, buckets, true);
+        Arrays.fill(sa, 0, n, -1);
+        for (int i = n1 - 1; i >= 0; i--)
+        {
+            final int position = s1[sa1[i]];
+            sa[--buckets[s[position]]] = position;
+        }
+        induce(s, sa, t, n, buckets);
+    }
+
+    /**
+     * Induces L-type suffixes from left to right, then S-type suffixes from right to
+     * left.
+     */
+    private static void induce(int [] s, int [] sa, boolean [] t, int n, int [] buckets)
+    {
+        bucketBounds(s, n, buckets, false);
+        for (int i = 0; i < n; i++)
+        {
+            final int j = sa[i] - 1;
+            if (j >= 0 && !t[j])
+            {
+                sa[buckets[s[j]]++] = j;
+            }
+        }
+
+        bucketBounds(s, n, buckets, true);
+        for (int i = n - 1; i >= 0; i--)
+        {
+            final int j = sa[i] - 1;
+            if (j >= 0 && t[j])
+            {
+                sa[--buckets[s[j]]] = j;
+            }
+        }
+    }
+
+    /**
+     * Computes bucket starts or (exclusive) ends of symbols.
+     */
+    private static void bucketBounds(int [] s, int n, int [] buckets, boolean ends)
+    {
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < n; i++)
+        {
+            buckets[s[i]]++;
+        }
+        int sum = 0;
+        for (int i = 0; i < buckets.length; i++)
+        {
+            sum += buckets[i];
+            buckets[i] = ends ? sum : sum - buckets[i];
+        }
+    }
+
+    private static boolean isLms(boolean [] t, int i)
+    {
+        return i > 0 && t[i] && !t[i - 1];
+    }
 }
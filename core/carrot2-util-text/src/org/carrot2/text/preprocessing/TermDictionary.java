@@ -0,0 +1,266 @@
+
+/*
+ * Carrot2 project.
+ *
+ * Copyright (C) 2002-2013, Dawid Weiss, Stanisław Osiński.
+ * All rights reserved.
+ *
+ * Refer to the full license file "carrot2.LICENSE"
+ * in the root folder of the repository checkout or at:
+ * http://www.carrot2.org/carrot2.LICENSE
+ */
+
+package org.carrot2.text.preprocessing;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.carrot2.text.util.MutableCharArray;
+
+import com.carrotsearch.hppc.ObjectObjectOpenHashMap;
+import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
+
+/**
+ * A thread-safe dictionary of terms shared by many {@link PreprocessingContext}s. Maps
+ * token images to canonical <code>char []</code> buffers and stable integer identifiers,
+ * so that the vocabulary repeated across requests does not need to be allocated again.
+ * <p>
+ * The dictionary is divided into independently locked stripes. When a stripe exceeds
+ * its share of the maximum number of terms, the less frequently requested half of its
+ * terms is evicted. Identifiers of evicted terms are never reused, a term added again
+ * after eviction receives a new identifier.
+ * <p>
+ * Canonical buffers must not be modified.
+ */
+public final class TermDictionary
+{
+    /** Default maximum number of terms of the {@link #getShared()} dictionary. */
+    public static final int DEFAULT_MAX_TERMS = 500000;
+
+    /** Number of stripes, must be a power of two. */
+    private static final int STRIPES = 32;
+
+    /** The process-wide dictionary. */
+    private static volatile TermDictionary shared;
+
+    private final Stripe [] stripes;
+    private final int maxTermsPerStripe;
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * A term with its canonical image and usage count.
+     */
+    private static final class Term
+    {
+        final char [] image;
+        final int id;
+        int frequency;
+
+        Term(char [] image, int id)
+        {
+            this.image = image;
+            this.id = id;
+            this.frequency = 1;
+        }
+    }
+
+    /**
+     * Terms with images hashed to one stripe, guarded by the stripe's monitor.
+     */
+    private static final class Stripe
+    {
+        ObjectObjectOpenHashMap<MutableCharArray, Term> terms = ObjectObjectOpenHashMap
+            .newInstance();
+    }
+
+    /**
+     * Creates a dictionary holding at most (approximately) <code>maxTerms</code> terms.
+     */
+    public TermDictionary(int maxTerms)
+    {
+        if (maxTerms <= 0)
+        {
+            throw new IllegalArgumentException("Maximum number of terms must be > 0: "
+                + maxTerms);
+        }
+
+        this.maxTermsPerStripe = Math.max(1, maxTerms / STRIPES);
+        this.stripes = new Stripe [STRIPES];
+        for (int i = 0; i < stripes.length; i++)
+        {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Returns the process-wide dictionary, holding at most {@link #DEFAULT_MAX_TERMS}
+     * terms.
+     */
+    public static TermDictionary getShared()
+    {
+        TermDictionary dictionary = shared;
+        if (dictionary == null)
+        {
+            synchronized (TermDictionary.class)
+            {
+                dictionary = shared;
+                if (dictionary == null)
+                {
+                    shared = dictionary = new TermDictionary(DEFAULT_MAX_TERMS);
+                }
+            }
+        }
+        return dictionary;
+    }
+
+    /**
+     * Returns the canonical buffer for the given character sequence, adding the term to
+     * the dictionary if it is not present. The returned buffer has exactly the length of
+     * the sequence.
+     */
+    public char [] intern(MutableCharArray chs)
+    {
+        final Stripe stripe = stripeFor(chs);
+        synchronized (stripe)
+        {
+            if (stripe.terms.containsKey(chs))
+            {
+                final Term term = stripe.terms.lget();
+                term.frequency++;
+                hits.incrementAndGet();
+                return term.image;
+            }
+
+            final char [] image = new char [chs.length()];
+            System.arraycopy(chs.getBuffer(), chs.getStart(), image, 0, chs.length());
+            stripe.terms.put(new MutableCharArray(image), new Term(image,
+                nextId.getAndIncrement()));
+            misses.incrementAndGet();
+
+            if (stripe.terms.size() > maxTermsPerStripe)
+            {
+                evict(stripe);
+            }
+            return image;
+        }
+    }
+
+    /**
+     * Returns the identifier of the given term or <code>-1</code> if the term is not in
+     * the dictionary.
+     */
+    public int getId(MutableCharArray chs)
+    {
+        final Stripe stripe = stripeFor(chs);
+        synchronized (stripe)
+        {
+            if (stripe.terms.containsKey(chs))
+            {
+                return stripe.terms.lget().id;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the identifier of the given term or <code>-1</code> if the term is not in
+     * the dictionary.
+     */
+    public int getId(char [] image)
+    {
+        return getId(new MutableCharArray(image));
+    }
+
+    /**
+     * Returns the number of terms currently in the dictionary.
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Stripe stripe : stripes)
+        {
+            synchronized (stripe)
+            {
+                size += stripe.terms.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of {@link #intern(MutableCharArray)} calls that found the term
+     * in the dictionary.
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of {@link #intern(MutableCharArray)} calls that added a new
+     * term to the dictionary.
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Returns the number of terms evicted from the dictionary.
+     */
+    public long getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    private Stripe stripeFor(MutableCharArray chs)
+    {
+        final int hash = chs.hashCode() * 0x9E3779B9;
+        return stripes[(hash >>> 16) & (STRIPES - 1)];
+    }
+
+    /**
+     * Keeps the more frequent half of the stripe's terms and halves their frequencies so
+     * that terms frequent in the past eventually give way to new ones.
+     */
+    private void evict(Stripe stripe)
+    {
+        final ObjectObjectOpenHashMap<MutableCharArray, Term> terms = stripe.terms;
+        final int [] frequencies = new int [terms.size()];
+        int i = 0;
+        for (ObjectObjectCursor<MutableCharArray, Term> c : terms)
+        {
+            frequencies[i++] = c.value.frequency;
+        }
+        Arrays.sort(frequencies);
+
+        final int keep = frequencies.length / 2;
+        final int threshold = frequencies[frequencies.length - keep];
+        int keepAtThreshold = keep;
+        for (int j = frequencies.length - 1; j >= 0 && frequencies[j] > threshold; j--)
+        {
+            keepAtThreshold--;
+        }
+
+        final ObjectObjectOpenHashMap<MutableCharArray, Term> kept = ObjectObjectOpenHashMap
+            .newInstance();
+        for (ObjectObjectCursor<MutableCharArray, Term> c : terms)
+        {
+            final Term term = c.value;
+            if (term.frequency > threshold
+                || (term.frequency == threshold && keepAtThreshold-- > 0))
+            {
+                term.frequency = Math.max(1, term.frequency >>> 1);
+                kept.put(c.key, term);
+            }
+        }
+
+        evictions.addAndGet(terms.size() - kept.size());
+        stripe.terms = kept;
+    }
+}
@@ -17,13 +17,17 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang.StringUtils;
 import org.carrot2.core.Document;
+import org.carrot2.core.LanguageCode;
 import org.carrot2.core.ProcessingException;
 import org.carrot2.core.attribute.Init;
+import org.carrot2.core.attribute.Internal;
+import org.carrot2.core.attribute.Processing;
+import org.carrot2.source.IPageConsumer;
 import org.carrot2.text.analysis.ITokenizer;
 import org.carrot2.text.preprocessing.PreprocessingContext.AllFields;
 import org.carrot2.text.preprocessing.PreprocessingContext.AllTokens;
@@ -38,9 +42,11 @@ import org.carrot2.util.attribute.Group;
 import org.carrot2.util.attribute.Input;
 import org.carrot2.util.attribute.Label;
 import org.carrot2.util.attribute.Level;
+import org.carrot2.util.attribute.constraint.ImplementingClasses;
 
 import com.carrotsearch.hppc.ByteArrayList;
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.ObjectIntOpenHashMap;
 import com.carrotsearch.hppc.ShortArrayList;
 import com.google.common.collect.Lists;
 
@@ -54,6 +60,11 @@ import com.google.common.collect.Lists;
  * <li>{@link AllTokens#fieldIndex}</li>
  * <li>{@link AllTokens#type}</li>
  * </ul>
+ * <p>
+ * Fields already tokenized by a {@link PageTokenizer} are not tokenized again, neither
+ * are documents found in the {@link DocumentTokenCache} if
+ * {@link #documentTokenCache} is enabled.
+ * </p>
  */
 @Bindable(prefix = "Tokenizer")
 public final class Tokenizer
@@ -73,37 +84,58 @@ public final class Tokenizer
     });
 
     /**
-     * Token images.
+     * Reuses tokens of documents tokenized in earlier requests. Tokens are cached in the
+     * process-wide {@link DocumentTokenCache}, keyed by the contents of the tokenized
+     * fields and the language. Useful when consecutive requests return many of the same
+     * documents, such as subsequent result pages of similar queries.
      */
-    private ArrayList<char []> images;
+    @Processing
+    @Input
+    @Attribute
+    @Label("Cache document tokens")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(DefaultGroups.PREPROCESSING)
+    public boolean documentTokenCache = false;
 
     /**
-     * An array of token types.
-     * 
-     * @see ITokenizer
+     * The page consumer of the document source. If it was created by a
+     * {@link PageTokenizer}, tokens of documents tokenized while they were being fetched
+     * are replayed instead of tokenizing the documents again. Sources output their page
+     * consumer, so there is no need to set this attribute explicitly.
      */
-    private ShortArrayList tokenTypes;
+    @Processing
+    @Input
+    @Internal
+    @Attribute(key = "page-consumer")
+    @ImplementingClasses(classes = {}, strict = false)
+    public IPageConsumer pageConsumer;
 
     /**
-     * An array of document indexes.
+     * The minimum number of documents to tokenize on each thread, see
+     * {@link #tokenize(PreprocessingContext, int)}.
      */
-    private IntArrayList documentIndices;
+    final static int MIN_DOCUMENTS_PER_THREAD = 250;
 
     /**
-     * An array of field indexes.
-     * 
-     * @see AllFields
+     * Performs tokenization and saves the results to the <code>context</code>.
      */
-    private ByteArrayList fieldIndices;
+    public void tokenize(PreprocessingContext context)
+    {
+        tokenize(context, 1);
+    }
 
     /**
-     * Performs tokenization and saves the results to the <code>context</code>.
+     * Performs tokenization and saves the results to the <code>context</code>, using up
+     * to <code>threads</code> threads. Each thread tokenizes a contiguous slice of
+     * documents with its own {@link ITokenizer}, the slices are then merged in the order
+     * of documents. The results are the same regardless of the number of threads.
      */
-    public void tokenize(PreprocessingContext context)
+    public void tokenize(PreprocessingContext context, int threads)
     {
         // Documents to tokenize
-        final List<Document> documents = context.documents;
-        
+        final Document [] documents = context.documents
+            .toArray(new Document [context.documents.size()]);
+
         // Fields to tokenize
         final String [] fieldNames = documentFields.toArray(new String [documentFields.size()]); 
 
@@ -112,20 +144,118 @@ public final class Tokenizer
             throw new ProcessingException("Maximum number of tokenized fields is 8.");
         }
 
-        // Prepare arrays
-        images = Lists.newArrayList();
-        tokenTypes = new ShortArrayList();
-        documentIndices = new IntArrayList();
-        fieldIndices = new ByteArrayList();
+        final int [] slices = ParallelPreprocessing.slices(documents.length, threads,
+            MIN_DOCUMENTS_PER_THREAD);
+        final Tokens tokens = new Tokens(context);
+        final DocumentTokenCache cache = documentTokenCache ? DocumentTokenCache
+            .getShared() : null;
+        final LanguageCode language = context.language.getLanguageCode();
+        final PretokenizedFields pretokenized = pageConsumer instanceof PretokenizedFields
+            ? (PretokenizedFields) pageConsumer : null;
+        if (slices.length == 2)
+        {
+            tokenize(documents, 0, documents.length, fieldNames,
+                context.language.getTokenizer(), cache, pretokenized, language, tokens);
+        }
+        else
+        {
+            final List<Callable<Tokens>> tasks = Lists.newArrayList();
+            for (int i = 0; i < slices.length - 1; i++)
+            {
+                final int from = slices[i];
+                final int to = slices[i + 1];
+                final ITokenizer ts = context.language.createTokenizer();
+                tasks.add(new Callable<Tokens>()
+                {
+                    public Tokens call()
+                    {
+                        final Tokens sliceTokens = new Tokens(null);
+                        tokenize(documents, from, to, fieldNames, ts, cache,
+                            pretokenized, language, sliceTokens);
+                        return sliceTokens;
+                    }
+                });
+            }
+
+            // Intern images in the order of documents, as the serial tokenization does.
+            final MutableCharArray wrapper = new MutableCharArray(CharArrayUtils.EMPTY_ARRAY);
+            for (Tokens sliceTokens : ParallelPreprocessing.invokeAll(tasks))
+            {
+                for (int i = 0; i < sliceTokens.images.size(); i++)
+                {
+                    final char [] image = sliceTokens.images.get(i);
+                    if (image != null)
+                    {
+                        wrapper.reset(image);
+                    }
+                    tokens.add(sliceTokens.documentIndices.get(i),
+                        sliceTokens.fieldIndices.get(i), image != null ? tokens
+                            .image(wrapper) : null, sliceTokens.tokenTypes.get(i));
+                }
+            }
+        }
+
+        tokens.addTerminator();
+
+        // Tokens not replayed, e.g. of documents found in the cache, are not needed.
+        if (pretokenized != null)
+        {
+            pretokenized.clear();
+        }
+
+        // Save results in the PreprocessingContext
+        context.allTokens.documentIndex = tokens.documentIndices.toArray();
+        context.allTokens.fieldIndex = tokens.fieldIndices.toArray();
+        context.allTokens.image = tokens.images.toArray(new char [tokens.images.size()] []);
+        context.allTokens.type = tokens.tokenTypes.toArray();
+        context.allFields.name = fieldNames;
+    }
 
-        final Iterator<Document> docIterator = documents.iterator();
-        int documentIndex = 0;
-        final ITokenizer ts = context.language.getTokenizer();
+    /**
+     * Tokenizes documents from <code>from</code> (inclusive) to <code>to</code>
+     * (exclusive). Tokens of documents found in <code>cache</code> (if not
+     * <code>null</code>) are copied from the cache, tokens of other documents are added to
+     * the cache. Tokens of fields found in <code>pretokenized</code> (if not
+     * <code>null</code>) are replayed.
+     */
+    private static void tokenize(Document [] documents, int from, int to,
+        String [] fieldNames, ITokenizer ts, DocumentTokenCache cache,
+        PretokenizedFields pretokenized, LanguageCode language, Tokens tokens)
+    {
         final MutableCharArray wrapper = new MutableCharArray(CharArrayUtils.EMPTY_ARRAY);
 
-        while (docIterator.hasNext())
+        for (int documentIndex = from; documentIndex < to; documentIndex++)
         {
-            final Document doc = docIterator.next();
+            final Document doc = documents[documentIndex];
+
+            DocumentTokenCache.Key key = null;
+            final int firstToken = tokens.images.size();
+            if (cache != null)
+            {
+                key = DocumentTokenCache.key(doc, fieldNames, language, ts.getClass());
+                final DocumentTokenCache.Entry cached = cache.get(key);
+                if (cached != null)
+                {
+                    final char [][] images = new char [cached.images.length] [];
+                    for (int j = 0; j < images.length; j++)
+                    {
+                        wrapper.reset(cached.images[j]);
+                        images[j] = tokens.image(wrapper);
+                    }
+                    for (int j = 0; j < cached.types.length; j++)
+                    {
+                        final int imageIndex = cached.imageIndices[j];
+                        tokens.add(documentIndex, cached.fieldIndices[j],
+                            imageIndex >= 0 ? images[imageIndex] : null, cached.types[j]);
+                    }
+
+                    if (documentIndex < documents.length - 1)
+                    {
+                        tokens.addDocumentSeparator();
+                    }
+                    continue;
+                }
+            }
 
             boolean hadTokens = false;
             for (int i = 0; i < fieldNames.length; i++)
@@ -136,6 +266,25 @@ public final class Tokenizer
 
                 if (!StringUtils.isEmpty(fieldValue))
                 {
+                    // Replay tokens created while the document was being fetched.
+                    final PretokenizedFields.Entry replayed = pretokenized != null
+                        ? pretokenized.take(fieldValue, ts.getClass()) : null;
+                    if (replayed != null)
+                    {
+                        if (replayed.images.length > 0)
+                        {
+                            if (hadTokens) tokens.addFieldSeparator(documentIndex);
+                            for (int j = 0; j < replayed.images.length; j++)
+                            {
+                                wrapper.reset(replayed.images[j]);
+                                tokens.add(documentIndex, fieldIndex,
+                                    tokens.image(wrapper), replayed.types[j]);
+                            }
+                            hadTokens = true;
+                        }
+                        continue;
+                    }
+
                     try
                     {
                         short tokenType;
@@ -143,11 +292,11 @@ public final class Tokenizer
                         ts.reset(new StringReader(fieldValue));
                         if ((tokenType = ts.nextToken()) != ITokenizer.TT_EOF)
                         {
-                            if (hadTokens) addFieldSeparator(documentIndex);
+                            if (hadTokens) tokens.addFieldSeparator(documentIndex);
                             do
                             {
                                 ts.setTermBuffer(wrapper);
-                                add(documentIndex, fieldIndex, context.intern(wrapper), tokenType);
+                                tokens.add(documentIndex, fieldIndex, tokens.image(wrapper), tokenType);
                             } while ( (tokenType = ts.nextToken()) != ITokenizer.TT_EOF);
                             hadTokens = true;
                         }
@@ -160,70 +309,146 @@ public final class Tokenizer
                 }
             }
 
-            if (docIterator.hasNext())
+            if (cache != null)
             {
-                addDocumentSeparator();
+                cache.put(key, tokens.toCacheEntry(firstToken));
             }
 
-            documentIndex++;
+            if (documentIndex < documents.length - 1)
+            {
+                tokens.addDocumentSeparator();
+            }
         }
-
-        addTerminator();
-
-        // Save results in the PreprocessingContext
-        context.allTokens.documentIndex = documentIndices.toArray();
-        context.allTokens.fieldIndex = fieldIndices.toArray();
-        context.allTokens.image = images.toArray(new char [images.size()] []);
-        context.allTokens.type = tokenTypes.toArray();
-        context.allFields.name = fieldNames;
-
-        // Clean up
-        images = null;
-        fieldIndices = null;
-        tokenTypes = null;
-        documentIndices = null;
     }
 
     /**
-     * Adds a special terminating token required at the very end of all documents.
+     * Token sequence under construction.
      */
-    void addTerminator()
+    private static final class Tokens
     {
-        add(-1, (byte) -1, null, ITokenizer.TF_TERMINATOR);
-    }
+        /**
+         * Context to intern token images with or <code>null</code> to only copy the
+         * images.
+         */
+        private final PreprocessingContext context;
 
-    /**
-     * Adds a document separator to the lists.
-     */
-    void addDocumentSeparator()
-    {
-        add(-1, (byte) -1, null, ITokenizer.TF_SEPARATOR_DOCUMENT);
-    }
+        /**
+         * Token images.
+         */
+        final ArrayList<char []> images = Lists.newArrayList();
 
-    /**
-     * Adds a field separator to the lists.
-     */
-    void addFieldSeparator(int documentIndex)
-    {
-        add(documentIndex, (byte) -1, null, ITokenizer.TF_SEPARATOR_FIELD);
-    }
+        /**
+         * An array of token types.
+         * 
+         * @see ITokenizer
+         */
+        final ShortArrayList tokenTypes = new ShortArrayList();
 
-    /**
-     * Adds a sentence separator to the lists.
-     */
-    void addSentenceSeparator(int documentIndex, byte fieldIndex)
-    {
-        add(documentIndex, fieldIndex, null, ITokenizer.TF_SEPARATOR_FIELD);
-    }
+        /**
+         * An array of document indexes.
+         */
+        final IntArrayList documentIndices = new IntArrayList();
 
-    /**
-     * Adds custom token code to the sequence. May be used to add separator constants.
-     */
-    void add(int documentIndex, byte fieldIndex, char [] image, short tokenTypeCode)
-    {
-        documentIndices.add(documentIndex);
-        fieldIndices.add(fieldIndex);
-        images.add(image);
-        tokenTypes.add(tokenTypeCode);
+        /**
+         * An array of field indexes.
+         * 
+         * @see AllFields
+         */
+        final ByteArrayList fieldIndices = new ByteArrayList();
+
+        Tokens(PreprocessingContext context)
+        {
+            this.context = context;
+        }
+
+        /**
+         * Returns the image to store for the provided token.
+         */
+        char [] image(MutableCharArray token)
+        {
+            if (context != null)
+            {
+                return context.intern(token);
+            }
+            return Arrays.copyOfRange(token.getBuffer(), token.getStart(),
+                token.getStart() + token.length());
+        }
+
+        /**
+         * Copies tokens from <code>from</code> to the end of the sequence into a
+         * {@link DocumentTokenCache} entry.
+         */
+        DocumentTokenCache.Entry toCacheEntry(int from)
+        {
+            final int count = images.size() - from;
+            final ObjectIntOpenHashMap<MutableCharArray> distinct = ObjectIntOpenHashMap
+                .newInstance();
+            final List<char []> entryImages = Lists.newArrayList();
+            final int [] entryImageIndices = new int [count];
+            final short [] entryTypes = new short [count];
+            final byte [] entryFieldIndices = new byte [count];
+            for (int i = 0; i < count; i++)
+            {
+                final char [] image = images.get(from + i);
+                if (image == null)
+                {
+                    entryImageIndices[i] = -1;
+                }
+                else
+                {
+                    final MutableCharArray key = new MutableCharArray(image);
+                    if (distinct.containsKey(key))
+                    {
+                        entryImageIndices[i] = distinct.lget();
+                    }
+                    else
+                    {
+                        entryImageIndices[i] = entryImages.size();
+                        distinct.put(key, entryImages.size());
+                        entryImages.add(image.clone());
+                    }
+                }
+                entryTypes[i] = tokenTypes.get(from + i);
+                entryFieldIndices[i] = fieldIndices.get(from + i);
+            }
+            return new DocumentTokenCache.Entry(entryImages
+                .toArray(new char [entryImages.size()] []), entryImageIndices, entryTypes,
+                entryFieldIndices);
+        }
+
+        /**
+         * Adds a special terminating token required at the very end of all documents.
+         */
+        void addTerminator()
+        {
+            add(-1, (byte) -1, null, ITokenizer.TF_TERMINATOR);
+        }
+
+        /**
+         * Adds a document separator to the lists.
+         */
+        void addDocumentSeparator()
+        {
+            add(-1, (byte) -1, null, ITokenizer.TF_SEPARATOR_DOCUMENT);
+        }
+
+        /**
+         * Adds a field separator to the lists.
+         */
+        void addFieldSeparator(int documentIndex)
+        {
+            add(documentIndex, (byte) -1, null, ITokenizer.TF_SEPARATOR_FIELD);
+        }
+
+        /**
+         * Adds custom token code to the sequence. May be used to add separator constants.
+         */
+        void add(int documentIndex, byte fieldIndex, char [] image, short tokenTypeCode)
+        {
+            documentIndices.add(documentIndex);
+            fieldIndices.add(fieldIndex);
+            images.add(image);
+            tokenTypes.add(tokenTypeCode);
+        }
     }
 }
@@ -29,16 +29,22 @@ import org.carrot2.text.linguistic.LanguageModel;
 import org.carrot2.text.preprocessing.CaseNormalizer;
 import org.carrot2.text.preprocessing.LanguageModelStemmer;
 import org.carrot2.text.preprocessing.PreprocessingContext;
+import org.carrot2.text.preprocessing.PreprocessingContextCache;
 import org.carrot2.text.preprocessing.StopListMarker;
+import org.carrot2.text.preprocessing.TermDictionary;
 import org.carrot2.text.preprocessing.Tokenizer;
+import org.carrot2.util.CancellationToken;
+import org.carrot2.util.LatencyRecorder;
 import org.carrot2.util.attribute.Attribute;
 import org.carrot2.util.attribute.AttributeLevel;
 import org.carrot2.util.attribute.Bindable;
 import org.carrot2.util.attribute.DefaultGroups;
 import org.carrot2.util.attribute.Group;
 import org.carrot2.util.attribute.Input;
+import org.carrot2.util.attribute.Label;
 import org.carrot2.util.attribute.Level;
 import org.carrot2.util.attribute.constraint.ImplementingClasses;
+import org.carrot2.util.attribute.constraint.IntRange;
 
 /**
  * Performs basic preprocessing steps on the provided documents. The preprocessing
@@ -49,10 +55,27 @@ import org.carrot2.util.attribute.constraint.ImplementingClasses;
  * <li>{@link LanguageModelStemmer#stem(PreprocessingContext)}</li>
  * <li>{@link StopListMarker#mark(PreprocessingContext)}</li>
  * </ol>
+ * Cancellation of the current request (see {@link CancellationToken}) is checked
+ * between the steps. With {@link #sharedPreprocessing} enabled, results of the steps
+ * are shared with other pipelines processing the same documents. The time taken by
+ * each step is reported to the {@link LatencyRecorder} bound to the processing thread,
+ * if any.
  */
 @Bindable(prefix = "PreprocessingPipeline")
 public class BasicPreprocessingPipeline implements IPreprocessingPipeline
 {
+    /** Latency histogram name of the tokenization step. */
+    public static final String TOKENIZATION_LATENCY = "preprocessing.tokenization";
+
+    /** Latency histogram name of the case normalization step. */
+    public static final String CASE_NORMALIZATION_LATENCY = "preprocessing.case-normalization";
+
+    /** Latency histogram name of the stemming step. */
+    public static final String STEMMING_LATENCY = "preprocessing.stemming";
+
+    /** Latency histogram name of the stop word marking step. */
+    public static final String STOP_LIST_MARKING_LATENCY = "preprocessing.stop-list-marking";
+
     /**
      * Tokenizer used by the algorithm, contains bindable attributes.
      */
@@ -73,6 +96,49 @@ public class BasicPreprocessingPipeline implements IPreprocessingPipeline
      */
     public final StopListMarker stopListMarker = new StopListMarker();
 
+    /**
+     * Number of threads used for preprocessing. Tokenization, stemming and document
+     * assignment of large document sets (thousands of documents) are split among this
+     * many threads. The threads come from a pool shared by all requests and bounded by
+     * the number of processors. The results are the same regardless of the number of
+     * threads.
+     */
+    @Input
+    @Processing
+    @Attribute
+    @IntRange(min = 1, max = 256)
+    @Label("Preprocessing threads")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(DefaultGroups.PREPROCESSING)
+    public int threads = 1;
+
+    /**
+     * Intern token images in a process-wide term dictionary shared by all requests. Saves
+     * allocating the same common words for every request, at the cost of keeping
+     * a bounded number of terms in memory permanently.
+     */
+    @Input
+    @Processing
+    @Attribute
+    @Label("Shared term dictionary")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(DefaultGroups.PREPROCESSING)
+    public boolean sharedTermDictionary = false;
+
+    /**
+     * Share the results of preprocessing with other pipelines processing the same
+     * documents with the same settings, for example other clustering algorithms run on
+     * the same search results, see {@link PreprocessingContextCache}. Reused results are
+     * not computed again.
+     */
+    @Input
+    @Processing
+    @Attribute
+    @Label("Shared preprocessing")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(DefaultGroups.PREPROCESSING)
+    public boolean sharedPreprocessing = false;
+
     /**
      * Tokenizer factory. Creates the tokenizers to be used by the clustering algorithm.
      */
@@ -121,16 +187,76 @@ public class BasicPreprocessingPipeline implements IPreprocessingPipeline
     public PreprocessingContext preprocess(List<Document> documents, String query,
         LanguageCode language)
     {
-        final PreprocessingContext context = new PreprocessingContext(
-            LanguageModel.create(language, stemmerFactory, tokenizerFactory,
-                lexicalDataFactory), documents, query);
+        final PreprocessingContext context = createContext(documents, query, language);
+        preprocessBasic(context);
+        context.preprocessingFinished();
+        return context;
+    }
+
+    /**
+     * Performs the basic preprocessing steps on the provided context or, if
+     * {@link #sharedPreprocessing} is enabled, reuses their results if available.
+     */
+    protected final void preprocessBasic(final PreprocessingContext context)
+    {
+        if (sharedPreprocessing)
+        {
+            PreprocessingContextCache.getShared().basic(basicKey(context), context,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        runBasicSteps(context);
+                    }
+                });
+        }
+        else
+        {
+            runBasicSteps(context);
+        }
+    }
+
+    /**
+     * Returns the key of the results of the basic preprocessing steps in
+     * {@link PreprocessingContextCache}.
+     */
+    protected final Object basicKey(PreprocessingContext context)
+    {
+        return PreprocessingContextCache.basicKey(context.documents, context.query,
+            context.language.getLanguageCode(), tokenizer, caseNormalizer,
+            languageModelStemmer, stopListMarker, tokenizerFactory, stemmerFactory, lexicalDataFactory);
+    }
+
+    private void runBasicSteps(PreprocessingContext context)
+    {
+        long start = System.nanoTime();
+        tokenizer.tokenize(context, threads);
+        LatencyRecorder.recordCurrent(TOKENIZATION_LATENCY, start);
+        CancellationToken.checkCurrent();
 
-        tokenizer.tokenize(context);
+        start = System.nanoTime();
         caseNormalizer.normalize(context);
-        languageModelStemmer.stem(context);
+        LatencyRecorder.recordCurrent(CASE_NORMALIZATION_LATENCY, start);
+        CancellationToken.checkCurrent();
+
+        start = System.nanoTime();
+        languageModelStemmer.stem(context, threads);
+        LatencyRecorder.recordCurrent(STEMMING_LATENCY, start);
+        CancellationToken.checkCurrent();
+
+        start = System.nanoTime();
         stopListMarker.mark(context);
+        LatencyRecorder.recordCurrent(STOP_LIST_MARKING_LATENCY, start);
+    }
 
-        context.preprocessingFinished();
-        return context;
+    /**
+     * Creates an empty preprocessing context for the provided documents.
+     */
+    protected PreprocessingContext createContext(List<Document> documents, String query,
+        LanguageCode language)
+    {
+        return new PreprocessingContext(LanguageModel.create(language, stemmerFactory,
+            tokenizerFactory, lexicalDataFactory), documents, query,
+            sharedTermDictionary ? TermDictionary.getShared() : null);
     }
 }
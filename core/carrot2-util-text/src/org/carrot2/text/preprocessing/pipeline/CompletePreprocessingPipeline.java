@@ -16,15 +16,17 @@ import java.util.List;
 
 import org.carrot2.core.Document;
 import org.carrot2.core.LanguageCode;
-import org.carrot2.text.linguistic.LanguageModel;
 import org.carrot2.text.preprocessing.CaseNormalizer;
 import org.carrot2.text.preprocessing.DocumentAssigner;
 import org.carrot2.text.preprocessing.LabelFilterProcessor;
 import org.carrot2.text.preprocessing.LanguageModelStemmer;
 import org.carrot2.text.preprocessing.PhraseExtractor;
 import org.carrot2.text.preprocessing.PreprocessingContext;
+import org.carrot2.text.preprocessing.PreprocessingContextCache;
 import org.carrot2.text.preprocessing.StopListMarker;
 import org.carrot2.text.preprocessing.Tokenizer;
+import org.carrot2.util.CancellationToken;
+import org.carrot2.util.LatencyRecorder;
 import org.carrot2.util.attribute.Bindable;
 
 /**
@@ -39,10 +41,21 @@ import org.carrot2.util.attribute.Bindable;
  * <li>{@link LabelFilterProcessor#process(PreprocessingContext)}</li>
  * <li>{@link DocumentAssigner#assign(PreprocessingContext)}</li>
  * </ol>
+ * With {@link #sharedPreprocessing} enabled, the results of the basic steps are shared
+ * with {@link BasicPreprocessingPipeline}s processing the same documents as well.
  */
 @Bindable(prefix = "PreprocessingPipeline")
 public class CompletePreprocessingPipeline extends BasicPreprocessingPipeline
 {
+    /** Latency histogram name of the phrase extraction step. */
+    public static final String PHRASE_EXTRACTION_LATENCY = "preprocessing.phrase-extraction";
+
+    /** Latency histogram name of the label filtering step. */
+    public static final String LABEL_FILTERING_LATENCY = "preprocessing.label-filtering";
+
+    /** Latency histogram name of the document assignment step. */
+    public static final String DOCUMENT_ASSIGNMENT_LATENCY = "preprocessing.document-assignment";
+
     /**
      * Phrase extractor used by the algorithm, contains bindable attributes.
      */
@@ -62,20 +75,46 @@ public class CompletePreprocessingPipeline extends BasicPreprocessingPipeline
     public PreprocessingContext preprocess(List<Document> documents, String query,
         LanguageCode language)
     {
-        final PreprocessingContext context = new PreprocessingContext(
-            LanguageModel.create(language, stemmerFactory, tokenizerFactory,
-                lexicalDataFactory), documents, query);
-
-        tokenizer.tokenize(context);
-        caseNormalizer.normalize(context);
-        languageModelStemmer.stem(context);
-        stopListMarker.mark(context);
-        phraseExtractor.extractPhrases(context);
-        labelFilterProcessor.process(context);
-        documentAssigner.assign(context);
+        final PreprocessingContext context = createContext(documents, query, language);
+        if (sharedPreprocessing)
+        {
+            final Object completeKey = PreprocessingContextCache.completeKey(
+                basicKey(context), phraseExtractor, labelFilterProcessor,
+                documentAssigner);
+            PreprocessingContextCache.getShared().complete(completeKey, context,
+                new Runnable()
+                {
+                    public void run()
+                    {
+                        preprocessBasic(context);
+                        runCompleteSteps(context);
+                    }
+                });
+        }
+        else
+        {
+            preprocessBasic(context);
+            runCompleteSteps(context);
+        }
 
         context.preprocessingFinished();
         return context;
+    }
+
+    private void runCompleteSteps(PreprocessingContext context)
+    {
+        long start = System.nanoTime();
+        phraseExtractor.extractPhrases(context);
+        LatencyRecorder.recordCurrent(PHRASE_EXTRACTION_LATENCY, start);
+        CancellationToken.checkCurrent();
+
+        start = System.nanoTime();
+        labelFilterProcessor.process(context);
+        LatencyRecorder.recordCurrent(LABEL_FILTERING_LATENCY, start);
+        CancellationToken.checkCurrent();
 
+        start = System.nanoTime();
+        documentAssigner.assign(context, threads);
+        LatencyRecorder.recordCurrent(DOCUMENT_ASSIGNMENT_LATENCY, start);
     }
 }
@@ -13,11 +13,10 @@
 package org.carrot2.text.vsm;
 
 import org.apache.mahout.math.matrix.DoubleMatrix2D;
-import org.apache.mahout.math.matrix.impl.DenseDoubleMatrix2D;
-import org.apache.mahout.math.matrix.impl.SparseDoubleMatrix2D;
 import org.carrot2.core.Document;
 import org.carrot2.core.attribute.Internal;
 import org.carrot2.core.attribute.Processing;
+import org.carrot2.matrix.CompressedRowDoubleMatrix2D;
 import org.carrot2.matrix.MatrixUtils;
 import org.carrot2.text.analysis.TokenTypeUtils;
 import org.carrot2.text.preprocessing.PreprocessingContext;
@@ -34,12 +33,16 @@ import org.carrot2.util.attribute.constraint.ImplementingClasses;
 import org.carrot2.util.attribute.constraint.IntRange;
 
 import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntIntOpenHashMap;
 import com.carrotsearch.hppc.sorting.IndirectComparator;
 import com.carrotsearch.hppc.sorting.IndirectSort;
 
 /**
- * Builds a term document matrix based on the provided {@link PreprocessingContext}.
+ * Builds a term document matrix based on the provided {@link PreprocessingContext}. The
+ * matrices are stored in the compressed sparse row format, see
+ * {@link CompressedRowDoubleMatrix2D}.
  */
 @SuppressWarnings("deprecation")
 @Bindable(prefix = "TermDocumentMatrixBuilder")
@@ -61,8 +64,13 @@ public class TermDocumentMatrixBuilder
     public double titleWordsBoost = 2.0;
 
     /**
-     * Maximum matrix size. The maximum number of the term-document matrix elements. The
-     * larger the size, the more accurate, time- and memory-consuming clustering.
+     * Maximum matrix size. The maximum number of non-zero elements of the term-document
+     * matrix. Terms are added to the matrix in the order of their weights until the limit
+     * is reached. The larger the size, the more accurate, time- and memory-consuming
+     * clustering. Note that factorization methods other than
+     * {@link org.carrot2.matrix.factorization.NonnegativeMatrixFactorizationED} and
+     * {@link org.carrot2.matrix.factorization.KMeansMatrixFactorization} need memory
+     * proportional to the number of terms times the number of documents.
      */
     @Input
     @Processing
@@ -133,7 +141,7 @@ public class TermDocumentMatrixBuilder
 
         if (documentCount == 0)
         {
-            vsmContext.termDocumentMatrix = new DenseDoubleMatrix2D(0, 0);
+            vsmContext.termDocumentMatrix = new CompressedRowDoubleMatrix2D(0, 0);
             vsmContext.stemToRowIndex = new IntIntOpenHashMap();
             return;
         }
@@ -167,11 +175,25 @@ public class TermDocumentMatrixBuilder
             new IndirectComparator.DescendingDoubleComparator(stemsWeight));
 
         // Calculate the number of terms we can include to fulfill the max matrix size
-        final int maxRows = maximumMatrixSize / documentCount;
-        final DoubleMatrix2D tdMatrix = new DenseDoubleMatrix2D(Math.min(maxRows,
-            stemsToInclude.length), documentCount);
+        int rows = 0;
+        int nonZeros = 0;
+        while (rows < stemWeightOrder.length)
+        {
+            final int stemIndex = stemsToInclude[stemWeightOrder[rows]];
+            final int df = stemsTfByDocument[stemIndex].length / 2;
+            if (nonZeros + df > maximumMatrixSize)
+            {
+                break;
+            }
+            nonZeros += df;
+            rows++;
+        }
 
-        for (int i = 0; i < stemWeightOrder.length && i < maxRows; i++)
+        final int [] rowPointers = new int [rows + 1];
+        final int [] columnIndices = new int [nonZeros];
+        final double [] values = new double [nonZeros];
+        int index = 0;
+        for (int i = 0; i < rows; i++)
         {
             final int stemIndex = stemsToInclude[stemWeightOrder[i]];
             final int [] tfByDocument = stemsTfByDocument[stemIndex];
@@ -183,9 +205,14 @@ public class TermDocumentMatrixBuilder
                     tfByDocument[j * 2 + 1], df, documentCount);
 
                 weight *= getWeightBoost(titleFieldIndex, fieldIndices);
-                tdMatrix.set(i, tfByDocument[j * 2], weight);
+                columnIndices[index] = tfByDocument[j * 2];
+                values[index] = weight;
+                index++;
             }
+            rowPointers[i + 1] = index;
         }
+        final DoubleMatrix2D tdMatrix = new CompressedRowDoubleMatrix2D(rows,
+            documentCount, rowPointers, columnIndices, values);
 
         // Convert stemsToInclude into tdMatrixStemIndices
         final IntIntOpenHashMap stemToRowIndex = new IntIntOpenHashMap();
@@ -307,13 +334,6 @@ public class TermDocumentMatrixBuilder
         int [] featureIndex, ITermWeighting termWeighting)
     {
         final IntIntOpenHashMap stemToRowIndex = vsmContext.stemToRowIndex;
-        if (featureIndex.length == 0)
-        {
-            return new DenseDoubleMatrix2D(stemToRowIndex.size(), 0);
-        }
-
-        final DoubleMatrix2D phraseMatrix = new SparseDoubleMatrix2D(stemToRowIndex
-            .size(), featureIndex.length);
 
         final PreprocessingContext preprocessingContext = vsmContext.preprocessingContext;
         final int [] wordsStemIndex = preprocessingContext.allWords.stemIndex;
@@ -323,6 +343,10 @@ public class TermDocumentMatrixBuilder
         final int documentCount = preprocessingContext.documents.size();
         final int wordCount = wordsStemIndex.length;
 
+        // Build the transposed matrix, one row per feature, then return its view
+        final int [] rowPointers = new int [featureIndex.length + 1];
+        final IntArrayList columnIndices = new IntArrayList();
+        final DoubleArrayList values = new DoubleArrayList();
         for (int i = 0; i < featureIndex.length; i++)
         {
             final int feature = featureIndex[i];
@@ -339,21 +363,49 @@ public class TermDocumentMatrixBuilder
                 wordIndices = phrasesWordIndices[feature - wordCount];
             }
 
+            final int start = columnIndices.size();
             for (int wordIndex = 0; wordIndex < wordIndices.length; wordIndex++)
             {
                 final int stemIndex = wordsStemIndex[wordIndices[wordIndex]];
                 if (stemToRowIndex.containsKey(stemIndex))
                 {
                     final int rowIndex = stemToRowIndex.lget();
+                    if (indexOf(columnIndices, start, rowIndex) >= 0)
+                    {
+                        // Repeated stem, the same weight
+                        continue;
+                    }
 
                     double weight = termWeighting.calculateTermWeight(stemsTf[stemIndex],
                         stemsTfByDocument[stemIndex].length / 2, documentCount);
 
-                    phraseMatrix.setQuick(rowIndex, i, weight);
+                    columnIndices.add(rowIndex);
+                    values.add(weight);
                 }
             }
+            rowPointers[i + 1] = columnIndices.size();
         }
 
+        final DoubleMatrix2D phraseMatrix = new CompressedRowDoubleMatrix2D(
+            featureIndex.length, stemToRowIndex.size(), rowPointers,
+            columnIndices.toArray(), values.toArray()).viewDice();
+
         return phraseMatrix;
     }
+
+    /**
+     * Returns the index of <code>value</code> in <code>list</code> at or after
+     * <code>start</code>, <code>-1</code> if not present.
+     */
+    private static int indexOf(IntArrayList list, int start, int value)
+    {
+        for (int i = start; i < list.size(); i++)
+        {
+            if (list.get(i) == value)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
@@ -78,6 +78,20 @@ public class TermDocumentMatrixReducer
     @Group(TermDocumentMatrixBuilder.MATRIX_MODEL)
     public FactorizationQuality factorizationQuality = FactorizationQuality.HIGH;
 
+    /**
+     * Single precision factorization. Computes and stores the factors of iterative
+     * factorization methods in single precision, which takes half the memory and may be
+     * faster for large term-document matrices, at the cost of accuracy.
+     */
+    @Input
+    @Processing
+    @Required
+    @Attribute
+    @Label("Single precision factorization")
+    @Level(AttributeLevel.ADVANCED)
+    @Group(TermDocumentMatrixBuilder.MATRIX_MODEL)
+    public boolean singlePrecision = false;
+
     /**
      * Performs the reduction.
      */
@@ -96,6 +110,8 @@ public class TermDocumentMatrixReducer
         if (factorizationFactory instanceof IterativeMatrixFactorizationFactory)
         {
             ((IterativeMatrixFactorizationFactory) factorizationFactory).setK(dimensions);
+            ((IterativeMatrixFactorizationFactory) factorizationFactory)
+                .setSinglePrecision(singlePrecision);
             IterationNumberGuesser.setEstimatedIterationsNumber(
                 (IterativeMatrixFactorizationFactory) factorizationFactory,
                 vsmContext.termDocumentMatrix, factorizationQuality);